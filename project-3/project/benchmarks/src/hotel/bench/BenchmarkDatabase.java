@@ -0,0 +1,137 @@
+package hotel.bench;
+
+import java.sql.Date;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import hotel.Hotel;
+import hotel.QueryResult;
+
+/**
+ * The database shared by all benchmark threads. It connects to a locally
+ * running Postgres that was set up with sql/scripts/create_db.sh and grows
+ * RoomBookings with random bookings until it holds at least the number of
+ * rows given by the bookings parameter. Rows added for the scale are kept,
+ * so point the benchmarks at a scratch database.
+ *
+ * Connection settings come from the system properties hotel.db, hotel.port,
+ * hotel.user and hotel.password, which default to the same $USER"_DB",
+ * $PGPORT and $USER that scripts/compile.sh uses.
+ *
+ */
+@State(Scope.Benchmark)
+public class BenchmarkDatabase {
+   // bookings made by the benchmarks go on dates from here on and are
+   // deleted again after the run.
+   static final Date FIRST_BENCHMARK_DATE = Date.valueOf("3000-01-01");
+   private static final long MILLIS_PER_DAY = 24L * 60 * 60 * 1000;
+   private static final int GROW_BATCH = 100000;
+
+   // adds up to ? random bookings between 2000-01-01 and 2024-08-22. Rooms
+   // and customers are sampled from arrays so every row costs O(1).
+   private static final String GROW_SQL =
+      "WITH r AS (SELECT array_agg(hotelID) AS h, array_agg(roomNumber) AS n FROM Rooms), " +
+      "u AS (SELECT array_agg(userID) AS c FROM Users) " +
+      "INSERT INTO RoomBookings(customerID, hotelID, roomNumber, bookingDate) " +
+      "SELECT u.c[1 + floor(random() * cardinality(u.c))::int], r.h[x.i], r.n[x.i], DATE '2000-01-01' + floor(random() * 9000)::int " +
+      "FROM r, u, generate_series(1, ?) g, LATERAL (SELECT g, 1 + floor(random() * cardinality(r.h))::int AS i) x " +
+      "ON CONFLICT (hotelID, roomNumber, bookingDate) DO NOTHING";
+
+   @Param({"500", "50000", "500000"})
+   public int bookings;
+
+   public Hotel esql;
+   // sample keys the benchmarks pick from.
+   public int[] hotelIDs;
+   public int[] managerIDs;
+   public int[] roomHotelIDs;
+   public int[] roomNumbers;
+   public int[] customerIDs;
+   public int companyID;
+
+   private int _lastRepairID;
+   private final AtomicInteger _nextSlot = new AtomicInteger();
+
+   @Setup(Level.Trial)
+   public void open() throws Exception {
+      String user = System.getProperty("hotel.user", System.getenv("USER"));
+      String db = System.getProperty("hotel.db", user + "_DB");
+      String port = System.getProperty("hotel.port", System.getenv("PGPORT") != null ? System.getenv("PGPORT") : "5432");
+      this.esql = new Hotel(db, port, user, System.getProperty("hotel.password", ""),
+                            Runtime.getRuntime().availableProcessors());
+
+      int have = this.esql.queryForInt("SELECT COUNT(*) FROM RoomBookings");
+      while (have < this.bookings) {
+         this.esql.executeUpdate(GROW_SQL, Math.min(GROW_BATCH, this.bookings - have));
+         have = this.esql.queryForInt("SELECT COUNT(*) FROM RoomBookings");
+      }
+      this.esql.executeUpdate("ANALYZE RoomBookings");
+
+      QueryResult hotels = this.esql.executeQueryAndReturnColumns("SELECT hotelID, managerUserID FROM Hotel ORDER BY hotelID");
+      this.hotelIDs = hotels.intColumn(0);
+      this.managerIDs = hotels.intColumn(1);
+      QueryResult rooms = this.esql.executeQueryAndReturnColumns("SELECT hotelID, roomNumber FROM Rooms ORDER BY hotelID, roomNumber");
+      this.roomHotelIDs = rooms.intColumn(0);
+      this.roomNumbers = rooms.intColumn(1);
+      this.customerIDs = this.esql.executeQueryAndReturnColumns("SELECT userID FROM Users ORDER BY userID").intColumn(0);
+      this.companyID = this.esql.queryForInt("SELECT MIN(companyID) FROM MaintenanceCompany");
+      this._lastRepairID = Math.max(0, this.esql.queryForInt("SELECT MAX(repairID) FROM RoomRepairs"));
+   }//end open
+
+   @TearDown(Level.Trial)
+   public void close() throws Exception {
+      try {
+         this.esql.executeUpdate("DELETE FROM RoomBookings WHERE bookingDate >= ?", FIRST_BENCHMARK_DATE);
+         this.esql.executeUpdate("DELETE FROM RoomRepairRequests WHERE repairID > ?", this._lastRepairID);
+         this.esql.executeUpdate("DELETE FROM RoomRepairs WHERE repairID > ?", this._lastRepairID);
+      } finally {
+         this.esql.cleanup();
+      }
+   }//end close
+
+   /**
+    * @return an index into the hotel samples
+    */
+   public int randomHotel() {
+      return ThreadLocalRandom.current().nextInt(this.hotelIDs.length);
+   }
+
+   /**
+    * @return an index into the room samples
+    */
+   public int randomRoom() {
+      return ThreadLocalRandom.current().nextInt(this.roomNumbers.length);
+   }
+
+   public int randomCustomer() {
+      return this.customerIDs[ThreadLocalRandom.current().nextInt(this.customerIDs.length)];
+   }
+
+   /**
+    * @return a random date of the range the scale bookings are spread over
+    */
+   public Date randomBookingDate() {
+      return new Date(Date.valueOf("2000-01-01").getTime() + ThreadLocalRandom.current().nextInt(9000) * MILLIS_PER_DAY);
+   }
+
+   /**
+    * @return a room and date pair no other benchmark call has booked, as
+    * {index into the room samples, days after FIRST_BENCHMARK_DATE}
+    */
+   public int[] nextFreeSlot() {
+      int slot = this._nextSlot.getAndIncrement();
+      return new int[] { slot % this.roomNumbers.length, slot / this.roomNumbers.length };
+   }
+
+   public Date benchmarkDate(int day) {
+      return new Date(FIRST_BENCHMARK_DATE.getTime() + day * MILLIS_PER_DAY);
+   }
+
+}//end BenchmarkDatabase
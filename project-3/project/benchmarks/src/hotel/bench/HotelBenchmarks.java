@@ -0,0 +1,141 @@
+package hotel.bench;
+
+import java.sql.Date;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import hotel.BookingEngine;
+import hotel.Hotel;
+import hotel.HotelIndex;
+import hotel.Pager;
+import hotel.QueryResult;
+import hotel.RoomSearch;
+
+/**
+ * One benchmark per operation of the Hotel menu, measuring throughput and
+ * the latency distribution. Build with "mvn package" and run against a local
+ * Postgres, for example
+ *
+ *    java -Dhotel.db=bench_DB -Dhotel.port=5432 -jar benchmarks/target/benchmarks.jar -p bookings=50000
+ *
+ */
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HotelBenchmarks {
+   // days after FIRST_BENCHMARK_DATE where the stays of bookStay start.
+   private static final int STAY_OFFSET = 100000;
+
+   @Benchmark
+   public List<HotelIndex.Entry> viewHotels(BenchmarkDatabase db) throws Exception {
+      ThreadLocalRandom random = ThreadLocalRandom.current();
+      return db.esql.hotelsWithin(random.nextDouble(-90, 90), random.nextDouble(-180, 180), 30);
+   }
+
+   @Benchmark
+   public List<RoomSearch.Result> searchRooms(BenchmarkDatabase db) throws Exception {
+      ThreadLocalRandom random = ThreadLocalRandom.current();
+      Date first = db.randomBookingDate();
+      return db.esql.searchRooms(random.nextDouble(-90, 90), random.nextDouble(-180, 180), 30, first, first,
+                                 Integer.MAX_VALUE, 10);
+   }
+
+   @Benchmark
+   public List<int[]> viewRooms(BenchmarkDatabase db) throws Exception {
+      return db.esql.availableRooms(db.hotelIDs[db.randomHotel()], db.randomBookingDate());
+   }
+
+   @Benchmark
+   public BookingEngine.Result bookRooms(BenchmarkDatabase db) throws Exception {
+      int[] slot = db.nextFreeSlot();
+      return db.esql.bookings().book(db.randomCustomer(), db.roomHotelIDs[slot[0]], db.roomNumbers[slot[0]],
+                                     db.benchmarkDate(slot[1]));
+   }
+
+   @Benchmark
+   public List<int[]> viewRoomsForStay(BenchmarkDatabase db) throws Exception {
+      Date first = db.randomBookingDate();
+      return db.esql.availableRooms(db.hotelIDs[db.randomHotel()], first,
+                                    new Date(first.getTime() + 6L * 24 * 60 * 60 * 1000));
+   }
+
+   @Benchmark
+   public BookingEngine.Result bookStay(BenchmarkDatabase db) throws Exception {
+      // three night stays go after the single nights of bookRooms.
+      int[] slot = db.nextFreeSlot();
+      int first = STAY_OFFSET + 3 * slot[1];
+      return db.esql.bookings().bookStay(db.randomCustomer(), db.roomHotelIDs[slot[0]], db.roomNumbers[slot[0]],
+                                         db.benchmarkDate(first), db.benchmarkDate(first + 2));
+   }
+
+   @Benchmark
+   public QueryResult viewRecentBookingsfromCustomer(BenchmarkDatabase db) throws Exception {
+      return db.esql.recentBookings(db.randomCustomer());
+   }
+
+   @Benchmark
+   public QueryResult viewBookingHistoryofHotel(BenchmarkDatabase db) throws Exception {
+      return db.esql.bookingHistory(db.hotelIDs[db.randomHotel()], null, null);
+   }
+
+   @Benchmark
+   public QueryResult viewBookingHistoryofHotelInRange(BenchmarkDatabase db) throws Exception {
+      Date from = db.randomBookingDate();
+      return db.esql.bookingHistory(db.hotelIDs[db.randomHotel()], from,
+                                    new Date(from.getTime() + 30L * 24 * 60 * 60 * 1000));
+   }
+
+   @Benchmark
+   public QueryResult viewBookingHistoryofHotelPaged(BenchmarkDatabase db) throws Exception {
+      // a page deep into the history costs the same as the first one.
+      Pager pager = db.esql.bookingHistoryPages(db.hotelIDs[db.randomHotel()], null, null, 20);
+      QueryResult page = pager.first();
+      for (int i = 0; i < 10 && !page.isEmpty(); ++i)
+         page = pager.next();
+      return page;
+   }
+
+   @Benchmark
+   public QueryResult viewRegularCustomers(BenchmarkDatabase db) throws Exception {
+      return db.esql.regularCustomers(db.hotelIDs[db.randomHotel()], Hotel.REGULAR_CUSTOMERS_DEFAULT_K, null, null);
+   }
+
+   @Benchmark
+   public QueryResult viewRegularCustomersInRange(BenchmarkDatabase db) throws Exception {
+      Date from = db.randomBookingDate();
+      return db.esql.regularCustomers(db.hotelIDs[db.randomHotel()], Hotel.REGULAR_CUSTOMERS_DEFAULT_K, from,
+                                      new Date(from.getTime() + 365L * 24 * 60 * 60 * 1000));
+   }
+
+   @Benchmark
+   public int placeRoomRepairRequests(BenchmarkDatabase db) throws Exception {
+      int room = db.randomRoom();
+      int hotel = Arrays.binarySearch(db.hotelIDs, db.roomHotelIDs[room]);
+      return db.esql.placeRepairRequest(db.managerIDs[hotel], db.roomHotelIDs[room], db.roomNumbers[room], db.companyID);
+   }
+
+   @Benchmark
+   public QueryResult placeHotelRepairRequests(BenchmarkDatabase db) throws Exception {
+      int hotel = db.randomHotel();
+      return db.esql.placeRepairRequests(db.managerIDs[hotel], db.hotelIDs[hotel], Integer.MIN_VALUE, Integer.MAX_VALUE,
+                                         Integer.MIN_VALUE, Integer.MAX_VALUE, db.companyID);
+   }
+
+   @Benchmark
+   public QueryResult viewRoomRepairHistory(BenchmarkDatabase db) throws Exception {
+      return db.esql.repairHistory(db.managerIDs[db.randomHotel()]);
+   }
+
+}//end HotelBenchmarks
@@ -0,0 +1,9 @@
+#!/bin/bash
+DIR="$( cd "$( dirname "${BASH_SOURCE[0]}" )" && pwd )"
+
+# compile the java program and collect its JDBC driver
+mvn -q -f $DIR/../pom.xml -DskipTests package
+
+#check the query plans of the hotel operations, extra options go to hotel.PlanCheck
+#--scales regenerates the data for every scale, use a scratch database for it
+java -cp $DIR/../target/classes:$DIR/../target/dependency/* hotel.PlanCheck $USER"_DB" $PGPORT $USER "$@"
@@ -1,13 +1,10 @@
 #!/bin/bash
 DIR="$( cd "$( dirname "${BASH_SOURCE[0]}" )" && pwd )"
 
-export JAVA_HOME=/usr/csshare/pkgs/jdk1.7.0_17
-export PATH=$JAVA_HOME/bin:$PATH
-
-# compile the java program
-javac -d $DIR/../classes $DIR/../src/Hotel.java
+# compile the java program and collect its JDBC driver
+mvn -q -f $DIR/../pom.xml -DskipTests package
 
 #run the java program
 #Use your database name, port number and login
-java -cp $DIR/../classes:$DIR/../lib/pg73jdbc3.jar Hotel $USER"_DB" $PGPORT $USER
+java -cp $DIR/../target/classes:$DIR/../target/dependency/* hotel.Hotel $USER"_DB" $PGPORT $USER
 
@@ -0,0 +1,243 @@
+package hotel;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes the RoomUpdatesLog entries of all sessions in the background.
+ * record() puts an entry on a bounded queue and returns; a writer thread
+ * takes whatever has queued up, at most BATCH_SIZE entries, and inserts it
+ * with one statement. A burst of room updates therefore costs one commit
+ * per batch rather than one per room. When the queue is full, record()
+ * blocks until the writer catches up.
+ *
+ * Every entry keeps the time it was recorded, not the time it was written.
+ * A batch is written again while the database is unreachable; entries the
+ * database refuses are counted by dropped(). close() writes whatever is
+ * still queued before it returns.
+ *
+ */
+public class AuditWriter {
+   public static final int DEFAULT_CAPACITY = 10000;
+   public static final int BATCH_SIZE = 1000;
+   // the longest an entry waits for others to share its insert.
+   public static final long FLUSH_MILLIS = 200;
+   // pause before writing a batch again after the database failed.
+   public static final long RETRY_MILLIS = 1000;
+   // how long close() waits for the queue to be written.
+   public static final long CLOSE_TIMEOUT_MILLIS = 30 * 1000;
+
+   // one statement for any number of rows, so it is prepared once per connection.
+   static final String INSERT_SQL = "INSERT INTO RoomUpdatesLog(managerID, hotelID, roomNumber, updatedOn) SELECT m, h, r, to_timestamp(t / 1000.0) FROM unnest(?::integer[], ?::integer[], ?::integer[], ?::bigint[]) AS e(m, h, r, t)";
+
+   private static final class Entry {
+      final int managerID;
+      final int hotelID;
+      final int roomNumber;
+      final long at;
+
+      Entry(int managerID, int hotelID, int roomNumber) {
+         this.managerID = managerID;
+         this.hotelID = hotelID;
+         this.roomNumber = roomNumber;
+         this.at = System.currentTimeMillis();
+      }
+   }//end Entry
+
+   private final Hotel _esql;
+   private final BlockingQueue<Entry> _queue;
+   private final Thread _thread;
+   private volatile boolean _closing = false;
+   // entries recorded, and entries written or given up on; guarded by this.
+   private long _recorded = 0;
+   private long _done = 0;
+   private long _dropped = 0;
+
+   public AuditWriter(Hotel esql) {
+      this(esql, DEFAULT_CAPACITY);
+   }
+
+   /**
+    * @param capacity the number of entries queued before record() blocks
+    */
+   public AuditWriter(Hotel esql, int capacity) {
+      this._esql = esql;
+      this._queue = new ArrayBlockingQueue<Entry>(capacity);
+      this._thread = new Thread(this::run, "audit-writer");
+      this._thread.setDaemon(true);
+      this._thread.start();
+   }//end AuditWriter
+
+   /**
+    * Queues a RoomUpdatesLog entry for a change made just now.
+    *
+    * @throws java.sql.SQLException when interrupted while the queue was full
+    */
+   public void record(int managerID, int hotelID, int roomNumber) throws SQLException {
+      if (this._closing)
+         throw new IllegalStateException("the audit writer is closed");
+      synchronized (this) {
+         ++this._recorded;
+      }
+      try {
+         this._queue.put(new Entry(managerID, hotelID, roomNumber));
+      } catch (InterruptedException e) {
+         synchronized (this) {
+            --this._recorded;
+         }
+         Thread.currentThread().interrupt();
+         throw new SQLException("Interrupted while queueing a room update");
+      }
+   }//end record
+
+   /**
+    * Waits until every entry recorded before this call has been written.
+    *
+    * @return false when it timed out or was interrupted
+    */
+   public boolean flush(long timeoutMillis) {
+      long deadline = System.currentTimeMillis() + timeoutMillis;
+      synchronized (this) {
+         long target = this._recorded;
+         try {
+            while (this._done < target) {
+               long left = deadline - System.currentTimeMillis();
+               if (left <= 0)
+                  return false;
+               wait(left);
+            }
+         } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+         }
+         return true;
+      }
+   }//end flush
+
+   /**
+    * Writes what is still queued and stops the writer. Entries recorded
+    * afterwards are refused.
+    */
+   public void close() {
+      this._closing = true;
+      if (!flush(CLOSE_TIMEOUT_MILLIS))
+         System.err.println(pending() + " room update(s) were not written to RoomUpdatesLog");
+      this._thread.interrupt();
+   }//end close
+
+   /**
+    * @return the number of entries queued or being written
+    */
+   public synchronized long pending() {
+      return this._recorded - this._done;
+   }
+
+   /**
+    * @return the number of entries the database refused and that were not logged
+    */
+   public synchronized long dropped() {
+      return this._dropped;
+   }
+
+   private void run() {
+      List<Entry> batch = new ArrayList<Entry>(BATCH_SIZE);
+      while (true) {
+         try {
+            Entry first = this._queue.poll(FLUSH_MILLIS, TimeUnit.MILLISECONDS);
+            if (first == null)
+               continue;
+            batch.add(first);
+            // keep gathering until the batch is full or its first entry waited long enough.
+            long deadline = System.currentTimeMillis() + FLUSH_MILLIS;
+            while (batch.size() < BATCH_SIZE) {
+               this._queue.drainTo(batch, BATCH_SIZE - batch.size());
+               long left = deadline - System.currentTimeMillis();
+               if (batch.size() >= BATCH_SIZE || left <= 0 || this._closing)
+                  break;
+               Entry e = this._queue.poll(left, TimeUnit.MILLISECONDS);
+               if (e == null)
+                  break;
+               batch.add(e);
+            }
+            write(batch);
+            batch.clear();
+         } catch (InterruptedException e) {
+            // close() is done waiting.
+            if (this._closing)
+               break;
+         }
+      }//end while
+   }//end run
+
+   /**
+    * Inserts a batch, retrying only while the database is unreachable or
+    * the failure is transient, the same states ReplicaRouter retries on. A
+    * batch with a row the database refuses is written row by row so that
+    * only that row is lost. Any other error would fail again the same way,
+    * so the batch is dropped and counted.
+    */
+   private void write(List<Entry> batch) throws InterruptedException {
+      while (true) {
+         try {
+            insert(batch);
+            done(batch.size(), 0);
+            return;
+         } catch (SQLException e) {
+            if (ReplicaRouter.isUnavailable(e)) {
+               System.err.println("Failed to write " + batch.size() + " room update(s), retrying: " + e.getMessage());
+               Thread.sleep(RETRY_MILLIS);
+               continue;
+            }
+            // 22: a value out of range, 23: a row that breaks a constraint.
+            String state = e.getSQLState();
+            if (state.startsWith("22") || state.startsWith("23")) {
+               writeEach(batch);
+               return;
+            }
+            System.err.println(batch.size() + " room update(s) were not logged: " + e.getMessage());
+            done(batch.size(), batch.size());
+            return;
+         }
+      }
+   }//end write
+
+   private void writeEach(List<Entry> batch) {
+      for (Entry e : batch) {
+         try {
+            insert(Collections.singletonList(e));
+            done(1, 0);
+         } catch (SQLException ex) {
+            System.err.println("Room update of room " + e.roomNumber + " of hotel " + e.hotelID + " was not logged: " + ex.getMessage());
+            done(1, 1);
+         }
+      }
+   }//end writeEach
+
+   private void insert(List<Entry> batch) throws SQLException {
+      int n = batch.size();
+      int[] managers = new int[n];
+      int[] hotels = new int[n];
+      int[] rooms = new int[n];
+      long[] times = new long[n];
+      for (int i = 0; i < n; ++i) {
+         Entry e = batch.get(i);
+         managers[i] = e.managerID;
+         hotels[i] = e.hotelID;
+         rooms[i] = e.roomNumber;
+         times[i] = e.at;
+      }
+      this._esql.executeUpdate(INSERT_SQL, managers, hotels, rooms, times);
+   }//end insert
+
+   private synchronized void done(int written, int dropped) {
+      this._done += written;
+      this._dropped += dropped;
+      notifyAll();
+   }
+
+}//end AuditWriter
@@ -0,0 +1,170 @@
+package hotel;
+
+import java.sql.Date;
+import java.sql.SQLException;
+import java.util.BitSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Caches which rooms of a hotel are booked on a given date as a bitset
+ * indexed by room number. An entry is loaded from RoomBookings the first
+ * time its (hotelID, date) is asked for, and bookings made through this
+ * Hotel instance set their bit in place, so availability checks do not need
+ * a round trip to the database.
+ *
+ * The number of entries is bounded; the least recently used dates are
+ * evicted first. Entries also expire after a while so that bookings made by
+ * other processes become visible.
+ *
+ */
+public class AvailabilityCache {
+   public static final int DEFAULT_MAX_ENTRIES = 4096;
+   public static final long DEFAULT_TTL_MILLIS = 30 * 1000;
+
+   private final Hotel _esql;
+   private final long _ttlMillis;
+   // access ordered, so the coldest (hotelID, date) is evicted first.
+   private final Map<Key, Bookings> _entries;
+
+   public AvailabilityCache(Hotel esql) {
+      this(esql, DEFAULT_MAX_ENTRIES, DEFAULT_TTL_MILLIS);
+   }
+
+   /**
+    * @param esql the database to load bookings from
+    * @param maxEntries the number of (hotelID, date) bitsets kept in memory
+    * @param ttlMillis how long a loaded bitset is trusted
+    */
+   public AvailabilityCache(Hotel esql, final int maxEntries, long ttlMillis) {
+      this._esql = esql;
+      this._ttlMillis = ttlMillis;
+      this._entries = new LinkedHashMap<Key, Bookings>(16, 0.75f, true) {
+         protected boolean removeEldestEntry(Map.Entry<Key, Bookings> eldest) {
+            return size() > maxEntries;
+         }
+      };
+   }//end AvailabilityCache
+
+   /**
+    * @return true when the room is booked at the hotel on the given date
+    * @throws java.sql.SQLException when the bookings of that date could not be loaded
+    */
+   public boolean isBooked(int hotelID, int roomNumber, Date date) throws SQLException {
+      return entry(hotelID, date).isBooked(roomNumber);
+   }
+
+   /**
+    * @return a copy of the set of room numbers booked at the hotel on the given date
+    * @throws java.sql.SQLException when the bookings of that date could not be loaded
+    */
+   public BitSet bookedRooms(int hotelID, Date date) throws SQLException {
+      return entry(hotelID, date).snapshot();
+   }
+
+   /**
+    * Records a booking that was just committed to RoomBookings. A date that
+    * is not cached yet is left alone; loading it later reads the new row.
+    */
+   public void markBooked(int hotelID, int roomNumber, Date date) {
+      Bookings e;
+      synchronized (this._entries) {
+         e = this._entries.get(new Key(hotelID, date));
+      }
+      if (e != null)
+         e.markBooked(roomNumber);
+   }
+
+   /**
+    * Forgets what is known about the hotel on the given date.
+    */
+   public void invalidate(int hotelID, Date date) {
+      synchronized (this._entries) {
+         this._entries.remove(new Key(hotelID, date));
+      }
+   }
+
+   /**
+    * Forgets every cached date.
+    */
+   public void clear() {
+      synchronized (this._entries) {
+         this._entries.clear();
+      }
+   }
+
+   private Bookings entry(int hotelID, Date date) throws SQLException {
+      Key key = new Key(hotelID, date);
+      Bookings e;
+      synchronized (this._entries) {
+         e = this._entries.get(key);
+         if (e == null) {
+            e = new Bookings(key);
+            this._entries.put(key, e);
+         }
+      }
+      e.ensureLoaded();
+      return e;
+   }//end entry
+
+   private static final class Key {
+      final int hotelID;
+      final long date;
+
+      Key(int hotelID, Date date) {
+         this.hotelID = hotelID;
+         this.date = date.getTime();
+      }
+
+      public boolean equals(Object o) {
+         if (!(o instanceof Key))
+            return false;
+         Key k = (Key) o;
+         return this.hotelID == k.hotelID && this.date == k.date;
+      }
+
+      public int hashCode() {
+         return 31 * this.hotelID + (int) (this.date ^ (this.date >>> 32));
+      }
+   }//end Key
+
+   /**
+    * The booked rooms of one hotel on one date. Loading and in-place updates
+    * are serialized on the entry, so a booking recorded while the entry is
+    * being loaded is applied after the load and never lost.
+    */
+   private final class Bookings {
+      private final Key _key;
+      private final BitSet _booked = new BitSet();
+      private long _loadedAt = -1;
+
+      Bookings(Key key) {
+         this._key = key;
+      }
+
+      synchronized void ensureLoaded() throws SQLException {
+         if (this._loadedAt >= 0 && System.currentTimeMillis() - this._loadedAt < _ttlMillis)
+            return;
+         int[] rooms = _esql.storage().bookedRooms(this._key.hotelID, new Date(this._key.date)).intColumn(0);
+         this._booked.clear();
+         for (int room : rooms)
+            this._booked.set(room);
+         this._loadedAt = System.currentTimeMillis();
+      }
+
+      synchronized boolean isBooked(int roomNumber) {
+         return roomNumber >= 0 && this._booked.get(roomNumber);
+      }
+
+      synchronized BitSet snapshot() {
+         return (BitSet) this._booked.clone();
+      }
+
+      synchronized void markBooked(int roomNumber) {
+         // an entry that was never loaded reads the booking from the table.
+         if (this._loadedAt >= 0)
+            this._booked.set(roomNumber);
+      }
+   }//end Bookings
+
+}//end AvailabilityCache
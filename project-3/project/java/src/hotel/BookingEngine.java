@@ -0,0 +1,158 @@
+package hotel;
+
+import java.sql.Date;
+import java.sql.SQLException;
+
+import org.postgresql.util.PSQLException;
+import org.postgresql.util.ServerErrorMessage;
+
+/**
+ * Books rooms atomically. A reservation is a single insert into
+ * RoomBookings, through the Storage, that only succeeds if the
+ * (hotelID, roomNumber, bookingDate) slot is still free. The room and its
+ * price come from the RoomCache, so the statement does not read Rooms; a
+ * room deleted meanwhile is caught by the foreign key of RoomBookings.
+ *
+ * Double bookings are prevented by the unique index booking_unique_slot, so
+ * two customers only contend when they ask for the same room on the same
+ * date; there is no table lock and no serializable transaction.
+ *
+ */
+public class BookingEngine {
+
+   /**
+    * The outcome of a booking attempt.
+    */
+   public static class Result {
+      public enum Status { BOOKED, UNAVAILABLE, NO_SUCH_ROOM }
+
+      public final Status status;
+      // only set when status is BOOKED.
+      public final int bookingID;
+      // the room price, set unless status is NO_SUCH_ROOM.
+      public final int price;
+      // the number of nights booked, one booking per night.
+      public final int nights;
+
+      Result(Status status, int bookingID, int price) {
+         this(status, bookingID, price, status == Status.BOOKED ? 1 : 0);
+      }
+
+      Result(Status status, int bookingID, int price, int nights) {
+         this.status = status;
+         this.bookingID = bookingID;
+         this.price = price;
+         this.nights = nights;
+      }
+   }//end Result
+
+   private static final String UNIQUE_VIOLATION = "23505";
+   private static final String FOREIGN_KEY_VIOLATION = "23503";
+   // the name create_tables.sql and BookingMigration give the foreign key of RoomBookings on (hotelID, roomNumber).
+   static final String ROOM_FOREIGN_KEY = "roombookings_hotelid_roomnumber_fkey";
+
+   private final Hotel _esql;
+
+   public BookingEngine(Hotel esql) {
+      this._esql = esql;
+   }
+
+   /**
+    * Books a room for a customer on the given date.
+    *
+    * @return whether the room was booked, already taken or does not exist
+    * @throws java.sql.SQLException when failed to execute the booking
+    */
+   public Result book(int customerID, int hotelID, int roomNumber, Date date) throws SQLException {
+      try (Metrics.Operation op = this._esql.metrics().start("bookRooms")) {
+         Result result = reserve(customerID, hotelID, roomNumber, date);
+         op.succeeded(result.nights);
+         return result;
+      }
+   }
+
+   private Result reserve(int customerID, int hotelID, int roomNumber, Date date) throws SQLException {
+      int price = this._esql.rooms().price(hotelID, roomNumber);
+      if (price < 0)
+         return new Result(Result.Status.NO_SUCH_ROOM, -1, -1);
+
+      QueryResult rows;
+      try {
+         rows = this._esql.storage().book(customerID, hotelID, roomNumber, date);
+      } catch (SQLException e) {
+         if (isMissingRoom(e, hotelID))
+            return new Result(Result.Status.NO_SUCH_ROOM, -1, -1);
+         throw e;
+      }
+      if (rows.isEmpty())
+         return new Result(Result.Status.UNAVAILABLE, -1, price);
+
+      this._esql.availability().markBooked(hotelID, roomNumber, date);
+      this._esql.stays().markBooked(hotelID, roomNumber, date, date);
+      return new Result(Result.Status.BOOKED, rows.getInt(0, 0), price);
+   }//end reserve
+
+   /**
+    * Books a room for every night from first to last, inclusive, or for none
+    * of them. The stay index answers for rooms that are known to be taken
+    * without a round trip; the insert itself is still guarded by the unique
+    * index, so a stale index never causes a double booking.
+    *
+    * @return the first bookingID and the number of nights when booked
+    * @throws java.sql.SQLException when failed to execute the booking
+    */
+   public Result bookStay(int customerID, int hotelID, int roomNumber, Date first, Date last) throws SQLException {
+      try (Metrics.Operation op = this._esql.metrics().start("bookStay")) {
+         Result result = reserveStay(customerID, hotelID, roomNumber, first, last);
+         op.succeeded(result.nights);
+         return result;
+      }
+   }
+
+   private Result reserveStay(int customerID, int hotelID, int roomNumber, Date first, Date last) throws SQLException {
+      if (last.before(first))
+         throw new IllegalArgumentException("the stay ends before it starts");
+      int price = this._esql.rooms().price(hotelID, roomNumber);
+      if (price < 0)
+         return new Result(Result.Status.NO_SUCH_ROOM, -1, -1, 0);
+      if (!this._esql.stays().isFree(hotelID, roomNumber, first, last))
+         return new Result(Result.Status.UNAVAILABLE, -1, price, 0);
+
+      QueryResult rows;
+      try {
+         rows = this._esql.storage().bookStay(customerID, hotelID, roomNumber, first, last);
+      } catch (SQLException e) {
+         if (UNIQUE_VIOLATION.equals(e.getSQLState())) {
+            // someone else holds one of the nights; reload before trusting the index again.
+            this._esql.stays().invalidate(hotelID);
+            return new Result(Result.Status.UNAVAILABLE, -1, price, 0);
+         }
+         if (isMissingRoom(e, hotelID))
+            return new Result(Result.Status.NO_SUCH_ROOM, -1, -1, 0);
+         throw e;
+      }
+
+      int nights = rows.getInt(0, 1);
+      this._esql.stays().markBooked(hotelID, roomNumber, first, last);
+      for (int d = 0; d < nights; ++d)
+         this._esql.availability().markBooked(hotelID, roomNumber,
+            QueryResult.toDate(QueryResult.toEpochDay(first) + d));
+      return new Result(Result.Status.BOOKED, rows.getInt(0, 0), price, nights);
+   }//end reserveStay
+
+   /**
+    * @return true when the insert failed because the cached room is gone,
+    * in which case the rooms of the hotel are reloaded on next use
+    */
+   private boolean isMissingRoom(SQLException e, int hotelID) {
+      if (!FOREIGN_KEY_VIOLATION.equals(e.getSQLState()) || !(e instanceof PSQLException))
+         return false;
+      // an unknown customer violates the other foreign key, on customerID.
+      ServerErrorMessage error = ((PSQLException) e).getServerErrorMessage();
+      if (error == null || !ROOM_FOREIGN_KEY.equals(error.getConstraint()))
+         return false;
+      this._esql.rooms().invalidate(hotelID);
+      return true;
+   }
+
+}//end BookingEngine
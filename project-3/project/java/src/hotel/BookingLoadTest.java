@@ -0,0 +1,146 @@
+package hotel;
+
+import java.sql.Date;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Multithreaded load test for BookingEngine. Every thread books random
+ * (room, date) slots out of a small shared set, so many attempts collide.
+ * After each run the tool checks that RoomBookings holds exactly one row per
+ * successful booking and no slot twice, then removes the rows it created.
+ *
+ * Bookings are made on dates far in the future so the test never touches
+ * real reservations.
+ *
+ */
+public class BookingLoadTest {
+   // the test books on TEST_DAYS consecutive dates starting here.
+   private static final String FIRST_TEST_DATE = "2999-01-01";
+   private static final int TEST_DAYS = 30;
+   private static final int TEST_ROOMS = 20;
+   private static final long MILLIS_PER_DAY = 24L * 60 * 60 * 1000;
+
+   /**
+    * @param args <dbname> <port> <user> [attempts per thread] [thread counts...]
+    */
+   public static void main(String[] args) {
+      if (args.length < 3) {
+         System.err.println (
+            "Usage: " +
+            "java [-classpath <classpath>] " +
+            BookingLoadTest.class.getName () +
+            " <dbname> <port> <user> [attempts per thread] [thread counts...]");
+         return;
+      }//end if
+
+      int attempts = args.length > 3 ? Integer.parseInt(args[3]) : 500;
+      List<Integer> threadCounts = new ArrayList<Integer>();
+      for (int i = 4; i < args.length; ++i)
+         threadCounts.add(Integer.parseInt(args[i]));
+      if (threadCounts.isEmpty()) {
+         threadCounts.add(1);
+         threadCounts.add(2);
+         threadCounts.add(4);
+         threadCounts.add(8);
+         threadCounts.add(16);
+      }
+      int maxThreads = 1;
+      for (int t : threadCounts)
+         maxThreads = Math.max(maxThreads, t);
+
+      Hotel esql = null;
+      try {
+         Class.forName ("org.postgresql.Driver").getDeclaredConstructor ().newInstance ();
+         esql = new Hotel(args[0], args[1], args[2], "", maxThreads);
+
+         QueryResult rooms = esql.executeQueryAndReturnColumns(
+            "SELECT hotelID, roomNumber FROM Rooms ORDER BY hotelID, roomNumber LIMIT ?", TEST_ROOMS);
+         int customerID = esql.queryForInt("SELECT MIN(userID) FROM Users");
+         if (rooms.isEmpty() || customerID < 0)
+            throw new Exception("The database needs at least one room and one user");
+
+         boolean allPassed = true;
+         for (int threads : threadCounts)
+            allPassed &= run(esql, rooms, customerID, threads, attempts);
+         System.out.println(allPassed ? "PASSED: no double bookings" : "FAILED: double bookings detected");
+         if (!allPassed)
+            System.exit(1);
+      } catch (Exception e) {
+         System.err.println(e.getMessage());
+         System.exit(1);
+      } finally {
+         if (esql != null)
+            esql.cleanup();
+      }
+   }//end main
+
+   private static boolean run(final Hotel esql, final QueryResult rooms, final int customerID,
+                              int threads, final int attempts) throws Exception {
+      final Date first = Date.valueOf(FIRST_TEST_DATE);
+      final Date last = new Date(first.getTime() + (TEST_DAYS - 1) * MILLIS_PER_DAY);
+      clear(esql, first, last);
+
+      final AtomicInteger booked = new AtomicInteger();
+      final AtomicInteger conflicts = new AtomicInteger();
+      final AtomicReference<Exception> failure = new AtomicReference<Exception>();
+      final CountDownLatch start = new CountDownLatch(1);
+      final CountDownLatch done = new CountDownLatch(threads);
+
+      for (int t = 0; t < threads; ++t) {
+         final long seed = 31L * threads + t;
+         new Thread(new Runnable() {
+            public void run() {
+               Random random = new Random(seed);
+               try {
+                  start.await();
+                  for (int i = 0; i < attempts; ++i) {
+                     int room = random.nextInt(rooms.rowCount());
+                     Date date = new Date(first.getTime() + random.nextInt(TEST_DAYS) * MILLIS_PER_DAY);
+                     BookingEngine.Result r = esql.bookings().book(customerID,
+                        rooms.getInt(room, 0), rooms.getInt(room, 1), date);
+                     if (r.status == BookingEngine.Result.Status.BOOKED)
+                        booked.incrementAndGet();
+                     else
+                        conflicts.incrementAndGet();
+                  }
+               } catch (Exception e) {
+                  failure.compareAndSet(null, e);
+               } finally {
+                  done.countDown();
+               }
+            }
+         }).start();
+      }
+
+      long begin = System.nanoTime();
+      start.countDown();
+      done.await();
+      double seconds = (System.nanoTime() - begin) / 1e9;
+      if (failure.get() != null)
+         throw failure.get();
+
+      int rows = esql.queryForInt(
+         "SELECT COUNT(*) FROM RoomBookings WHERE bookingDate BETWEEN ? AND ?", first, last);
+      int doubled = esql.executeQuery(
+         "SELECT hotelID, roomNumber, bookingDate FROM RoomBookings WHERE bookingDate BETWEEN ? AND ? " +
+         "GROUP BY hotelID, roomNumber, bookingDate HAVING COUNT(*) > 1", first, last);
+      clear(esql, first, last);
+
+      System.out.println(String.format(
+         "threads=%d attempts=%d booked=%d conflicts=%d rows=%d doubled=%d %.1f attempts/s %.1f bookings/s",
+         threads, threads * attempts, booked.get(), conflicts.get(), rows, doubled,
+         threads * attempts / seconds, booked.get() / seconds));
+      return doubled == 0 && rows == booked.get();
+   }//end run
+
+   private static void clear(Hotel esql, Date first, Date last) throws Exception {
+      esql.executeUpdate("DELETE FROM RoomBookings WHERE bookingDate BETWEEN ? AND ?", first, last);
+      esql.availability().clear();
+   }
+
+}//end BookingLoadTest
@@ -0,0 +1,322 @@
+package hotel;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Moves an existing, unpartitioned RoomBookings table over to the yearly
+ * partitioned layout of create_tables.sql while the application keeps
+ * running:
+ *
+ *    1. creates RoomBookings_new, partitioned by bookingDate, with the
+ *       same columns, keys and indexes and one partition per year;
+ *    2. installs a trigger on RoomBookings that repeats every insert,
+ *       update and delete on RoomBookings_new;
+ *    3. copies the existing rows in bookingID batches, each one a short
+ *       transaction of its own;
+ *    4. checks that both tables hold the same rows and swaps the names in
+ *       one transaction, which is the only moment writers are blocked.
+ *
+ * The old table is kept as RoomBookings_unpartitioned. A run that was
+ * interrupted can be started again; batches that were already copied are
+ * skipped by ON CONFLICT DO NOTHING. Run sql/src/create_partitions.sql
+ * before the migration.
+ *
+ */
+public class BookingMigration {
+   public static final int DEFAULT_BATCH_SIZE = 10000;
+   static final String CUSTOMER_FOREIGN_KEY = "roombookings_customerid_fkey";
+
+   private static final String CREATE_TABLE_SQL =
+      "CREATE TABLE IF NOT EXISTS RoomBookings_new ( " +
+      "bookingID integer NOT NULL DEFAULT nextval('%s'::regclass), " +
+      "customerID integer NOT NULL, hotelID integer NOT NULL, roomNumber integer NOT NULL, bookingDate date NOT NULL, " +
+      "PRIMARY KEY(bookingID, bookingDate), " +
+      // named as on RoomBookings: BookingEngine tells a deleted room by the name of its key.
+      "CONSTRAINT " + CUSTOMER_FOREIGN_KEY + " FOREIGN KEY(customerID) REFERENCES Users(userID), " +
+      "CONSTRAINT " + BookingEngine.ROOM_FOREIGN_KEY + " FOREIGN KEY(hotelID, roomNumber) REFERENCES Rooms(hotelID, roomNumber)) " +
+      "PARTITION BY RANGE (bookingDate)";
+
+   // the row as it is on RoomBookings, in the same transaction as the write.
+   private static final String MIRROR_FUNCTION_SQL =
+      "CREATE OR REPLACE FUNCTION mirror_room_bookings() RETURNS trigger AS $mirror$ " +
+      "BEGIN " +
+      "   IF TG_OP IN ('DELETE', 'UPDATE') THEN " +
+      "      DELETE FROM RoomBookings_new WHERE bookingID = OLD.bookingID AND bookingDate = OLD.bookingDate; " +
+      "   END IF; " +
+      "   IF TG_OP IN ('INSERT', 'UPDATE') THEN " +
+      "      INSERT INTO RoomBookings_new VALUES (NEW.*) ON CONFLICT DO NOTHING; " +
+      "   END IF; " +
+      "   RETURN NULL; " +
+      "END; " +
+      "$mirror$ LANGUAGE plpgsql";
+
+   // FOR SHARE makes a concurrent delete of a copied row wait for the batch,
+   // so its mirrored delete sees the copy and removes it.
+   private static final String COPY_BATCH_SQL =
+      "INSERT INTO RoomBookings_new " +
+      "SELECT bookingID, customerID, hotelID, roomNumber, bookingDate FROM RoomBookings " +
+      "WHERE bookingID > ? AND bookingID <= ? FOR SHARE " +
+      "ON CONFLICT DO NOTHING";
+
+   private final ConnectionPool _pool;
+   private final int _batchSize;
+   private final long _pauseMillis;
+
+   /**
+    * @param batchSize bookingIDs copied per transaction
+    * @param pauseMillis sleep between batches, to leave room for the application
+    */
+   public BookingMigration(ConnectionPool pool, int batchSize, long pauseMillis) {
+      this._pool = pool;
+      this._batchSize = batchSize;
+      this._pauseMillis = pauseMillis;
+   }
+
+   /**
+    * @param args <dbname> <port> <user> [batch size] [pause between batches in ms]
+    */
+   public static void main(String[] args) {
+      if (args.length < 3) {
+         System.err.println (
+            "Usage: " +
+            "java [-classpath <classpath>] " +
+            BookingMigration.class.getName () +
+            " <dbname> <port> <user> [batch size] [pause between batches in ms]");
+         return;
+      }//end if
+      int batchSize = args.length > 3 ? Integer.parseInt(args[3]) : DEFAULT_BATCH_SIZE;
+      long pause = args.length > 4 ? Long.parseLong(args[4]) : 0;
+
+      ConnectionPool pool = new ConnectionPool(Hotel.connectionURL(args[0], args[1]), args[2], "", 1, 0);
+      try {
+         new BookingMigration(pool, batchSize, pause).run();
+      } catch (Exception e) {
+         System.err.println(e.getMessage());
+         System.exit(1);
+      } finally {
+         pool.close();
+      }
+   }//end main
+
+   /**
+    * Runs all steps of the migration.
+    *
+    * @throws Exception when a step failed; the old table is still in use then
+    */
+   public void run() throws Exception {
+      ConnectionPool.PooledConnection pc = this._pool.acquire();
+      try {
+         Connection c = pc.connection();
+         String kind = queryString(c, "SELECT relkind::text FROM pg_class WHERE oid = to_regclass('roombookings')");
+         if ("p".equals(kind)) {
+            // earlier migrations left the foreign keys with the names Postgres gave them on RoomBookings_new.
+            c.setAutoCommit(false);
+            try {
+               nameForeignKeys(c);
+               c.commit();
+            } catch (SQLException e) {
+               c.rollback();
+               throw e;
+            } finally {
+               c.setAutoCommit(true);
+            }
+            System.out.println("RoomBookings is already partitioned");
+            return;
+         }
+         if (queryString(c, "SELECT to_regproc('create_booking_partitions')::text") == null)
+            throw new SQLException("create_booking_partitions() is missing, run sql/src/create_partitions.sql first");
+
+         prepare(c);
+         long copied = copy(c);
+         verify(c);
+         swap(c);
+         System.out.println(copied + " booking(s) moved, the old table is RoomBookings_unpartitioned");
+      } finally {
+         this._pool.release(pc);
+      }
+   }//end run
+
+   /**
+    * Creates the partitioned table with its partitions and starts mirroring
+    * writes into it.
+    */
+   private void prepare(Connection c) throws SQLException {
+      int firstYear = queryInt(c, "SELECT COALESCE(extract(year FROM MIN(bookingDate))::integer, 0) FROM RoomBookings");
+      int lastYear = LocalDate.now().getYear() + BookingPartitions.YEARS_AHEAD;
+      if (firstYear == 0)
+         firstYear = LocalDate.now().getYear();
+      try (Statement stmt = c.createStatement()) {
+         // new rows keep drawing bookingIDs from the sequence of the old table.
+         String sequence = queryString(c, "SELECT pg_get_serial_sequence('roombookings', 'bookingid')");
+         stmt.execute(String.format(CREATE_TABLE_SQL, sequence));
+         stmt.execute("CREATE INDEX IF NOT EXISTS booking_hotel_date_new ON RoomBookings_new USING BTREE(hotelID, bookingDate, bookingID)");
+         stmt.execute("CREATE INDEX IF NOT EXISTS booking_customer_date_new ON RoomBookings_new USING BTREE(customerID, bookingDate, bookingID)");
+         stmt.execute("CREATE UNIQUE INDEX IF NOT EXISTS booking_unique_slot_new ON RoomBookings_new USING BTREE(hotelID, roomNumber, bookingDate)");
+         stmt.execute("SELECT create_booking_partitions('roombookings_new', " + firstYear + ", " + lastYear + ")");
+         stmt.execute(MIRROR_FUNCTION_SQL);
+         stmt.execute("DROP TRIGGER IF EXISTS booking_mirror ON RoomBookings");
+         stmt.execute("CREATE TRIGGER booking_mirror AFTER INSERT OR UPDATE OR DELETE ON RoomBookings " +
+                      "FOR EACH ROW EXECUTE FUNCTION mirror_room_bookings()");
+      }
+   }//end prepare
+
+   /**
+    * Copies the rows that existed before the trigger was installed. Later
+    * ones are already there through the trigger.
+    *
+    * @return the number of rows copied
+    */
+   private long copy(Connection c) throws Exception {
+      int maxID = queryInt(c, "SELECT COALESCE(MAX(bookingID), 0) FROM RoomBookings");
+      long copied = 0;
+      long start = System.nanoTime();
+      try (PreparedStatement stmt = c.prepareStatement(COPY_BATCH_SQL)) {
+         for (long from = 0; from < maxID; from += this._batchSize) {
+            stmt.setLong(1, from);
+            stmt.setLong(2, Math.min(maxID, from + this._batchSize));
+            copied += stmt.executeUpdate();
+            System.out.println(String.format("copied up to bookingID %d of %d, %.0f rows/s",
+               Math.min(maxID, from + this._batchSize), maxID, copied / Math.max((System.nanoTime() - start) / 1e9, 1e-9)));
+            if (this._pauseMillis > 0)
+               Thread.sleep(this._pauseMillis);
+         }
+      }
+      return copied;
+   }//end copy
+
+   /**
+    * Compares both tables in one snapshot; the trigger writes to both in the
+    * same transaction, so they must agree exactly.
+    */
+   private void verify(Connection c) throws SQLException {
+      c.setAutoCommit(false);
+      c.setTransactionIsolation(Connection.TRANSACTION_REPEATABLE_READ);
+      try {
+         int missing = queryInt(c,
+            "SELECT COUNT(*) FROM (SELECT bookingID, customerID, hotelID, roomNumber, bookingDate FROM RoomBookings " +
+            "EXCEPT ALL SELECT bookingID, customerID, hotelID, roomNumber, bookingDate FROM RoomBookings_new) d");
+         int extra = queryInt(c,
+            "SELECT COUNT(*) FROM (SELECT bookingID, customerID, hotelID, roomNumber, bookingDate FROM RoomBookings_new " +
+            "EXCEPT ALL SELECT bookingID, customerID, hotelID, roomNumber, bookingDate FROM RoomBookings) d");
+         if (missing != 0 || extra != 0)
+            throw new SQLException("RoomBookings_new differs from RoomBookings: " + missing + " row(s) missing, " + extra + " extra");
+      } finally {
+         c.rollback();
+         c.setTransactionIsolation(Connection.TRANSACTION_READ_COMMITTED);
+         c.setAutoCommit(true);
+      }
+   }//end verify
+
+   /**
+    * Puts the partitioned table in place of the old one. Everything here is
+    * catalog work, so the exclusive lock is held for milliseconds.
+    */
+   private void swap(Connection c) throws SQLException {
+      c.setAutoCommit(false);
+      try (Statement stmt = c.createStatement()) {
+         stmt.execute("SET LOCAL lock_timeout = '10s'");
+         stmt.execute("LOCK TABLE RoomBookings IN ACCESS EXCLUSIVE MODE");
+         stmt.execute("DROP TRIGGER booking_mirror ON RoomBookings");
+         stmt.execute("DROP FUNCTION mirror_room_bookings()");
+
+         stmt.execute("ALTER TABLE RoomBookings RENAME TO RoomBookings_unpartitioned");
+         stmt.execute("ALTER INDEX IF EXISTS roombookings_pkey RENAME TO roombookings_unpartitioned_pkey");
+         stmt.execute("ALTER INDEX IF EXISTS booking_hotel_date RENAME TO booking_hotel_date_unpartitioned");
+         stmt.execute("ALTER INDEX IF EXISTS booking_unique_slot RENAME TO booking_unique_slot_unpartitioned");
+         stmt.execute("ALTER INDEX IF EXISTS booking_customer_date RENAME TO booking_customer_date_unpartitioned");
+
+         stmt.execute("ALTER TABLE RoomBookings_new RENAME TO RoomBookings");
+         stmt.execute("ALTER INDEX roombookings_new_pkey RENAME TO roombookings_pkey");
+         stmt.execute("ALTER INDEX booking_hotel_date_new RENAME TO booking_hotel_date");
+         stmt.execute("ALTER INDEX booking_unique_slot_new RENAME TO booking_unique_slot");
+         stmt.execute("ALTER INDEX booking_customer_date_new RENAME TO booking_customer_date");
+         for (String part : partitionsOf(c, "roombookings"))
+            stmt.execute("ALTER TABLE " + part + " RENAME TO " + part.replaceFirst("^roombookings_new_", "roombookings_"));
+         nameForeignKeys(c);
+
+         // the sequence has to survive dropping the old table.
+         stmt.execute("ALTER SEQUENCE " + queryString(c, "SELECT pg_get_serial_sequence('roombookings_unpartitioned', 'bookingid')") +
+                      " OWNED BY RoomBookings.bookingID");
+         // the counters of create_summaries.sql follow the table.
+         if (queryString(c, "SELECT to_regproc('install_booking_count_triggers')::text") != null) {
+            stmt.execute("DROP TRIGGER IF EXISTS booking_counts_insert ON RoomBookings_unpartitioned");
+            stmt.execute("DROP TRIGGER IF EXISTS booking_counts_delete ON RoomBookings_unpartitioned");
+            stmt.execute("DROP TRIGGER IF EXISTS booking_counts_update ON RoomBookings_unpartitioned");
+            stmt.execute("DROP TRIGGER IF EXISTS booking_counts_truncate ON RoomBookings_unpartitioned");
+            stmt.execute("SELECT install_booking_count_triggers()");
+         }
+         c.commit();
+      } catch (SQLException e) {
+         c.rollback();
+         throw e;
+      } finally {
+         c.setAutoCommit(true);
+      }
+      try (Statement stmt = c.createStatement()) {
+         stmt.execute("ANALYZE RoomBookings");
+      }
+   }//end swap
+
+   /**
+    * Renames the foreign keys of RoomBookings and its partitions that still
+    * carry their RoomBookings_new names to the names of create_tables.sql,
+    * then checks that every one of them has the room key BookingEngine
+    * looks for.
+    */
+   private static void nameForeignKeys(Connection c) throws SQLException {
+      List<String[]> renames = new ArrayList<String[]>();
+      try (Statement stmt = c.createStatement();
+           ResultSet rs = stmt.executeQuery(
+              "SELECT conrelid::regclass::text, conname FROM pg_constraint WHERE contype = 'f' " +
+              "AND conname LIKE 'roombookings\\_new\\_%' AND (conrelid = 'roombookings'::regclass " +
+              "OR conrelid IN (SELECT inhrelid FROM pg_inherits WHERE inhparent = 'roombookings'::regclass))")) {
+         while (rs.next())
+            renames.add(new String[] { rs.getString(1), rs.getString(2) });
+      }
+      try (Statement stmt = c.createStatement()) {
+         // a foreign key of a partitioned table is not renamed on its partitions, each is renamed here.
+         for (String[] r : renames)
+            stmt.execute("ALTER TABLE " + r[0] + " RENAME CONSTRAINT " + r[1] + " TO " + r[1].replaceFirst("^roombookings_new_", "roombookings_"));
+      }
+      int unnamed = queryInt(c,
+         "SELECT COUNT(*) FROM pg_class t WHERE (t.oid = 'roombookings'::regclass " +
+         "OR t.oid IN (SELECT inhrelid FROM pg_inherits WHERE inhparent = 'roombookings'::regclass)) " +
+         "AND NOT EXISTS (SELECT 1 FROM pg_constraint k WHERE k.conrelid = t.oid AND k.contype = 'f' " +
+         "AND k.conname = '" + BookingEngine.ROOM_FOREIGN_KEY + "')");
+      if (unnamed != 0)
+         throw new SQLException(unnamed + " table(s) of RoomBookings lack the foreign key " + BookingEngine.ROOM_FOREIGN_KEY);
+   }//end nameForeignKeys
+
+   private static List<String> partitionsOf(Connection c, String parent) throws SQLException {
+      List<String> parts = new ArrayList<String>();
+      try (PreparedStatement stmt = c.prepareStatement(
+              "SELECT inhrelid::regclass::text FROM pg_inherits WHERE inhparent = to_regclass(?) ORDER BY 1")) {
+         stmt.setString(1, parent);
+         try (ResultSet rs = stmt.executeQuery()) {
+            while (rs.next())
+               parts.add(rs.getString(1));
+         }
+      }
+      return parts;
+   }
+
+   private static String queryString(Connection c, String sql) throws SQLException {
+      try (Statement stmt = c.createStatement(); ResultSet rs = stmt.executeQuery(sql)) {
+         return rs.next() ? rs.getString(1) : null;
+      }
+   }
+
+   private static int queryInt(Connection c, String sql) throws SQLException {
+      try (Statement stmt = c.createStatement(); ResultSet rs = stmt.executeQuery(sql)) {
+         return rs.next() ? rs.getInt(1) : -1;
+      }
+   }
+
+}//end BookingMigration
@@ -0,0 +1,88 @@
+package hotel;
+
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps the yearly partitions of RoomBookings created ahead of time, so
+ * that new bookings land in their own year instead of the default
+ * partition. The partitions are made by create_booking_partitions() of
+ * sql/src/create_partitions.sql, which is idempotent and serialized on the
+ * server, so any number of clients may run this job at the same time.
+ *
+ * Hotel runs it in the background; main() runs it once, for cron.
+ *
+ */
+public class BookingPartitions {
+   // years after the current one that always have a partition.
+   public static final int YEARS_AHEAD = 2;
+   public static final long CHECK_INTERVAL_HOURS = 24;
+
+   private static final String CREATE_SQL = "SELECT create_booking_partitions('RoomBookings', ?, ?)";
+
+   /**
+    * @param args <dbname> <port> <user>
+    */
+   public static void main(String[] args) {
+      if (args.length != 3) {
+         System.err.println (
+            "Usage: " +
+            "java [-classpath <classpath>] " +
+            BookingPartitions.class.getName () +
+            " <dbname> <port> <user>");
+         return;
+      }//end if
+      Hotel esql = null;
+      try {
+         esql = new Hotel(args[0], args[1], args[2], "", 1);
+         System.out.println(createFuturePartitions(esql) + " partition(s) created");
+      } catch (Exception e) {
+         System.err.println(e.getMessage());
+         System.exit(1);
+      } finally {
+         if (esql != null)
+            esql.cleanup();
+      }
+   }//end main
+
+   /**
+    * Creates the partitions of the current year and the next YEARS_AHEAD
+    * years that do not exist yet.
+    *
+    * @return the number of partitions created; 0 when RoomBookings is not
+    * partitioned or create_partitions.sql was never run
+    * @throws java.sql.SQLException when failed to create a partition
+    */
+   public static int createFuturePartitions(Hotel esql) throws SQLException {
+      if (!esql.queryExists("SELECT 1 WHERE to_regproc('create_booking_partitions') IS NOT NULL"))
+         return 0;
+      int year = LocalDate.now().getYear();
+      return esql.queryForInt(CREATE_SQL, year, year + YEARS_AHEAD);
+   }
+
+   /**
+    * Runs createFuturePartitions now and then once every
+    * CHECK_INTERVAL_HOURS on a daemon thread, until the returned executor is
+    * shut down.
+    */
+   public static ScheduledExecutorService schedule(final Hotel esql) {
+      ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(r -> {
+         Thread t = new Thread(r, "booking-partitions");
+         t.setDaemon(true);
+         return t;
+      });
+      executor.scheduleWithFixedDelay(() -> {
+         try {
+            createFuturePartitions(esql);
+         } catch (SQLException e) {
+            // a failed run is retried at the next interval.
+            System.err.println(e.getMessage());
+         }
+      }, 0, CHECK_INTERVAL_HOURS, TimeUnit.HOURS);
+      return executor;
+   }//end schedule
+
+}//end BookingPartitions
@@ -0,0 +1,55 @@
+package hotel;
+
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * The steps around a bulk load that DataGenerator and CsvLoader share:
+ * emptying the tables before it and, after it, moving the id sequences
+ * past the loaded ids and refreshing the planner statistics.
+ *
+ */
+final class BulkLoad {
+   // every table of create_tables.sql; CASCADE reaches the summaries built on them.
+   private static final String TRUNCATE_SQL =
+      "TRUNCATE Users, Hotel, Rooms, MaintenanceCompany, RoomBookings, RoomRepairs, RoomRepairRequests, RoomUpdatesLog CASCADE";
+
+   private BulkLoad() {
+   }
+
+   /**
+    * Deletes every row of the tables of the application.
+    */
+   static void truncate(ConnectionPool pool) throws SQLException {
+      execute(pool, TRUNCATE_SQL);
+   }
+
+   /**
+    * Restarts the id sequences after the largest loaded ids, the equivalent
+    * of the ALTER SEQUENCE ... RESTART lines of load_data.sql, and analyzes
+    * the loaded tables.
+    */
+   static void finish(ConnectionPool pool) throws SQLException {
+      resetSequence(pool, "Users", "userID");
+      resetSequence(pool, "RoomBookings", "bookingID");
+      resetSequence(pool, "RoomRepairs", "repairID");
+      resetSequence(pool, "RoomRepairRequests", "requestNumber");
+      resetSequence(pool, "RoomUpdatesLog", "updateNumber");
+      execute(pool, "ANALYZE");
+   }
+
+   private static void resetSequence(ConnectionPool pool, String table, String column) throws SQLException {
+      execute(pool, "SELECT setval(pg_get_serial_sequence('" + table + "', '" + column + "'), " +
+                    "COALESCE((SELECT MAX(" + column + ") FROM " + table + "), 0) + 1, false)");
+   }
+
+   private static void execute(ConnectionPool pool, String sql) throws SQLException {
+      ConnectionPool.PooledConnection pc = pool.acquire();
+      try (Statement stmt = pc.connection().createStatement()) {
+         stmt.execute(sql);
+      } finally {
+         pool.release(pc);
+      }
+   }
+
+}//end BulkLoad
@@ -0,0 +1,143 @@
+package hotel;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
+
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+
+/**
+ * Receives the NOTIFY messages that the triggers of
+ * sql/src/create_notifications.sql send when a cached table changes, and
+ * hands each one to the handlers of its channel. It holds a connection of
+ * its own, outside the pool, and waits for notifications on a daemon thread.
+ *
+ * Notifications sent while no LISTEN is in place are lost, so after every
+ * (re)connect each handler is called once with a null payload and should
+ * treat everything it caches as stale.
+ *
+ */
+public class ChangeListener {
+   // how long one wait for notifications blocks before new channels are listened to.
+   public static final int POLL_MILLIS = 1000;
+   // pause between attempts to reconnect a lost connection.
+   public static final long RECONNECT_MILLIS = 5000;
+   private static final Pattern CHANNEL = Pattern.compile("[a-z_][a-z0-9_]*");
+
+   private final ConnectionPool _pool;
+   private final Map<String, List<Consumer<String>>> _handlers = new ConcurrentHashMap<String, List<Consumer<String>>>();
+   private Thread _thread = null;
+   private volatile boolean _closed = false;
+
+   /**
+    * @param pool the pool whose database and login the connection uses
+    */
+   public ChangeListener(ConnectionPool pool) {
+      this._pool = pool;
+   }
+
+   /**
+    * Calls handler with the payload of every notification on channel. It
+    * takes effect within POLL_MILLIS once the listener is started.
+    *
+    * @param channel a lower case channel name
+    */
+   public void listen(String channel, Consumer<String> handler) {
+      if (!CHANNEL.matcher(channel).matches())
+         throw new IllegalArgumentException("bad channel name: " + channel);
+      this._handlers.computeIfAbsent(channel, c -> new CopyOnWriteArrayList<Consumer<String>>()).add(handler);
+   }
+
+   /**
+    * Starts the listening thread, unless it runs already.
+    */
+   public synchronized void start() {
+      if (this._thread != null || this._closed)
+         return;
+      this._thread = new Thread(this::run, "change-listener");
+      this._thread.setDaemon(true);
+      this._thread.start();
+   }//end start
+
+   /**
+    * Stops the thread and closes its connection.
+    */
+   public synchronized void close() {
+      this._closed = true;
+      if (this._thread != null)
+         this._thread.interrupt();
+   }
+
+   private void run() {
+      Connection conn = null;
+      Set<String> listening = new HashSet<String>();
+      while (!this._closed) {
+         try {
+            if (conn == null) {
+               conn = this._pool.openConnection();
+               listening.clear();
+            }
+            for (String channel : this._handlers.keySet()) {
+               if (!listening.contains(channel)) {
+                  try (Statement stmt = conn.createStatement()) {
+                     stmt.execute("LISTEN " + channel);
+                  }
+                  listening.add(channel);
+                  // whatever was sent before this point is lost.
+                  dispatch(channel, null);
+               }
+            }
+            PGNotification[] received = conn.unwrap(PGConnection.class).getNotifications(POLL_MILLIS);
+            if (received != null) {
+               for (PGNotification n : received)
+                  dispatch(n.getName(), n.getParameter());
+            }
+         } catch (SQLException e) {
+            if (this._closed)
+               break;
+            System.err.println("Lost the change notifications: " + e.getMessage());
+            closeQuietly(conn);
+            conn = null;
+            try {
+               Thread.sleep(RECONNECT_MILLIS);
+            } catch (InterruptedException ie) {
+               break;
+            }
+         }
+      }//end while
+      closeQuietly(conn);
+   }//end run
+
+   private void dispatch(String channel, String payload) {
+      List<Consumer<String>> handlers = this._handlers.get(channel);
+      if (handlers == null)
+         return;
+      for (Consumer<String> h : handlers) {
+         try {
+            h.accept(payload);
+         } catch (RuntimeException e) {
+            System.err.println(e.getMessage());
+         }
+      }
+   }//end dispatch
+
+   private static void closeQuietly(Connection conn) {
+      if (conn == null)
+         return;
+      try {
+         conn.close();
+      } catch (SQLException e) {
+         // already gone.
+      }
+   }
+
+}//end ChangeListener
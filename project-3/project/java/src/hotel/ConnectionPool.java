@@ -0,0 +1,267 @@
+package hotel;
+
+import java.sql.DriverManager;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.postgresql.PGStatement;
+
+/**
+ * A bounded pool of physical database connections. Every pooled connection
+ * keeps its own LRU cache of PreparedStatements keyed by their SQL text, so a
+ * parameterized query is parsed and planned by the server once per connection
+ * instead of once per call.
+ *
+ */
+public class ConnectionPool {
+   // how long acquire() waits for a free connection before giving up.
+   private static final long ACQUIRE_TIMEOUT_SECONDS = 30;
+
+   private final String _url;
+   private final String _user;
+   private final String _passwd;
+   private final int _maxSize;
+   private final int _stmtCacheSize;
+
+   // idle connections ready to be handed out.
+   private final BlockingQueue<PooledConnection> _idle;
+   // one permit per connection that may be handed out; a borrower holds one until release().
+   private final Semaphore _permits;
+   // every connection this pool opened and has not closed yet.
+   private final List<PooledConnection> _all = new ArrayList<PooledConnection>();
+   private boolean _closed = false;
+
+   // statement cache counters, summed over all connections.
+   private final AtomicLong _prepares = new AtomicLong();
+   private final AtomicLong _cacheHits = new AtomicLong();
+
+   /**
+    * Creates a new pool. Connections are opened lazily up to maxSize.
+    *
+    * @param url the JDBC connection URL
+    * @param user the user name used to login to the database
+    * @param passwd the user login password
+    * @param maxSize the maximum number of physical connections
+    * @param stmtCacheSize the number of prepared statements kept per connection
+    */
+   public ConnectionPool(String url, String user, String passwd, int maxSize, int stmtCacheSize) {
+      if (maxSize < 1)
+         throw new IllegalArgumentException("pool size must be at least 1");
+      this._url = url;
+      this._user = user;
+      this._passwd = passwd;
+      this._maxSize = maxSize;
+      this._stmtCacheSize = stmtCacheSize;
+      this._idle = new ArrayBlockingQueue<PooledConnection>(maxSize);
+      this._permits = new Semaphore(maxSize, true);
+   }//end ConnectionPool
+
+   /**
+    * Opens a connection up front so that a bad URL or login fails at startup
+    * rather than on the first query.
+    *
+    * @throws java.sql.SQLException when failed to make a connection.
+    */
+   public void warmUp() throws SQLException {
+      release(acquire());
+   }//end warmUp
+
+   /**
+    * Borrows a connection from the pool, opening a new one if the pool has not
+    * reached its maximum size yet. The caller must hand it back with release().
+    *
+    * @return a connection that is used by no one else until released
+    * @throws java.sql.SQLException when no connection could be obtained
+    */
+   public PooledConnection acquire() throws SQLException {
+      try {
+         if (!this._permits.tryAcquire(ACQUIRE_TIMEOUT_SECONDS, TimeUnit.SECONDS))
+            throw new SQLException("Timed out waiting for a free connection");
+      } catch (InterruptedException e) {
+         Thread.currentThread().interrupt();
+         throw new SQLException("Interrupted while waiting for a connection");
+      }
+
+      // holding a permit, either an idle connection is there or there is room for a new one.
+      try {
+         synchronized (this) {
+            if (this._closed)
+               throw new SQLException("Connection pool is closed");
+         }
+         PooledConnection pc = this._idle.poll();
+         if (pc != null)
+            return pc;
+         pc = new PooledConnection(DriverManager.getConnection(this._url, this._user, this._passwd));
+         synchronized (this) {
+            if (!this._closed) {
+               this._all.add(pc);
+               return pc;
+            }
+         }
+         pc.close();
+         throw new SQLException("Connection pool is closed");
+      } catch (SQLException | RuntimeException e) {
+         // a closed pool passes the permit on, so every waiter wakes up and fails.
+         this._permits.release();
+         throw e;
+      }
+   }//end acquire
+
+   /**
+    * Opens a physical connection that is not counted by the pool, for a
+    * caller that holds on to it for good, such as a LISTEN connection. The
+    * caller closes it.
+    *
+    * @throws java.sql.SQLException when failed to make a connection.
+    */
+   public Connection openConnection() throws SQLException {
+      return DriverManager.getConnection(this._url, this._user, this._passwd);
+   }
+
+   /**
+    * Returns a borrowed connection to the pool. A connection that was closed
+    * underneath us is dropped so that the slot can be refilled.
+    *
+    * @param pc the connection obtained from acquire()
+    */
+   public void release(PooledConnection pc) {
+      if (pc == null)
+         return;
+      boolean usable;
+      try {
+         usable = !pc.connection().isClosed();
+      } catch (SQLException e) {
+         usable = false;
+      }
+      boolean keep;
+      synchronized (this) {
+         keep = usable && !this._closed;
+         if (keep)
+            this._idle.offer(pc);
+         else
+            this._all.remove(pc);
+      }
+      if (!keep)
+         pc.close();
+      // the connection is back or its slot is free for a new one; either way a waiter can go on.
+      this._permits.release();
+   }//end release
+
+   /**
+    * Closes every connection of the pool together with its cached statements.
+    */
+   public void close() {
+      List<PooledConnection> toClose;
+      synchronized (this) {
+         this._closed = true;
+         toClose = new ArrayList<PooledConnection>(this._all);
+         this._all.clear();
+         this._idle.clear();
+      }
+      for (PooledConnection pc : toClose)
+         pc.close();
+      // wakes the waiters of acquire(), which see the pool closed and hand the permit on.
+      this._permits.release();
+   }//end close
+
+   /**
+    * @return the maximum number of physical connections
+    */
+   public int maxSize() {
+      return this._maxSize;
+   }
+
+   /**
+    * @return the number of statements the server had to parse and plan
+    */
+   public long getPrepareCount() {
+      return this._prepares.get();
+   }
+
+   /**
+    * @return the number of executions that reused an already prepared statement
+    */
+   public long getCacheHitCount() {
+      return this._cacheHits.get();
+   }
+
+   /**
+    * A physical connection together with its prepared statement cache. It is
+    * owned by exactly one thread between acquire() and release().
+    */
+   public class PooledConnection {
+      private final Connection _connection;
+      private final Map<String, PreparedStatement> _statements;
+
+      private PooledConnection(Connection connection) {
+         this._connection = connection;
+         // access ordered, so the least recently used statement goes first.
+         this._statements = new LinkedHashMap<String, PreparedStatement>(16, 0.75f, true) {
+            protected boolean removeEldestEntry(Map.Entry<String, PreparedStatement> eldest) {
+               if (size() <= _stmtCacheSize)
+                  return false;
+               closeQuietly(eldest.getValue());
+               return true;
+            }
+         };
+      }
+
+      public Connection connection() {
+         return this._connection;
+      }
+
+      /**
+       * Returns the cached statement for the given SQL text, preparing it on
+       * the server the first time it is seen on this connection.
+       *
+       * @param sql the parameterized SQL string
+       * @return a statement ready for binding parameters
+       * @throws java.sql.SQLException when the statement could not be prepared
+       */
+      public PreparedStatement prepare(String sql) throws SQLException {
+         PreparedStatement stmt = this._statements.get(sql);
+         if (stmt != null) {
+            _cacheHits.incrementAndGet();
+            stmt.clearParameters();
+            return stmt;
+         }
+         stmt = this._connection.prepareStatement(sql);
+         // use a named server-side statement from the first execution on.
+         if (stmt.isWrapperFor(PGStatement.class))
+            stmt.unwrap(PGStatement.class).setPrepareThreshold(1);
+         _prepares.incrementAndGet();
+         this._statements.put(sql, stmt);
+         return stmt;
+      }//end prepare
+
+      private void close() {
+         for (PreparedStatement stmt : this._statements.values())
+            closeQuietly(stmt);
+         this._statements.clear();
+         try {
+            this._connection.close();
+         } catch (SQLException e) {
+            // ignored.
+         }
+      }
+   }//end PooledConnection
+
+   private static void closeQuietly(PreparedStatement stmt) {
+      try {
+         stmt.close();
+      } catch (SQLException e) {
+         // ignored.
+      }
+   }
+
+}//end ConnectionPool
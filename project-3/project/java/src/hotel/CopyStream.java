@@ -0,0 +1,193 @@
+package hotel;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyIn;
+
+/**
+ * Streams rows into a table over the COPY protocol of the client
+ * connection, so the data does not have to be on the database host the way
+ * COPY ... FROM 'file' requires. Rows are encoded as CSV into a reusable
+ * buffer that is handed to the server whenever it fills up.
+ *
+ */
+public class CopyStream implements AutoCloseable {
+   private static final int BUFFER_SIZE = 256 * 1024;
+   // rows are only sent whole, so a single row must fit into this many bytes.
+   static final int MAX_ROW_SIZE = 4096;
+
+   private final CopyIn _copy;
+   private final byte[] _buffer = new byte[BUFFER_SIZE];
+   private int _length = 0;
+   private boolean _firstField = true;
+   private long _rows = 0;
+
+   /**
+    * Starts a COPY into the given columns of a table.
+    *
+    * @param connection the connection to copy over, used by no one else until close()
+    * @param table the target table
+    * @param columns the comma separated target columns
+    * @throws java.sql.SQLException when the COPY could not be started
+    */
+   public CopyStream(Connection connection, String table, String columns) throws SQLException {
+      this._copy = connection.unwrap(PGConnection.class).getCopyAPI()
+         .copyIn("COPY " + table + "(" + columns + ") FROM STDIN WITH (FORMAT csv)");
+   }
+
+   public CopyStream value(long v) {
+      separator();
+      if (v < 0) {
+         put((byte) '-');
+         v = -v;
+      }
+      // digits come out least significant first and are reversed in place.
+      int start = this._length;
+      do {
+         put((byte) ('0' + (v % 10)));
+         v /= 10;
+      } while (v != 0);
+      for (int i = start, j = this._length - 1; i < j; ++i, --j) {
+         byte t = this._buffer[i];
+         this._buffer[i] = this._buffer[j];
+         this._buffer[j] = t;
+      }
+      return this;
+   }//end value
+
+   /**
+    * Appends a text field. The caller must not pass commas, quotes or line
+    * breaks.
+    */
+   public CopyStream text(String v) {
+      separator();
+      for (int i = 0; i < v.length(); ++i)
+         put((byte) v.charAt(i));
+      return this;
+   }
+
+   /**
+    * Appends the bytes [from, to) of a buffer as a text field, as they are.
+    * The caller must not pass commas, quotes or line breaks.
+    */
+   public CopyStream bytes(ByteBuffer buffer, int from, int to) {
+      separator();
+      for (int i = from; i < to; ++i)
+         put(buffer.get(i));
+      return this;
+   }
+
+   /**
+    * Appends a NULL field.
+    */
+   public CopyStream nil() {
+      separator();
+      return this;
+   }
+
+   /**
+    * Appends a decimal field given as an integer number of millionths.
+    */
+   public CopyStream micros(long v) {
+      separator();
+      long abs = Math.abs(v);
+      String frac = Long.toString(1000000 + abs % 1000000).substring(1);
+      String s = (v < 0 ? "-" : "") + (abs / 1000000) + "." + frac;
+      for (int i = 0; i < s.length(); ++i)
+         put((byte) s.charAt(i));
+      return this;
+   }
+
+   /**
+    * Appends a date field given as days since 1970-01-01.
+    */
+   public CopyStream date(int epochDay) {
+      separator();
+      ascii(LocalDate.ofEpochDay(epochDay).toString());
+      return this;
+   }
+
+   /**
+    * Appends a timestamp field given as seconds since 1970-01-01 00:00.
+    */
+   public CopyStream timestamp(long epochSecond) {
+      return timestamp(epochSecond, 0);
+   }
+
+   /**
+    * Appends a timestamp field given as seconds since 1970-01-01 00:00 and
+    * the microseconds past that second.
+    */
+   public CopyStream timestamp(long epochSecond, int micros) {
+      separator();
+      LocalDateTime t = LocalDateTime.ofEpochSecond(epochSecond, 0, ZoneOffset.UTC);
+      ascii(t.toLocalDate().toString());
+      put((byte) ' ');
+      ascii(String.format("%02d:%02d:%02d", t.getHour(), t.getMinute(), t.getSecond()));
+      if (micros > 0)
+         ascii(String.format(".%06d", micros));
+      return this;
+   }
+
+   /**
+    * Ends the current row.
+    */
+   public void endRow() throws SQLException {
+      put((byte) '\n');
+      this._firstField = true;
+      ++this._rows;
+      if (this._length > BUFFER_SIZE - MAX_ROW_SIZE)
+         flush();
+   }
+
+   public long rows() {
+      return this._rows;
+   }
+
+   /**
+    * Sends the remaining rows and completes the COPY.
+    *
+    * @throws java.sql.SQLException when the server rejected the data
+    */
+   public void close() throws SQLException {
+      if (!this._copy.isActive())
+         return;
+      try {
+         flush();
+         this._copy.endCopy();
+      } finally {
+         if (this._copy.isActive())
+            this._copy.cancelCopy();
+      }
+   }//end close
+
+   private void ascii(String s) {
+      byte[] bytes = s.getBytes(StandardCharsets.US_ASCII);
+      for (byte b : bytes)
+         put(b);
+   }
+
+   private void separator() {
+      if (!this._firstField)
+         put((byte) ',');
+      this._firstField = false;
+   }
+
+   private void put(byte b) {
+      this._buffer[this._length++] = b;
+   }
+
+   private void flush() throws SQLException {
+      if (this._length > 0)
+         this._copy.writeToCopy(this._buffer, 0, this._length);
+      this._length = 0;
+   }
+
+}//end CopyStream
@@ -0,0 +1,751 @@
+package hotel;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Loads the CSV files of data/ into Postgres like load_data.sql, but from
+ * the client and in parallel. Every file is memory-mapped and cut into
+ * chunks on line boundaries. A pool of workers parses the chunks, checks
+ * each row against the keys of the tables it refers to and streams the
+ * rows that pass over a COPY of its own. A bad row goes to the reject file
+ * with its line number and the reason, and the load goes on.
+ *
+ * Dates may be M/D/YYYY or YYYY-MM-DD; timestamps are either one followed
+ * by HH:MM[:SS[.ffffff]]. Tables are loaded parents first, so the keys a
+ * file refers to are known before it is read: the rows loaded so far and,
+ * unless --truncate is given, the rows already in the database.
+ *
+ * Each chunk is one COPY. When the server refuses one, for a duplicate key
+ * say, its rows are rejected together and the other chunks still load.
+ *
+ */
+public class CsvLoader {
+   public static final int DEFAULT_CHUNK_MB = 8;
+   // rows are only sent whole, see CopyStream; normalized dates and decimals take more room.
+   private static final int MAX_LINE = CopyStream.MAX_ROW_SIZE / 2;
+   private static final int MAX_FIELDS = 16;
+
+   /**
+    * Why a row was not loaded. Thrown once per bad row, so it carries no
+    * stack trace.
+    */
+   private static final class Reject extends Exception {
+      private static final long serialVersionUID = 1L;
+
+      Reject(String message) {
+         super(message, null, false, false);
+      }
+   }//end Reject
+
+   /**
+    * The fields of one line of a mapped chunk, read in place.
+    */
+   private static final class Line {
+      private ByteBuffer _buffer;
+      private int _start;
+      private int _end;
+      private int _count;
+      private final int[] _from = new int[MAX_FIELDS];
+      private final int[] _to = new int[MAX_FIELDS];
+      // what the last date and timestamp parsed held besides their return value.
+      private int _day;
+      private int _micros;
+
+      /**
+       * Splits the line [start, end) on commas.
+       */
+      void split(ByteBuffer buffer, int start, int end) {
+         this._buffer = buffer;
+         this._start = start;
+         this._end = end;
+         this._count = 0;
+         int f = start;
+         for (int i = start; i <= end; ++i) {
+            if (i < end && buffer.get(i) != ',')
+               continue;
+            if (this._count < MAX_FIELDS) {
+               int from = f;
+               int to = i;
+               while (from < to && buffer.get(from) == ' ')
+                  ++from;
+               while (to > from && buffer.get(to - 1) == ' ')
+                  --to;
+               this._from[this._count] = from;
+               this._to[this._count] = to;
+            }
+            ++this._count;
+            f = i + 1;
+         }
+      }//end split
+
+      String raw() {
+         byte[] bytes = new byte[this._end - this._start];
+         for (int i = 0; i < bytes.length; ++i)
+            bytes[i] = this._buffer.get(this._start + i);
+         return new String(bytes, StandardCharsets.UTF_8);
+      }
+
+      void expect(int fields) throws Reject {
+         if (this._count != fields)
+            throw new Reject("expected " + fields + " fields, found " + this._count);
+      }
+
+      boolean isNull(int i) {
+         return this._from[i] == this._to[i];
+      }
+
+      int getInt(int i, String column) throws Reject {
+         if (isNull(i))
+            throw new Reject(column + " is empty");
+         int p = this._from[i];
+         int to = this._to[i];
+         boolean negative = this._buffer.get(p) == '-';
+         if (negative)
+            ++p;
+         if (p == to)
+            throw new Reject(column + " is not a number");
+         long v = 0;
+         for (; p < to; ++p) {
+            int d = this._buffer.get(p) - '0';
+            if (d < 0 || d > 9)
+               throw new Reject(column + " is not a number");
+            v = v * 10 + d;
+            if (v > Integer.MAX_VALUE + 1L)
+               throw new Reject(column + " is out of range");
+         }
+         v = negative ? -v : v;
+         if (v > Integer.MAX_VALUE)
+            throw new Reject(column + " is out of range");
+         return (int) v;
+      }//end getInt
+
+      /**
+       * @return the decimal as an integer number of millionths
+       * @param limit the absolute value the decimal must stay below
+       */
+      long getMicros(int i, String column, long limit) throws Reject {
+         int p = this._from[i];
+         int to = this._to[i];
+         boolean negative = this._buffer.get(p) == '-';
+         if (negative)
+            ++p;
+         long whole = 0;
+         long frac = 0;
+         int decimals = -1;
+         int digits = 0;
+         for (; p < to; ++p) {
+            byte b = this._buffer.get(p);
+            if (b == '.' && decimals < 0) {
+               decimals = 0;
+               continue;
+            }
+            if (b < '0' || b > '9')
+               throw new Reject(column + " is not a number");
+            ++digits;
+            if (decimals < 0) {
+               whole = whole * 10 + (b - '0');
+               if (whole >= limit)
+                  throw new Reject(column + " is out of range");
+            } else if (++decimals <= 6) {
+               frac = frac * 10 + (b - '0');
+            } else {
+               throw new Reject(column + " has more than 6 decimals");
+            }
+         }
+         if (digits == 0)
+            throw new Reject(column + " is not a number");
+         for (int d = Math.max(decimals, 0); d < 6; ++d)
+            frac *= 10;
+         long v = whole * 1000000 + frac;
+         return negative ? -v : v;
+      }//end getMicros
+
+      /**
+       * @return the epoch day of a M/D/YYYY or YYYY-MM-DD date
+       */
+      int getDate(int i, String column) throws Reject {
+         if (isNull(i))
+            throw new Reject(column + " is empty");
+         int end = date(this._from[i], this._to[i], column);
+         if (end != this._to[i])
+            throw new Reject(column + " is not a date");
+         return this._day;
+      }
+
+      /**
+       * Parses the date at the start of [from, to) into _day.
+       *
+       * @return where the date ended
+       */
+      private int date(int from, int to, String column) throws Reject {
+         int[] parts = new int[3];
+         byte separator = 0;
+         int p = from;
+         for (int k = 0; k < 3; ++k) {
+            int start = p;
+            int v = 0;
+            while (p < to && p - start < 4 && this._buffer.get(p) >= '0' && this._buffer.get(p) <= '9')
+               v = v * 10 + (this._buffer.get(p++) - '0');
+            if (p == start)
+               throw new Reject(column + " is not a date");
+            parts[k] = v;
+            if (k == 2)
+               break;
+            if (p == to || (this._buffer.get(p) != '/' && this._buffer.get(p) != '-'))
+               throw new Reject(column + " is not a date");
+            if (separator != 0 && this._buffer.get(p) != separator)
+               throw new Reject(column + " mixes date separators");
+            separator = this._buffer.get(p++);
+         }
+         try {
+            // the sample data is M/D/YYYY, as Postgres reads it with DateStyle MDY.
+            LocalDate d = separator == '/'
+               ? LocalDate.of(parts[2], parts[0], parts[1])
+               : LocalDate.of(parts[0], parts[1], parts[2]);
+            this._day = (int) d.toEpochDay();
+         } catch (DateTimeException e) {
+            throw new Reject(column + " is not a date: " + e.getMessage());
+         }
+         return p;
+      }//end date
+
+      /**
+       * @return the seconds since 1970-01-01 00:00 of a date followed by a
+       * time; the microseconds are left in micros()
+       */
+      long getTimestamp(int i, String column) throws Reject {
+         if (isNull(i))
+            throw new Reject(column + " is empty");
+         int to = this._to[i];
+         int p = date(this._from[i], to, column);
+         long seconds = this._day * 86400L;
+         this._micros = 0;
+         if (p == to)
+            return seconds;
+         byte b = this._buffer.get(p++);
+         if (b != ' ' && b != 'T')
+            throw new Reject(column + " is not a timestamp");
+         int[] hms = { 0, 0, 0 };
+         int[] max = { 23, 59, 59 };
+         int k = 0;
+         for (; k < 3 && p < to && this._buffer.get(p) != '.'; ++k) {
+            if (k > 0 && this._buffer.get(p++) != ':')
+               throw new Reject(column + " is not a timestamp");
+            int start = p;
+            int v = 0;
+            while (p < to && p - start < 2 && this._buffer.get(p) >= '0' && this._buffer.get(p) <= '9')
+               v = v * 10 + (this._buffer.get(p++) - '0');
+            if (p - start != 2 || v > max[k])
+               throw new Reject(column + " is not a timestamp");
+            hms[k] = v;
+         }
+         // hours and minutes at least, and a fraction only after the seconds.
+         if (k < 2 || (p < to && k < 3))
+            throw new Reject(column + " is not a timestamp");
+         if (p < to) {
+            if (this._buffer.get(p++) != '.' || p == to)
+               throw new Reject(column + " is not a timestamp");
+            int digits = 0;
+            for (; p < to; ++p, ++digits) {
+               byte d = this._buffer.get(p);
+               if (d < '0' || d > '9' || digits == 6)
+                  throw new Reject(column + " is not a timestamp");
+               this._micros = this._micros * 10 + (d - '0');
+            }
+            for (; digits < 6; ++digits)
+               this._micros *= 10;
+         }
+         return seconds + hms[0] * 3600L + hms[1] * 60L + hms[2];
+      }//end getTimestamp
+
+      int micros() {
+         return this._micros;
+      }
+
+      /**
+       * Checks that a text field fits a char(length) column and can be sent
+       * unquoted.
+       */
+      void checkText(int i, String column, int length, boolean nullable) throws Reject {
+         if (isNull(i)) {
+            if (!nullable)
+               throw new Reject(column + " is empty");
+            return;
+         }
+         int chars = 0;
+         for (int p = this._from[i]; p < this._to[i]; ++p) {
+            byte b = this._buffer.get(p);
+            if (b == '"' || b == '\\')
+               throw new Reject(column + " holds a quote");
+            // count the first byte of every UTF-8 character.
+            if ((b & 0xC0) != 0x80)
+               ++chars;
+         }
+         if (chars > length)
+            throw new Reject(column + " is longer than " + length + " characters");
+      }//end checkText
+
+      void text(CopyStream out, int i) {
+         if (isNull(i))
+            out.nil();
+         else
+            out.bytes(this._buffer, this._from[i], this._to[i]);
+      }
+   }//end Line
+
+   /**
+    * Parses one line, checks it and, only when it passes, writes it to out.
+    */
+   private interface RowParser {
+      /**
+       * @return the key later files may refer to, 0 when there is none
+       */
+      long parse(Line line, CopyStream out) throws Reject;
+   }
+
+   private static final class Rejected {
+      final long line;
+      // set when the rows of lines [line, lastLine] were rejected together.
+      final long lastLine;
+      final String reason;
+      final String raw;
+
+      Rejected(long line, long lastLine, String reason, String raw) {
+         this.line = line;
+         this.lastLine = lastLine;
+         this.reason = reason;
+         this.raw = raw;
+      }
+   }//end Rejected
+
+   /**
+    * What one chunk did, with its line numbers relative to the chunk.
+    */
+   private static final class ChunkResult {
+      long lines = 0;
+      long rows = 0;
+      long[] keys = new long[64];
+      int keyCount = 0;
+      final List<Rejected> rejected = new ArrayList<Rejected>();
+
+      void key(long key) {
+         if (this.keyCount == this.keys.length)
+            this.keys = Arrays.copyOf(this.keys, this.keyCount * 2);
+         this.keys[this.keyCount++] = key;
+      }
+   }//end ChunkResult
+
+   private final ConnectionPool _pool;
+   private final File _dir;
+   private final int _workers;
+   private final long _chunkSize;
+   private final boolean _truncate;
+   private final PrintWriter _rejects;
+   private long _rejectCount = 0;
+
+   // sorted keys of the rows that may be referred to.
+   private long[] _users;
+   private long[] _companies;
+   private long[] _hotels;
+   private long[] _rooms;
+   private long[] _repairs;
+
+   /**
+    * @param dir the directory holding the CSV files
+    * @param workers the number of chunks parsed and copied at the same time
+    * @param chunkSize the bytes per chunk, rounded up to a whole line
+    * @param truncate empty the tables first instead of adding to them
+    * @param rejects where bad rows are written, one per line
+    */
+   public CsvLoader(ConnectionPool pool, File dir, int workers, long chunkSize, boolean truncate, PrintWriter rejects) {
+      this._pool = pool;
+      this._dir = dir;
+      this._workers = workers;
+      this._chunkSize = chunkSize;
+      this._truncate = truncate;
+      this._rejects = rejects;
+   }
+
+   /**
+    * @param args <dbname> <port> <user> <data directory> [--workers n] [--chunk-mb n]
+    *        [--rejects file] [--truncate]
+    */
+   public static void main(String[] args) {
+      if (args.length < 4) {
+         System.err.println (
+            "Usage: " +
+            "java [-classpath <classpath>] " +
+            CsvLoader.class.getName () +
+            " <dbname> <port> <user> <data directory> [--workers n] [--chunk-mb n] [--rejects file] [--truncate]");
+         return;
+      }//end if
+
+      int workers = Runtime.getRuntime().availableProcessors();
+      long chunkMB = DEFAULT_CHUNK_MB;
+      File rejects = new File("rejects.tsv");
+      boolean truncate = false;
+      for (int i = 4; i < args.length; ++i) {
+         String arg = args[i];
+         if (arg.equals("--truncate")) {
+            truncate = true;
+            continue;
+         }
+         if (i + 1 >= args.length)
+            throw new IllegalArgumentException("missing value for " + arg);
+         String v = args[++i];
+         switch (arg) {
+            case "--workers": workers = Integer.parseInt(v); break;
+            case "--chunk-mb": chunkMB = Long.parseLong(v); break;
+            case "--rejects": rejects = new File(v); break;
+            default: throw new IllegalArgumentException("unknown option " + arg);
+         }
+      }
+
+      ConnectionPool pool = new ConnectionPool(Hotel.connectionURL(args[0], args[1]), args[2], "", workers + 1, 0);
+      try (PrintWriter out = new PrintWriter(new BufferedWriter(new FileWriter(rejects)))) {
+         out.println("file\tline\treason\trow");
+         CsvLoader loader = new CsvLoader(pool, new File(args[3]), workers, chunkMB * 1024 * 1024, truncate, out);
+         loader.run();
+         if (loader.rejected() > 0)
+            System.out.println(loader.rejected() + " row(s) rejected, see " + rejects);
+      } catch (Exception e) {
+         System.err.println(e.getMessage());
+         System.exit(1);
+      } finally {
+         pool.close();
+      }
+   }//end main
+
+   /**
+    * @return the number of rows written to the reject file
+    */
+   public long rejected() {
+      return this._rejectCount;
+   }
+
+   /**
+    * Loads every file, parents first.
+    *
+    * @throws Exception when a file could not be read or the database failed outside of a COPY
+    */
+   public void run() throws Exception {
+      if (this._truncate) {
+         BulkLoad.truncate(this._pool);
+         this._users = this._companies = this._hotels = this._rooms = this._repairs = new long[0];
+      } else {
+         this._users = existingKeys("SELECT userID FROM Users");
+         this._companies = existingKeys("SELECT companyID FROM MaintenanceCompany");
+         this._hotels = existingKeys("SELECT hotelID FROM Hotel");
+         this._rooms = existingKeys("SELECT hotelID, roomNumber FROM Rooms");
+         this._repairs = existingKeys("SELECT repairID FROM RoomRepairs");
+      }
+
+      long start = System.nanoTime();
+      ExecutorService workers = Executors.newFixedThreadPool(this._workers);
+      try {
+         this._users = merge(this._users, load(workers, "users.csv", "Users", "userID, name, password, userType", (l, out) -> {
+            l.expect(4);
+            int userID = l.getInt(0, "userID");
+            l.checkText(1, "name", 50, true);
+            l.checkText(2, "password", 11, false);
+            l.checkText(3, "userType", 10, true);
+            out.value(userID);
+            l.text(out, 1);
+            l.text(out, 2);
+            l.text(out, 3);
+            return userID;
+         }));
+         this._companies = merge(this._companies, load(workers, "company.csv", "MaintenanceCompany", "companyID, name, addrress", (l, out) -> {
+            l.expect(3);
+            int companyID = l.getInt(0, "companyID");
+            l.checkText(1, "name", 50, true);
+            l.checkText(2, "address", 50, true);
+            out.value(companyID);
+            l.text(out, 1);
+            l.text(out, 2);
+            return companyID;
+         }));
+         this._hotels = merge(this._hotels, load(workers, "hotels.csv", "Hotel",
+                                                 "hotelID, hotelName, latitude, longitude, dateEstablished, managerUserID", (l, out) -> {
+            l.expect(6);
+            int hotelID = l.getInt(0, "hotelID");
+            l.checkText(1, "hotelName", 30, false);
+            // decimal(8,6) and decimal(9,6).
+            Long latitude = l.isNull(2) ? null : l.getMicros(2, "latitude", 100);
+            Long longitude = l.isNull(3) ? null : l.getMicros(3, "longitude", 1000);
+            Integer established = l.isNull(4) ? null : l.getDate(4, "dateEstablished");
+            int managerID = l.getInt(5, "managerUserID");
+            require(this._users, managerID, "user", managerID);
+            out.value(hotelID);
+            l.text(out, 1);
+            if (latitude == null) out.nil(); else out.micros(latitude);
+            if (longitude == null) out.nil(); else out.micros(longitude);
+            if (established == null) out.nil(); else out.date(established);
+            out.value(managerID);
+            return hotelID;
+         }));
+         this._rooms = merge(this._rooms, load(workers, "rooms.csv", "Rooms", "hotelID, roomNumber, price, imageURL", (l, out) -> {
+            l.expect(4);
+            int hotelID = l.getInt(0, "hotelID");
+            int roomNumber = l.getInt(1, "roomNumber");
+            int price = l.getInt(2, "price");
+            l.checkText(3, "imageURL", 30, true);
+            require(this._hotels, hotelID, "hotel", hotelID);
+            out.value(hotelID).value(roomNumber).value(price);
+            l.text(out, 3);
+            return roomKey(hotelID, roomNumber);
+         }));
+         load(workers, "bookings.csv", "RoomBookings", "bookingID, customerID, hotelID, roomNumber, bookingDate", (l, out) -> {
+            l.expect(5);
+            int bookingID = l.getInt(0, "bookingID");
+            int customerID = l.getInt(1, "customerID");
+            int hotelID = l.getInt(2, "hotelID");
+            int roomNumber = l.getInt(3, "roomNumber");
+            int day = l.getDate(4, "bookingDate");
+            require(this._users, customerID, "user", customerID);
+            requireRoom(hotelID, roomNumber);
+            out.value(bookingID).value(customerID).value(hotelID).value(roomNumber).date(day);
+            return 0;
+         });
+         this._repairs = merge(this._repairs, load(workers, "roomRepairs.csv", "RoomRepairs", "repairID, companyID, hotelID, roomNumber, repairDate", (l, out) -> {
+            l.expect(5);
+            int repairID = l.getInt(0, "repairID");
+            int companyID = l.getInt(1, "companyID");
+            int hotelID = l.getInt(2, "hotelID");
+            int roomNumber = l.getInt(3, "roomNumber");
+            int day = l.getDate(4, "repairDate");
+            require(this._companies, companyID, "company", companyID);
+            requireRoom(hotelID, roomNumber);
+            out.value(repairID).value(companyID).value(hotelID).value(roomNumber).date(day);
+            return repairID;
+         }));
+         load(workers, "roomRepairRequests.csv", "RoomRepairRequests", "requestNumber, managerID, repairID", (l, out) -> {
+            l.expect(3);
+            int requestNumber = l.getInt(0, "requestNumber");
+            int managerID = l.getInt(1, "managerID");
+            int repairID = l.getInt(2, "repairID");
+            require(this._users, managerID, "user", managerID);
+            require(this._repairs, repairID, "repair", repairID);
+            out.value(requestNumber).value(managerID).value(repairID);
+            return 0;
+         });
+         load(workers, "roomUpdatesLog.csv", "RoomUpdatesLog", "updateNumber, managerID, hotelID, roomNumber, updatedOn", (l, out) -> {
+            l.expect(5);
+            int updateNumber = l.getInt(0, "updateNumber");
+            int managerID = l.getInt(1, "managerID");
+            int hotelID = l.getInt(2, "hotelID");
+            int roomNumber = l.getInt(3, "roomNumber");
+            long updatedOn = l.getTimestamp(4, "updatedOn");
+            require(this._users, managerID, "user", managerID);
+            requireRoom(hotelID, roomNumber);
+            out.value(updateNumber).value(managerID).value(hotelID).value(roomNumber).timestamp(updatedOn, l.micros());
+            return 0;
+         });
+      } finally {
+         workers.shutdownNow();
+      }
+
+      BulkLoad.finish(this._pool);
+      System.out.println(String.format("Loaded in %.1f s", (System.nanoTime() - start) / 1e9));
+   }//end run
+
+   private static long roomKey(int hotelID, int roomNumber) {
+      return ((long) hotelID << 32) | (roomNumber & 0xFFFFFFFFL);
+   }
+
+   private static void require(long[] keys, int key, String what, int id) throws Reject {
+      if (Arrays.binarySearch(keys, key) < 0)
+         throw new Reject("no " + what + " " + id);
+   }
+
+   private void requireRoom(int hotelID, int roomNumber) throws Reject {
+      if (Arrays.binarySearch(this._rooms, roomKey(hotelID, roomNumber)) < 0)
+         throw new Reject("hotel " + hotelID + " has no room " + roomNumber);
+   }
+
+   /**
+    * @return the sorted keys of both
+    */
+   private static long[] merge(long[] keys, long[] more) {
+      long[] all = Arrays.copyOf(keys, keys.length + more.length);
+      System.arraycopy(more, 0, all, keys.length, more.length);
+      Arrays.sort(all);
+      return all;
+   }
+
+   /**
+    * Loads one file chunk by chunk on the workers, writes its rejected rows
+    * and reports how it went.
+    *
+    * @return the keys of the rows loaded
+    */
+   private long[] load(ExecutorService workers, String file, String table, String columns, RowParser parser) throws Exception {
+      long start = System.nanoTime();
+      File f = new File(this._dir, file);
+      try (FileChannel channel = FileChannel.open(f.toPath(), StandardOpenOption.READ)) {
+         List<long[]> chunks = split(channel);
+         List<Future<ChunkResult>> running = new ArrayList<Future<ChunkResult>>();
+         for (long[] chunk : chunks)
+            running.add(workers.submit(() -> loadChunk(channel, chunk[0], chunk[1], table, columns, parser)));
+
+         long line = 0;
+         long rows = 0;
+         long rejected = 0;
+         long[] keys = new long[0];
+         for (Future<ChunkResult> r : running) {
+            ChunkResult c = r.get();
+            for (Rejected bad : c.rejected)
+               this._rejects.println(file + "\t" + (line + bad.line) + (bad.lastLine > 0 ? "-" + (line + bad.lastLine) : "") +
+                                     "\t" + bad.reason + "\t" + bad.raw);
+            line += c.lines;
+            rows += c.rows;
+            rejected += c.rejected.size();
+            keys = merge(keys, Arrays.copyOf(c.keys, c.keyCount));
+         }
+         this._rejectCount += rejected;
+         double seconds = (System.nanoTime() - start) / 1e9;
+         System.out.println(String.format("%-20s %12d rows %8.1f s %12.0f rows/s %10d rejected",
+                                          table, rows, seconds, rows / Math.max(seconds, 1e-9), rejected));
+         return keys;
+      }
+   }//end load
+
+   /**
+    * Cuts a file into ranges of about _chunkSize bytes that start at the
+    * beginning of a line.
+    *
+    * @return the [start, end) byte ranges
+    */
+   private List<long[]> split(FileChannel channel) throws IOException {
+      List<long[]> chunks = new ArrayList<long[]>();
+      long size = channel.size();
+      ByteBuffer window = ByteBuffer.allocate(MAX_LINE);
+      long start = 0;
+      while (start < size) {
+         long end = Math.min(size, start + this._chunkSize);
+         // move the end past the next line break.
+         while (end < size) {
+            window.clear();
+            int n = channel.read(window, end);
+            int i = 0;
+            while (i < n && window.get(i) != '\n')
+               ++i;
+            end += i;
+            if (i < n) {
+               ++end;
+               break;
+            }
+         }
+         chunks.add(new long[] { start, end });
+         start = end;
+      }
+      return chunks;
+   }//end split
+
+   /**
+    * Parses the lines of [start, end) and copies the ones that pass. The
+    * header is the first line of the file.
+    */
+   private ChunkResult loadChunk(FileChannel channel, long start, long end, String table, String columns, RowParser parser) throws IOException {
+      ChunkResult result = new ChunkResult();
+      MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+      int size = (int) (end - start);
+      Line line = new Line();
+      ConnectionPool.PooledConnection pc = null;
+      try {
+         pc = this._pool.acquire();
+         try (CopyStream out = new CopyStream(pc.connection(), table, columns)) {
+            int p = 0;
+            while (p < size) {
+               int eol = p;
+               while (eol < size && buffer.get(eol) != '\n')
+                  ++eol;
+               int next = eol + 1;
+               if (eol > p && buffer.get(eol - 1) == '\r')
+                  --eol;
+               ++result.lines;
+               if ((start == 0 && result.lines == 1) || eol == p) {
+                  p = next;
+                  continue;
+               }
+               line.split(buffer, p, eol);
+               try {
+                  if (eol - p > MAX_LINE)
+                     throw new Reject("line is longer than " + MAX_LINE + " bytes");
+                  long key = parser.parse(line, out);
+                  out.endRow();
+                  ++result.rows;
+                  result.key(key);
+               } catch (Reject e) {
+                  result.rejected.add(new Rejected(result.lines, 0, e.getMessage(), line.raw()));
+               }
+               p = next;
+            }
+         }
+      } catch (SQLException e) {
+         // the COPY is one transaction, none of its rows are in; it may have stopped halfway through the chunk.
+         result.lines = countLines(buffer, size);
+         // the range below covers the lines already rejected one by one.
+         result.rejected.clear();
+         result.rejected.add(new Rejected(1, result.lines, "the server refused the chunk: " + e.getMessage().replace('\n', ' '), ""));
+         result.rows = 0;
+         result.keyCount = 0;
+      } finally {
+         if (pc != null)
+            this._pool.release(pc);
+      }
+      return result;
+   }//end loadChunk
+
+   private static long countLines(ByteBuffer buffer, int size) {
+      long lines = 0;
+      for (int i = 0; i < size; ++i) {
+         if (buffer.get(i) == '\n')
+            ++lines;
+      }
+      return size > 0 && buffer.get(size - 1) != '\n' ? lines + 1 : lines;
+   }
+
+   /**
+    * @return the sorted keys a query returns; two columns are a hotelID and a roomNumber
+    */
+   private long[] existingKeys(String sql) throws SQLException {
+      ConnectionPool.PooledConnection pc = this._pool.acquire();
+      try (Statement stmt = pc.connection().createStatement(); ResultSet rs = stmt.executeQuery(sql)) {
+         boolean rooms = rs.getMetaData().getColumnCount() == 2;
+         long[] keys = new long[1024];
+         int n = 0;
+         while (rs.next()) {
+            if (n == keys.length)
+               keys = Arrays.copyOf(keys, n * 2);
+            keys[n++] = rooms ? roomKey(rs.getInt(1), rs.getInt(2)) : rs.getInt(1);
+         }
+         keys = Arrays.copyOf(keys, n);
+         Arrays.sort(keys);
+         return keys;
+      } finally {
+         this._pool.release(pc);
+      }
+   }//end existingKeys
+
+}//end CsvLoader
@@ -0,0 +1,141 @@
+package hotel;
+
+import java.sql.Date;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * A manager's overview in one operation: the recent room updates of their
+ * hotels, the latest bookings and the regular customers of each hotel, and
+ * their repair history. The sections are read at the same time on pooled
+ * connections, so the dashboard takes about as long as its slowest query
+ * instead of the sum of all of them.
+ *
+ * Every section keeps its own timing and, when its query failed, its
+ * error; one failed section does not hide the others.
+ *
+ */
+public class Dashboard {
+   // rows shown per history section.
+   public static final int ROWS = 10;
+
+   /**
+    * One part of the dashboard and how long it took to read.
+    */
+   public static final class Section {
+      public final String title;
+      // null when the query failed.
+      public final QueryResult rows;
+      public final String error;
+      public final long nanos;
+
+      Section(String title, QueryResult rows, String error, long nanos) {
+         this.title = title;
+         this.rows = rows;
+         this.error = error;
+         this.nanos = nanos;
+      }
+   }//end Section
+
+   private interface Query {
+      QueryResult run() throws SQLException;
+   }
+
+   private final List<Section> _sections;
+   private final long _nanos;
+
+   private Dashboard(List<Section> sections, long nanos) {
+      this._sections = Collections.unmodifiableList(sections);
+      this._nanos = nanos;
+   }
+
+   /**
+    * Reads every section of the manager's dashboard on the given threads.
+    *
+    * @param from first booking date of the booking sections, or null for the whole history
+    * @param to last booking date, ignored when from is null
+    * @throws java.sql.SQLException when the managed hotels could not be read
+    */
+   static Dashboard load(final Hotel esql, ExecutorService threads, Session session,
+                         final Date from, final Date to) throws SQLException {
+      long start = System.nanoTime();
+      final int managerID = session.userID();
+      final int[] hotels = session.managedHotels();
+
+      List<CompletableFuture<Section>> running = new ArrayList<CompletableFuture<Section>>();
+      running.add(start(threads, "Recent room updates", () -> esql.roomUpdatePages(hotels, ROWS).first()));
+      for (final int hotelID : hotels) {
+         running.add(start(threads, "Latest bookings of hotel " + hotelID,
+                           () -> esql.bookingHistoryPages(hotelID, from, to, ROWS).first()));
+         running.add(start(threads, "Regular customers of hotel " + hotelID,
+                           () -> esql.regularCustomers(hotelID, Hotel.REGULAR_CUSTOMERS_DEFAULT_K, from, to)));
+      }
+      running.add(start(threads, "Room repair history", () -> esql.repairHistoryPages(managerID, ROWS).first()));
+
+      // sections never fail, their errors are kept in them.
+      List<Section> sections = new ArrayList<Section>(running.size());
+      for (CompletableFuture<Section> s : running)
+         sections.add(s.join());
+      return new Dashboard(sections, System.nanoTime() - start);
+   }//end load
+
+   private static CompletableFuture<Section> start(ExecutorService threads, final String title, final Query query) {
+      return CompletableFuture.supplyAsync(() -> {
+         long start = System.nanoTime();
+         try {
+            return new Section(title, query.run(), null, System.nanoTime() - start);
+         } catch (Exception e) {
+            return new Section(title, null, e.getMessage(), System.nanoTime() - start);
+         }
+      }, threads);
+   }
+
+   /**
+    * @return the sections in the order they are shown
+    */
+   public List<Section> sections() {
+      return this._sections;
+   }
+
+   /**
+    * @return how long the whole dashboard took, in nanoseconds
+    */
+   public long nanos() {
+      return this._nanos;
+   }
+
+   /**
+    * @return how long the sections would have taken one after another, in nanoseconds
+    */
+   public long sequentialNanos() {
+      long sum = 0;
+      for (Section s : this._sections)
+         sum += s.nanos;
+      return sum;
+   }
+
+   /**
+    * @return the rows of every section together
+    */
+   public int rowCount() {
+      int rows = 0;
+      for (Section s : this._sections)
+         rows += s.rows == null ? 0 : s.rows.rowCount();
+      return rows;
+   }
+
+   /**
+    * @return the number of sections whose query failed
+    */
+   public int failures() {
+      int failed = 0;
+      for (Section s : this._sections)
+         failed += s.rows == null ? 1 : 0;
+      return failed;
+   }
+
+}//end Dashboard
@@ -0,0 +1,395 @@
+package hotel;
+
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Generates a referentially consistent data set of any size and streams it
+ * into Postgres over the client COPY protocol. Large tables are written by
+ * several connections in parallel, each one covering a disjoint range of
+ * rooms or keys. Afterwards the serial sequences are moved past the loaded
+ * keys, the same as load_data.sql does.
+ *
+ * The data is skewed the way real traffic is: a few customers make most of
+ * the bookings, summer months are busier than winter ones and hotels are
+ * clustered around a handful of cities.
+ *
+ * Keys start at 1, so the tables must be empty; --truncate empties them.
+ *
+ */
+public class DataGenerator {
+   private static final long SECONDS_PER_DAY = 24L * 60 * 60;
+   // bookingIDs are handed out to writers in blocks of this size.
+   private static final int ID_BLOCK = 4096;
+   // relative booking demand per month, January first; the mean is 1.
+   private static final double[] SEASON = { 0.7, 0.7, 0.9, 1.0, 1.1, 1.3, 1.5, 1.4, 1.0, 0.9, 0.7, 0.8 };
+   private static final int CITIES = 16;
+
+   /**
+    * The size and shape of the generated data set.
+    */
+   public static class Options {
+      public int users = 100;
+      public int managers = 20;
+      public int hotels = 20;
+      public int roomsPerHotel = 10;
+      public int companies = 5;
+      public long bookings = 500;
+      public long updates = 50;
+      public long repairs = 10;
+      public LocalDate firstDate = LocalDate.of(2015, 1, 1);
+      public int days = 3650;
+      public int writers = 4;
+      public long seed = 166;
+      public boolean truncate = false;
+
+      /**
+       * Multiplies every table size by factor, keeping the shape.
+       */
+      public void scale(double factor) {
+         this.users = (int) Math.max(2, this.users * factor);
+         this.managers = (int) Math.max(1, this.managers * factor);
+         this.hotels = (int) Math.max(1, this.hotels * factor);
+         this.companies = (int) Math.max(1, this.companies * factor);
+         this.bookings = (long) (this.bookings * factor);
+         this.updates = (long) (this.updates * factor);
+         this.repairs = (long) (this.repairs * factor);
+      }
+   }//end Options
+
+   private final ConnectionPool _pool;
+   private final Options _opt;
+   private final AtomicLong _nextBookingID = new AtomicLong(1);
+
+   public DataGenerator(ConnectionPool pool, Options opt) {
+      this._pool = pool;
+      this._opt = opt;
+   }
+
+   /**
+    * @param args <dbname> <port> <user> [--scale f] [--users n] [--managers n] [--hotels n]
+    *        [--rooms-per-hotel n] [--companies n] [--bookings n] [--updates n] [--repairs n]
+    *        [--days n] [--writers n] [--seed n] [--truncate]
+    */
+   public static void main(String[] args) {
+      if (args.length < 3) {
+         System.err.println (
+            "Usage: " +
+            "java [-classpath <classpath>] " +
+            DataGenerator.class.getName () +
+            " <dbname> <port> <user> [--scale f] [--users n] [--managers n] [--hotels n]" +
+            " [--rooms-per-hotel n] [--companies n] [--bookings n] [--updates n] [--repairs n]" +
+            " [--days n] [--writers n] [--seed n] [--truncate]");
+         return;
+      }//end if
+
+      Options opt = new Options();
+      for (int i = 3; i < args.length; ++i) {
+         String arg = args[i];
+         if (arg.equals("--truncate")) {
+            opt.truncate = true;
+            continue;
+         }
+         if (i + 1 >= args.length)
+            throw new IllegalArgumentException("missing value for " + arg);
+         String v = args[++i];
+         switch (arg) {
+            case "--scale": opt.scale(Double.parseDouble(v)); break;
+            case "--users": opt.users = Integer.parseInt(v); break;
+            case "--managers": opt.managers = Integer.parseInt(v); break;
+            case "--hotels": opt.hotels = Integer.parseInt(v); break;
+            case "--rooms-per-hotel": opt.roomsPerHotel = Integer.parseInt(v); break;
+            case "--companies": opt.companies = Integer.parseInt(v); break;
+            case "--bookings": opt.bookings = Long.parseLong(v); break;
+            case "--updates": opt.updates = Long.parseLong(v); break;
+            case "--repairs": opt.repairs = Long.parseLong(v); break;
+            case "--days": opt.days = Integer.parseInt(v); break;
+            case "--writers": opt.writers = Integer.parseInt(v); break;
+            case "--seed": opt.seed = Long.parseLong(v); break;
+            default: throw new IllegalArgumentException("unknown option " + arg);
+         }
+      }
+
+      // every table can have all writers busy at the same time.
+      ConnectionPool pool = new ConnectionPool(Hotel.connectionURL(args[0], args[1]), args[2], "",
+                                               3 * opt.writers + 1, 0);
+      try {
+         new DataGenerator(pool, opt).run();
+      } catch (Exception e) {
+         System.err.println(e.getMessage());
+         System.exit(1);
+      } finally {
+         pool.close();
+      }
+   }//end main
+
+   /**
+    * Generates and loads the whole data set.
+    *
+    * @throws Exception when any writer failed
+    */
+   public void run() throws Exception {
+      Options o = this._opt;
+      // user 1 is the admin, then come the managers and at least one customer.
+      if (o.managers + 2 > o.users)
+         throw new IllegalArgumentException("there must be more users than managers");
+      long rooms = (long) o.hotels * o.roomsPerHotel;
+      if (o.bookings > rooms * o.days)
+         throw new IllegalArgumentException(o.bookings + " bookings do not fit into " + rooms + " rooms over " + o.days + " days");
+
+      if (o.truncate)
+         BulkLoad.truncate(this._pool);
+
+      long start = System.nanoTime();
+      // the small tables go first, everything else references them.
+      timed("Users", () -> copyUsers());
+      timed("MaintenanceCompany", () -> copyCompanies());
+      timed("Hotel", () -> copyHotels());
+      timed("Rooms", () -> copyRooms());
+
+      ExecutorService writers = Executors.newFixedThreadPool(3 * o.writers);
+      try {
+         List<Future<?>> running = new ArrayList<Future<?>>();
+         long roomsPerWriter = (rooms + o.writers - 1) / o.writers;
+         long updatesPerWriter = (o.updates + o.writers - 1) / o.writers;
+         long repairsPerWriter = (o.repairs + o.writers - 1) / o.writers;
+         for (int w = 0; w < o.writers; ++w) {
+            final int writer = w;
+            final long firstRoom = Math.min(rooms, w * roomsPerWriter);
+            final long lastRoom = Math.min(rooms, firstRoom + roomsPerWriter);
+            final long firstUpdate = Math.min(o.updates, w * updatesPerWriter);
+            final long lastUpdate = Math.min(o.updates, firstUpdate + updatesPerWriter);
+            final long firstRepair = Math.min(o.repairs, w * repairsPerWriter);
+            final long lastRepair = Math.min(o.repairs, firstRepair + repairsPerWriter);
+            running.add(writers.submit(() -> { copyBookings(writer, firstRoom, lastRoom); return null; }));
+            running.add(writers.submit(() -> { copyUpdates(writer, firstUpdate, lastUpdate); return null; }));
+            running.add(writers.submit(() -> { copyRepairs(writer, firstRepair, lastRepair); return null; }));
+         }
+         for (Future<?> f : running)
+            f.get();
+      } finally {
+         writers.shutdownNow();
+      }
+      timed("RoomRepairRequests", () -> insertRepairRequests());
+
+      BulkLoad.finish(this._pool);
+      System.out.println(String.format("Loaded in %.1f s", (System.nanoTime() - start) / 1e9));
+   }//end run
+
+   private interface Step {
+      long run() throws Exception;
+   }
+
+   private static void timed(String table, Step step) throws Exception {
+      long start = System.nanoTime();
+      long rows = step.run();
+      report(table, rows, start);
+   }
+
+   private static void report(String table, long rows, long start) {
+      double seconds = (System.nanoTime() - start) / 1e9;
+      System.out.println(String.format("%-20s %12d rows %8.1f s %12.0f rows/s", table, rows, seconds, rows / Math.max(seconds, 1e-9)));
+   }
+
+   /**
+    * @return the manager of a hotel; managers are users 2 to managers + 1
+    */
+   private int managerOf(int hotelID) {
+      return 2 + (hotelID - 1) % this._opt.managers;
+   }
+
+   /**
+    * Picks a customer with a heavy skew towards the low IDs, so that a few
+    * regular customers account for most of the bookings.
+    */
+   private int customer(SplittableRandom random) {
+      int first = this._opt.managers + 2;
+      int count = this._opt.users - first + 1;
+      double u = random.nextDouble();
+      return first + (int) (count * u * u * u);
+   }
+
+   private long copyUsers() throws SQLException {
+      ConnectionPool.PooledConnection pc = this._pool.acquire();
+      try (CopyStream out = new CopyStream(pc.connection(), "Users", "userID, name, password, userType")) {
+         for (int id = 1; id <= this._opt.users; ++id) {
+            String type = id == 1 ? "admin" : (id <= this._opt.managers + 1 ? "manager" : "customer");
+            out.value(id).text("user" + id).text("xyz").text(type).endRow();
+         }
+         return this._opt.users;
+      } finally {
+         this._pool.release(pc);
+      }
+   }//end copyUsers
+
+   private long copyCompanies() throws SQLException {
+      ConnectionPool.PooledConnection pc = this._pool.acquire();
+      try (CopyStream out = new CopyStream(pc.connection(), "MaintenanceCompany", "companyID, name, addrress")) {
+         for (int id = 1; id <= this._opt.companies; ++id)
+            out.value(id).text("company" + id).text("address" + id).endRow();
+         return this._opt.companies;
+      } finally {
+         this._pool.release(pc);
+      }
+   }//end copyCompanies
+
+   private long copyHotels() throws SQLException {
+      SplittableRandom random = new SplittableRandom(this._opt.seed);
+      // city centres, hotels are spread around them.
+      long[][] cities = new long[CITIES][2];
+      for (int c = 0; c < CITIES; ++c) {
+         cities[c][0] = random.nextLong(-80000000L, 80000000L);
+         cities[c][1] = random.nextLong(-170000000L, 170000000L);
+      }
+      ConnectionPool.PooledConnection pc = this._pool.acquire();
+      try (CopyStream out = new CopyStream(pc.connection(), "Hotel",
+                                           "hotelID, hotelName, latitude, longitude, dateEstablished, managerUserID")) {
+         for (int id = 1; id <= this._opt.hotels; ++id) {
+            long[] city = cities[random.nextInt(CITIES)];
+            long lat = Math.max(-90000000L, Math.min(90000000L, city[0] + (long) (random.nextDouble() * 2e7 - 1e7)));
+            long lon = Math.max(-180000000L, Math.min(180000000L, city[1] + (long) (random.nextDouble() * 2e7 - 1e7)));
+            int established = (int) LocalDate.of(1900, 1, 1).toEpochDay() + random.nextInt(40000);
+            out.value(id).text("hotel" + id).micros(lat).micros(lon).date(established).value(managerOf(id)).endRow();
+         }
+         return this._opt.hotels;
+      } finally {
+         this._pool.release(pc);
+      }
+   }//end copyHotels
+
+   private long copyRooms() throws SQLException {
+      SplittableRandom random = new SplittableRandom(this._opt.seed + 1);
+      ConnectionPool.PooledConnection pc = this._pool.acquire();
+      try (CopyStream out = new CopyStream(pc.connection(), "Rooms", "hotelID, roomNumber, price, imageURL")) {
+         for (int hotel = 1; hotel <= this._opt.hotels; ++hotel)
+            for (int room = 1; room <= this._opt.roomsPerHotel; ++room)
+               out.value(hotel).value(room).value(50 + random.nextInt(2000)).text("img" + hotel + "_" + room).endRow();
+         return out.rows();
+      } finally {
+         this._pool.release(pc);
+      }
+   }//end copyRooms
+
+   /**
+    * Books the rooms [firstRoom, lastRoom), numbered across all hotels. Each
+    * room gets a run of distinct dates whose gaps follow the season, so the
+    * (hotelID, roomNumber, bookingDate) slots never collide.
+    */
+   private void copyBookings(int writer, long firstRoom, long lastRoom) throws SQLException {
+      long start = System.nanoTime();
+      Options o = this._opt;
+      SplittableRandom random = new SplittableRandom(o.seed * 31 + 1000 + writer);
+      double occupancy = (double) o.bookings / ((long) o.hotels * o.roomsPerHotel * o.days);
+      int firstDay = (int) o.firstDate.toEpochDay();
+      int[] monthOfDay = new int[o.days];
+      for (int d = 0; d < o.days; ++d)
+         monthOfDay[d] = o.firstDate.plusDays(d).getMonthValue() - 1;
+
+      long nextID = 0;
+      long lastID = 0;
+      ConnectionPool.PooledConnection pc = this._pool.acquire();
+      long rows;
+      try (CopyStream out = new CopyStream(pc.connection(), "RoomBookings",
+                                           "bookingID, customerID, hotelID, roomNumber, bookingDate")) {
+         for (long r = firstRoom; r < lastRoom; ++r) {
+            int hotel = (int) (r / o.roomsPerHotel) + 1;
+            int room = (int) (r % o.roomsPerHotel) + 1;
+            int day = -1;
+            while (true) {
+               // geometric gap to the next booked night at the current demand.
+               double p = Math.min(1.0, occupancy * SEASON[monthOfDay[Math.max(day, 0)]]);
+               if (p <= 0)
+                  break;
+               double gap = p >= 1.0 ? 1 : 1 + Math.floor(Math.log(1 - random.nextDouble()) / Math.log(1 - p));
+               if (day + gap >= o.days)
+                  break;
+               day += (int) gap;
+               if (nextID == lastID) {
+                  nextID = this._nextBookingID.getAndAdd(ID_BLOCK);
+                  lastID = nextID + ID_BLOCK;
+               }
+               out.value(nextID++).value(customer(random)).value(hotel).value(room).date(firstDay + day).endRow();
+            }
+         }
+         rows = out.rows();
+      } finally {
+         this._pool.release(pc);
+      }
+      // reported after the try, once close() has completed the COPY.
+      report("RoomBookings[" + writer + "]", rows, start);
+   }//end copyBookings
+
+   /**
+    * Logs the room updates with updateNumber in [first, last).
+    */
+   private void copyUpdates(int writer, long first, long last) throws SQLException {
+      long start = System.nanoTime();
+      Options o = this._opt;
+      SplittableRandom random = new SplittableRandom(o.seed * 31 + 2000 + writer);
+      long firstSecond = o.firstDate.toEpochDay() * SECONDS_PER_DAY;
+      ConnectionPool.PooledConnection pc = this._pool.acquire();
+      long rows;
+      try (CopyStream out = new CopyStream(pc.connection(), "RoomUpdatesLog",
+                                           "updateNumber, managerID, hotelID, roomNumber, updatedOn")) {
+         for (long id = first; id < last; ++id) {
+            int hotel = 1 + random.nextInt(o.hotels);
+            int room = 1 + random.nextInt(o.roomsPerHotel);
+            long when = firstSecond + random.nextLong(o.days * SECONDS_PER_DAY);
+            out.value(id + 1).value(managerOf(hotel)).value(hotel).value(room).timestamp(when).endRow();
+         }
+         rows = out.rows();
+      } finally {
+         this._pool.release(pc);
+      }
+      report("RoomUpdatesLog[" + writer + "]", rows, start);
+   }//end copyUpdates
+
+   /**
+    * Records the repairs with repairID in [first, last).
+    */
+   private void copyRepairs(int writer, long first, long last) throws SQLException {
+      long start = System.nanoTime();
+      Options o = this._opt;
+      SplittableRandom random = new SplittableRandom(o.seed * 31 + 3000 + writer);
+      int firstDay = (int) o.firstDate.toEpochDay();
+      ConnectionPool.PooledConnection pc = this._pool.acquire();
+      long rows;
+      try (CopyStream out = new CopyStream(pc.connection(), "RoomRepairs",
+                                           "repairID, companyID, hotelID, roomNumber, repairDate")) {
+         for (long id = first; id < last; ++id) {
+            int hotel = 1 + random.nextInt(o.hotels);
+            int room = 1 + random.nextInt(o.roomsPerHotel);
+            out.value(id + 1).value(1 + random.nextInt(o.companies)).value(hotel).value(room)
+               .date(firstDay + random.nextInt(o.days)).endRow();
+         }
+         rows = out.rows();
+      } finally {
+         this._pool.release(pc);
+      }
+      report("RoomRepairs[" + writer + "]", rows, start);
+   }//end copyRepairs
+
+   /**
+    * Every repair was requested by the manager of its hotel; the requests
+    * are derived on the server instead of being streamed.
+    */
+   private long insertRepairRequests() throws SQLException {
+      ConnectionPool.PooledConnection pc = this._pool.acquire();
+      try (java.sql.Statement stmt = pc.connection().createStatement()) {
+         return stmt.executeUpdate(
+            "INSERT INTO RoomRepairRequests(requestNumber, managerID, repairID) " +
+            "SELECT R.repairID, H.managerUserID, R.repairID FROM RoomRepairs R INNER JOIN Hotel H ON R.hotelID = H.hotelID " +
+            "WHERE NOT EXISTS (SELECT 1 FROM RoomRepairRequests Q WHERE Q.repairID = R.repairID)");
+      } finally {
+         this._pool.release(pc);
+      }
+   }//end insertRepairRequests
+
+}//end DataGenerator
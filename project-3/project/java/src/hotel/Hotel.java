@@ -0,0 +1,1861 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+
+package hotel;
+
+import java.sql.DriverManager;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.Statement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.io.File;
+import java.io.FileReader;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.List;
+import java.util.ArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.lang.Math;
+
+/**
+ * This class defines a simple embedded SQL utility class that is designed to
+ * work with PostgreSQL JDBC drivers.
+ *
+ */
+public class Hotel {
+   // number of physical connections shared by all sessions of this instance.
+   public static final int DEFAULT_POOL_SIZE = 8;
+   // number of prepared statements cached on every pooled connection.
+   public static final int STATEMENT_CACHE_SIZE = 64;
+   // rows per page of the "recent" history views.
+   public static final int RECENT_PAGE_SIZE = 5;
+   // customers listed by viewRegularCustomers unless the manager asks for another number.
+   public static final int REGULAR_CUSTOMERS_DEFAULT_K = 5;
+   // rows fetched per round trip when a result is streamed through a cursor.
+   public static final int STREAM_FETCH_SIZE = 1000;
+   // bytes buffered between printed rows and standard out.
+   private static final int OUTPUT_BUFFER_SIZE = 64 * 1024;
+
+   // milliseconds after which the in-memory hotel index is rebuilt.
+   public static final long HOTEL_INDEX_TTL_MILLIS = 60 * 1000;
+   // an unreachable replica is given up on after this long.
+   public static final int REPLICA_CONNECT_TIMEOUT_SECONDS = 5;
+
+   private static int current_user;
+   // pool of physical database connections, null when the data is not in Postgres.
+   private ConnectionPool _pool = null;
+   // spreads the history views over replicas, null when there are none.
+   private ReplicaRouter _replicas = null;
+   // where the operations read and write their rows.
+   private Storage _storage = null;
+   // spatial index over the hotel locations, loaded on first use.
+   private volatile HotelIndex _hotelIndex = null;
+   // booked rooms per (hotelID, date), shared by all sessions.
+   private final AvailabilityCache _availability = new AvailabilityCache(this);
+   private final BookingEngine _bookings = new BookingEngine(this);
+   private final StayIndex _stays = new StayIndex(this);
+   // the rooms of recently used hotels, shared by all sessions.
+   private final RoomCache _rooms = new RoomCache(this);
+   // latency, rows and errors per operation and SQL template.
+   private final Metrics _metrics = new Metrics();
+   // numbers the JMX names of the instances in this JVM.
+   private static final AtomicInteger INSTANCES = new AtomicInteger();
+   // LISTENs for changes to what the sessions and caches hold.
+   private ChangeListener _changes = null;
+   // bumped on every notification that a hotel changed its manager.
+   private final AtomicLong _managerVersion = new AtomicLong();
+   // run the queries of an operation side by side, started on first use.
+   private ExecutorService _workers = null;
+
+   // handling the keyboard inputs through a BufferedReader
+   // This variable can be global for convenience.
+   static BufferedReader in = new BufferedReader(
+                                new InputStreamReader(System.in));
+
+   /**
+    * Creates a new instance of Hotel 
+    *
+    * @param hostname the MySQL or PostgreSQL server hostname
+    * @param database the name of the database
+    * @param username the user name used to login to the database
+    * @param password the user login password
+    * @throws java.sql.SQLException when failed to make a connection.
+    */
+   public Hotel(String dbname, String dbport, String user, String passwd) throws SQLException {
+      this(dbname, dbport, user, passwd, DEFAULT_POOL_SIZE);
+   }//end Hotel
+
+   /**
+    * Creates a new instance of Hotel backed by a pool of at most poolSize
+    * connections.
+    *
+    * @param poolSize the maximum number of physical connections
+    * @throws java.sql.SQLException when failed to make a connection.
+    */
+   public Hotel(String dbname, String dbport, String user, String passwd, int poolSize) throws SQLException {
+      this(dbname, dbport, user, passwd, poolSize, new ArrayList<String>(), true);
+   }//end Hotel
+
+   /**
+    * Creates a new instance of Hotel that writes to the database at dbport
+    * and reads its history views from replicas of it.
+    *
+    * @param replicaPorts the ports, or host:port, of the replicas
+    * @param readYourWrites whether a user's reads must show their own writes
+    * @throws java.sql.SQLException when failed to make a connection.
+    * @see ReplicaRouter
+    */
+   public Hotel(String dbname, String dbport, String user, String passwd, int poolSize,
+                List<String> replicaPorts, boolean readYourWrites) throws SQLException {
+
+      System.out.print("Connecting to database...");
+      try{
+         // constructs the connection URL
+         String url = connectionURL(dbname, dbport);
+         System.out.println ("Connection URL: " + url + "\n");
+
+         // obtain the first physical connection, the rest are opened on demand
+         this._pool = new ConnectionPool(url, user, passwd, poolSize, STATEMENT_CACHE_SIZE);
+         this._pool.warmUp();
+         this._changes = new ChangeListener(this._pool);
+         this._changes.listen(Session.MANAGERS_CHANNEL, payload -> this._managerVersion.incrementAndGet());
+         this._changes.listen(RoomCache.CHANNEL, this._rooms::changed);
+         this._changes.start();
+         if (!replicaPorts.isEmpty()) {
+            List<String> urls = new ArrayList<String>();
+            for (String port : replicaPorts)
+               urls.add(connectionURL(dbname, port) + "?connectTimeout=" + REPLICA_CONNECT_TIMEOUT_SECONDS);
+            this._replicas = new ReplicaRouter(this._pool, urls, user, passwd, poolSize,
+                                               ReplicaRouter.DEFAULT_MAX_LAG_BYTES, readYourWrites);
+         }
+         this._storage = new JdbcStorage(this);
+         this._metrics.register(dbname + "-" + INSTANCES.incrementAndGet());
+         System.out.println("Done");
+      }catch (Exception e){
+         System.err.println("Error - Unable to Connect to Database: " + e.getMessage() );
+         System.out.println("Make sure you started postgres on this machine");
+         System.exit(-1);
+      }//end catch
+   }//end Hotel
+
+   /**
+    * Creates a new instance of Hotel on a storage that is not a database,
+    * such as a MemoryStorage. There is no connection pool, so the execute
+    * methods fail; the operations and caches work as usual.
+    *
+    * @param storage where the rows are kept
+    */
+   public Hotel(Storage storage) {
+      this._storage = storage;
+      this._metrics.register(storage.getClass().getSimpleName() + "-" + INSTANCES.incrementAndGet());
+   }//end Hotel
+
+   /**
+    * @param dbport the port of the local Postgres server, or host:port of another one
+    * @return the JDBC URL of the database
+    */
+   public static String connectionURL(String dbname, String dbport) {
+      if (dbport.indexOf(':') >= 0)
+         return "jdbc:postgresql://" + dbport + "/" + dbname;
+      return "jdbc:postgresql://localhost:" + dbport + "/" + dbname;
+   }
+
+   // Method to calculate euclidean distance between two latitude, longitude pairs. 
+   public double calculateDistance (double lat1, double long1, double lat2, double long2){
+      double t1 = (lat1 - lat2) * (lat1 - lat2);
+      double t2 = (long1 - long2) * (long1 - long2);
+      return Math.sqrt(t1 + t2); 
+   }
+
+   /**
+    * Binds the positional parameters of a prepared statement.
+    */
+   private static void bind (PreparedStatement stmt, Object[] params) throws SQLException {
+      for (int i = 0; i < params.length; ++i)
+         stmt.setObject (i + 1, params[i]);
+   }
+
+   /**
+    * Method to execute an update SQL statement.  Update SQL instructions
+    * includes CREATE, INSERT, UPDATE, DELETE, and DROP.
+    *
+    * When parameters are given the SQL uses '?' placeholders and runs as a
+    * cached prepared statement, otherwise it is sent as plain text.
+    *
+    * @param sql the input SQL string
+    * @param params values for the '?' placeholders of sql
+    * @return the number of rows affected
+    * @throws java.sql.SQLException when update failed
+    */
+   public int executeUpdate (String sql, Object... params) throws SQLException {
+      long start = System.nanoTime ();
+      int rows = -1;
+      ConnectionPool.PooledConnection pc = pool ().acquire ();
+      try {
+         if (params.length == 0) {
+            // creates a statement object
+            Statement stmt = pc.connection ().createStatement ();
+            try {
+               // issues the update instruction
+               rows = stmt.executeUpdate (sql);
+            } finally {
+               // close the instruction
+               stmt.close ();
+            }
+         } else {
+            PreparedStatement stmt = pc.prepare (sql);
+            bind (stmt, params);
+            rows = stmt.executeUpdate ();
+         }
+         return rows;
+      } finally {
+         this._pool.release (pc);
+         this._metrics.recordQuery (sql, params, System.nanoTime () - start, rows, rows < 0);
+      }
+   }//end executeUpdate
+
+   /**
+    * @return the connection pool
+    * @throws java.sql.SQLException when this instance is not backed by a database
+    */
+   private ConnectionPool pool () throws SQLException {
+      if (this._pool == null)
+         throw new SQLException ("There is no database behind this " + this._storage.getClass ().getSimpleName ());
+      return this._pool;
+   }
+
+   /**
+    * Runs a query on a pooled connection. Parameterized queries go through
+    * the statement cache of that connection; the caller hands the ResultSet
+    * back to closeQuery once done.
+    */
+   private static ResultSet runQuery (ConnectionPool.PooledConnection pc, String query, Object[] params) throws SQLException {
+      if (params.length == 0) {
+         // creates a statement object
+         Statement stmt = pc.connection ().createStatement ();
+         try {
+            return stmt.executeQuery (query);
+         } catch (SQLException e) {
+            stmt.close ();
+            throw e;
+         }
+      }
+      PreparedStatement stmt = pc.prepare (query);
+      bind (stmt, params);
+      return stmt.executeQuery ();
+   }
+
+   /**
+    * Closes a ResultSet obtained from runQuery. Plain statements are closed
+    * with it, cached prepared statements stay open for the next call.
+    */
+   private static void closeQuery (ResultSet rs, Object[] params) throws SQLException {
+      if (params.length == 0)
+         rs.getStatement ().close ();
+      else
+         rs.close ();
+   }
+
+   /**
+    * Method to execute an input query SQL instruction (i.e. SELECT).  This
+    * method issues the query to the DBMS and outputs the results to
+    * standard out.
+    *
+    * @param query the input query string
+    * @param params values for the '?' placeholders of query
+    * @return the number of rows returned
+    * @throws java.sql.SQLException when failed to execute the query
+    */
+   public int executeQueryAndPrintResult (String query, Object... params) throws SQLException {
+      long start = System.nanoTime ();
+      int rows = -1;
+      ConnectionPool.PooledConnection pc = pool ().acquire ();
+      try {
+         // issues the query instruction
+         ResultSet rs = runQuery (pc, query, params);
+         try {
+            rows = printResult (rs, 0, 0);
+            return rows;
+         } finally {
+            closeQuery (rs, params);
+         }
+      } finally {
+         this._pool.release (pc);
+         this._metrics.recordQuery (query, params, System.nanoTime () - start, rows, rows < 0);
+      }
+   }//end executeQuery
+
+   /**
+    * Method to execute an input query SQL instruction (i.e. SELECT) and
+    * stream the results to standard out. The rows are fetched through a
+    * cursor STREAM_FETCH_SIZE at a time, so memory use does not depend on
+    * the size of the result.
+    *
+    * @param query the input query string
+    * @param maxRows stop after this many rows, 0 for no limit
+    * @param pageSize ask whether to go on after every pageSize rows, 0 to never ask
+    * @param params values for the '?' placeholders of query
+    * @return the number of rows printed
+    * @throws java.sql.SQLException when failed to execute the query
+    */
+   public int executeQueryAndStreamResult (String query, int maxRows, int pageSize, Object... params) throws SQLException {
+      ConnectionPool pool = pool ();
+      return streamResult (pool, pool.acquire (), query, maxRows, pageSize, params);
+   }//end executeQueryAndStreamResult
+
+   /**
+    * Like executeQueryAndStreamResult, for a read-only history view. It is
+    * streamed from a replica when there is one that has every write of the
+    * user, and from the primary otherwise. A replica that cannot hand out a
+    * connection is skipped; once rows are printed there is no retry.
+    *
+    * @param userID the user whose writes the result must show, -1 for none
+    */
+   public int executeReadAndStreamResult (int userID, String query, int maxRows, int pageSize, Object... params) throws SQLException {
+      for (int attempt = 0; this._replicas != null && attempt < this._replicas.size (); ++attempt) {
+         ConnectionPool replica = this._replicas.pick (userID);
+         if (replica == null)
+            break;
+         ConnectionPool.PooledConnection pc;
+         try {
+            pc = replica.acquire ();
+         } catch (SQLException e) {
+            this._replicas.failed (replica, e);
+            continue;
+         }
+         try {
+            return streamResult (replica, pc, query, maxRows, pageSize, params);
+         } catch (SQLException e) {
+            if (ReplicaRouter.isUnavailable (e))
+               this._replicas.failed (replica, e);
+            throw e;
+         }
+      }
+      return executeQueryAndStreamResult (query, maxRows, pageSize, params);
+   }//end executeReadAndStreamResult
+
+   // streams on pc, which goes back to pool afterwards.
+   private int streamResult (ConnectionPool pool, ConnectionPool.PooledConnection pc, String query, int maxRows, int pageSize, Object[] params) throws SQLException {
+      long start = System.nanoTime ();
+      int rows = -1;
+      Connection conn = pc.connection ();
+      try {
+         // the driver only fetches through a cursor inside a transaction.
+         conn.setAutoCommit (false);
+         PreparedStatement stmt = pc.prepare (query);
+         bind (stmt, params);
+         stmt.setFetchSize (STREAM_FETCH_SIZE);
+         try {
+            ResultSet rs = stmt.executeQuery ();
+            try {
+               rows = printResult (rs, maxRows, pageSize);
+               return rows;
+            } finally {
+               rs.close ();
+            }
+         } finally {
+            // the statement is cached, the next user expects the default.
+            stmt.setFetchSize (0);
+         }
+      } finally {
+         try {
+            // nothing was written, ending the transaction closes the cursor.
+            conn.rollback ();
+            conn.setAutoCommit (true);
+         } catch (SQLException e) {
+            // a broken connection is dropped by release().
+         }
+         pool.release (pc);
+         // with pageSize set this includes the time the user took to page.
+         this._metrics.recordQuery (query, params, System.nanoTime () - start, rows, rows < 0);
+      }
+   }//end streamResult
+
+   /**
+    * Prints the rows of a result set through a single buffered writer.
+    *
+    * @param maxRows stop after this many rows, 0 for no limit
+    * @param pageSize ask whether to go on after every pageSize rows, 0 to never ask
+    * @return the number of rows printed
+    */
+   private static int printResult (ResultSet rs, int maxRows, int pageSize) throws SQLException {
+      // not closed, that would close standard out.
+      PrintWriter out = new PrintWriter (new BufferedWriter (new OutputStreamWriter (System.out), OUTPUT_BUFFER_SIZE));
+
+      /*
+       ** obtains the metadata object for the returned result set.  The metadata
+       ** contains row and column info.
+       */
+      ResultSetMetaData rsmd = rs.getMetaData ();
+      int numCol = rsmd.getColumnCount ();
+      int rowCount = 0;
+
+      // iterates through the result set and output them to standard out.
+      while ((maxRows <= 0 || rowCount < maxRows) && rs.next ()){
+         if (rowCount == 0){
+            StringBuilder header = new StringBuilder ();
+            for (int i = 1; i <= numCol; i++)
+               header.append (rsmd.getColumnName (i)).append ('\t');
+            out.println (header);
+         }
+         for (int i=1; i<=numCol; ++i){
+            out.print (rs.getString (i));
+            out.print ("\t\t");
+         }
+         out.println ();
+         ++rowCount;
+         if (pageSize > 0 && rowCount % pageSize == 0){
+            out.flush ();
+            if (!readYes ("-- " + rowCount + " row(s) shown, show more?(Yes/No): "))
+               break;
+         }
+      }//end while
+      out.flush ();
+      return rowCount;
+   }//end printResult
+
+   /**
+    * Method to execute an input query SQL instruction (i.e. SELECT).  This
+    * method issues the query to the DBMS and returns the results as
+    * a list of records. Each record in turn is a list of attribute values
+    *
+    * @param query the input query string
+    * @param params values for the '?' placeholders of query
+    * @return the query result as a list of records
+    * @throws java.sql.SQLException when failed to execute the query
+    */
+   public List<List<String>> executeQueryAndReturnResult (String query, Object... params) throws SQLException {
+      long start = System.nanoTime ();
+      int rows = -1;
+      ConnectionPool.PooledConnection pc = pool ().acquire ();
+      try {
+         // issues the query instruction
+         ResultSet rs = runQuery (pc, query, params);
+         try {
+            /*
+             ** obtains the metadata object for the returned result set.  The metadata
+             ** contains row and column info.
+             */
+            ResultSetMetaData rsmd = rs.getMetaData ();
+            int numCol = rsmd.getColumnCount ();
+
+            // iterates through the result set and saves the data returned by the query.
+            List<List<String>> result  = new ArrayList<List<String>>();
+            while (rs.next()){
+               List<String> record = new ArrayList<String>();
+               for (int i=1; i<=numCol; ++i)
+                  record.add(rs.getString (i));
+               result.add(record);
+            }//end while
+            rows = result.size ();
+            return result;
+         } finally {
+            closeQuery (rs, params);
+         }
+      } finally {
+         this._pool.release (pc);
+         this._metrics.recordQuery (query, params, System.nanoTime () - start, rows, rows < 0);
+      }
+   }//end executeQueryAndReturnResult
+
+   /**
+    * Method to execute an input query SQL instruction (i.e. SELECT).  This
+    * method issues the query to the DBMS and returns the number of results
+    *
+    * @param query the input query string
+    * @param params values for the '?' placeholders of query
+    * @return the number of rows returned
+    * @throws java.sql.SQLException when failed to execute the query
+    */
+   public int executeQuery (String query, Object... params) throws SQLException {
+      long start = System.nanoTime ();
+      int rows = -1;
+      ConnectionPool.PooledConnection pc = pool ().acquire ();
+      try {
+         // issues the query instruction
+         ResultSet rs = runQuery (pc, query, params);
+         try {
+            int rowCount = 0;
+
+            // iterates through the result set and count nuber of results.
+            while (rs.next()){
+               rowCount++;
+            }//end while
+            rows = rowCount;
+            return rowCount;
+         } finally {
+            closeQuery (rs, params);
+         }
+      } finally {
+         this._pool.release (pc);
+         this._metrics.recordQuery (query, params, System.nanoTime () - start, rows, rows < 0);
+      }
+   }
+
+   /**
+    * Method to fetch the last value from sequence. This
+    * method issues the query to the DBMS and returns the current
+    * value of sequence used for autogenerated keys
+    *
+    * Note that currval() is scoped to the database session, and consecutive
+    * calls may be served by different pooled connections. Prefer
+    * INSERT ... RETURNING through getNewUserID for new keys.
+    *
+    * @param sequence name of the DB sequence
+    * @return current value of a sequence
+    * @throws java.sql.SQLException when failed to execute the query
+    */
+   public int getCurrSeqVal(String sequence) throws SQLException {
+      return getNewUserID("SELECT currval(?)", sequence);
+   }
+
+   /**
+    * Runs a query returning a single integer, typically a generated key from
+    * INSERT ... RETURNING.
+    *
+    * @param sql the input SQL string
+    * @param params values for the '?' placeholders of sql
+    * @return the first column of the first row, or -1 when there is no row
+    * @throws java.sql.SQLException when failed to execute the query
+    */
+   public int getNewUserID(String sql, Object... params) throws SQLException {
+      return queryForInt(sql, params);
+   }
+
+   /**
+    * Method to execute an input query SQL instruction (i.e. SELECT) and
+    * return its results column by column, with integer and date columns
+    * held in primitive arrays.
+    *
+    * @param query the input query string
+    * @param params values for the '?' placeholders of query
+    * @return the query result as typed columns
+    * @throws java.sql.SQLException when failed to execute the query
+    */
+   public QueryResult executeQueryAndReturnColumns (String query, Object... params) throws SQLException {
+      return returnColumns (pool (), query, params);
+   }//end executeQueryAndReturnColumns
+
+   /**
+    * Like executeQueryAndReturnColumns, for a read-only history view. It is
+    * answered by a replica when there is one that has every write of the
+    * user, and by the primary otherwise. A replica that cannot answer is
+    * taken out of the reads and the query retried elsewhere.
+    *
+    * @param userID the user whose writes the result must show, -1 for none
+    */
+   public QueryResult executeReadAndReturnColumns (int userID, String query, Object... params) throws SQLException {
+      for (int attempt = 0; this._replicas != null && attempt < this._replicas.size (); ++attempt) {
+         ConnectionPool replica = this._replicas.pick (userID);
+         if (replica == null)
+            break;
+         try {
+            return returnColumns (replica, query, params);
+         } catch (SQLException e) {
+            if (!ReplicaRouter.isUnavailable (e))
+               throw e;
+            this._replicas.failed (replica, e);
+         }
+      }
+      return executeQueryAndReturnColumns (query, params);
+   }//end executeReadAndReturnColumns
+
+   private QueryResult returnColumns (ConnectionPool pool, String query, Object[] params) throws SQLException {
+      long start = System.nanoTime ();
+      int rows = -1;
+      ConnectionPool.PooledConnection pc = pool.acquire ();
+      try {
+         ResultSet rs = runQuery (pc, query, params);
+         try {
+            QueryResult result = QueryResult.read (rs);
+            rows = result.rowCount ();
+            return result;
+         } finally {
+            closeQuery (rs, params);
+         }
+      } finally {
+         pool.release (pc);
+         this._metrics.recordQuery (query, params, System.nanoTime () - start, rows, rows < 0);
+      }
+   }//end returnColumns
+
+   /**
+    * Runs a query returning a single integer without materializing a result.
+    *
+    * @param query the input query string
+    * @param params values for the '?' placeholders of query
+    * @return the first column of the first row, or -1 when there is no row or it is NULL
+    * @throws java.sql.SQLException when failed to execute the query
+    */
+   public int queryForInt (String query, Object... params) throws SQLException {
+      long start = System.nanoTime ();
+      int rows = -1;
+      ConnectionPool.PooledConnection pc = pool ().acquire ();
+      try {
+         ResultSet rs = runQuery (pc, query, params);
+         try {
+            rows = 0;
+            if (rs.next()){
+               rows = 1;
+               int value = rs.getInt(1);
+               if (!rs.wasNull())
+                  return value;
+            }
+            return -1;
+         } finally {
+            closeQuery (rs, params);
+         }
+      } finally {
+         this._pool.release (pc);
+         this._metrics.recordQuery (query, params, System.nanoTime () - start, rows, rows < 0);
+      }
+   }//end queryForInt
+
+   /**
+    * Checks whether a query returns at least one row. The query is wrapped in
+    * EXISTS, so the server stops at the first match and sends back a single
+    * boolean.
+    *
+    * @param query the input query string
+    * @param params values for the '?' placeholders of query
+    * @return true when the query has at least one row
+    * @throws java.sql.SQLException when failed to execute the query
+    */
+   public boolean queryExists (String query, Object... params) throws SQLException {
+      long start = System.nanoTime ();
+      int rows = -1;
+      String sql = "SELECT EXISTS (" + query + ")";
+      ConnectionPool.PooledConnection pc = pool ().acquire ();
+      try {
+         ResultSet rs = runQuery (pc, sql, params);
+         try {
+            boolean exists = rs.next() && rs.getBoolean(1);
+            rows = exists ? 1 : 0;
+            return exists;
+         } finally {
+            closeQuery (rs, params);
+         }
+      } finally {
+         this._pool.release (pc);
+         this._metrics.recordQuery (sql, params, System.nanoTime () - start, rows, rows < 0);
+      }
+   }//end queryExists
+
+   /**
+    * Returns the spatial index over Hotel, rebuilding it when it is older
+    * than HOTEL_INDEX_TTL_MILLIS or was invalidated.
+    *
+    * @return the current hotel index
+    * @throws java.sql.SQLException when failed to load the hotels
+    */
+   public HotelIndex hotelIndex() throws SQLException {
+      HotelIndex index = this._hotelIndex;
+      if (index != null && System.currentTimeMillis() - index.loadedAt() < HOTEL_INDEX_TTL_MILLIS)
+         return index;
+      synchronized (this) {
+         index = this._hotelIndex;
+         if (index == null || System.currentTimeMillis() - index.loadedAt() >= HOTEL_INDEX_TTL_MILLIS) {
+            index = HotelIndex.load(this);
+            this._hotelIndex = index;
+         }
+         return index;
+      }
+   }//end hotelIndex
+
+   /**
+    * Drops the hotel index so that the next lookup reloads it. Call this
+    * after inserting, moving or deleting hotels.
+    */
+   public void invalidateHotelIndex() {
+      this._hotelIndex = null;
+   }
+
+   /**
+    * @return the cache of booked rooms per hotel and date
+    */
+   public AvailabilityCache availability() {
+      return this._availability;
+   }
+
+   /**
+    * @return the engine that books rooms atomically
+    */
+   public BookingEngine bookings() {
+      return this._bookings;
+   }
+
+   /**
+    * @return the statistics of every operation and statement of this instance
+    */
+   public Metrics metrics() {
+      return this._metrics;
+   }
+
+   /**
+    * @return the index of booked runs per room, for multi-night stays
+    */
+   public StayIndex stays() {
+      return this._stays;
+   }
+
+   /**
+    * @return the cache of the rooms of every hotel
+    */
+   public RoomCache rooms() {
+      return this._rooms;
+   }
+
+   /**
+    * @return where the rows behind the operations are kept
+    */
+   public Storage storage() {
+      return this._storage;
+   }
+
+   /**
+    * @return the writer of the RoomUpdatesLog entries, null when the
+    * storage logs updates as it makes them
+    */
+   public AuditWriter audit() {
+      return this._storage instanceof JdbcStorage ? ((JdbcStorage) this._storage).audit() : null;
+   }
+
+   /**
+    * @return the router of the history views, null when there are no replicas
+    */
+   public ReplicaRouter replicas() {
+      return this._replicas;
+   }
+
+   /**
+    * Records that the user just wrote to the database, so that their reads
+    * through executeRead* show the write.
+    */
+   void wrote(int userID) {
+      if (this._replicas != null)
+         this._replicas.wrote(userID);
+   }
+
+   /**
+    * @return how many times a hotel was seen to change its manager, so
+    * sessions know when their managed hotels are stale
+    */
+   public long managerVersion() {
+      return this._managerVersion.get();
+   }
+
+   /**
+    * Checks the password of a user and reads their userType and managed
+    * hotels in the same round trip.
+    *
+    * @return the session of the user, or null when the login is wrong
+    */
+   public Session login(int userID, String password) throws SQLException {
+      try (Metrics.Operation op = this._metrics.start("logIn")) {
+         Session session = Session.login(this, userID, password);
+         op.succeeded(session == null ? 0 : 1);
+         return session;
+      }
+   }//end login
+
+   /*
+    * The operations behind the menu, without any prompting or printing.
+    **/
+
+   /**
+    * @return the userID of the new user
+    */
+   public int createUser(String name, String password, String userType) throws SQLException {
+      try (Metrics.Operation op = this._metrics.start("createUser")) {
+         int userID = this._storage.createUser(name, password, userType);
+         op.succeeded(1);
+         return userID;
+      }
+   }
+
+   /**
+    * @return the hotels within radius units of (lat, lon), ordered by hotelID
+    */
+   public List<HotelIndex.Entry> hotelsWithin(double lat, double lon, double radius) throws SQLException {
+      try (Metrics.Operation op = this._metrics.start("viewHotels")) {
+         List<HotelIndex.Entry> hotels = hotelIndex().withinRadius(lat, lon, radius);
+         op.succeeded(hotels.size());
+         return hotels;
+      }
+   }
+
+   /**
+    * @return the k hotels closest to (lat, lon), nearest first
+    */
+   public List<HotelIndex.Entry> nearestHotels(double lat, double lon, int k) throws SQLException {
+      try (Metrics.Operation op = this._metrics.start("viewNearestHotels")) {
+         List<HotelIndex.Entry> hotels = hotelIndex().nearest(lat, lon, k);
+         op.succeeded(hotels.size());
+         return hotels;
+      }
+   }
+
+   /**
+    * @return {roomNumber, price} of every room of the hotel that is free on the date
+    */
+   public List<int[]> availableRooms(int hotelID, java.sql.Date date) throws SQLException {
+      try (Metrics.Operation op = this._metrics.start("viewRooms")) {
+         java.util.BitSet booked = availability().bookedRooms(hotelID, date);
+         RoomCache.HotelRooms rooms = this._rooms.rooms(hotelID);
+         List<int[]> free = new ArrayList<int[]>();
+         for (int r = 0; r < rooms.size(); ++r) {
+            int roomNumber = rooms.roomNumber(r);
+            if (!booked.get(roomNumber))
+               free.add(new int[] { roomNumber, rooms.price(r) });
+         }
+         op.succeeded(free.size());
+         return free;
+      }
+   }//end availableRooms
+
+   /**
+    * @return {roomNumber, price} of every room of the hotel that is free on
+    * every night from first to last, inclusive
+    */
+   public List<int[]> availableRooms(int hotelID, java.sql.Date first, java.sql.Date last) throws SQLException {
+      try (Metrics.Operation op = this._metrics.start("viewRoomsForStay")) {
+         RoomCache.HotelRooms rooms = this._rooms.rooms(hotelID);
+         List<int[]> free = new ArrayList<int[]>();
+         for (int r = 0; r < rooms.size(); ++r) {
+            int roomNumber = rooms.roomNumber(r);
+            if (stays().isFree(hotelID, roomNumber, first, last))
+               free.add(new int[] { roomNumber, rooms.price(r) });
+         }
+         op.succeeded(free.size());
+         return free;
+      }
+   }//end availableRooms
+
+   /**
+    * @return the limit cheapest rooms within radius units of (lat, lon) that
+    * are free on every night from first to last and cost at most maxPrice,
+    * cheapest first
+    * @see RoomSearch
+    */
+   public List<RoomSearch.Result> searchRooms(double lat, double lon, double radius, java.sql.Date first,
+                                              java.sql.Date last, int maxPrice, int limit) throws SQLException {
+      try (Metrics.Operation op = this._metrics.start("searchRooms")) {
+         List<RoomSearch.Result> found = new ArrayList<RoomSearch.Result>(Math.max(0, Math.min(limit, 64)));
+         RoomSearch search = new RoomSearch(this, lat, lon, radius, first, last, maxPrice, limit);
+         while (search.hasNext())
+            found.add(search.next());
+         op.succeeded(found.size());
+         return found;
+      }
+   }//end searchRooms
+
+   /**
+    * Reads the recent updates, latest bookings, regular customers and
+    * repairs of every hotel the manager runs, all at the same time.
+    *
+    * @param from first booking date of the booking sections, or null for the whole history
+    * @param to last booking date, ignored when from is null
+    * @see Dashboard
+    */
+   public Dashboard dashboard(Session session, java.sql.Date from, java.sql.Date to) throws SQLException {
+      try (Metrics.Operation op = this._metrics.start("viewDashboard")) {
+         Dashboard dashboard = Dashboard.load(this, workers(), session, from, to);
+         // a dashboard with a failed section counts as an error.
+         if (dashboard.failures() == 0)
+            op.succeeded(dashboard.rowCount());
+         return dashboard;
+      }
+   }//end dashboard
+
+   /**
+    * @return the threads that run the queries of one operation side by
+    * side, as many as there are pooled connections
+    */
+   private synchronized ExecutorService workers() {
+      if (this._workers == null) {
+         int threads = this._pool != null ? this._pool.maxSize() : Runtime.getRuntime().availableProcessors();
+         final AtomicInteger count = new AtomicInteger();
+         this._workers = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "hotel-worker-" + count.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+         });
+      }
+      return this._workers;
+   }//end workers
+
+   /**
+    * @return the RECENT_PAGE_SIZE latest bookings of the customer
+    */
+   public QueryResult recentBookings(int customerID) throws SQLException {
+      return customerBookingPages(customerID, RECENT_PAGE_SIZE).first();
+   }
+
+   /*
+    * Paged history views, newest first.
+    **/
+
+   /**
+    * Records every page read of a pager as one call of an operation.
+    */
+   private final class MeteredPager implements Pager {
+      private final String _operation;
+      private final Pager _pager;
+
+      MeteredPager(String operation, Pager pager) {
+         this._operation = operation;
+         this._pager = pager;
+      }
+
+      public int pageSize() {
+         return this._pager.pageSize();
+      }
+
+      public QueryResult page() {
+         return this._pager.page();
+      }
+
+      public QueryResult first() throws SQLException {
+         try (Metrics.Operation op = _metrics.start(this._operation)) {
+            return succeeded(op, this._pager.first());
+         }
+      }
+
+      public QueryResult next() throws SQLException {
+         try (Metrics.Operation op = _metrics.start(this._operation)) {
+            return succeeded(op, this._pager.next());
+         }
+      }
+
+      public QueryResult previous() throws SQLException {
+         try (Metrics.Operation op = _metrics.start(this._operation)) {
+            return succeeded(op, this._pager.previous());
+         }
+      }
+
+      private QueryResult succeeded(Metrics.Operation op, QueryResult rows) {
+         op.succeeded(rows.rowCount());
+         return rows;
+      }
+   }//end MeteredPager
+
+   public Pager customerBookingPages(int customerID, int pageSize) {
+      return new MeteredPager("viewRecentBookingsfromCustomer", this._storage.customerBookingPages(customerID, pageSize));
+   }
+
+   /**
+    * @param from first booking date, or null for the whole history
+    * @param to last booking date, ignored when from is null
+    */
+   public Pager bookingHistoryPages(int hotelID, java.sql.Date from, java.sql.Date to, int pageSize) {
+      return new MeteredPager("viewBookingHistoryofHotel", this._storage.bookingHistoryPages(hotelID, from, to, pageSize));
+   }
+
+   /**
+    * @return the updates of the rooms of every hotel the manager runs
+    */
+   public Pager roomUpdatePages(int[] hotelIDs, int pageSize) {
+      return new MeteredPager("viewRecentUpdates", this._storage.roomUpdatePages(hotelIDs, pageSize));
+   }
+
+   public Pager repairHistoryPages(int managerID, int pageSize) {
+      return new MeteredPager("viewRoomRepairHistory", this._storage.repairHistoryPages(managerID, pageSize));
+   }
+
+   /**
+    * @param from first booking date, or null for the whole history
+    * @param to last booking date, ignored when from is null
+    */
+   public QueryResult bookingHistory(int hotelID, java.sql.Date from, java.sql.Date to) throws SQLException {
+      try (Metrics.Operation op = this._metrics.start("viewBookingHistoryofHotel")) {
+         QueryResult rows = this._storage.bookingHistory(hotelID, from, to);
+         op.succeeded(rows.rowCount());
+         return rows;
+      }
+   }
+
+   /**
+    * Prints the booking history of a hotel, streamed through a cursor when
+    * it comes from the database.
+    *
+    * @return the number of rows printed
+    */
+   public int printBookingHistory(int hotelID, java.sql.Date from, java.sql.Date to) throws SQLException {
+      if (this._storage instanceof JdbcStorage)
+         return ((JdbcStorage) this._storage).printBookingHistory(hotelID, from, to);
+      QueryResult rows = bookingHistory(hotelID, from, to);
+      printColumns(rows);
+      return rows.rowCount();
+   }
+
+   /**
+    * @param k the number of customers to return
+    * @param from first booking date, or null for the whole history. The
+    * window is widened to whole months, the granularity of the counters.
+    * @param to last booking date, ignored when from is null
+    * @return customerID, name and number of bookings of the k customers with
+    * the most bookings at the hotel
+    */
+   public QueryResult regularCustomers(int hotelID, int k, java.sql.Date from, java.sql.Date to) throws SQLException {
+      try (Metrics.Operation op = this._metrics.start("viewRegularCustomers")) {
+         QueryResult rows = this._storage.regularCustomers(hotelID, k, from, to);
+         op.succeeded(rows.rowCount());
+         return rows;
+      }
+   }
+
+   /**
+    * Sets the price of a room and logs the change in RoomUpdatesLog.
+    *
+    * @return false when the hotel has no such room
+    */
+   public boolean updateRoomPrice(int managerID, int hotelID, int roomNumber, int price) throws SQLException {
+      try (Metrics.Operation op = this._metrics.start("updateRoomInfo")) {
+         boolean updated = this._storage.updateRoomPrice(managerID, hotelID, roomNumber, price);
+         if (updated)
+            this._rooms.invalidate(hotelID);
+         op.succeeded(updated ? 1 : 0);
+         return updated;
+      }
+   }//end updateRoomPrice
+
+   /**
+    * Sets the image of a room and logs the change in RoomUpdatesLog.
+    *
+    * @return false when the hotel has no such room
+    */
+   public boolean updateRoomImage(int managerID, int hotelID, int roomNumber, String imageURL) throws SQLException {
+      try (Metrics.Operation op = this._metrics.start("updateRoomInfo")) {
+         boolean updated = this._storage.updateRoomImage(managerID, hotelID, roomNumber, imageURL);
+         if (updated)
+            this._rooms.invalidate(hotelID);
+         op.succeeded(updated ? 1 : 0);
+         return updated;
+      }
+   }//end updateRoomImage
+
+   /**
+    * Sets the price of many rooms of a hotel in one statement and logs
+    * every room that changed.
+    *
+    * @return the number of rooms updated
+    */
+   public int updateRoomPrices(int managerID, int hotelID, int[] roomNumbers, int price) throws SQLException {
+      try (Metrics.Operation op = this._metrics.start("updateRoomPrices")) {
+         QueryResult updated = this._storage.updateRoomPrices(managerID, hotelID, roomNumbers, price);
+         if (!updated.isEmpty())
+            this._rooms.invalidate(hotelID);
+         op.succeeded(updated.rowCount());
+         return updated.rowCount();
+      }
+   }//end updateRoomPrices
+
+   /**
+    * Records a repair of a room by a maintenance company and the request
+    * for it placed by the manager.
+    *
+    * @return the repairID of the new repair
+    * @throws java.sql.SQLException when the hotel has no such room or the insert failed
+    */
+   public int placeRepairRequest(int managerID, int hotelID, int roomNumber, int companyID) throws SQLException {
+      QueryResult repairs = placeRepairRequests(managerID, hotelID, new int[] { roomNumber }, companyID);
+      if (repairs.isEmpty())
+         throw new SQLException("Hotel " + hotelID + " has no room " + roomNumber);
+      return repairs.getInt(0, 0);
+   }//end placeRepairRequest
+
+   /**
+    * Records repairs of the given rooms of a hotel by a maintenance company
+    * and the requests for them placed by the manager, all in one statement.
+    * Room numbers the hotel does not have are skipped.
+    *
+    * @return repairID and roomNumber of every new repair
+    */
+   public QueryResult placeRepairRequests(int managerID, int hotelID, int[] roomNumbers, int companyID) throws SQLException {
+      try (Metrics.Operation op = this._metrics.start("placeRoomRepairRequests")) {
+         QueryResult repairs = this._storage.placeRepairRequests(managerID, hotelID, roomNumbers, companyID);
+         op.succeeded(repairs.rowCount());
+         return repairs;
+      }
+   }//end placeRepairRequests
+
+   /**
+    * Like placeRepairRequests, for every room of the hotel whose number and
+    * price lie in the given ranges, bounds included.
+    *
+    * @return repairID and roomNumber of every new repair
+    */
+   public QueryResult placeRepairRequests(int managerID, int hotelID, int firstRoom, int lastRoom, int minPrice, int maxPrice, int companyID) throws SQLException {
+      try (Metrics.Operation op = this._metrics.start("placeRoomRepairRequests")) {
+         QueryResult repairs = this._storage.placeRepairRequests(managerID, hotelID, firstRoom, lastRoom, minPrice, maxPrice, companyID);
+         op.succeeded(repairs.rowCount());
+         return repairs;
+      }
+   }//end placeRepairRequests
+
+   public QueryResult repairHistory(int managerID) throws SQLException {
+      try (Metrics.Operation op = this._metrics.start("viewRoomRepairHistory")) {
+         QueryResult rows = this._storage.repairHistory(managerID);
+         op.succeeded(rows.rowCount());
+         return rows;
+      }
+   }
+
+   /**
+    * @return how many statements were planned by the server and how many
+    * executions reused a cached plan
+    */
+   public String statementCacheStats(){
+      if (this._pool == null)
+         return "no statements prepared, the rows are kept in " + this._storage.getClass().getSimpleName();
+      return this._pool.getPrepareCount() + " statement(s) prepared, " + this._pool.getCacheHitCount() + " execution(s) reused a cached plan";
+   }
+
+   /**
+    * Method to close the physical connections if they are open.
+    */
+   public void cleanup(){
+      this._metrics.unregister();
+      synchronized (this) {
+         if (this._workers != null)
+            this._workers.shutdownNow();
+      }
+      // the queued room updates still need the pool.
+      if (this._storage != null){
+         this._storage.close ();
+      }//end if
+      if (this._changes != null){
+         this._changes.close ();
+      }//end if
+      if (this._replicas != null){
+         this._replicas.close ();
+      }//end if
+      if (this._pool != null){
+         this._pool.close ();
+      }//end if
+   }//end cleanup
+
+   /**
+    * The main execution method
+    *
+    * @param args the command line arguments this inclues the <mysql|pgsql> <login file>,
+    * or -memory and the directory of the CSV files to run without a database
+    */
+   public static void main (String[] args) {
+      boolean memory = args.length == 2 && args[0].equals("-memory");
+      if (args.length < 3 && !memory) {
+         System.err.println (
+            "Usage: " +
+            "java [-classpath <classpath>] " +
+            Hotel.class.getName () +
+            " <dbname> <port> <user> [--replica port]... [--stale-reads]\n" +
+            "       java [-classpath <classpath>] " +
+            Hotel.class.getName () +
+            " -memory <data directory>");
+         return;
+      }//end if
+
+      Greeting();
+      Hotel esql = null;
+      ScheduledExecutorService maintenance = null;
+      try{
+         if (memory) {
+            // load the CSV files that load_data.sql copies into Postgres.
+            esql = new Hotel (MemoryStorage.load(new File(args[1])));
+         } else {
+            // use postgres JDBC driver.
+            Class.forName ("org.postgresql.Driver").getDeclaredConstructor ().newInstance ();
+            // instantiate the Hotel object and creates a physical
+            // connection.
+            String dbname = args[0];
+            String dbport = args[1];
+            String user = args[2];
+            // the history views can be read from replicas of the database.
+            List<String> replicas = new ArrayList<String>();
+            boolean readYourWrites = true;
+            for (int i = 3; i < args.length; ++i) {
+               if (args[i].equals("--stale-reads"))
+                  readYourWrites = false;
+               else if (args[i].equals("--replica") && i + 1 < args.length)
+                  replicas.add(args[++i]);
+               else
+                  throw new IllegalArgumentException("unknown option " + args[i]);
+            }
+            esql = new Hotel (dbname, dbport, user, "", DEFAULT_POOL_SIZE, replicas, readYourWrites);
+            // keeps the partitions of future years of RoomBookings in place.
+            maintenance = BookingPartitions.schedule(esql);
+         }
+
+         boolean keepon = true;
+         while(keepon) {
+            // These are sample SQL statements
+            System.out.println("MAIN MENU");
+            System.out.println("---------");
+            System.out.println("1. Create user");
+            System.out.println("2. Log in");
+            System.out.println("9. < EXIT");
+            Session session = null;
+            switch (readChoice()){
+               case 1: CreateUser(esql); break;
+               case 2: session = LogIn(esql); break;
+               case 9: keepon = false; break;
+               default : System.out.println("Unrecognized choice!"); break;
+            }//end switch
+            if (session != null) {
+              boolean usermenu = true;
+              String authorisedUser = Integer.toString(session.userID());
+              System.out.println("\"" + session.userType() + "\"");
+              while(usermenu) {
+                System.out.println("MAIN MENU");
+                System.out.println("---------");
+                System.out.println("1. View Hotels within 30 units");
+                System.out.println("2. View Rooms");
+                System.out.println("3. Book a Room");
+                System.out.println("4. View recent booking history");
+                System.out.println("11. View nearest Hotels");
+                System.out.println("12. View Rooms free for a stay");
+                System.out.println("13. Book a stay of several nights");
+                System.out.println("14. Dump statistics");
+                System.out.println("15. Search the cheapest free Rooms near you");
+
+                //the following functionalities basically used by managers
+                System.out.println("5. Update Room Information");
+                System.out.println("6. View 5 recent Room Updates Info");
+                System.out.println("7. View booking history of the hotel");
+                System.out.println("8. View regular Customers of a hotel");
+                System.out.println("9. Place room repair Request to a company");
+                System.out.println("10. View room repair Requests history");
+                System.out.println("16. View manager dashboard");
+
+                System.out.println(".........................");
+                System.out.println("20. Log out");
+                switch (readChoice()){
+                   case 1: viewHotels(esql); break;
+                   case 2: viewRooms(esql); break;
+                   case 3: bookRooms(esql); break;
+                   case 4: viewRecentBookingsfromCustomer(esql,authorisedUser); break;
+                   case 11: viewNearestHotels(esql); break;
+                   case 12: viewRoomsForStay(esql); break;
+                   case 13: bookStay(esql); break;
+                   case 14: dumpStats(esql); break;
+                   case 15: searchRooms(esql); break;
+                   case 5: if(!session.isManager()){System.out.println("Only managers have access to this function");}else {updateRoomInfo(esql, session);} break;
+                   case 6: if (!session.isManager()) {System.out.println("Only managers have access to this function");} else {viewRecentUpdates(esql, session);} break;
+                   case 7: if (!session.isManager()) {System.out.println("Only managers have access to this function");} else {viewBookingHistoryofHotel(esql, session);} break;
+                   case 8: if (!session.isManager()) {System.out.println("Only managers have access to this function");} else {viewRegularCustomers(esql, session);} break;
+                   case 9: if (!session.isManager()) {System.out.println("Only managers have access to this function");} else {placeRoomRepairRequests(esql, session);} break;
+                   case 10: if (!session.isManager()) {System.out.println("Only managers have access to this function");} else {viewRoomRepairHistory(esql, session);} break;
+                   case 16: if (!session.isManager()) {System.out.println("Only managers have access to this function");} else {viewDashboard(esql, session);} break;
+                   case 20: usermenu = false; break;
+                   default : System.out.println("Unrecognized choice!"); break;
+                }
+              }
+            }
+         }//end while
+      }catch(Exception e) {
+         System.err.println (e.getMessage ());
+      }finally{
+         // make sure to cleanup the created table and close the connection.
+         try{
+            if(maintenance != null) {
+               maintenance.shutdownNow();
+            }//end if
+            if(esql != null) {
+               System.out.println(esql.statementCacheStats());
+               System.out.print("Disconnecting from database...");
+               esql.cleanup ();
+               System.out.println("Done\n\nBye !");
+            }//end if
+         }catch (Exception e) {
+            // ignored.
+         }//end try
+      }//end try
+   }//end main
+
+   public static void Greeting(){
+      System.out.println(
+         "\n\n*******************************************************\n" +
+         "              User Interface      	               \n" +
+         "*******************************************************\n");
+   }//end Greeting
+
+   /*
+    * Reads the users choice given from the keyboard
+    * @int
+    **/
+   public static int readChoice() {
+      int input;
+      // returns only if a correct value is given.
+      do {
+         System.out.print("Please make your choice: ");
+         try { // read the integer, parse it and break.
+            input = Integer.parseInt(in.readLine());
+            break;
+         }catch (Exception e) {
+            System.out.println("Your input is invalid!");
+            continue;
+         }//end try
+      }while (true);
+      return input;
+   }//end readChoice
+
+   /*
+    * Creates a new user
+    **/
+   public static void CreateUser(Hotel esql){
+      try{
+         System.out.print("\tEnter name: ");
+         String name = in.readLine();
+         System.out.print("\tEnter password: ");
+         String password = in.readLine(); 
+         String type="Customer";
+         System.out.println ("User successfully created with userID = " + esql.createUser(name, password, type));
+         
+      }catch(Exception e){
+         System.err.println (e.getMessage ());
+      }
+   }//end CreateUser
+
+
+   /*
+    * Check log in credentials for an existing user
+    * @return the session of the user or null is the user does not exist
+    **/
+   public static Session LogIn(Hotel esql){
+      try{
+         System.out.print("\tEnter userID: ");
+         String userID = in.readLine();
+         System.out.print("\tEnter password: ");
+         String password = in.readLine();
+
+         Session session = esql.login(Integer.parseInt(userID.trim()), password);
+         if (session != null) {
+            current_user = session.userID();
+            return session;
+         }
+         return null;
+      }catch(Exception e){
+         System.err.println (e.getMessage ());
+         return null;
+      }
+   }//end
+
+// Rest of the functions definition go in here
+	public static boolean readYes(String prompt) {
+		System.out.print(prompt);
+		try {
+			return "Yes".equals(in.readLine());
+		} catch (Exception e) {
+			return false;
+		}
+	}
+	public static int getIntInput(String prompt) {
+		int input;
+
+		do {
+			System.out.print(prompt);
+			try {
+				input = Integer.parseInt(in.readLine());
+				break;
+			} catch (Exception e) {
+				System.out.println("Your input is invalid!");
+				continue;
+			}
+		} while (true);
+		return input;
+	}
+   public static void viewHotels(Hotel esql) {
+      //returns all hotels that are located within 30 units of the users inputted coordinates
+         try{
+      System.out.print("\tPlease enter your latitude: ");
+      double userLat = Double.parseDouble(in.readLine());
+      System.out.print("\tPlease enter your longtitude: ");
+      double userLong = Double.parseDouble(in.readLine());
+      List<HotelIndex.Entry> hotels = esql.hotelsWithin(userLat, userLong, 30);
+      printHotels(hotels, false);
+      System.out.println("Total row(s): "+hotels.size());
+      }
+      catch(Exception e){
+         System.out.println(e.getMessage());
+      }
+   }
+
+   public static void viewNearestHotels(Hotel esql) {
+      //returns the k hotels closest to the users inputted coordinates
+      try{
+         System.out.print("\tPlease enter your latitude: ");
+         double userLat = Double.parseDouble(in.readLine());
+         System.out.print("\tPlease enter your longtitude: ");
+         double userLong = Double.parseDouble(in.readLine());
+         int k = getIntInput("\tHow many hotels do you want to see? ");
+         List<HotelIndex.Entry> hotels = esql.nearestHotels(userLat, userLong, k);
+         printHotels(hotels, true);
+         System.out.println("Total row(s): "+hotels.size());
+      }
+      catch(Exception e){
+         System.out.println(e.getMessage());
+      }
+   }
+
+   // prints one page of a history.
+   private interface PagePrinter {
+      void print(QueryResult page) throws SQLException;
+   }
+
+   /**
+    * Shows the first page of a history and lets the user move through it.
+    */
+   private static void browse(Pager pager) throws Exception {
+      browse(pager, Hotel::printColumns);
+   }
+
+   private static void browse(Pager pager, PagePrinter printer) throws Exception {
+      QueryResult page = pager.first();
+      if (page.isEmpty()) {
+         System.out.println("total row(s): 0");
+         return;
+      }
+      while (true) {
+         printer.print(page);
+         System.out.print("\t(N)ext page, (P)revious page or (Q)uit: ");
+         String choice = in.readLine();
+         if (choice == null || choice.trim().equalsIgnoreCase("q"))
+            return;
+         if (choice.trim().equalsIgnoreCase("n")) {
+            page = pager.next();
+            if (page.isEmpty())
+               System.out.println("-- this is the oldest page");
+         } else if (choice.trim().equalsIgnoreCase("p")) {
+            page = pager.previous();
+            if (page.isEmpty())
+               System.out.println("-- this is the newest page");
+         } else {
+            System.out.println("Unrecognized choice!");
+         }
+         if (page.isEmpty())
+            page = pager.page();
+      }
+   }//end browse
+
+   // prints a result the same way executeQueryAndPrintResult prints rows.
+   private static void printColumns(QueryResult rows) {
+      if (rows.isEmpty())
+         return;
+      StringBuilder header = new StringBuilder();
+      for (int c = 0; c < rows.columnCount(); ++c)
+         header.append(rows.columnName(c)).append('\t');
+      System.out.println(header);
+      for (int r = 0; r < rows.rowCount(); ++r) {
+         StringBuilder line = new StringBuilder();
+         for (int c = 0; c < rows.columnCount(); ++c)
+            line.append(rows.getString(r, c)).append("\t\t");
+         System.out.println(line);
+      }
+   }
+
+   // prints bookings like printColumns, with the current price of each room from the RoomCache.
+   private static void printBookings(Hotel esql, QueryResult rows) throws SQLException {
+      if (rows.isEmpty())
+         return;
+      System.out.println("bookingid\thotelid\troomnumber\tprice\tbookingdate\t");
+      for (int r = 0; r < rows.rowCount(); ++r) {
+         int hotelID = rows.getInt(r, 1);
+         int roomNumber = rows.getInt(r, 2);
+         System.out.println(rows.getInt(r, 0) + "\t\t" + hotelID + "\t\t" + roomNumber + "\t\t" +
+                            esql.rooms().price(hotelID, roomNumber) + "\t\t" + rows.getString(r, 3) + "\t\t");
+      }
+   }
+
+   // prints hotels the same way executeQueryAndPrintResult prints rows.
+   private static void printHotels(List<HotelIndex.Entry> hotels, boolean withLocation) {
+      if (hotels.isEmpty())
+         return;
+      System.out.println(withLocation ? "hotelid\thotelname\tlatitude\tlongitude\t" : "hotelname\t");
+      for (HotelIndex.Entry h : hotels) {
+         if (withLocation)
+            System.out.println(h.hotelID + "\t\t" + h.hotelName + "\t\t" + h.latitude + "\t\t" + h.longitude + "\t\t");
+         else
+            System.out.println(h.hotelName + "\t\t");
+      }
+   }
+
+      public static void viewRooms(Hotel esql) {
+         //checks to see if a room is booked on a given date, and then returns all the rooms that are not booked on that date.
+      try{
+         System.out.print("\tPlease enter a Hotel ID: ");
+         int hotel_id = Integer.parseInt(in.readLine());
+         System.out.print("\tPlease enter a date(YYYY-MM-DD): ");
+         String user_date = in.readLine();
+         List<int[]> rooms = esql.availableRooms(hotel_id, java.sql.Date.valueOf(user_date));
+         if (!rooms.isEmpty())
+            System.out.println("roomnumber\tprice\t");
+         for (int[] room : rooms)
+            System.out.println(room[0] + "\t\t" + room[1] + "\t\t");
+         System.out.println("Total row(s): "+rooms.size());
+      }
+      catch(Exception e){
+         System.out.println(e.getMessage());
+      }
+   }
+
+   public static void bookRooms(Hotel esql){
+      try{
+         System.out.print("\tPlease enter the Hotel's ID: ");
+         int hotel_id = Integer.parseInt(in.readLine());
+         System.out.print("\tPlease enter a room number: ");
+         int room_num = Integer.parseInt(in.readLine());
+         System.out.print("\tPlease enter the date that you wish to book the room(YYYY-MM-DD): ");
+         String user_date = in.readLine();
+
+         //String check_avail = String.format("SELECT  r.roomNumber FROM Hotel h, Rooms r, RoomBookings b WHERE h.hotelID = '%s' AND r.roomNumber = '%s' AND b.bookingDate ='%s'AND r.roomNumber IN(SELECT rb.roomNumber FROM RoomBookings rb WHERE rb.bookingDate ='%s')",hotel_id,room_num,user_date,user_date);
+         java.sql.Date booking_date = java.sql.Date.valueOf(user_date);
+         if(esql.availability().isBooked(hotel_id, room_num, booking_date)){
+             System.out.println("Room "+room_num+" at Hotel "+hotel_id+" is not available on "+user_date);
+             }
+         else{
+            System.out.println("Room is available, do you wish to book the room? (Yes/No)");
+            String doesBook = in.readLine();
+            String yes = "Yes";
+            if(doesBook.equals(yes)){
+               System.out.print("Please enter your Customer ID. Please note that this is sensitive, otherwise your booking will be under another's ID: ");
+               int custID = Integer.parseInt(in.readLine());
+               BookingEngine.Result booking = esql.bookings().book(custID, hotel_id, room_num, booking_date);
+               switch (booking.status) {
+                  case BOOKED: System.out.println("Room booked (booking ID "+booking.bookingID+"), price is: "+booking.price); break;
+                  case UNAVAILABLE: System.out.println("Room "+room_num+" at Hotel "+hotel_id+" was just booked by someone else on "+user_date); break;
+                  case NO_SUCH_ROOM: System.out.println("Hotel "+hotel_id+" has no room "+room_num); break;
+               }
+               }
+
+            }
+         }
+        catch(Exception e){
+        System.out.println(e.getMessage());
+        }
+     }
+
+
+   public static void viewRoomsForStay(Hotel esql) {
+      //returns the rooms that are free on every night of a stay
+      try{
+         int hotel_id = getIntInput("\tPlease enter a Hotel ID: ");
+         System.out.print("\tPlease enter the first night(YYYY-MM-DD): ");
+         java.sql.Date first = java.sql.Date.valueOf(in.readLine());
+         System.out.print("\tPlease enter the last night(YYYY-MM-DD): ");
+         java.sql.Date last = java.sql.Date.valueOf(in.readLine());
+         List<int[]> rooms = esql.availableRooms(hotel_id, first, last);
+         if (!rooms.isEmpty())
+            System.out.println("roomnumber\tprice\t");
+         for (int[] room : rooms)
+            System.out.println(room[0] + "\t\t" + room[1] + "\t\t");
+         System.out.println("Total row(s): "+rooms.size());
+      }
+      catch(Exception e){
+         System.out.println(e.getMessage());
+      }
+   }
+
+   public static void searchRooms(Hotel esql) {
+      //returns the cheapest rooms near the users inputted coordinates that are free for the whole stay
+      try{
+         System.out.print("\tPlease enter your latitude: ");
+         double userLat = Double.parseDouble(in.readLine());
+         System.out.print("\tPlease enter your longtitude: ");
+         double userLong = Double.parseDouble(in.readLine());
+         int radius = getIntInput("\tHow far may the hotels be (units)? ");
+         System.out.print("\tPlease enter the first night(YYYY-MM-DD): ");
+         java.sql.Date first = java.sql.Date.valueOf(in.readLine());
+         System.out.print("\tPlease enter the last night(YYYY-MM-DD), or nothing for one night: ");
+         String lastNight = in.readLine();
+         java.sql.Date last = lastNight == null || lastNight.trim().isEmpty() ? first : java.sql.Date.valueOf(lastNight.trim());
+         System.out.print("\tPlease enter the highest price per night, or nothing for any: ");
+         String maxPrice = in.readLine();
+         int max = maxPrice == null || maxPrice.trim().isEmpty() ? Integer.MAX_VALUE : Integer.parseInt(maxPrice.trim());
+         int limit = getIntInput("\tHow many rooms do you want to see? ");
+         List<RoomSearch.Result> rooms = esql.searchRooms(userLat, userLong, radius, first, last, max, limit);
+         if (!rooms.isEmpty())
+            System.out.println("hotelid\thotelname\troomnumber\tprice\tdistance\t");
+         for (RoomSearch.Result r : rooms)
+            System.out.println(r.hotelID + "\t\t" + r.hotelName + "\t\t" + r.roomNumber + "\t\t" + r.price + "\t\t" +
+                               String.format("%.2f", r.distance) + "\t\t");
+         System.out.println("Total row(s): "+rooms.size());
+      }
+      catch(Exception e){
+         System.out.println(e.getMessage());
+      }
+   }
+
+   public static void bookStay(Hotel esql){
+      try{
+         int hotel_id = getIntInput("\tPlease enter the Hotel's ID: ");
+         int room_num = getIntInput("\tPlease enter a room number: ");
+         System.out.print("\tPlease enter the first night(YYYY-MM-DD): ");
+         java.sql.Date first = java.sql.Date.valueOf(in.readLine());
+         System.out.print("\tPlease enter the last night(YYYY-MM-DD): ");
+         java.sql.Date last = java.sql.Date.valueOf(in.readLine());
+         if(!esql.stays().isFree(hotel_id, room_num, first, last)){
+            System.out.println("Room "+room_num+" at Hotel "+hotel_id+" is not available for every night from "+first+" to "+last);
+            return;
+         }
+         if(!readYes("Room is available, do you wish to book the stay? (Yes/No) "))
+            return;
+         int custID = getIntInput("Please enter your Customer ID. Please note that this is sensitive, otherwise your booking will be under another's ID: ");
+         BookingEngine.Result booking = esql.bookings().bookStay(custID, hotel_id, room_num, first, last);
+         switch (booking.status) {
+            case BOOKED: System.out.println(booking.nights+" night(s) booked (first booking ID "+booking.bookingID+"), price per night is: "+booking.price); break;
+            case UNAVAILABLE: System.out.println("Room "+room_num+" at Hotel "+hotel_id+" was just booked by someone else during the stay"); break;
+            case NO_SUCH_ROOM: System.out.println("Hotel "+hotel_id+" has no room "+room_num); break;
+         }
+      }
+      catch(Exception e){
+         System.out.println(e.getMessage());
+      }
+   }
+
+   public static void dumpStats(Hotel esql) {
+      System.out.println(esql.metrics().getReport());
+      System.out.println(esql.metrics().getSlowQueries());
+      System.out.println(esql.statementCacheStats());
+      if (esql.replicas() != null)
+         System.out.print(esql.replicas().status());
+      if (esql.audit() != null)
+         System.out.println(esql.audit().pending() + " room update(s) waiting to be logged, " + esql.audit().dropped() + " refused");
+   }
+
+   public static void viewRecentBookingsfromCustomer(Hotel esql, String userID) {
+      try{
+         browse(esql.customerBookingPages(Integer.parseInt(userID), RECENT_PAGE_SIZE), page -> printBookings(esql, page));
+      }
+      catch(Exception e){
+         System.err.println(e.getMessage());
+      }
+   }
+
+   public static void updateRoomInfo(Hotel esql, Session session) {
+      try{
+         boolean doesManage = false;
+         System.out.print("Please enter the Hotel's ID: ");
+         int hotel_id = Integer.parseInt(in.readLine());
+         if(!session.manages(hotel_id)){
+            System.out.println("You don't manage this hotel!");
+         }
+         else{
+            doesManage = true;
+         }
+         while(doesManage){
+            System.out.print("Please enter the room number: ");
+            int room_num = Integer.parseInt(in.readLine());
+            String yes = "Yes";
+            System.out.print("Do you want to update the price of this room?(Yes/No): ");
+            String priceUpdate = in.readLine();
+            if(priceUpdate.equals(yes)){
+               System.out.print("Please enter the new price of the room: ");
+               int newPrice = Integer.parseInt(in.readLine());
+               if(!esql.updateRoomPrice(session.userID(), hotel_id, room_num, newPrice)){
+                  System.out.println("Hotel "+hotel_id+" has no room "+room_num);
+               }
+            }
+            System.out.print("Do you want to update the image of this room?(Yes/No): ");
+            String imageUpdate = in.readLine();
+            if(imageUpdate.equals(yes)){
+               System.out.print("Please enter the new imageURL: ");
+               String newImage = in.readLine();
+               if(!esql.updateRoomImage(session.userID(), hotel_id, room_num, newImage)){
+                  System.out.println("Hotel "+hotel_id+" has no room "+room_num);
+               }
+            }
+            System.out.print("Do you want to change more rooms?(Yes/No): ");
+            String cont = in.readLine();
+            if(!(cont.equals(yes))){
+               doesManage = false;
+            }
+         }
+      }
+      catch(Exception e){
+         System.err.println(e.getMessage());
+      }
+   }
+   
+   public static void viewRecentUpdates(Hotel esql, Session session) {
+      try {
+         browse(esql.roomUpdatePages(session.managedHotels(), RECENT_PAGE_SIZE));
+      } catch(Exception e) {
+         System.err.println(e.getMessage());
+      }
+   }
+
+   public static void viewBookingHistoryofHotel(Hotel esql, Session session) {
+      try {
+         int hotelID = getIntInput("Enter hotelID: ");
+         if (!session.manages(hotelID)) {
+            System.out.println("You do not manage this hotel");
+         } else {
+            System.out.println("1. See all booking information");
+            System.out.println("2. See booking information in a date range");
+
+            java.sql.Date startDate = null;
+            java.sql.Date endDate = null;
+            switch(readChoice()) {
+               case 1:
+                  break;
+
+               case 2:
+                  System.out.print("\tEnter start date (format: YYYY-MM-DD): ");
+                  startDate = java.sql.Date.valueOf(in.readLine());
+
+
+                  System.out.print("\tEnter end date (format: YYYY-MM-DD): ");
+                  endDate = java.sql.Date.valueOf(in.readLine());
+
+                  break;
+               default:
+                  throw new Exception("Unrecognized choice.");
+            }
+            int pageSize = getIntInput("\tRows per page (0 to show all): ");
+            if (pageSize > 0) {
+               browse(esql.bookingHistoryPages(hotelID, startDate, endDate, pageSize));
+            } else {
+               int rowCount = esql.printBookingHistory(hotelID, startDate, endDate);
+               System.out.println("total row(s): " + rowCount);
+            }
+         }
+      } catch(Exception e) {
+         System.err.println(e.getMessage());
+      }
+   }
+   public static void viewRegularCustomers(Hotel esql, Session session) {
+      try {
+         int hotelID = getIntInput("Enter hotelID: ");
+         if (!session.manages(hotelID)) {
+            System.out.println("You do not manage this hotel");
+            return;
+         }
+         int k = getIntInput("\tHow many customers do you want to see? (0 for " + REGULAR_CUSTOMERS_DEFAULT_K + "): ");
+         if (k <= 0)
+            k = REGULAR_CUSTOMERS_DEFAULT_K;
+         QueryResult rows;
+         if (readYes("\tOnly count bookings in a date range? (Yes/No): ")) {
+            System.out.print("\tEnter start date (format: YYYY-MM-DD): ");
+            java.sql.Date startDate = java.sql.Date.valueOf(in.readLine());
+            System.out.print("\tEnter end date (format: YYYY-MM-DD): ");
+            java.sql.Date endDate = java.sql.Date.valueOf(in.readLine());
+            rows = esql.regularCustomers(hotelID, k, startDate, endDate);
+         } else {
+            rows = esql.regularCustomers(hotelID, k, null, null);
+         }
+         printColumns(rows);
+         int rowCount = rows.rowCount();
+         System.out.println("total row(s): " + rowCount);
+      } catch(Exception e) {
+         System.err.println(e.getMessage());
+      }
+   }
+   public static void placeRoomRepairRequests(Hotel esql, Session session) {
+      try {
+         int hotelID = getIntInput("Enter hotel ID: ");
+         boolean manageHotel = session.manages(hotelID);
+         while (!manageHotel && hotelID != -1) {
+            //hotelID = getIntInput("Enter hotel ID (-1 to exit): ");
+            if (hotelID != -1) {
+               System.out.println("You do not manage this hotel");
+               hotelID = getIntInput("Enter hotel ID (-1 to exit): ");
+               manageHotel = session.manages(hotelID);
+            } else {
+               hotelID = getIntInput("Enter hotel ID (-1 to exit): ");
+               return;
+            }
+         }
+         System.out.println("1. Repair one room");
+         System.out.println("2. Repair a list of rooms");
+         System.out.println("3. Repair every room in a range of numbers and prices");
+         QueryResult repairs;
+         switch (readChoice()) {
+            case 1: {
+               int roomNumber = getIntInput("Enter room number: ");
+               int companyID = getIntInput("Enter maintenance company ID: ");
+               repairs = esql.placeRepairRequests(session.userID(), hotelID, new int[] { roomNumber }, companyID);
+               break;
+            }
+            case 2: {
+               System.out.print("Enter room numbers separated by commas: ");
+               String[] fields = in.readLine().split(",");
+               int[] roomNumbers = new int[fields.length];
+               for (int i = 0; i < fields.length; ++i)
+                  roomNumbers[i] = Integer.parseInt(fields[i].trim());
+               int companyID = getIntInput("Enter maintenance company ID: ");
+               repairs = esql.placeRepairRequests(session.userID(), hotelID, roomNumbers, companyID);
+               break;
+            }
+            case 3: {
+               int firstRoom = getIntInput("Enter the first room number: ");
+               int lastRoom = getIntInput("Enter the last room number: ");
+               int minPrice = getIntInput("Enter the lowest price: ");
+               int maxPrice = getIntInput("Enter the highest price: ");
+               int companyID = getIntInput("Enter maintenance company ID: ");
+               repairs = esql.placeRepairRequests(session.userID(), hotelID, firstRoom, lastRoom, minPrice, maxPrice, companyID);
+               break;
+            }
+            default:
+               throw new Exception("Unrecognized choice.");
+         }
+         printColumns(repairs);
+         System.out.println(repairs.rowCount() + " repair request(s) placed");
+      } catch(Exception e) {
+         System.err.println(e.getMessage());
+      }
+   }
+   public static void viewDashboard(Hotel esql, Session session) {
+      try {
+         java.sql.Date startDate = null;
+         java.sql.Date endDate = null;
+         if (readYes("\tOnly show bookings in a date range? (Yes/No): ")) {
+            System.out.print("\tEnter start date (format: YYYY-MM-DD): ");
+            startDate = java.sql.Date.valueOf(in.readLine());
+            System.out.print("\tEnter end date (format: YYYY-MM-DD): ");
+            endDate = java.sql.Date.valueOf(in.readLine());
+         }
+         Dashboard dashboard = esql.dashboard(session, startDate, endDate);
+         for (Dashboard.Section section : dashboard.sections()) {
+            if (section.rows == null) {
+               System.out.println(String.format("== %s: failed after %.1f ms: %s", section.title, section.nanos / 1e6, section.error));
+               continue;
+            }
+            System.out.println(String.format("== %s: %d row(s) in %.1f ms", section.title, section.rows.rowCount(), section.nanos / 1e6));
+            printColumns(section.rows);
+         }
+         System.out.println(String.format("dashboard took %.1f ms, its %d queries %.1f ms together",
+                                          dashboard.nanos() / 1e6, dashboard.sections().size(), dashboard.sequentialNanos() / 1e6));
+      } catch(Exception e) {
+         System.err.println(e.getMessage());
+      }
+   }
+
+   public static void viewRoomRepairHistory(Hotel esql, Session session) {
+      try {
+         browse(esql.repairHistoryPages(session.userID(), RECENT_PAGE_SIZE));
+      } catch(Exception e) {
+         System.err.println(e.getMessage());
+      }
+   }
+
+}//end Hotel
+
@@ -0,0 +1,203 @@
+package hotel;
+
+import java.math.BigDecimal;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * An in-memory k-d tree over Hotel.latitude/longitude. It answers the
+ * "hotels within r units" lookup of viewHotels and k-nearest-hotel queries
+ * without calling calculate_distance on every row of Hotel.
+ *
+ * Radius results are decided with exact decimal arithmetic, so they are the
+ * same as calculate_distance(lat, long, h.latitude, h.longitude) <= r.
+ *
+ */
+public class HotelIndex {
+
+   /**
+    * A hotel together with its location.
+    */
+   public static class Entry {
+      public final int hotelID;
+      public final String hotelName;
+      public final BigDecimal latitude;
+      public final BigDecimal longitude;
+      // the same location as doubles, used to walk the tree.
+      final double lat;
+      final double lon;
+
+      Entry(int hotelID, String hotelName, BigDecimal latitude, BigDecimal longitude) {
+         this.hotelID = hotelID;
+         this.hotelName = hotelName;
+         this.latitude = latitude;
+         this.longitude = longitude;
+         this.lat = latitude.doubleValue();
+         this.lon = longitude.doubleValue();
+      }
+
+      double coord(int axis) {
+         return axis == 0 ? this.lat : this.lon;
+      }
+
+      double distanceSq(double lat, double lon) {
+         double dLat = this.lat - lat;
+         double dLon = this.lon - lon;
+         return dLat * dLat + dLon * dLon;
+      }
+   }//end Entry
+
+   private static final Comparator<Entry> BY_ID = new Comparator<Entry>() {
+      public int compare(Entry a, Entry b) {
+         return a.hotelID < b.hotelID ? -1 : (a.hotelID == b.hotelID ? 0 : 1);
+      }
+   };
+
+   // entries laid out as an implicit tree: the median of [lo, hi) is the node,
+   // the left and right halves are its subtrees, axes alternate by depth.
+   private final Entry[] _tree;
+   private final long _loadedAt;
+
+   private HotelIndex(List<Entry> entries) {
+      this._tree = entries.toArray(new Entry[entries.size()]);
+      build(0, this._tree.length, 0);
+      this._loadedAt = System.currentTimeMillis();
+   }
+
+   /**
+    * Reads every located hotel from the storage and builds the index.
+    *
+    * @param esql the database to load from
+    * @return a new index over the current contents of Hotel
+    * @throws java.sql.SQLException when failed to execute the query
+    */
+   public static HotelIndex load(Hotel esql) throws SQLException {
+      QueryResult rows = esql.storage().locatedHotels();
+      List<Entry> entries = new ArrayList<Entry>(rows.rowCount());
+      for (int r = 0; r < rows.rowCount(); ++r)
+         entries.add(new Entry(rows.getInt(r, 0), rows.getString(r, 1).trim(),
+                               rows.getDecimal(r, 2), rows.getDecimal(r, 3)));
+      return new HotelIndex(entries);
+   }//end load
+
+   /**
+    * @return the time in milliseconds at which this index was built
+    */
+   public long loadedAt() {
+      return this._loadedAt;
+   }
+
+   public int size() {
+      return this._tree.length;
+   }
+
+   private void build(int lo, int hi, int axis) {
+      if (hi - lo <= 1)
+         return;
+      final int a = axis;
+      Arrays.sort(this._tree, lo, hi, new Comparator<Entry>() {
+         public int compare(Entry x, Entry y) {
+            return Double.compare(x.coord(a), y.coord(a));
+         }
+      });
+      int mid = (lo + hi) >>> 1;
+      build(lo, mid, 1 - axis);
+      build(mid + 1, hi, 1 - axis);
+   }//end build
+
+   /**
+    * Finds every hotel whose distance to (lat, lon) is at most radius.
+    *
+    * @return the matching hotels ordered by hotelID
+    */
+   public List<Entry> withinRadius(double lat, double lon, double radius) {
+      List<Entry> candidates = new ArrayList<Entry>();
+      // the tree is walked in doubles with a little slack, the exact check
+      // below decides the hotels right on the boundary.
+      double slack = radius * 1e-9 + 1e-9;
+      collect(0, this._tree.length, 0, lat, lon, radius + slack, candidates);
+
+      BigDecimal exactLat = new BigDecimal(Double.toString(lat));
+      BigDecimal exactLon = new BigDecimal(Double.toString(lon));
+      BigDecimal exactRadius = new BigDecimal(Double.toString(radius));
+      BigDecimal radiusSq = exactRadius.multiply(exactRadius);
+
+      List<Entry> result = new ArrayList<Entry>(candidates.size());
+      for (Entry e : candidates) {
+         BigDecimal dLat = exactLat.subtract(e.latitude);
+         BigDecimal dLon = exactLon.subtract(e.longitude);
+         if (dLat.multiply(dLat).add(dLon.multiply(dLon)).compareTo(radiusSq) <= 0)
+            result.add(e);
+      }
+      Collections.sort(result, BY_ID);
+      return result;
+   }//end withinRadius
+
+   private void collect(int lo, int hi, int axis, double lat, double lon, double radius, List<Entry> out) {
+      if (lo >= hi)
+         return;
+      int mid = (lo + hi) >>> 1;
+      Entry node = this._tree[mid];
+      if (node.distanceSq(lat, lon) <= radius * radius)
+         out.add(node);
+      double delta = (axis == 0 ? lat : lon) - node.coord(axis);
+      if (delta <= radius)
+         collect(lo, mid, 1 - axis, lat, lon, radius, out);
+      if (delta >= -radius)
+         collect(mid + 1, hi, 1 - axis, lat, lon, radius, out);
+   }//end collect
+
+   /**
+    * Finds the k hotels closest to (lat, lon).
+    *
+    * @return at most k hotels, nearest first; ties are broken by hotelID
+    */
+   public List<Entry> nearest(final double lat, final double lon, int k) {
+      if (k <= 0)
+         return new ArrayList<Entry>();
+      // farthest candidate on top, so it is the one replaced by a closer hotel.
+      Comparator<Entry> farthestFirst = new Comparator<Entry>() {
+         public int compare(Entry a, Entry b) {
+            int c = Double.compare(b.distanceSq(lat, lon), a.distanceSq(lat, lon));
+            return c != 0 ? c : BY_ID.compare(b, a);
+         }
+      };
+      PriorityQueue<Entry> best = new PriorityQueue<Entry>(k, farthestFirst);
+      search(0, this._tree.length, 0, lat, lon, k, best, farthestFirst);
+
+      List<Entry> result = new ArrayList<Entry>(best);
+      Collections.sort(result, Collections.reverseOrder(farthestFirst));
+      return result;
+   }//end nearest
+
+   private void search(int lo, int hi, int axis, double lat, double lon, int k,
+                       PriorityQueue<Entry> best, Comparator<Entry> farthestFirst) {
+      if (lo >= hi)
+         return;
+      int mid = (lo + hi) >>> 1;
+      Entry node = this._tree[mid];
+      if (best.size() < k) {
+         best.add(node);
+      } else if (farthestFirst.compare(node, best.peek()) > 0) {
+         best.poll();
+         best.add(node);
+      }
+
+      double delta = (axis == 0 ? lat : lon) - node.coord(axis);
+      int nearLo = delta < 0 ? lo : mid + 1;
+      int nearHi = delta < 0 ? mid : hi;
+      int farLo = delta < 0 ? mid + 1 : lo;
+      int farHi = delta < 0 ? hi : mid;
+      search(nearLo, nearHi, 1 - axis, lat, lon, k, best, farthestFirst);
+      // the other side can only help if the splitting plane is closer than
+      // the current k-th best hotel.
+      if (best.size() < k || delta * delta <= best.peek().distanceSq(lat, lon))
+         search(farLo, farHi, 1 - axis, lat, lon, k, best, farthestFirst);
+   }//end search
+
+}//end HotelIndex
@@ -0,0 +1,677 @@
+package hotel;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
+import java.sql.Date;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Serves the operations of the menu over HTTP, so one process answers many
+ * users at once instead of one terminal. Requests run on a bounded pool of
+ * threads, maxRequests at once, and up to QUEUED_PER_THREAD times as many
+ * wait in its queue; beyond that they are refused with 503 before a thread
+ * is given to them. All requests share the connection pool and caches of
+ * one Hotel instance; the pool size bounds how many of them talk to the
+ * database at the same time.
+ * The server listens on the loopback interface unless told otherwise with
+ * --bind.
+ *
+ * A user logs in with POST /login and sends the returned token in the
+ * Session header of every later request, in place of the static
+ * current_user of the menu. Sessions idle for SESSION_IDLE_MILLIS are
+ * dropped.
+ *
+ * Parameters come from the query string or a form-encoded body. Results are
+ * tab-separated text with a header line, the columns of the menu output.
+ *
+ * GET /hotel/bookings answers a page of pageSize rows at a time. Without a
+ * page parameter it starts at the newest bookings; page=next and
+ * page=previous move from the page the session was last sent for the same
+ * hotel and dates.
+ *
+ *    GET  /hotels             lat, lon, [radius]
+ *    GET  /hotels/nearest     lat, lon, k
+ *    GET  /rooms              hotelID, date, [last]
+ *    GET  /search             lat, lon, date, [last], [radius], [maxPrice], [limit]
+ *    GET  /stats                                                 (manager)
+ *    POST /users              name, password
+ *    POST /login              userID, password
+ *    POST /logout
+ *    GET  /bookings                                              (logged in)
+ *    POST /bookings           hotelID, roomNumber, date, [last]  (logged in)
+ *    POST /rooms              hotelID, roomNumber, [price], [imageURL]   (manager)
+ *    GET  /updates                                               (manager)
+ *    GET  /hotel/bookings     hotelID, [from, to], [pageSize], [page]   (manager)
+ *    GET  /hotel/customers    hotelID, [k], [from, to]           (manager)
+ *    GET  /repairs                                               (manager)
+ *    GET  /dashboard          [from, to]                         (manager)
+ *    POST /repairs            hotelID, roomNumber, companyID     (manager)
+ *
+ */
+public class HotelServer {
+   public static final int DEFAULT_PORT = 8166;
+   // requests being answered at once, a few per pooled connection so one waits while another runs.
+   public static final int DEFAULT_MAX_REQUESTS = 4 * Hotel.DEFAULT_POOL_SIZE;
+   // requests waiting for a thread, per thread; more are refused with 503. A waiting request costs no thread.
+   static final int QUEUED_PER_THREAD = 32;
+   // set while the accepting thread answers a request the pool refused.
+   private static final ThreadLocal<Boolean> REFUSED = new ThreadLocal<Boolean>();
+   public static final long SESSION_IDLE_MILLIS = 30 * 60 * 1000;
+   private static final int BACKLOG = 1024;
+   private static final String SESSION_HEADER = "Session";
+   private static final int DEFAULT_SEARCH_LIMIT = 10;
+   private static final int MAX_PAGE_SIZE = 1000;
+
+   /**
+    * A failed request, answered with its status and message.
+    */
+   private static final class Failure extends Exception {
+      private static final long serialVersionUID = 1L;
+
+      final int status;
+
+      Failure(int status, String message) {
+         super(message, null, false, false);
+         this.status = status;
+      }
+   }//end Failure
+
+   // a logged in user, when they last sent a request and the pages they are reading.
+   private static final class Client {
+      final Session session;
+      volatile long lastUsed = System.currentTimeMillis();
+      final Map<String, Pager> pages = new ConcurrentHashMap<String, Pager>();
+
+      Client(Session session) {
+         this.session = session;
+      }
+   }//end Client
+
+   private interface Handler {
+      String handle(Request request) throws Exception;
+   }
+
+   /**
+    * One request: its parameters and the session it was sent with.
+    */
+   private final class Request {
+      private final HttpExchange _exchange;
+      private final Map<String, String> _params = new HashMap<String, String>();
+
+      Request(HttpExchange exchange) throws IOException {
+         this._exchange = exchange;
+         parse(exchange.getRequestURI().getRawQuery());
+         if ("POST".equals(exchange.getRequestMethod()))
+            parse(new String(readAll(exchange.getRequestBody()), StandardCharsets.UTF_8));
+      }
+
+      private void parse(String form) {
+         if (form == null || form.isEmpty())
+            return;
+         for (String pair : form.split("&")) {
+            int eq = pair.indexOf('=');
+            if (eq < 0)
+               this._params.put(URLDecoder.decode(pair, StandardCharsets.UTF_8), "");
+            else
+               this._params.put(URLDecoder.decode(pair.substring(0, eq), StandardCharsets.UTF_8),
+                                URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8));
+         }
+      }
+
+      // the parameter, or null when it is missing or empty.
+      String optional(String name) {
+         String v = this._params.get(name);
+         return v == null || v.trim().isEmpty() ? null : v.trim();
+      }
+
+      String string(String name) throws Failure {
+         String v = optional(name);
+         if (v == null)
+            throw new Failure(400, "missing parameter " + name);
+         return v;
+      }
+
+      int integer(String name) throws Failure {
+         try {
+            return Integer.parseInt(string(name));
+         } catch (NumberFormatException e) {
+            throw new Failure(400, name + " is not a number");
+         }
+      }
+
+      int integer(String name, int otherwise) throws Failure {
+         return optional(name) == null ? otherwise : integer(name);
+      }
+
+      double number(String name) throws Failure {
+         try {
+            return Double.parseDouble(string(name));
+         } catch (NumberFormatException e) {
+            throw new Failure(400, name + " is not a number");
+         }
+      }
+
+      double number(String name, double otherwise) throws Failure {
+         return optional(name) == null ? otherwise : number(name);
+      }
+
+      Date date(String name) throws Failure {
+         try {
+            return Date.valueOf(string(name));
+         } catch (IllegalArgumentException e) {
+            throw new Failure(400, name + " is not a date (YYYY-MM-DD)");
+         }
+      }
+
+      Date date(String name, Date otherwise) throws Failure {
+         return optional(name) == null ? otherwise : date(name);
+      }
+
+      String token() {
+         return this._exchange.getRequestHeaders().getFirst(SESSION_HEADER);
+      }
+
+      /**
+       * @throws Failure 401 when the request was not sent by a logged in user
+       */
+      Session session() throws Failure {
+         String token = token();
+         Client client = token == null ? null : _clients.get(token);
+         if (client == null)
+            throw new Failure(401, "log in first");
+         client.lastUsed = System.currentTimeMillis();
+         return client.session;
+      }
+
+      /**
+       * @throws Failure 403 when the user does not manage the hotel
+       */
+      Session manager(int hotelID) throws Exception {
+         Session session = session();
+         if (!session.manages(hotelID))
+            throw new Failure(403, "You don't manage this hotel!");
+         return session;
+      }
+
+      Session manager() throws Exception {
+         Session session = session();
+         if (!session.isManager())
+            throw new Failure(403, "Only managers have access to this function");
+         return session;
+      }
+   }//end Request
+
+   private final Hotel _esql;
+   private final HttpServer _http;
+   private final ExecutorService _threads;
+   private final Map<String, Client> _clients = new ConcurrentHashMap<String, Client>();
+   private final SecureRandom _random = new SecureRandom();
+   private final ScheduledExecutorService _sweeper = Executors.newSingleThreadScheduledExecutor(r -> {
+      Thread t = new Thread(r, "hotel-server-sessions");
+      t.setDaemon(true);
+      return t;
+   });
+   // "GET /path" to the handler of the request.
+   private final Map<String, Handler> _routes = new HashMap<String, Handler>();
+
+   /**
+    * Listens on the loopback interface only.
+    *
+    * @param port the TCP port to listen on, 0 for any free one
+    * @param maxRequests requests answered at once; QUEUED_PER_THREAD times as many may wait
+    */
+   public HotelServer(Hotel esql, int port, int maxRequests) throws IOException {
+      this(esql, InetAddress.getLoopbackAddress(), port, maxRequests);
+   }
+
+   /**
+    * @param bind the address to listen on, the wildcard address for every interface
+    * @param port the TCP port to listen on, 0 for any free one
+    * @param maxRequests requests answered at once; QUEUED_PER_THREAD times as many may wait
+    */
+   public HotelServer(Hotel esql, InetAddress bind, int port, int maxRequests) throws IOException {
+      this._esql = esql;
+      this._threads = boundedPool("hotel-server", maxRequests, capacity(maxRequests) - maxRequests);
+      // without TCP_NODELAY small responses wait on the client's delayed ACK.
+      if (System.getProperty("sun.net.httpserver.nodelay") == null)
+         System.setProperty("sun.net.httpserver.nodelay", "true");
+      this._http = HttpServer.create(new InetSocketAddress(bind, port), BACKLOG);
+      this._http.setExecutor(this._threads);
+      this._http.createContext("/", this::dispatch);
+      routes();
+   }//end HotelServer
+
+   /**
+    * @param args <dbname> <port> <user> [--listen port] [--bind address] [--pool n] [--max-requests n]
+    *        [--replica port]... [--stale-reads] or -memory <data directory> [--listen port] [--bind address]
+    *        [--max-requests n]; --bind 0.0.0.0 listens on every interface
+    */
+   public static void main(String[] args) {
+      boolean memory = args.length >= 2 && args[0].equals("-memory");
+      if (args.length < 3 && !memory) {
+         System.err.println (
+            "Usage: " +
+            "java [-classpath <classpath>] " +
+            HotelServer.class.getName () +
+            " <dbname> <port> <user> [--listen port] [--bind address] [--pool n] [--max-requests n]" +
+            " [--replica port]... [--stale-reads]\n" +
+            "       java [-classpath <classpath>] " +
+            HotelServer.class.getName () +
+            " -memory <data directory> [--listen port] [--bind address] [--max-requests n]");
+         return;
+      }//end if
+
+      int listen = DEFAULT_PORT;
+      String bind = null;
+      int poolSize = Hotel.DEFAULT_POOL_SIZE;
+      int maxRequests = DEFAULT_MAX_REQUESTS;
+      List<String> replicas = new ArrayList<String>();
+      boolean readYourWrites = true;
+      for (int i = memory ? 2 : 3; i < args.length; ++i) {
+         String arg = args[i];
+         if (arg.equals("--stale-reads")) {
+            readYourWrites = false;
+            continue;
+         }
+         if (i + 1 >= args.length)
+            throw new IllegalArgumentException("missing value for " + arg);
+         String v = args[++i];
+         switch (arg) {
+            case "--listen": listen = Integer.parseInt(v); break;
+            case "--bind": bind = v; break;
+            case "--pool": poolSize = Integer.parseInt(v); break;
+            case "--max-requests": maxRequests = Integer.parseInt(v); break;
+            case "--replica": replicas.add(v); break;
+            default: throw new IllegalArgumentException("unknown option " + arg);
+         }
+      }
+
+      Hotel esql = null;
+      ScheduledExecutorService maintenance = null;
+      try {
+         if (memory) {
+            esql = new Hotel(MemoryStorage.load(new File(args[1])));
+         } else {
+            Class.forName ("org.postgresql.Driver").getDeclaredConstructor ().newInstance ();
+            esql = new Hotel(args[0], args[1], args[2], "", poolSize, replicas, readYourWrites);
+            maintenance = BookingPartitions.schedule(esql);
+         }
+         InetAddress address = bind == null ? InetAddress.getLoopbackAddress() : InetAddress.getByName(bind);
+         final HotelServer server = new HotelServer(esql, address, listen, maxRequests);
+         final Hotel stopping = esql;
+         final ScheduledExecutorService stoppingMaintenance = maintenance;
+         Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            server.stop(1);
+            if (stoppingMaintenance != null)
+               stoppingMaintenance.shutdownNow();
+            stopping.cleanup();
+         }));
+         server.start();
+         System.out.println("Listening on " + address.getHostAddress() + " port " + server.port());
+      } catch (Exception e) {
+         System.err.println(e.getMessage());
+         if (maintenance != null)
+            maintenance.shutdownNow();
+         if (esql != null)
+            esql.cleanup();
+         System.exit(1);
+      }
+   }//end main
+
+   /**
+    * @return how many requests a server answering maxRequests at once holds
+    * before it refuses one with 503, those running and those waiting
+    */
+   static int capacity(int maxRequests) {
+      return maxRequests * (1 + QUEUED_PER_THREAD);
+   }
+
+   /**
+    * A thread for every task at once: daemon threads that are reused while
+    * idle and dropped after a minute without work.
+    */
+   static ExecutorService threadPerTask(String name) {
+      final AtomicInteger count = new AtomicInteger();
+      return Executors.newCachedThreadPool(r -> {
+         Thread t = new Thread(r, name + "-" + count.incrementAndGet());
+         t.setDaemon(true);
+         return t;
+      });
+   }//end threadPerTask
+
+   /**
+    * Runs tasks on at most threads daemon threads with up to queued tasks
+    * waiting. A task beyond that runs on the thread that submitted it, the
+    * accepting thread of the HTTP server, with REFUSED set: dispatch then
+    * answers 503 after reading only the request line and headers, the way
+    * HttpServer runs every request without an executor of its own.
+    */
+   static ExecutorService boundedPool(String name, int threads, int queued) {
+      final AtomicInteger count = new AtomicInteger();
+      ThreadPoolExecutor pool = new ThreadPoolExecutor(
+         threads, threads, 60, TimeUnit.SECONDS, new ArrayBlockingQueue<Runnable>(queued),
+         r -> {
+            Thread t = new Thread(r, name + "-" + count.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+         },
+         (task, executor) -> {
+            if (executor.isShutdown())
+               throw new RejectedExecutionException(name + " is stopped");
+            REFUSED.set(Boolean.TRUE);
+            try {
+               task.run();
+            } finally {
+               REFUSED.remove();
+            }
+         });
+      pool.allowCoreThreadTimeOut(true);
+      return pool;
+   }//end boundedPool
+
+   public void start() {
+      this._http.start();
+      this._sweeper.scheduleWithFixedDelay(this::dropIdleSessions, 1, 1, TimeUnit.MINUTES);
+   }
+
+   /**
+    * Stops accepting requests and waits up to delaySeconds for the running ones.
+    */
+   public void stop(int delaySeconds) {
+      this._http.stop(delaySeconds);
+      this._sweeper.shutdownNow();
+      this._threads.shutdownNow();
+   }
+
+   public int port() {
+      return this._http.getAddress().getPort();
+   }
+
+   /**
+    * @return the number of logged in users
+    */
+   public int sessions() {
+      return this._clients.size();
+   }
+
+   private void dropIdleSessions() {
+      long oldest = System.currentTimeMillis() - SESSION_IDLE_MILLIS;
+      for (Iterator<Client> it = this._clients.values().iterator(); it.hasNext(); ) {
+         if (it.next().lastUsed < oldest)
+            it.remove();
+      }
+   }
+
+   private void dispatch(HttpExchange exchange) throws IOException {
+      try {
+         if (REFUSED.get() != null) {
+            exchange.getResponseHeaders().set("Retry-After", "1");
+            respond(exchange, 503, "too many requests\n");
+            return;
+         }
+         try {
+            Handler handler = this._routes.get(exchange.getRequestMethod() + " " + exchange.getRequestURI().getPath());
+            if (handler == null)
+               throw new Failure(404, "no such operation");
+            respond(exchange, 200, handler.handle(new Request(exchange)));
+         } catch (Failure e) {
+            respond(exchange, e.status, e.getMessage() + "\n");
+         } catch (SQLException | RuntimeException e) {
+            respond(exchange, e instanceof IllegalArgumentException ? 400 : 500, e.getMessage() + "\n");
+         } catch (Exception e) {
+            respond(exchange, 500, e.getMessage() + "\n");
+         }
+      } finally {
+         exchange.close();
+      }
+   }//end dispatch
+
+   private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+      byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+      exchange.getResponseHeaders().set("Content-Type", "text/tab-separated-values; charset=utf-8");
+      exchange.sendResponseHeaders(status, bytes.length == 0 ? -1 : bytes.length);
+      if (bytes.length > 0) {
+         try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+         }
+      }
+   }
+
+   private static byte[] readAll(InputStream in) throws IOException {
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      byte[] buffer = new byte[4096];
+      int n;
+      while ((n = in.read(buffer)) > 0)
+         out.write(buffer, 0, n);
+      return out.toByteArray();
+   }
+
+   /*
+    * The operations.
+    **/
+
+   private void route(String method, String path, Handler handler) {
+      this._routes.put(method + " " + path, handler);
+   }
+
+   private void routes() {
+      route("GET", "/hotels", r -> hotels(this._esql.hotelsWithin(r.number("lat"), r.number("lon"), r.number("radius", 30))));
+      route("GET", "/hotels/nearest", r -> hotels(this._esql.nearestHotels(r.number("lat"), r.number("lon"), r.integer("k"))));
+      route("GET", "/rooms", r -> {
+         Date first = r.date("date");
+         Date last = r.date("last", first);
+         return rooms(first.equals(last) ? this._esql.availableRooms(r.integer("hotelID"), first)
+                                         : this._esql.availableRooms(r.integer("hotelID"), first, last));
+      });
+      route("GET", "/search", r -> {
+         Date first = r.date("date");
+         List<RoomSearch.Result> found = this._esql.searchRooms(r.number("lat"), r.number("lon"), r.number("radius", 30),
+                                                                first, r.date("last", first),
+                                                                r.integer("maxPrice", Integer.MAX_VALUE),
+                                                                r.integer("limit", DEFAULT_SEARCH_LIMIT));
+         StringBuilder out = new StringBuilder("hotelid\thotelname\troomnumber\tprice\tdistance\n");
+         for (RoomSearch.Result f : found)
+            line(out, f.hotelID, f.hotelName, f.roomNumber, f.price, String.format("%.2f", f.distance));
+         return out.toString();
+      });
+      route("GET", "/stats", r -> {
+         r.manager();
+         return this._esql.metrics().getReport() + (this._esql.replicas() == null ? "" : this._esql.replicas().status());
+      });
+
+      route("POST", "/users", r -> "userid\n" + this._esql.createUser(r.string("name"), r.string("password"), "Customer") + "\n");
+      route("POST", "/login", r -> {
+         Session session = this._esql.login(r.integer("userID"), r.string("password"));
+         if (session == null)
+            throw new Failure(401, "wrong userID or password");
+         byte[] bytes = new byte[16];
+         this._random.nextBytes(bytes);
+         StringBuilder token = new StringBuilder();
+         for (byte b : bytes)
+            token.append(String.format("%02x", b & 0xff));
+         this._clients.put(token.toString(), new Client(session));
+         return "session\tusertype\n" + token + "\t" + session.userType() + "\n";
+      });
+      route("POST", "/logout", r -> {
+         r.session();
+         this._clients.remove(r.token());
+         return "";
+      });
+
+      route("GET", "/bookings", r -> columns(this._esql.recentBookings(r.session().userID())));
+      route("POST", "/bookings", r -> {
+         Session session = r.session();
+         int hotelID = r.integer("hotelID");
+         int roomNumber = r.integer("roomNumber");
+         Date first = r.date("date");
+         Date last = r.date("last", first);
+         BookingEngine.Result booking = first.equals(last)
+            ? this._esql.bookings().book(session.userID(), hotelID, roomNumber, first)
+            : this._esql.bookings().bookStay(session.userID(), hotelID, roomNumber, first, last);
+         switch (booking.status) {
+            case UNAVAILABLE: throw new Failure(409, "Room " + roomNumber + " at Hotel " + hotelID + " is not available");
+            case NO_SUCH_ROOM: throw new Failure(404, "Hotel " + hotelID + " has no room " + roomNumber);
+            default: return "bookingid\tnights\tprice\n" + booking.bookingID + "\t" + booking.nights + "\t" + booking.price + "\n";
+         }
+      });
+
+      route("POST", "/rooms", r -> {
+         int hotelID = r.integer("hotelID");
+         int roomNumber = r.integer("roomNumber");
+         Session session = r.manager(hotelID);
+         boolean found = true;
+         if (r.optional("price") != null)
+            found = this._esql.updateRoomPrice(session.userID(), hotelID, roomNumber, r.integer("price"));
+         if (found && r.optional("imageURL") != null)
+            found = this._esql.updateRoomImage(session.userID(), hotelID, roomNumber, r.string("imageURL"));
+         if (!found)
+            throw new Failure(404, "Hotel " + hotelID + " has no room " + roomNumber);
+         return "";
+      });
+      route("GET", "/updates", r -> columns(this._esql.roomUpdatePages(r.manager().managedHotels(), Hotel.RECENT_PAGE_SIZE).first()));
+      route("GET", "/hotel/bookings", r -> {
+         int hotelID = r.integer("hotelID");
+         r.manager(hotelID);
+         Date from = r.date("from", null);
+         Date to = r.date("to", null);
+         int pageSize = r.integer("pageSize", Hotel.RECENT_PAGE_SIZE);
+         if (pageSize <= 0 || pageSize > MAX_PAGE_SIZE)
+            throw new Failure(400, "pageSize must be from 1 to " + MAX_PAGE_SIZE);
+         return columns(page(r, hotelID + " " + from + " " + to, pageSize,
+                             () -> this._esql.bookingHistoryPages(hotelID, from, to, pageSize)));
+      });
+      route("GET", "/hotel/customers", r -> {
+         int hotelID = r.integer("hotelID");
+         r.manager(hotelID);
+         return columns(this._esql.regularCustomers(hotelID, r.integer("k", Hotel.REGULAR_CUSTOMERS_DEFAULT_K),
+                                                    r.date("from", null), r.date("to", null)));
+      });
+      route("GET", "/repairs", r -> columns(this._esql.repairHistory(r.manager().userID())));
+      route("GET", "/dashboard", r -> {
+         Dashboard dashboard = this._esql.dashboard(r.manager(), r.date("from", null), r.date("to", null));
+         StringBuilder out = new StringBuilder();
+         for (Dashboard.Section section : dashboard.sections()) {
+            // a comment line with the section, its time and any error, then its rows.
+            out.append("# ").append(section.title).append('\t').append(String.format("%.1f ms", section.nanos / 1e6));
+            if (section.rows == null) {
+               out.append("\tfailed: ").append(section.error).append('\n');
+               continue;
+            }
+            out.append('\n').append(columns(section.rows));
+         }
+         out.append(String.format("# total\t%.1f ms%n", dashboard.nanos() / 1e6));
+         return out.toString();
+      });
+      route("POST", "/repairs", r -> {
+         int hotelID = r.integer("hotelID");
+         Session session = r.manager(hotelID);
+         int repairID = this._esql.placeRepairRequest(session.userID(), hotelID, r.integer("roomNumber"), r.integer("companyID"));
+         return "repairid\n" + repairID + "\n";
+      });
+   }//end routes
+
+   /**
+    * Moves the pager the session keeps under key as the page parameter asks:
+    * first (the default) starts a new one, next and previous move from the
+    * page last sent. A different page size starts over as well.
+    */
+   private QueryResult page(Request r, String key, int pageSize, Supplier<Pager> pages) throws Exception {
+      String move = r.optional("page");
+      if (move == null)
+         move = "first";
+      Client client = this._clients.get(r.token());
+      // swept or logged out since the permission check.
+      if (client == null)
+         throw new Failure(401, "log in first");
+      Map<String, Pager> open = client.pages;
+      Pager pager = open.get(key);
+      if (pager == null || pager.pageSize() != pageSize || move.equals("first")) {
+         pager = pages.get();
+         open.put(key, pager);
+      }
+      // requests of one session may come in at once; each moves the page on screen.
+      synchronized (pager) {
+         switch (move) {
+            case "first": return pager.first();
+            case "next": return pager.next();
+            case "previous": return pager.previous();
+            default: throw new Failure(400, "page must be first, next or previous");
+         }
+      }
+   }//end page
+
+   private static String hotels(List<HotelIndex.Entry> hotels) {
+      StringBuilder out = new StringBuilder("hotelid\thotelname\tlatitude\tlongitude\n");
+      for (HotelIndex.Entry h : hotels)
+         line(out, h.hotelID, h.hotelName, h.latitude, h.longitude);
+      return out.toString();
+   }
+
+   private static String rooms(List<int[]> rooms) {
+      StringBuilder out = new StringBuilder("roomnumber\tprice\n");
+      for (int[] room : rooms)
+         line(out, room[0], room[1]);
+      return out.toString();
+   }
+
+   private static String columns(QueryResult rows) {
+      StringBuilder out = new StringBuilder();
+      for (int c = 0; c < rows.columnCount(); ++c)
+         out.append(c == 0 ? "" : "\t").append(rows.columnName(c));
+      out.append('\n');
+      Object[] values = new Object[rows.columnCount()];
+      for (int r = 0; r < rows.rowCount(); ++r) {
+         for (int c = 0; c < values.length; ++c)
+            values[c] = rows.getString(r, c);
+         line(out, values);
+      }
+      return out.toString();
+   }
+
+   // one row, with tabs and line breaks inside values escaped as in COPY text.
+   private static void line(StringBuilder out, Object... values) {
+      for (int i = 0; i < values.length; ++i) {
+         if (i > 0)
+            out.append('\t');
+         String v = String.valueOf(values[i]);
+         for (int j = 0; j < v.length(); ++j) {
+            char ch = v.charAt(j);
+            switch (ch) {
+               case '\t': out.append("\\t"); break;
+               case '\n': out.append("\\n"); break;
+               case '\r': out.append("\\r"); break;
+               case '\\': out.append("\\\\"); break;
+               default: out.append(ch);
+            }
+         }
+      }
+      out.append('\n');
+   }//end line
+
+}//end HotelServer
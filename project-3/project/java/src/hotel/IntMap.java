@@ -0,0 +1,130 @@
+package hotel;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A hash map from int keys to objects, with the keys held in a primitive
+ * array and probed linearly, so that a lookup neither boxes the key nor
+ * follows a chain of entries. There is no remove; the tables of
+ * MemoryStorage only grow.
+ *
+ * Not synchronized.
+ *
+ */
+final class IntMap<V> {
+   private static final int MIN_CAPACITY = 8;
+   // the table is doubled once it is more than this full.
+   private static final float LOAD_FACTOR = 0.5f;
+
+   private int[] _keys;
+   private Object[] _values;
+   private int _size = 0;
+
+   IntMap() {
+      this(MIN_CAPACITY);
+   }
+
+   /**
+    * @param expected the number of keys held without growing
+    */
+   IntMap(int expected) {
+      int capacity = MIN_CAPACITY;
+      while (capacity * LOAD_FACTOR < expected)
+         capacity <<= 1;
+      this._keys = new int[capacity];
+      this._values = new Object[capacity];
+   }
+
+   int size() {
+      return this._size;
+   }
+
+   /**
+    * @return the value of the key, or null when there is none
+    */
+   @SuppressWarnings("unchecked")
+   V get(int key) {
+      int mask = this._keys.length - 1;
+      for (int i = hash(key) & mask; this._values[i] != null; i = (i + 1) & mask) {
+         if (this._keys[i] == key)
+            return (V) this._values[i];
+      }
+      return null;
+   }
+
+   /**
+    * @return the value that was replaced, or null
+    */
+   @SuppressWarnings("unchecked")
+   V put(int key, V value) {
+      if (value == null)
+         throw new NullPointerException("null value for key " + key);
+      int mask = this._keys.length - 1;
+      int i = hash(key) & mask;
+      for (; this._values[i] != null; i = (i + 1) & mask) {
+         if (this._keys[i] == key) {
+            V old = (V) this._values[i];
+            this._values[i] = value;
+            return old;
+         }
+      }
+      this._keys[i] = key;
+      this._values[i] = value;
+      if (++this._size > this._keys.length * LOAD_FACTOR)
+         rehash(this._keys.length << 1);
+      return null;
+   }//end put
+
+   /**
+    * @return the keys in ascending order
+    */
+   int[] keys() {
+      int[] keys = new int[this._size];
+      int n = 0;
+      for (int i = 0; i < this._values.length; ++i) {
+         if (this._values[i] != null)
+            keys[n++] = this._keys[i];
+      }
+      Arrays.sort(keys);
+      return keys;
+   }
+
+   /**
+    * @return the values, in no particular order
+    */
+   @SuppressWarnings("unchecked")
+   List<V> values() {
+      List<V> values = new ArrayList<V>(this._size);
+      for (Object v : this._values) {
+         if (v != null)
+            values.add((V) v);
+      }
+      return values;
+   }
+
+   private void rehash(int capacity) {
+      int[] keys = this._keys;
+      Object[] values = this._values;
+      this._keys = new int[capacity];
+      this._values = new Object[capacity];
+      int mask = capacity - 1;
+      for (int j = 0; j < keys.length; ++j) {
+         if (values[j] == null)
+            continue;
+         int i = hash(keys[j]) & mask;
+         while (this._values[i] != null)
+            i = (i + 1) & mask;
+         this._keys[i] = keys[j];
+         this._values[i] = values[j];
+      }
+   }//end rehash
+
+   // spreads consecutive ids, which is what most keys are, over the table.
+   private static int hash(int key) {
+      int h = key * 0x9E3779B9;
+      return h ^ (h >>> 16);
+   }
+
+}//end IntMap
@@ -0,0 +1,273 @@
+package hotel;
+
+import java.sql.Date;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The Storage of a Postgres database created by sql/scripts/create_db.sh,
+ * reached through the connection pool of a Hotel. RoomUpdatesLog entries
+ * are written in the background by an AuditWriter.
+ *
+ * The history views are read through executeRead*, so they are answered by
+ * replicas when the Hotel has some; everything else runs on the primary.
+ * Bookings and repair requests tell the Hotel who wrote, so that user's
+ * next history reads show the write.
+ *
+ */
+public class JdbcStorage implements Storage {
+   // one row per managed hotel, or a single row with a NULL hotelID.
+   static final String USER_SQL = "SELECT U.userType, H.hotelID FROM Users U LEFT JOIN Hotel H ON H.managerUserID = U.userID WHERE U.userID = ? ORDER BY H.hotelID";
+   static final String LOGIN_SQL = "SELECT U.userType, H.hotelID FROM Users U LEFT JOIN Hotel H ON H.managerUserID = U.userID WHERE U.userID = ? AND U.password = ? ORDER BY H.hotelID";
+   static final String CREATE_USER_SQL = "INSERT INTO USERS (name, password, userType) VALUES (?, ?, ?) RETURNING userID";
+
+   static final String LOCATED_HOTELS_SQL = "SELECT hotelID, hotelName, latitude, longitude FROM Hotel WHERE latitude IS NOT NULL AND longitude IS NOT NULL";
+   static final String ROOMS_SQL = "SELECT roomNumber, price, imageURL FROM Rooms WHERE hotelID = ? ORDER BY roomNumber";
+   // the columns of ROOMS_SQL first, so the rows of one hotel read the same.
+   static final String HOTELS_ROOMS_SQL = "SELECT roomNumber, price, imageURL, hotelID FROM Rooms WHERE hotelID = ANY(?) ORDER BY hotelID, roomNumber";
+   static final String UPDATE_PRICE_SQL = "UPDATE Rooms SET price = ? WHERE hotelID = ? AND roomNumber = ?";
+   static final String UPDATE_IMAGE_SQL = "UPDATE Rooms SET imageURL = ? WHERE hotelID = ? AND roomNumber = ?";
+   static final String UPDATE_PRICES_SQL = "UPDATE Rooms SET price = ? WHERE hotelID = ? AND roomNumber = ANY(?) RETURNING roomNumber";
+
+   static final String BOOKED_ROOMS_SQL = "SELECT roomNumber FROM RoomBookings WHERE hotelID = ? AND bookingDate = ?";
+   // a range of booking_hotel_date per hotel.
+   static final String HOTELS_BOOKED_ROOMS_SQL = "SELECT DISTINCT hotelID, roomNumber FROM RoomBookings WHERE hotelID = ANY(?) AND bookingDate BETWEEN ? AND ? ORDER BY hotelID, roomNumber";
+   // ordered like booking_unique_slot, so runs of nights are built by appending.
+   static final String BOOKED_NIGHTS_SQL = "SELECT roomNumber, bookingDate FROM RoomBookings WHERE hotelID = ? AND bookingDate >= ? ORDER BY roomNumber, bookingDate";
+   // a conflicting slot makes the insert return nothing instead of failing.
+   static final String BOOK_SQL =
+      "INSERT INTO RoomBookings(customerID, hotelID, roomNumber, bookingDate) VALUES (?, ?, ?, ?) " +
+      "ON CONFLICT (hotelID, roomNumber, bookingDate) DO NOTHING " +
+      "RETURNING bookingID";
+   // one row per night of the stay in a single insert. Any night that is
+   // taken violates booking_unique_slot and rolls back the whole stay.
+   static final String BOOK_STAY_SQL =
+      "WITH booked AS (INSERT INTO RoomBookings(customerID, hotelID, roomNumber, bookingDate) " +
+                 "SELECT ?, ?, ?, night::date FROM generate_series(?::date, ?::date, interval '1 day') night " +
+                 "RETURNING bookingID) " +
+      "SELECT MIN(bookingID), COUNT(*) FROM booked";
+
+   // the history views end in their WHERE clause, KeysetPager appends the seek predicate and the order.
+   // the price of a booked room is looked up in the RoomCache.
+   static final String RECENT_BOOKINGS_SQL = "SELECT b.bookingID, b.hotelID, b.roomNumber, b.bookingDate FROM RoomBookings b WHERE b.customerID = ?";
+   static final String BOOKING_HISTORY_SQL = "SELECT B.bookingID, U.name, B.hotelID, B.roomNumber, B.bookingDate FROM RoomBookings B INNER JOIN Users U ON B.customerID = U.userID WHERE B.hotelID = ?";
+   static final String BOOKING_HISTORY_RANGE_SQL = BOOKING_HISTORY_SQL + " AND B.bookingDate BETWEEN ? AND ?";
+   // read the counters that sql/src/create_summaries.sql maintains on every booking.
+   static final String REGULAR_CUSTOMERS_SQL = "SELECT T.customerID, U.name, T.bookings FROM CustomerBookingTotals T INNER JOIN Users U ON T.customerID = U.userID WHERE T.hotelID = ? ORDER BY T.bookings DESC, T.customerID LIMIT ?";
+   static final String REGULAR_CUSTOMERS_RANGE_SQL = "SELECT C.customerID, U.name, SUM(C.bookings) AS bookings FROM CustomerBookingCounts C INNER JOIN Users U ON C.customerID = U.userID WHERE C.hotelID = ? AND C.bookingMonth BETWEEN date_trunc('month', ?::date) AND ? GROUP BY C.customerID, U.name ORDER BY bookings DESC, C.customerID LIMIT ?";
+   // one hotel seeks in update_hotel_date; several are read in update_date order and filtered by hotel.
+   private static final String ROOM_UPDATES_SELECT = "SELECT U.updateNumber, H.hotelName, R.hotelID, R.roomNumber, R.price, R.imageURL, U.updatedOn FROM RoomUpdatesLog U INNER JOIN Rooms R ON U.hotelID = R.hotelID AND U.roomNumber = R.roomNumber INNER JOIN Hotel H ON R.hotelID = H.hotelID WHERE ";
+   static final String ROOM_UPDATES_SQL = ROOM_UPDATES_SELECT + "U.hotelID = ANY(?)";
+   static final String ROOM_UPDATES_HOTEL_SQL = ROOM_UPDATES_SELECT + "U.hotelID = ?";
+
+   // both repair statements insert the repairs of the rooms they select and one request per repair in one round trip.
+   private static final String PLACE_REPAIRS_SQL = "WITH repairs AS (INSERT INTO RoomRepairs(companyID, hotelID, roomNumber, repairDate) SELECT ?, R.hotelID, R.roomNumber, CURRENT_DATE FROM Rooms R WHERE R.hotelID = ? AND ";
+   private static final String PLACE_REQUESTS_SQL = " ORDER BY R.roomNumber RETURNING repairID, roomNumber), requests AS (INSERT INTO RoomRepairRequests(managerID, repairID) SELECT ?, repairID FROM repairs) SELECT repairID, roomNumber FROM repairs ORDER BY repairID";
+   static final String REPAIR_ROOMS_SQL = PLACE_REPAIRS_SQL + "R.roomNumber = ANY(?)" + PLACE_REQUESTS_SQL;
+   static final String REPAIR_ROOM_RANGE_SQL = PLACE_REPAIRS_SQL + "R.roomNumber BETWEEN ? AND ? AND R.price BETWEEN ? AND ?" + PLACE_REQUESTS_SQL;
+   // the requests of a manager are found in request_manager_repair; their few repairs are sorted by (repairDate, repairID).
+   static final String REPAIR_HISTORY_SQL = "SELECT A.repairID, A.companyID, A.hotelID, A.roomNumber, A.repairDate FROM RoomRepairs A INNER JOIN RoomRepairRequests B ON A.repairID = B.repairID WHERE B.managerID = ?";
+
+   /**
+    * A history view as KeysetPager pages it: its SELECT and the (date, id)
+    * key the pages seek on. Every view registers itself, so PlanCheck
+    * measures the pages of each one the storage can create.
+    */
+   static final class PagedView {
+      final String name;
+      final String select;
+      final String dateKey;
+      final String idKey;
+      final int dateCol;
+      final int idCol;
+
+      private PagedView(String name, String select, String dateKey, String idKey, int dateCol, int idCol) {
+         this.name = name;
+         this.select = select;
+         this.dateKey = dateKey;
+         this.idKey = idKey;
+         this.dateCol = dateCol;
+         this.idCol = idCol;
+         PAGED_VIEWS.add(this);
+      }
+
+      Pager pages(Hotel esql, int userID, int pageSize, Object... params) {
+         return new KeysetPager(esql, userID, this.select, this.dateKey, this.idKey, this.dateCol, this.idCol, pageSize, params);
+      }
+   }//end PagedView
+
+   // filled by the PagedView constructor, so it comes before the views.
+   private static final List<PagedView> PAGED_VIEWS = new ArrayList<PagedView>();
+   static final PagedView CUSTOMER_BOOKINGS = new PagedView("customerBookings", RECENT_BOOKINGS_SQL, "b.bookingDate", "b.bookingID", 3, 0);
+   static final PagedView BOOKING_HISTORY = new PagedView("bookingHistory", BOOKING_HISTORY_SQL, "B.bookingDate", "B.bookingID", 4, 0);
+   static final PagedView BOOKING_HISTORY_RANGE = new PagedView("bookingHistoryRange", BOOKING_HISTORY_RANGE_SQL, "B.bookingDate", "B.bookingID", 4, 0);
+   static final PagedView ROOM_UPDATES = new PagedView("roomUpdates", ROOM_UPDATES_SQL, "U.updatedOn", "U.updateNumber", 6, 0);
+   static final PagedView ROOM_UPDATES_HOTEL = new PagedView("roomUpdatesHotel", ROOM_UPDATES_HOTEL_SQL, "U.updatedOn", "U.updateNumber", 6, 0);
+   static final PagedView REPAIR_HISTORY = new PagedView("repairHistory", REPAIR_HISTORY_SQL, "A.repairDate", "A.repairID", 4, 0);
+
+   /**
+    * @return every view the storage pages through
+    */
+   static List<PagedView> pagedViews() {
+      return Collections.unmodifiableList(PAGED_VIEWS);
+   }
+
+   private final Hotel _esql;
+   private final AuditWriter _audit;
+
+   /**
+    * @param esql the Hotel whose connection pool the statements run on
+    */
+   public JdbcStorage(Hotel esql) {
+      this._esql = esql;
+      this._audit = new AuditWriter(esql);
+      // the slow log is readable by every user; passwords stay out of it.
+      esql.metrics().redactParams(LOGIN_SQL);
+      esql.metrics().redactParams(CREATE_USER_SQL);
+   }
+
+   /**
+    * @return the writer of the RoomUpdatesLog entries
+    */
+   public AuditWriter audit() {
+      return this._audit;
+   }
+
+   public QueryResult user(int userID, String password) throws SQLException {
+      return password == null
+         ? this._esql.executeQueryAndReturnColumns(USER_SQL, userID)
+         : this._esql.executeQueryAndReturnColumns(LOGIN_SQL, userID, password);
+   }
+
+   public int createUser(String name, String password, String userType) throws SQLException {
+      return this._esql.getNewUserID(CREATE_USER_SQL, name, password, userType);
+   }
+
+   public QueryResult locatedHotels() throws SQLException {
+      return this._esql.executeQueryAndReturnColumns(LOCATED_HOTELS_SQL);
+   }
+
+   public QueryResult rooms(int hotelID) throws SQLException {
+      return this._esql.executeQueryAndReturnColumns(ROOMS_SQL, hotelID);
+   }
+
+   public QueryResult rooms(int[] hotelIDs) throws SQLException {
+      return this._esql.executeQueryAndReturnColumns(HOTELS_ROOMS_SQL, (Object) hotelIDs);
+   }
+
+   public boolean updateRoomPrice(int managerID, int hotelID, int roomNumber, int price) throws SQLException {
+      boolean updated = this._esql.executeUpdate(UPDATE_PRICE_SQL, price, hotelID, roomNumber) > 0;
+      if (updated)
+         this._audit.record(managerID, hotelID, roomNumber);
+      return updated;
+   }
+
+   public boolean updateRoomImage(int managerID, int hotelID, int roomNumber, String imageURL) throws SQLException {
+      boolean updated = this._esql.executeUpdate(UPDATE_IMAGE_SQL, imageURL, hotelID, roomNumber) > 0;
+      if (updated)
+         this._audit.record(managerID, hotelID, roomNumber);
+      return updated;
+   }
+
+   public QueryResult updateRoomPrices(int managerID, int hotelID, int[] roomNumbers, int price) throws SQLException {
+      QueryResult updated = this._esql.executeQueryAndReturnColumns(UPDATE_PRICES_SQL, price, hotelID, roomNumbers);
+      for (int r = 0; r < updated.rowCount(); ++r)
+         this._audit.record(managerID, hotelID, updated.getInt(r, 0));
+      return updated;
+   }
+
+   public QueryResult bookedRooms(int hotelID, Date date) throws SQLException {
+      return this._esql.executeQueryAndReturnColumns(BOOKED_ROOMS_SQL, hotelID, date);
+   }
+
+   public QueryResult bookedRooms(int[] hotelIDs, Date first, Date last) throws SQLException {
+      return this._esql.executeQueryAndReturnColumns(HOTELS_BOOKED_ROOMS_SQL, hotelIDs, first, last);
+   }
+
+   public QueryResult bookedNights(int hotelID, Date from) throws SQLException {
+      return this._esql.executeQueryAndReturnColumns(BOOKED_NIGHTS_SQL, hotelID, from);
+   }
+
+   public QueryResult book(int customerID, int hotelID, int roomNumber, Date date) throws SQLException {
+      QueryResult booked = this._esql.executeQueryAndReturnColumns(BOOK_SQL, customerID, hotelID, roomNumber, date);
+      if (!booked.isEmpty())
+         this._esql.wrote(customerID);
+      return booked;
+   }
+
+   public QueryResult bookStay(int customerID, int hotelID, int roomNumber, Date first, Date last) throws SQLException {
+      QueryResult booked = this._esql.executeQueryAndReturnColumns(BOOK_STAY_SQL, customerID, hotelID, roomNumber, first, last);
+      this._esql.wrote(customerID);
+      return booked;
+   }
+
+   public QueryResult bookingHistory(int hotelID, Date from, Date to) throws SQLException {
+      return from == null
+         ? this._esql.executeReadAndReturnColumns(-1, BOOKING_HISTORY_SQL, hotelID)
+         : this._esql.executeReadAndReturnColumns(-1, BOOKING_HISTORY_RANGE_SQL, hotelID, from, to);
+   }
+
+   /**
+    * Prints the booking history of a hotel to standard out through a
+    * cursor, without holding it in memory.
+    *
+    * @return the number of rows printed
+    */
+   public int printBookingHistory(int hotelID, Date from, Date to) throws SQLException {
+      return from == null
+         ? this._esql.executeReadAndStreamResult(-1, BOOKING_HISTORY_SQL, 0, 0, hotelID)
+         : this._esql.executeReadAndStreamResult(-1, BOOKING_HISTORY_RANGE_SQL, 0, 0, hotelID, from, to);
+   }
+
+   public QueryResult regularCustomers(int hotelID, int k, Date from, Date to) throws SQLException {
+      return from == null
+         ? this._esql.executeReadAndReturnColumns(-1, REGULAR_CUSTOMERS_SQL, hotelID, k)
+         : this._esql.executeReadAndReturnColumns(-1, REGULAR_CUSTOMERS_RANGE_SQL, hotelID, from, to, k);
+   }
+
+   public QueryResult placeRepairRequests(int managerID, int hotelID, int[] roomNumbers, int companyID) throws SQLException {
+      QueryResult repairs = this._esql.executeQueryAndReturnColumns(REPAIR_ROOMS_SQL, companyID, hotelID, roomNumbers, managerID);
+      this._esql.wrote(managerID);
+      return repairs;
+   }
+
+   public QueryResult placeRepairRequests(int managerID, int hotelID, int firstRoom, int lastRoom, int minPrice, int maxPrice, int companyID) throws SQLException {
+      QueryResult repairs = this._esql.executeQueryAndReturnColumns(REPAIR_ROOM_RANGE_SQL, companyID, hotelID, firstRoom, lastRoom, minPrice, maxPrice, managerID);
+      this._esql.wrote(managerID);
+      return repairs;
+   }
+
+   public QueryResult repairHistory(int managerID) throws SQLException {
+      return this._esql.executeReadAndReturnColumns(managerID, REPAIR_HISTORY_SQL, managerID);
+   }
+
+   public Pager customerBookingPages(int customerID, int pageSize) {
+      return CUSTOMER_BOOKINGS.pages(this._esql, customerID, pageSize, customerID);
+   }
+
+   public Pager bookingHistoryPages(int hotelID, Date from, Date to, int pageSize) {
+      if (from == null)
+         return BOOKING_HISTORY.pages(this._esql, -1, pageSize, hotelID);
+      return BOOKING_HISTORY_RANGE.pages(this._esql, -1, pageSize, hotelID, from, to);
+   }
+
+   public Pager roomUpdatePages(int[] hotelIDs, int pageSize) {
+      if (hotelIDs.length == 1)
+         return ROOM_UPDATES_HOTEL.pages(this._esql, -1, pageSize, hotelIDs[0]);
+      return ROOM_UPDATES.pages(this._esql, -1, pageSize, (Object) hotelIDs);
+   }
+
+   public Pager repairHistoryPages(int managerID, int pageSize) {
+      return REPAIR_HISTORY.pages(this._esql, managerID, pageSize, managerID);
+   }
+
+   /**
+    * Writes the queued RoomUpdatesLog entries; the pool stays open.
+    */
+   public void close() {
+      this._audit.close();
+   }
+
+}//end JdbcStorage
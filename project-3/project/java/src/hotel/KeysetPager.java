@@ -0,0 +1,160 @@
+package hotel;
+
+import java.sql.SQLException;
+
+/**
+ * Pages through a history newest first by seeking on a (date, id) key
+ * instead of skipping rows with OFFSET. Every page is read as "the
+ * pageSize rows just before (or after) the key of the page on screen", so
+ * with an index on (filter columns, date, id) page 1000 costs the same as
+ * page 1. Rows inserted or deleted meanwhile never shift a page.
+ *
+ * The key of the page on screen is bound back as it was read: timestamps
+ * are kept to the microsecond by QueryResult, so no row on the boundary is
+ * skipped or shown twice.
+ *
+ * The query is a SELECT whose WHERE clause holds the filter; the seek
+ * predicate is appended to it with AND. Pages are read like the other
+ * history views, from a replica when there is one (see ReplicaRouter).
+ *
+ */
+public class KeysetPager implements Pager {
+   private final Hotel _esql;
+   private final int _userID;
+   private final String _select;
+   private final String _dateKey;
+   private final String _idKey;
+   private final int _dateCol;
+   private final int _idCol;
+   private final Object[] _params;
+   private final int _pageSize;
+
+   private QueryResult _page;
+
+   /**
+    * @param userID the user whose writes the pages must show, -1 for none
+    * @param select the SELECT of the history, ending in its WHERE clause
+    * @param dateKey the SQL expression of the date part of the key
+    * @param idKey the SQL expression of the unique id part of the key
+    * @param dateCol the zero based result column holding dateKey
+    * @param idCol the zero based result column holding idKey
+    * @param pageSize rows per page
+    * @param params values for the '?' placeholders of select
+    */
+   public KeysetPager(Hotel esql, int userID, String select, String dateKey, String idKey, int dateCol, int idCol,
+                      int pageSize, Object... params) {
+      if (pageSize <= 0)
+         throw new IllegalArgumentException("page size must be positive");
+      this._esql = esql;
+      this._userID = userID;
+      this._select = select;
+      this._dateKey = dateKey;
+      this._idKey = idKey;
+      this._dateCol = dateCol;
+      this._idCol = idCol;
+      this._pageSize = pageSize;
+      this._params = params;
+   }//end KeysetPager
+
+   public int pageSize() {
+      return this._pageSize;
+   }
+
+   /**
+    * @return the page on screen, null before first() was called
+    */
+   public QueryResult page() {
+      return this._page;
+   }
+
+   /**
+    * @return the newest rows
+    */
+   public QueryResult first() throws SQLException {
+      this._page = read(firstSql(this._select, this._dateKey, this._idKey), append(this._pageSize));
+      return this._page;
+   }
+
+   /**
+    * Moves to the rows just older than the page on screen.
+    *
+    * @return the older rows, or an empty result at the end of the history,
+    * in which case the page on screen stays where it is
+    */
+   public QueryResult next() throws SQLException {
+      if (this._page == null)
+         return first();
+      if (this._page.isEmpty())
+         return this._page;
+      QueryResult older = read(nextSql(this._select, this._dateKey, this._idKey), seek(this._page.rowCount() - 1));
+      if (!older.isEmpty())
+         this._page = older;
+      return older;
+   }//end next
+
+   /**
+    * Moves to the rows just newer than the page on screen.
+    *
+    * @return the newer rows, or an empty result at the start of the history,
+    * in which case the page on screen stays where it is
+    */
+   public QueryResult previous() throws SQLException {
+      if (this._page == null)
+         return first();
+      if (this._page.isEmpty())
+         return this._page;
+      QueryResult newer = read(previousSql(this._select, this._dateKey, this._idKey, this._dateCol, this._idCol), seek(0));
+      if (newer.isEmpty())
+         return newer;
+      // a short page means we reached the newest rows; show a full first page.
+      if (newer.rowCount() < this._pageSize)
+         return first();
+      this._page = newer;
+      return newer;
+   }//end previous
+
+   /**
+    * @return the query of the newest page; its parameters are those of select, then the page size
+    */
+   static String firstSql(String select, String dateKey, String idKey) {
+      return select + " ORDER BY " + dateKey + " DESC, " + idKey + " DESC LIMIT ?";
+   }
+
+   /**
+    * @return the query of the page older than a key; its parameters are
+    * those of select, then the date and id of the key and the page size
+    */
+   static String nextSql(String select, String dateKey, String idKey) {
+      return select + " AND (" + dateKey + ", " + idKey + ") < (?, ?)" +
+         " ORDER BY " + dateKey + " DESC, " + idKey + " DESC LIMIT ?";
+   }
+
+   /**
+    * @return the query of the page newer than a key, with the parameters of nextSql
+    */
+   static String previousSql(String select, String dateKey, String idKey, int dateCol, int idCol) {
+      // read forwards from the key and turn the page around on the server.
+      return "SELECT * FROM (" + select + " AND (" + dateKey + ", " + idKey + ") > (?, ?)" +
+         " ORDER BY " + dateKey + " ASC, " + idKey + " ASC LIMIT ?) p" +
+         " ORDER BY " + (dateCol + 1) + " DESC, " + (idCol + 1) + " DESC";
+   }
+
+   /**
+    * @return the parameters of a seek from the key of a row of the page on screen
+    */
+   private Object[] seek(int row) {
+      return append(this._page.getObject(row, this._dateCol), this._page.getObject(row, this._idCol), this._pageSize);
+   }
+
+   private QueryResult read(String sql, Object[] params) throws SQLException {
+      return this._esql.executeReadAndReturnColumns(this._userID, sql, params);
+   }
+
+   private Object[] append(Object... values) {
+      Object[] all = new Object[this._params.length + values.length];
+      System.arraycopy(this._params, 0, all, 0, this._params.length);
+      System.arraycopy(values, 0, all, this._params.length, values.length);
+      return all;
+   }
+
+}//end KeysetPager
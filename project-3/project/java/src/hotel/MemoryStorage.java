@@ -0,0 +1,864 @@
+package hotel;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.sql.Date;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Supplier;
+
+import org.postgresql.util.PSQLException;
+import org.postgresql.util.ServerErrorMessage;
+
+/**
+ * A Storage that keeps every table in memory, loaded from the CSV files of
+ * data/ that sql/src/load_data.sql copies into Postgres. Rows are objects
+ * in hash indexes keyed by their int ids (IntMap): rooms by hotel and room
+ * number, bookings by hotel, room and day, and the histories by hotel,
+ * customer and manager, so every operation touches only the rows it needs.
+ *
+ * Nothing is written back to disk; changes are lost on exit. It is meant
+ * for demos and benchmarks without a database server, and to tell the cost
+ * of the Hotel logic from the cost of the round trips.
+ *
+ * One read/write lock guards all tables: reads run together, a write runs
+ * alone, which is also what makes a stay all or nothing.
+ *
+ */
+public class MemoryStorage implements Storage {
+   private static final String UNIQUE_VIOLATION = "23505";
+   private static final String FOREIGN_KEY_VIOLATION = "23503";
+
+   private static final class User {
+      final int userID;
+      final String name;
+      final String password;
+      final String userType;
+
+      User(int userID, String name, String password, String userType) {
+         this.userID = userID;
+         this.name = name;
+         this.password = password;
+         this.userType = userType;
+      }
+   }//end User
+
+   private static final class HotelRow {
+      final int hotelID;
+      final String hotelName;
+      final BigDecimal latitude;
+      final BigDecimal longitude;
+      final int managerID;
+
+      HotelRow(int hotelID, String hotelName, BigDecimal latitude, BigDecimal longitude, int managerID) {
+         this.hotelID = hotelID;
+         this.hotelName = hotelName;
+         this.latitude = latitude;
+         this.longitude = longitude;
+         this.managerID = managerID;
+      }
+   }//end HotelRow
+
+   private static final class Room {
+      final int hotelID;
+      final int roomNumber;
+      int price;
+      String imageURL;
+
+      Room(int hotelID, int roomNumber, int price, String imageURL) {
+         this.hotelID = hotelID;
+         this.roomNumber = roomNumber;
+         this.price = price;
+         this.imageURL = imageURL;
+      }
+   }//end Room
+
+   // a booking or a repair: an id, a room and a day.
+   private static final class Booking {
+      final int id;
+      final int userID;
+      final int hotelID;
+      final int roomNumber;
+      final int day;
+
+      Booking(int id, int userID, int hotelID, int roomNumber, int day) {
+         this.id = id;
+         this.userID = userID;
+         this.hotelID = hotelID;
+         this.roomNumber = roomNumber;
+         this.day = day;
+      }
+   }//end Booking
+
+   private static final class Update {
+      final int updateNumber;
+      final int managerID;
+      final int hotelID;
+      final int roomNumber;
+      final long updatedOn;
+
+      Update(int updateNumber, int managerID, int hotelID, int roomNumber, long updatedOn) {
+         this.updateNumber = updateNumber;
+         this.managerID = managerID;
+         this.hotelID = hotelID;
+         this.roomNumber = roomNumber;
+         this.updatedOn = updatedOn;
+      }
+   }//end Update
+
+   // newest first, like the ORDER BY of KeysetPager.
+   private static final Comparator<Booking> NEWEST_BOOKING_FIRST =
+      Comparator.comparingInt((Booking b) -> b.day).thenComparingInt(b -> b.id).reversed();
+   private static final Comparator<Update> NEWEST_UPDATE_FIRST =
+      Comparator.comparingLong((Update u) -> u.updatedOn).thenComparingInt(u -> u.updateNumber).reversed();
+
+   private final ReadWriteLock _lock = new ReentrantReadWriteLock();
+
+   private final IntMap<User> _users = new IntMap<User>();
+   private final IntMap<HotelRow> _hotels = new IntMap<HotelRow>();
+   // sorted hotelIDs per manager.
+   private final IntMap<int[]> _hotelsByManager = new IntMap<int[]>();
+   // hotelID -> roomNumber -> room.
+   private final IntMap<IntMap<Room>> _rooms = new IntMap<IntMap<Room>>();
+   private final IntMap<String> _companies = new IntMap<String>();
+   // hotelID -> roomNumber -> epoch day -> booking, the booking_unique_slot of memory.
+   private final IntMap<IntMap<IntMap<Booking>>> _slots = new IntMap<IntMap<IntMap<Booking>>>();
+   private final IntMap<List<Booking>> _bookingsByHotel = new IntMap<List<Booking>>();
+   private final IntMap<List<Booking>> _bookingsByCustomer = new IntMap<List<Booking>>();
+   // repairs are Bookings whose userID is the companyID.
+   private final IntMap<Booking> _repairs = new IntMap<Booking>();
+   private final IntMap<List<Booking>> _repairsByManager = new IntMap<List<Booking>>();
+   private final IntMap<List<Update>> _updatesByHotel = new IntMap<List<Update>>();
+
+   // the next value of every serial column.
+   private int _nextUserID = 1;
+   private int _nextBookingID = 1;
+   private int _nextRepairID = 1;
+   private int _nextUpdateNumber = 1;
+
+   private MemoryStorage() {
+   }
+
+   /**
+    * Reads users, hotels, rooms, company, bookings, roomRepairs,
+    * roomRepairRequests and roomUpdatesLog from the CSV files of a directory.
+    *
+    * @param dir the directory holding the files, usually data/
+    * @throws java.io.IOException when a file is missing, malformed or refers to a row that does not exist
+    */
+   public static MemoryStorage load(File dir) throws IOException {
+      MemoryStorage s = new MemoryStorage();
+      for (String[] f : readCsv(new File(dir, "users.csv"))) {
+         int userID = Integer.parseInt(f[0]);
+         s._users.put(userID, new User(userID, f[1], f[2], f[3]));
+         s._nextUserID = Math.max(s._nextUserID, userID + 1);
+      }
+      IntMap<List<Integer>> managed = new IntMap<List<Integer>>();
+      for (String[] f : readCsv(new File(dir, "hotels.csv"))) {
+         int hotelID = Integer.parseInt(f[0]);
+         int managerID = Integer.parseInt(f[5]);
+         s._hotels.put(hotelID, new HotelRow(hotelID, f[1], decimal(f[2]), decimal(f[3]), managerID));
+         s._rooms.put(hotelID, new IntMap<Room>());
+         List<Integer> hotels = managed.get(managerID);
+         if (hotels == null)
+            managed.put(managerID, hotels = new ArrayList<Integer>());
+         hotels.add(hotelID);
+      }
+      for (int managerID : managed.keys()) {
+         int[] hotels = managed.get(managerID).stream().mapToInt(Integer::intValue).toArray();
+         Arrays.sort(hotels);
+         s._hotelsByManager.put(managerID, hotels);
+      }
+      for (String[] f : readCsv(new File(dir, "rooms.csv"))) {
+         IntMap<Room> rooms = s.require(s._rooms.get(Integer.parseInt(f[0])), "rooms.csv", "hotel " + f[0]);
+         int roomNumber = Integer.parseInt(f[1]);
+         rooms.put(roomNumber, new Room(Integer.parseInt(f[0]), roomNumber, Integer.parseInt(f[2]), f[3]));
+      }
+      for (String[] f : readCsv(new File(dir, "company.csv")))
+         s._companies.put(Integer.parseInt(f[0]), f[1]);
+      for (String[] f : readCsv(new File(dir, "bookings.csv"))) {
+         Booking b = new Booking(Integer.parseInt(f[0]), Integer.parseInt(f[1]), Integer.parseInt(f[2]), Integer.parseInt(f[3]), epochDay(f[4]));
+         s.require(s._users.get(b.userID), "bookings.csv", "user " + b.userID);
+         s.require(s.room(b.hotelID, b.roomNumber), "bookings.csv", "room " + b.roomNumber + " of hotel " + b.hotelID);
+         if (s.slot(b.hotelID, b.roomNumber, b.day) != null)
+            throw new IOException("bookings.csv: room " + b.roomNumber + " of hotel " + b.hotelID + " is booked twice on " + f[4]);
+         s.addBooking(b);
+         s._nextBookingID = Math.max(s._nextBookingID, b.id + 1);
+      }
+      for (String[] f : readCsv(new File(dir, "roomRepairs.csv"))) {
+         Booking r = new Booking(Integer.parseInt(f[0]), Integer.parseInt(f[1]), Integer.parseInt(f[2]), Integer.parseInt(f[3]), epochDay(f[4]));
+         s.require(s._companies.get(r.userID), "roomRepairs.csv", "company " + r.userID);
+         s.require(s.room(r.hotelID, r.roomNumber), "roomRepairs.csv", "room " + r.roomNumber + " of hotel " + r.hotelID);
+         s._repairs.put(r.id, r);
+         s._nextRepairID = Math.max(s._nextRepairID, r.id + 1);
+      }
+      for (String[] f : readCsv(new File(dir, "roomRepairRequests.csv"))) {
+         int managerID = Integer.parseInt(f[1]);
+         s.require(s._users.get(managerID), "roomRepairRequests.csv", "user " + managerID);
+         s.addRequest(managerID, s.require(s._repairs.get(Integer.parseInt(f[2])), "roomRepairRequests.csv", "repair " + f[2]));
+      }
+      for (String[] f : readCsv(new File(dir, "roomUpdatesLog.csv"))) {
+         Update u = new Update(Integer.parseInt(f[0]), Integer.parseInt(f[1]), Integer.parseInt(f[2]), Integer.parseInt(f[3]), Timestamp.valueOf(f[4]).getTime());
+         s.require(s._users.get(u.managerID), "roomUpdatesLog.csv", "user " + u.managerID);
+         s.require(s.room(u.hotelID, u.roomNumber), "roomUpdatesLog.csv", "room " + u.roomNumber + " of hotel " + u.hotelID);
+         s.addUpdate(u);
+         s._nextUpdateNumber = Math.max(s._nextUpdateNumber, u.updateNumber + 1);
+      }
+      return s;
+   }//end load
+
+   /**
+    * @return the fields of every line after the header, empty fields as null
+    */
+   private static List<String[]> readCsv(File file) throws IOException {
+      List<String[]> lines = new ArrayList<String[]>();
+      try (BufferedReader in = new BufferedReader(new FileReader(file))) {
+         String line = in.readLine();
+         int n = 1;
+         while ((line = in.readLine()) != null) {
+            ++n;
+            if (line.trim().isEmpty())
+               continue;
+            String[] fields = line.split(",", -1);
+            for (int i = 0; i < fields.length; ++i) {
+               fields[i] = fields[i].trim();
+               if (fields[i].isEmpty())
+                  fields[i] = null;
+            }
+            if (fields[0] == null)
+               throw new IOException(file.getName() + ":" + n + ": no key");
+            lines.add(fields);
+         }
+      }
+      return lines;
+   }//end readCsv
+
+   private <T> T require(T row, String file, String what) throws IOException {
+      if (row == null)
+         throw new IOException(file + ": refers to " + what + ", which does not exist");
+      return row;
+   }
+
+   private static BigDecimal decimal(String field) {
+      return field == null ? null : new BigDecimal(field);
+   }
+
+   // dates are M/D/YYYY in data/, as Postgres reads them with DateStyle MDY.
+   private static int epochDay(String field) {
+      String[] mdy = field.split("/");
+      if (mdy.length != 3)
+         return (int) LocalDate.parse(field).toEpochDay();
+      return (int) LocalDate.of(Integer.parseInt(mdy[2]), Integer.parseInt(mdy[0]), Integer.parseInt(mdy[1])).toEpochDay();
+   }
+
+   private static int monthOf(int epochDay) {
+      return (int) LocalDate.ofEpochDay(epochDay).withDayOfMonth(1).toEpochDay();
+   }
+
+   /**
+    * @param columns the lower case column names, separated by commas
+    */
+   private static QueryResult result(String columns, int... sqlTypes) {
+      return QueryResult.empty(columns.split(", "), sqlTypes);
+   }
+
+   /**
+    * @return the error Postgres reports for a foreign key, with the
+    * constraint named the way Postgres names it by default
+    */
+   private static SQLException missing(String table, String key, String value, String referenced) {
+      String constraint = table + "_" + key.replace(", ", "_") + "_fkey";
+      // the fields of an ErrorResponse, each a type byte and a NUL terminated value.
+      return new PSQLException(new ServerErrorMessage(
+         "SERROR\0C" + FOREIGN_KEY_VIOLATION +
+         "\0Minsert or update on table \"" + table + "\" violates foreign key constraint \"" + constraint + "\"" +
+         "\0DKey (" + key + ")=(" + value + ") is not present in table \"" + referenced + "\"." +
+         "\0t" + table + "\0n" + constraint + "\0"));
+   }
+
+   private Room room(int hotelID, int roomNumber) {
+      IntMap<Room> rooms = this._rooms.get(hotelID);
+      return rooms == null ? null : rooms.get(roomNumber);
+   }
+
+   private Booking slot(int hotelID, int roomNumber, int day) {
+      IntMap<IntMap<Booking>> rooms = this._slots.get(hotelID);
+      IntMap<Booking> days = rooms == null ? null : rooms.get(roomNumber);
+      return days == null ? null : days.get(day);
+   }
+
+   private static <T> List<T> listOf(IntMap<List<T>> index, int key) {
+      List<T> list = index.get(key);
+      if (list == null)
+         index.put(key, list = new ArrayList<T>());
+      return list;
+   }
+
+   private void addBooking(Booking b) {
+      IntMap<IntMap<Booking>> rooms = this._slots.get(b.hotelID);
+      if (rooms == null)
+         this._slots.put(b.hotelID, rooms = new IntMap<IntMap<Booking>>());
+      IntMap<Booking> days = rooms.get(b.roomNumber);
+      if (days == null)
+         rooms.put(b.roomNumber, days = new IntMap<Booking>());
+      days.put(b.day, b);
+      listOf(this._bookingsByHotel, b.hotelID).add(b);
+      listOf(this._bookingsByCustomer, b.userID).add(b);
+   }//end addBooking
+
+   private void addRequest(int managerID, Booking repair) {
+      listOf(this._repairsByManager, managerID).add(repair);
+   }
+
+   private void addUpdate(Update u) {
+      listOf(this._updatesByHotel, u.hotelID).add(u);
+   }
+
+   private void logUpdate(int managerID, int hotelID, int roomNumber) {
+      addUpdate(new Update(this._nextUpdateNumber++, managerID, hotelID, roomNumber, System.currentTimeMillis()));
+   }
+
+   /*
+    * Users
+    **/
+
+   public QueryResult user(int userID, String password) {
+      this._lock.readLock().lock();
+      try {
+         QueryResult rows = result("usertype, hotelid", Types.CHAR, Types.INTEGER);
+         User u = this._users.get(userID);
+         if (u == null || (password != null && !password.equals(u.password)))
+            return rows;
+         int[] hotels = this._hotelsByManager.get(userID);
+         if (hotels == null) {
+            rows.add(u.userType, null);
+         } else {
+            for (int hotelID : hotels)
+               rows.add(u.userType, hotelID);
+         }
+         return rows;
+      } finally {
+         this._lock.readLock().unlock();
+      }
+   }//end user
+
+   public int createUser(String name, String password, String userType) {
+      this._lock.writeLock().lock();
+      try {
+         int userID = this._nextUserID++;
+         this._users.put(userID, new User(userID, name, password, userType));
+         return userID;
+      } finally {
+         this._lock.writeLock().unlock();
+      }
+   }//end createUser
+
+   /*
+    * Hotels and rooms
+    **/
+
+   public QueryResult locatedHotels() {
+      this._lock.readLock().lock();
+      try {
+         QueryResult rows = result("hotelid, hotelname, latitude, longitude", Types.INTEGER, Types.CHAR, Types.DECIMAL, Types.DECIMAL);
+         for (int hotelID : this._hotels.keys()) {
+            HotelRow h = this._hotels.get(hotelID);
+            if (h.latitude != null && h.longitude != null)
+               rows.add(h.hotelID, h.hotelName, h.latitude, h.longitude);
+         }
+         return rows;
+      } finally {
+         this._lock.readLock().unlock();
+      }
+   }//end locatedHotels
+
+   public QueryResult rooms(int hotelID) {
+      this._lock.readLock().lock();
+      try {
+         QueryResult rows = result("roomnumber, price, imageurl", Types.INTEGER, Types.INTEGER, Types.CHAR);
+         IntMap<Room> rooms = this._rooms.get(hotelID);
+         if (rooms == null)
+            return rows;
+         for (int roomNumber : rooms.keys()) {
+            Room r = rooms.get(roomNumber);
+            rows.add(r.roomNumber, r.price, r.imageURL);
+         }
+         return rows;
+      } finally {
+         this._lock.readLock().unlock();
+      }
+   }//end rooms
+
+   public QueryResult rooms(int[] hotelIDs) {
+      this._lock.readLock().lock();
+      try {
+         QueryResult rows = result("roomnumber, price, imageurl, hotelid", Types.INTEGER, Types.INTEGER, Types.CHAR, Types.INTEGER);
+         for (int hotelID : Arrays.stream(hotelIDs).distinct().sorted().toArray()) {
+            IntMap<Room> rooms = this._rooms.get(hotelID);
+            if (rooms == null)
+               continue;
+            for (int roomNumber : rooms.keys()) {
+               Room r = rooms.get(roomNumber);
+               rows.add(r.roomNumber, r.price, r.imageURL, hotelID);
+            }
+         }
+         return rows;
+      } finally {
+         this._lock.readLock().unlock();
+      }
+   }//end rooms
+
+   public boolean updateRoomPrice(int managerID, int hotelID, int roomNumber, int price) {
+      this._lock.writeLock().lock();
+      try {
+         Room r = room(hotelID, roomNumber);
+         if (r == null)
+            return false;
+         r.price = price;
+         logUpdate(managerID, hotelID, roomNumber);
+         return true;
+      } finally {
+         this._lock.writeLock().unlock();
+      }
+   }//end updateRoomPrice
+
+   public boolean updateRoomImage(int managerID, int hotelID, int roomNumber, String imageURL) {
+      this._lock.writeLock().lock();
+      try {
+         Room r = room(hotelID, roomNumber);
+         if (r == null)
+            return false;
+         r.imageURL = imageURL;
+         logUpdate(managerID, hotelID, roomNumber);
+         return true;
+      } finally {
+         this._lock.writeLock().unlock();
+      }
+   }//end updateRoomImage
+
+   public QueryResult updateRoomPrices(int managerID, int hotelID, int[] roomNumbers, int price) {
+      this._lock.writeLock().lock();
+      try {
+         QueryResult updated = result("roomnumber", Types.INTEGER);
+         // a room listed twice is updated once, as with = ANY(?).
+         int[] distinct = Arrays.stream(roomNumbers).distinct().sorted().toArray();
+         for (int roomNumber : distinct) {
+            Room r = room(hotelID, roomNumber);
+            if (r == null)
+               continue;
+            r.price = price;
+            logUpdate(managerID, hotelID, roomNumber);
+            updated.add(roomNumber);
+         }
+         return updated;
+      } finally {
+         this._lock.writeLock().unlock();
+      }
+   }//end updateRoomPrices
+
+   /*
+    * Bookings
+    **/
+
+   public QueryResult bookedRooms(int hotelID, Date date) {
+      this._lock.readLock().lock();
+      try {
+         QueryResult rows = result("roomnumber", Types.INTEGER);
+         IntMap<IntMap<Booking>> rooms = this._slots.get(hotelID);
+         if (rooms == null)
+            return rows;
+         int day = QueryResult.toEpochDay(date);
+         for (int roomNumber : rooms.keys()) {
+            if (rooms.get(roomNumber).get(day) != null)
+               rows.add(roomNumber);
+         }
+         return rows;
+      } finally {
+         this._lock.readLock().unlock();
+      }
+   }//end bookedRooms
+
+   public QueryResult bookedRooms(int[] hotelIDs, Date first, Date last) {
+      this._lock.readLock().lock();
+      try {
+         QueryResult rows = result("hotelid, roomnumber", Types.INTEGER, Types.INTEGER);
+         int from = QueryResult.toEpochDay(first);
+         int to = QueryResult.toEpochDay(last);
+         for (int hotelID : Arrays.stream(hotelIDs).distinct().sorted().toArray()) {
+            IntMap<IntMap<Booking>> rooms = this._slots.get(hotelID);
+            if (rooms == null)
+               continue;
+            for (int roomNumber : rooms.keys()) {
+               IntMap<Booking> days = rooms.get(roomNumber);
+               for (int day = from; day <= to; ++day) {
+                  if (days.get(day) != null) {
+                     rows.add(hotelID, roomNumber);
+                     break;
+                  }
+               }
+            }
+         }
+         return rows;
+      } finally {
+         this._lock.readLock().unlock();
+      }
+   }//end bookedRooms
+
+   public QueryResult bookedNights(int hotelID, Date from) {
+      this._lock.readLock().lock();
+      try {
+         QueryResult rows = result("roomnumber, bookingdate", Types.INTEGER, Types.DATE);
+         IntMap<IntMap<Booking>> rooms = this._slots.get(hotelID);
+         if (rooms == null)
+            return rows;
+         int first = QueryResult.toEpochDay(from);
+         for (int roomNumber : rooms.keys()) {
+            for (int day : rooms.get(roomNumber).keys())
+               if (day >= first)
+                  rows.add(roomNumber, QueryResult.toDate(day));
+         }
+         return rows;
+      } finally {
+         this._lock.readLock().unlock();
+      }
+   }//end bookedNights
+
+   /**
+    * @throws java.sql.SQLException when the room or the customer does not exist
+    */
+   private void checkBooking(int customerID, int hotelID, int roomNumber) throws SQLException {
+      if (room(hotelID, roomNumber) == null)
+         throw missing("roombookings", "hotelid, roomnumber", hotelID + ", " + roomNumber, "rooms");
+      if (this._users.get(customerID) == null)
+         throw missing("roombookings", "customerid", Integer.toString(customerID), "users");
+   }
+
+   public QueryResult book(int customerID, int hotelID, int roomNumber, Date date) throws SQLException {
+      this._lock.writeLock().lock();
+      try {
+         QueryResult rows = result("bookingid", Types.INTEGER);
+         int day = QueryResult.toEpochDay(date);
+         // a taken slot wins over a missing row, as with ON CONFLICT DO NOTHING.
+         if (slot(hotelID, roomNumber, day) != null)
+            return rows;
+         checkBooking(customerID, hotelID, roomNumber);
+         Booking b = new Booking(this._nextBookingID++, customerID, hotelID, roomNumber, day);
+         addBooking(b);
+         rows.add(b.id);
+         return rows;
+      } finally {
+         this._lock.writeLock().unlock();
+      }
+   }//end book
+
+   public QueryResult bookStay(int customerID, int hotelID, int roomNumber, Date first, Date last) throws SQLException {
+      this._lock.writeLock().lock();
+      try {
+         QueryResult rows = result("min, count", Types.INTEGER, Types.BIGINT);
+         int from = QueryResult.toEpochDay(first);
+         int to = QueryResult.toEpochDay(last);
+         if (to < from) {
+            rows.add(null, 0L);
+            return rows;
+         }
+         checkBooking(customerID, hotelID, roomNumber);
+         for (int day = from; day <= to; ++day) {
+            if (slot(hotelID, roomNumber, day) != null)
+               throw new SQLException("ERROR: duplicate key value violates unique constraint \"booking_unique_slot\"\n" +
+                                      "  Detail: Key (hotelid, roomnumber, bookingdate)=(" + hotelID + ", " + roomNumber + ", " + QueryResult.toDate(day) + ") already exists.",
+                                      UNIQUE_VIOLATION);
+         }
+         int firstID = this._nextBookingID;
+         for (int day = from; day <= to; ++day)
+            addBooking(new Booking(this._nextBookingID++, customerID, hotelID, roomNumber, day));
+         rows.add(firstID, (long) (to - from + 1));
+         return rows;
+      } finally {
+         this._lock.writeLock().unlock();
+      }
+   }//end bookStay
+
+   /**
+    * @return the bookings of the hotel in the window, newest first
+    */
+   private List<Booking> bookingsOf(int hotelID, Date from, Date to) {
+      List<Booking> bookings = new ArrayList<Booking>();
+      List<Booking> all = this._bookingsByHotel.get(hotelID);
+      if (all == null)
+         return bookings;
+      int first = from == null ? Integer.MIN_VALUE : QueryResult.toEpochDay(from);
+      int last = from == null ? Integer.MAX_VALUE : QueryResult.toEpochDay(to);
+      for (Booking b : all) {
+         if (b.day >= first && b.day <= last && this._users.get(b.userID) != null)
+            bookings.add(b);
+      }
+      bookings.sort(NEWEST_BOOKING_FIRST);
+      return bookings;
+   }//end bookingsOf
+
+   private QueryResult bookingRows(List<Booking> bookings) {
+      QueryResult rows = result("bookingid, name, hotelid, roomnumber, bookingdate", Types.INTEGER, Types.CHAR, Types.INTEGER, Types.INTEGER, Types.DATE);
+      for (Booking b : bookings)
+         rows.add(b.id, this._users.get(b.userID).name, b.hotelID, b.roomNumber, QueryResult.toDate(b.day));
+      return rows;
+   }
+
+   public QueryResult bookingHistory(int hotelID, Date from, Date to) {
+      this._lock.readLock().lock();
+      try {
+         return bookingRows(bookingsOf(hotelID, from, to));
+      } finally {
+         this._lock.readLock().unlock();
+      }
+   }
+
+   public QueryResult regularCustomers(int hotelID, int k, Date from, Date to) {
+      this._lock.readLock().lock();
+      try {
+         // count per customer, over whole months like CustomerBookingCounts.
+         int first = from == null ? Integer.MIN_VALUE : monthOf(QueryResult.toEpochDay(from));
+         int last = from == null ? Integer.MAX_VALUE : QueryResult.toEpochDay(to);
+         IntMap<int[]> counts = new IntMap<int[]>();
+         List<Booking> all = this._bookingsByHotel.get(hotelID);
+         if (all != null) {
+            for (Booking b : all) {
+               int month = monthOf(b.day);
+               if (month < first || month > last || this._users.get(b.userID) == null)
+                  continue;
+               int[] count = counts.get(b.userID);
+               if (count == null)
+                  counts.put(b.userID, count = new int[1]);
+               ++count[0];
+            }
+         }
+         int[] customers = counts.keys();
+         Integer[] order = new Integer[customers.length];
+         for (int i = 0; i < order.length; ++i)
+            order[i] = i;
+         Arrays.sort(order, (a, b) -> counts.get(customers[a])[0] != counts.get(customers[b])[0]
+                                      ? Integer.compare(counts.get(customers[b])[0], counts.get(customers[a])[0])
+                                      : Integer.compare(customers[a], customers[b]));
+         QueryResult rows = result("customerid, name, bookings", Types.INTEGER, Types.CHAR, Types.BIGINT);
+         for (int i = 0; i < Math.min(k, order.length); ++i) {
+            int customerID = customers[order[i]];
+            rows.add(customerID, this._users.get(customerID).name, (long) counts.get(customerID)[0]);
+         }
+         return rows;
+      } finally {
+         this._lock.readLock().unlock();
+      }
+   }//end regularCustomers
+
+   /*
+    * Repairs
+    **/
+
+   /**
+    * Places a repair of each room, in room order, and the request for it.
+    */
+   private QueryResult placeRepairs(int managerID, int companyID, List<Room> rooms) throws SQLException {
+      QueryResult repairs = result("repairid, roomnumber", Types.INTEGER, Types.INTEGER);
+      if (rooms.isEmpty())
+         return repairs;
+      if (this._companies.get(companyID) == null)
+         throw missing("roomrepairs", "companyid", Integer.toString(companyID), "maintenancecompany");
+      if (this._users.get(managerID) == null)
+         throw missing("roomrepairrequests", "managerid", Integer.toString(managerID), "users");
+      int today = (int) LocalDate.now().toEpochDay();
+      for (Room r : rooms) {
+         Booking repair = new Booking(this._nextRepairID++, companyID, r.hotelID, r.roomNumber, today);
+         this._repairs.put(repair.id, repair);
+         addRequest(managerID, repair);
+         repairs.add(repair.id, repair.roomNumber);
+      }
+      return repairs;
+   }//end placeRepairs
+
+   public QueryResult placeRepairRequests(int managerID, int hotelID, int[] roomNumbers, int companyID) throws SQLException {
+      this._lock.writeLock().lock();
+      try {
+         List<Room> rooms = new ArrayList<Room>();
+         for (int roomNumber : Arrays.stream(roomNumbers).distinct().sorted().toArray()) {
+            Room r = room(hotelID, roomNumber);
+            if (r != null)
+               rooms.add(r);
+         }
+         return placeRepairs(managerID, companyID, rooms);
+      } finally {
+         this._lock.writeLock().unlock();
+      }
+   }//end placeRepairRequests
+
+   public QueryResult placeRepairRequests(int managerID, int hotelID, int firstRoom, int lastRoom, int minPrice, int maxPrice, int companyID) throws SQLException {
+      this._lock.writeLock().lock();
+      try {
+         List<Room> rooms = new ArrayList<Room>();
+         IntMap<Room> all = this._rooms.get(hotelID);
+         if (all != null) {
+            for (int roomNumber : all.keys()) {
+               Room r = all.get(roomNumber);
+               if (roomNumber >= firstRoom && roomNumber <= lastRoom && r.price >= minPrice && r.price <= maxPrice)
+                  rooms.add(r);
+            }
+         }
+         return placeRepairs(managerID, companyID, rooms);
+      } finally {
+         this._lock.writeLock().unlock();
+      }
+   }//end placeRepairRequests
+
+   /**
+    * @return the repairs the manager requested, newest first
+    */
+   private QueryResult repairRows(int managerID) {
+      QueryResult rows = result("repairid, companyid, hotelid, roomnumber, repairdate", Types.INTEGER, Types.INTEGER, Types.INTEGER, Types.INTEGER, Types.DATE);
+      List<Booking> repairs = this._repairsByManager.get(managerID);
+      if (repairs == null)
+         return rows;
+      repairs = new ArrayList<Booking>(repairs);
+      repairs.sort(NEWEST_BOOKING_FIRST);
+      for (Booking r : repairs)
+         rows.add(r.id, r.userID, r.hotelID, r.roomNumber, QueryResult.toDate(r.day));
+      return rows;
+   }//end repairRows
+
+   public QueryResult repairHistory(int managerID) {
+      this._lock.readLock().lock();
+      try {
+         return repairRows(managerID);
+      } finally {
+         this._lock.readLock().unlock();
+      }
+   }
+
+   /*
+    * Histories, newest first
+    **/
+
+   /**
+    * Pages over a snapshot of a whole history, taken by first(). Later
+    * changes show up on the next call to first(), or when previous() runs
+    * into the newest rows, like the short page case of KeysetPager.
+    */
+   private final class SnapshotPager implements Pager {
+      private final Supplier<QueryResult> _history;
+      private final int _pageSize;
+      private QueryResult _rows;
+      private int _offset;
+      private QueryResult _page;
+
+      SnapshotPager(Supplier<QueryResult> history, int pageSize) {
+         if (pageSize <= 0)
+            throw new IllegalArgumentException("page size must be positive");
+         this._history = history;
+         this._pageSize = pageSize;
+      }
+
+      public int pageSize() {
+         return this._pageSize;
+      }
+
+      public QueryResult page() {
+         return this._page;
+      }
+
+      public QueryResult first() {
+         _lock.readLock().lock();
+         try {
+            this._rows = this._history.get();
+         } finally {
+            _lock.readLock().unlock();
+         }
+         this._offset = 0;
+         this._page = this._rows.slice(0, Math.min(this._pageSize, this._rows.rowCount()));
+         return this._page;
+      }
+
+      public QueryResult next() {
+         if (this._page == null)
+            return first();
+         if (this._page.isEmpty())
+            return this._page;
+         int from = this._offset + this._page.rowCount();
+         if (from >= this._rows.rowCount())
+            return this._rows.slice(from, from);
+         this._offset = from;
+         this._page = this._rows.slice(from, Math.min(from + this._pageSize, this._rows.rowCount()));
+         return this._page;
+      }
+
+      public QueryResult previous() {
+         if (this._page == null)
+            return first();
+         if (this._page.isEmpty())
+            return this._page;
+         if (this._offset == 0)
+            return this._rows.slice(0, 0);
+         if (this._offset <= this._pageSize)
+            return first();
+         this._offset -= this._pageSize;
+         this._page = this._rows.slice(this._offset, this._offset + this._pageSize);
+         return this._page;
+      }
+   }//end SnapshotPager
+
+   public Pager customerBookingPages(final int customerID, int pageSize) {
+      return new SnapshotPager(() -> {
+         QueryResult rows = result("bookingid, hotelid, roomnumber, bookingdate", Types.INTEGER, Types.INTEGER, Types.INTEGER, Types.DATE);
+         List<Booking> bookings = this._bookingsByCustomer.get(customerID);
+         if (bookings == null)
+            return rows;
+         bookings = new ArrayList<Booking>(bookings);
+         bookings.sort(NEWEST_BOOKING_FIRST);
+         for (Booking b : bookings)
+            rows.add(b.id, b.hotelID, b.roomNumber, QueryResult.toDate(b.day));
+         return rows;
+      }, pageSize);
+   }//end customerBookingPages
+
+   public Pager bookingHistoryPages(final int hotelID, final Date from, final Date to, int pageSize) {
+      return new SnapshotPager(() -> bookingRows(bookingsOf(hotelID, from, to)), pageSize);
+   }
+
+   public Pager roomUpdatePages(final int[] hotelIDs, int pageSize) {
+      return new SnapshotPager(() -> {
+         List<Update> updates = new ArrayList<Update>();
+         for (int hotelID : Arrays.stream(hotelIDs).distinct().toArray()) {
+            List<Update> of = this._updatesByHotel.get(hotelID);
+            if (of != null)
+               updates.addAll(of);
+         }
+         updates.sort(NEWEST_UPDATE_FIRST);
+         QueryResult rows = result("updatenumber, hotelname, hotelid, roomnumber, price, imageurl, updatedon",
+                                   Types.INTEGER, Types.CHAR, Types.INTEGER, Types.INTEGER, Types.INTEGER, Types.CHAR, Types.TIMESTAMP);
+         for (Update u : updates) {
+            Room r = room(u.hotelID, u.roomNumber);
+            if (r != null)
+               rows.add(u.updateNumber, this._hotels.get(u.hotelID).hotelName, u.hotelID, u.roomNumber, r.price, r.imageURL, new Timestamp(u.updatedOn));
+         }
+         return rows;
+      }, pageSize);
+   }//end roomUpdatePages
+
+   public Pager repairHistoryPages(final int managerID, int pageSize) {
+      return new SnapshotPager(() -> repairRows(managerID), pageSize);
+   }
+
+   /**
+    * Nothing is pending; the tables stay readable.
+    */
+   public void close() {
+   }
+
+}//end MemoryStorage
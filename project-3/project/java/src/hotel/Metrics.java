@@ -0,0 +1,357 @@
+package hotel;
+
+import java.lang.management.ManagementFactory;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.regex.Pattern;
+
+import javax.management.ObjectName;
+
+/**
+ * Latency, row and error statistics of a Hotel instance, kept per operation
+ * (viewHotels, bookRooms, ...) and per SQL template. Latencies go into
+ * fixed log-linear histograms updated with a single atomic increment, so
+ * recording costs about as much as reading the clock and no samples are
+ * kept.
+ *
+ * Statements slower than the slow query threshold are also kept, with
+ * their parameters, in a ring of the last SLOW_LOG_SIZE ones; the
+ * parameters of templates marked with redactParams, those binding a
+ * password, are logged as [REDACTED]. Everything is readable as text
+ * through getReport() and getSlowQueries(), from the menu and over JMX.
+ *
+ */
+public class Metrics implements MetricsMBean {
+   public static final long DEFAULT_SLOW_QUERY_MILLIS = 200;
+   public static final int SLOW_LOG_SIZE = 100;
+   // distinct SQL templates tracked before the rest is counted together.
+   public static final int MAX_TEMPLATES = 1000;
+   private static final String OTHER_TEMPLATES = "(other)";
+   private static final int REPORT_NAME_WIDTH = 60;
+   private static final String REDACTED = "[REDACTED]";
+   // literals of SQL built by concatenation, replaced to find its template.
+   private static final Pattern LITERAL = Pattern.compile("'(?:[^']|'')*'|\\b\\d+(?:\\.\\d+)?\\b");
+
+   /**
+    * A latency histogram with 8 buckets per power of two, so any percentile
+    * is reported within 12.5% of the true value.
+    */
+   public static final class Histogram {
+      private static final int SUB_BITS = 3;
+      private static final int SUB_BUCKETS = 1 << SUB_BITS;
+      private static final int BUCKETS = (64 - SUB_BITS + 1) * SUB_BUCKETS;
+
+      private final AtomicLongArray _counts = new AtomicLongArray(BUCKETS);
+      private final AtomicLong _count = new AtomicLong();
+      private final AtomicLong _max = new AtomicLong();
+
+      public void record(long nanos) {
+         if (nanos < 0)
+            nanos = 0;
+         this._counts.incrementAndGet(bucketOf(nanos));
+         this._count.incrementAndGet();
+         long max = this._max.get();
+         while (nanos > max && !this._max.compareAndSet(max, nanos))
+            max = this._max.get();
+      }
+
+      public long count() {
+         return this._count.get();
+      }
+
+      public long max() {
+         return this._max.get();
+      }
+
+      /**
+       * @param p the percentile, between 0 and 100
+       * @return the upper bound in nanoseconds of the bucket holding it, 0 when empty
+       */
+      public long percentile(double p) {
+         long total = this._count.get();
+         if (total == 0)
+            return 0;
+         long rank = Math.max(1, (long) Math.ceil(total * p / 100));
+         long seen = 0;
+         for (int b = 0; b < BUCKETS; ++b) {
+            seen += this._counts.get(b);
+            if (seen >= rank)
+               return Math.min(upperBound(b), max());
+         }
+         return max();
+      }
+
+      static int bucketOf(long v) {
+         if (v < SUB_BUCKETS)
+            return (int) v;
+         int exp = 63 - Long.numberOfLeadingZeros(v);
+         int sub = (int) (v >>> (exp - SUB_BITS)) & (SUB_BUCKETS - 1);
+         return (exp - SUB_BITS + 1) * SUB_BUCKETS + sub;
+      }
+
+      static long upperBound(int bucket) {
+         if (bucket < SUB_BUCKETS)
+            return bucket;
+         int exp = bucket / SUB_BUCKETS + SUB_BITS - 1;
+         long sub = bucket % SUB_BUCKETS;
+         long width = 1L << (exp - SUB_BITS);
+         return ((SUB_BUCKETS + sub) << (exp - SUB_BITS)) + width - 1;
+      }
+   }//end Histogram
+
+   /**
+    * The statistics of one operation or SQL template.
+    */
+   public static final class Stats {
+      public final Histogram latency = new Histogram();
+      private final AtomicLong _rows = new AtomicLong();
+      private final AtomicLong _errors = new AtomicLong();
+
+      void record(long nanos, long rows, boolean failed) {
+         this.latency.record(nanos);
+         if (rows > 0)
+            this._rows.addAndGet(rows);
+         if (failed)
+            this._errors.incrementAndGet();
+      }
+
+      public long calls() {
+         return this.latency.count();
+      }
+
+      public long rows() {
+         return this._rows.get();
+      }
+
+      public long errors() {
+         return this._errors.get();
+      }
+   }//end Stats
+
+   /**
+    * A timed operation, closed with try-with-resources. An operation that
+    * is closed without succeeded() having been called counts as an error.
+    */
+   public final class Operation implements AutoCloseable {
+      private final String _name;
+      private final long _start = System.nanoTime();
+      private long _rows = 0;
+      private boolean _succeeded = false;
+
+      Operation(String name) {
+         this._name = name;
+      }
+
+      /**
+       * Marks the operation as successful.
+       *
+       * @param rows the number of rows it produced
+       */
+      public void succeeded(long rows) {
+         this._rows = rows;
+         this._succeeded = true;
+      }
+
+      public void close() {
+         stats(_operations, this._name).record(System.nanoTime() - this._start, this._rows, !this._succeeded);
+      }
+   }//end Operation
+
+   /**
+    * A statement that took longer than the slow query threshold.
+    */
+   public static final class SlowQuery {
+      public final long at;
+      public final long nanos;
+      public final String sql;
+      public final String params;
+      public final boolean failed;
+
+      SlowQuery(long at, long nanos, String sql, String params, boolean failed) {
+         this.at = at;
+         this.nanos = nanos;
+         this.sql = sql;
+         this.params = params;
+         this.failed = failed;
+      }
+
+      public String toString() {
+         return new Timestamp(this.at) + String.format(" %10.3f ms ", this.nanos / 1e6) +
+            (this.failed ? "FAILED " : "") + this.sql + (this.params.isEmpty() ? "" : " -- " + this.params);
+      }
+   }//end SlowQuery
+
+   private final ConcurrentHashMap<String, Stats> _operations = new ConcurrentHashMap<String, Stats>();
+   private final ConcurrentHashMap<String, Stats> _queries = new ConcurrentHashMap<String, Stats>();
+   private final SlowQuery[] _slow = new SlowQuery[SLOW_LOG_SIZE];
+   private final AtomicLong _slowCount = new AtomicLong();
+   private final Set<String> _redacted = ConcurrentHashMap.newKeySet();
+   private volatile long _slowNanos;
+   private ObjectName _name;
+
+   public Metrics() {
+      this(Long.getLong("hotel.slowQueryMillis", DEFAULT_SLOW_QUERY_MILLIS));
+   }
+
+   /**
+    * @param slowQueryMillis statements taking at least this long are logged
+    */
+   public Metrics(long slowQueryMillis) {
+      this._slowNanos = slowQueryMillis * 1000000;
+   }
+
+   /**
+    * Keeps the parameters of a template out of the slow log, for statements
+    * that bind credentials.
+    *
+    * @param sql the statement with '?' placeholders, as it is recorded
+    */
+   public void redactParams(String sql) {
+      this._redacted.add(sql);
+   }
+
+   /**
+    * Starts timing an operation.
+    */
+   public Operation start(String operation) {
+      return new Operation(operation);
+   }
+
+   /**
+    * Records one executed statement.
+    *
+    * @param sql the statement as sent, with '?' placeholders when params are given
+    * @param params the bound values
+    * @param nanos the time from asking for a connection to the last row read
+    * @param rows the rows read or changed
+    * @param failed whether the statement threw
+    */
+   public void recordQuery(String sql, Object[] params, long nanos, long rows, boolean failed) {
+      String template = sql;
+      // plain statements carry their values in the text.
+      if (params.length == 0 && !this._queries.containsKey(sql))
+         template = LITERAL.matcher(sql).replaceAll("?");
+      if (!this._queries.containsKey(template) && this._queries.size() >= MAX_TEMPLATES)
+         template = OTHER_TEMPLATES;
+      stats(this._queries, template).record(nanos, rows, failed);
+
+      if (nanos >= this._slowNanos) {
+         long n = this._slowCount.getAndIncrement();
+         this._slow[(int) (n % SLOW_LOG_SIZE)] =
+            new SlowQuery(System.currentTimeMillis(), nanos, sql,
+                          params.length == 0 ? "" : this._redacted.contains(sql) ? REDACTED : Arrays.deepToString(params), failed);
+      }
+   }//end recordQuery
+
+   private static Stats stats(ConcurrentHashMap<String, Stats> map, String key) {
+      Stats s = map.get(key);
+      return s != null ? s : map.computeIfAbsent(key, k -> new Stats());
+   }
+
+   public Map<String, Stats> operations() {
+      return Collections.unmodifiableMap(this._operations);
+   }
+
+   public Map<String, Stats> queries() {
+      return Collections.unmodifiableMap(this._queries);
+   }
+
+   /**
+    * @return the slow statements still in the ring, oldest first
+    */
+   public List<SlowQuery> slowLog() {
+      long end = this._slowCount.get();
+      List<SlowQuery> log = new ArrayList<SlowQuery>();
+      for (long n = Math.max(0, end - SLOW_LOG_SIZE); n < end; ++n) {
+         SlowQuery q = this._slow[(int) (n % SLOW_LOG_SIZE)];
+         if (q != null)
+            log.add(q);
+      }
+      return log;
+   }
+
+   /*
+    * MetricsMBean
+    **/
+
+   public String getReport() {
+      StringBuilder out = new StringBuilder();
+      table(out, "operation", this._operations);
+      out.append('\n');
+      table(out, "sql template", this._queries);
+      return out.toString();
+   }
+
+   public String getSlowQueries() {
+      StringBuilder out = new StringBuilder();
+      out.append(this._slowCount.get()).append(" statement(s) took ").append(getSlowQueryMillis()).append(" ms or more");
+      for (SlowQuery q : slowLog())
+         out.append('\n').append(q);
+      return out.toString();
+   }
+
+   public long getSlowQueryMillis() {
+      return this._slowNanos / 1000000;
+   }
+
+   public void setSlowQueryMillis(long millis) {
+      this._slowNanos = millis * 1000000;
+   }
+
+   public void reset() {
+      this._operations.clear();
+      this._queries.clear();
+      Arrays.fill(this._slow, null);
+      this._slowCount.set(0);
+   }
+
+   private static void table(StringBuilder out, String title, Map<String, Stats> map) {
+      out.append(String.format("%-" + REPORT_NAME_WIDTH + "s %9s %7s %10s %9s %9s %9s %9s%n",
+                               title, "calls", "errors", "rows", "p50 ms", "p99 ms", "p999 ms", "max ms"));
+      List<String> names = new ArrayList<String>(map.keySet());
+      Collections.sort(names);
+      for (String name : names) {
+         Stats s = map.get(name);
+         String shown = name.length() > REPORT_NAME_WIDTH ? name.substring(0, REPORT_NAME_WIDTH - 3) + "..." : name;
+         out.append(String.format("%-" + REPORT_NAME_WIDTH + "s %9d %7d %10d %9.3f %9.3f %9.3f %9.3f%n",
+                                  shown, s.calls(), s.errors(), s.rows(),
+                                  s.latency.percentile(50) / 1e6, s.latency.percentile(99) / 1e6,
+                                  s.latency.percentile(99.9) / 1e6, s.latency.max() / 1e6));
+      }
+   }//end table
+
+   /**
+    * Publishes these metrics on the platform MBean server as
+    * hotel:type=Metrics,name=name. Failures are reported and ignored, the
+    * metrics keep working without JMX.
+    */
+   public void register(String name) {
+      try {
+         this._name = new ObjectName("hotel:type=Metrics,name=" + ObjectName.quote(name));
+         ManagementFactory.getPlatformMBeanServer().registerMBean(this, this._name);
+      } catch (Exception e) {
+         this._name = null;
+         System.err.println("Metrics are not available over JMX: " + e.getMessage());
+      }
+   }//end register
+
+   public void unregister() {
+      if (this._name == null)
+         return;
+      try {
+         ManagementFactory.getPlatformMBeanServer().unregisterMBean(this._name);
+      } catch (Exception e) {
+         // already gone.
+      }
+      this._name = null;
+   }
+
+}//end Metrics
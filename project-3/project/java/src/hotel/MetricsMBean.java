@@ -0,0 +1,28 @@
+package hotel;
+
+/**
+ * The JMX view of Metrics, for jconsole or any other JMX client.
+ *
+ */
+public interface MetricsMBean {
+
+   /**
+    * @return calls, errors, rows and latency percentiles per operation and SQL template
+    */
+   String getReport();
+
+   /**
+    * @return the latest statements that took at least getSlowQueryMillis()
+    */
+   String getSlowQueries();
+
+   long getSlowQueryMillis();
+
+   void setSlowQueryMillis(long millis);
+
+   /**
+    * Forgets everything recorded so far.
+    */
+   void reset();
+
+}//end MetricsMBean
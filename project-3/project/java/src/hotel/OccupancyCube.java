@@ -0,0 +1,353 @@
+package hotel;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.Arrays;
+
+/**
+ * The nights booked in every room in every calendar month of a range, held
+ * as one byte column per month with a row per room. A room has at most 31
+ * nights a month, so a byte is enough, and the size of the cube depends
+ * only on the number of rooms and months, never on the number of bookings.
+ *
+ * Rooms are ordered by hotelID and room number, so the rooms of a hotel
+ * are a range of rows and every total is a scan over contiguous arrays.
+ * The cube also keeps the price of every room and the highest bookingID it
+ * has counted, so it can be saved, reported from later and brought up to
+ * date with the bookings made since.
+ *
+ * Months are numbered from January 1970. Different threads may fill
+ * different cells at the same time; nothing else is synchronized.
+ *
+ */
+public class OccupancyCube {
+   // "HOCC", then the version of the layout.
+   private static final int MAGIC = 0x484f4343;
+   private static final int VERSION = 1;
+   // magic, version, first month, months, watermark and rooms.
+   private static final int HEADER_SIZE = 4 + 4 + 4 + 4 + 8 + 4;
+
+   private final int _firstMonth;
+   private final int[] _hotelIDs;
+   private final int[] _roomNumbers;
+   private final int[] _prices;
+   // one column per month, one unsigned byte per room.
+   private final byte[][] _nights;
+   // the distinct hotels and the first row of each; the last entry is the row count.
+   private final int[] _hotels;
+   private final int[] _hotelStart;
+   private long _watermark = 0;
+
+   /**
+    * Creates an empty cube.
+    *
+    * @param firstMonth the first month, see month()
+    * @param months the number of months
+    * @param hotelIDs the hotel of every room, ascending
+    * @param roomNumbers the number of every room, ascending within its hotel
+    * @param prices the price of every room
+    */
+   public OccupancyCube(int firstMonth, int months, int[] hotelIDs, int[] roomNumbers, int[] prices) {
+      if (months < 1)
+         throw new IllegalArgumentException("a cube needs at least one month");
+      if (hotelIDs.length != roomNumbers.length || hotelIDs.length != prices.length)
+         throw new IllegalArgumentException("every room needs a hotel, a number and a price");
+      this._firstMonth = firstMonth;
+      this._hotelIDs = hotelIDs;
+      this._roomNumbers = roomNumbers;
+      this._prices = prices;
+      this._nights = new byte[months][hotelIDs.length];
+
+      int n = hotelIDs.length;
+      int distinct = 0;
+      for (int r = 0; r < n; ++r) {
+         if (r > 0 && (hotelIDs[r] < hotelIDs[r - 1] || (hotelIDs[r] == hotelIDs[r - 1] && roomNumbers[r] <= roomNumbers[r - 1])))
+            throw new IllegalArgumentException("rooms are not ordered by hotel and room number at row " + r);
+         if (r == 0 || hotelIDs[r] != hotelIDs[r - 1])
+            ++distinct;
+      }
+      this._hotels = new int[distinct];
+      this._hotelStart = new int[distinct + 1];
+      for (int r = 0, h = 0; r < n; ++r) {
+         if (r == 0 || hotelIDs[r] != hotelIDs[r - 1]) {
+            this._hotels[h] = hotelIDs[r];
+            this._hotelStart[h++] = r;
+         }
+      }
+      this._hotelStart[distinct] = n;
+   }//end OccupancyCube
+
+   /**
+    * @return the number of the month of a date, counted from January 1970
+    */
+   public static int month(LocalDate date) {
+      return (date.getYear() - 1970) * 12 + date.getMonthValue() - 1;
+   }
+
+   public static int month(YearMonth month) {
+      return (month.getYear() - 1970) * 12 + month.getMonthValue() - 1;
+   }
+
+   /**
+    * @return the month with the given number
+    */
+   public static YearMonth yearMonth(int month) {
+      return YearMonth.of(1970 + Math.floorDiv(month, 12), Math.floorMod(month, 12) + 1);
+   }
+
+   public int firstMonth() {
+      return this._firstMonth;
+   }
+
+   public int lastMonth() {
+      return this._firstMonth + this._nights.length - 1;
+   }
+
+   public int months() {
+      return this._nights.length;
+   }
+
+   /**
+    * @return true when the cube has every month from first to last
+    */
+   public boolean covers(int first, int last) {
+      return first >= firstMonth() && last <= lastMonth();
+   }
+
+   public int rooms() {
+      return this._hotelIDs.length;
+   }
+
+   public int hotelID(int room) {
+      return this._hotelIDs[room];
+   }
+
+   public int roomNumber(int room) {
+      return this._roomNumbers[room];
+   }
+
+   public int price(int room) {
+      return this._prices[room];
+   }
+
+   public int hotelCount() {
+      return this._hotels.length;
+   }
+
+   /**
+    * @param h the position of a hotel, from 0 to hotelCount() - 1
+    */
+   public int hotel(int h) {
+      return this._hotels[h];
+   }
+
+   /**
+    * @return the first row of the h-th hotel
+    */
+   public int firstRoom(int h) {
+      return this._hotelStart[h];
+   }
+
+   /**
+    * @return the row after the last room of the h-th hotel
+    */
+   public int endRoom(int h) {
+      return this._hotelStart[h + 1];
+   }
+
+   /**
+    * @return the position of the hotel, or a negative number when the cube has no such hotel
+    */
+   public int indexOfHotel(int hotelID) {
+      return Arrays.binarySearch(this._hotels, hotelID);
+   }
+
+   /**
+    * @return the row of the room, or -1 when the cube has no such room
+    */
+   public int room(int hotelID, int roomNumber) {
+      int h = indexOfHotel(hotelID);
+      if (h < 0)
+         return -1;
+      int r = Arrays.binarySearch(this._roomNumbers, this._hotelStart[h], this._hotelStart[h + 1], roomNumber);
+      return r < 0 ? -1 : r;
+   }
+
+   /**
+    * @return the highest bookingID counted
+    */
+   public long watermark() {
+      return this._watermark;
+   }
+
+   public void setWatermark(long bookingID) {
+      this._watermark = bookingID;
+   }
+
+   public int nights(int month, int room) {
+      return this._nights[month - this._firstMonth][room] & 0xff;
+   }
+
+   /**
+    * Adds booked nights to a room in a month.
+    */
+   public void add(int month, int room, int nights) {
+      set(month, room, nights(month, room) + nights);
+   }
+
+   public void set(int month, int room, int nights) {
+      if (nights < 0 || nights > 0xff)
+         throw new IllegalArgumentException(nights + " nights in room " + this._roomNumbers[room] + " of hotel " +
+                                            this._hotelIDs[room] + " in " + yearMonth(month));
+      this._nights[month - this._firstMonth][room] = (byte) nights;
+   }
+
+   /**
+    * Forgets the nights of the rooms [from, to) in a month.
+    */
+   public void clear(int month, int from, int to) {
+      Arrays.fill(this._nights[month - this._firstMonth], from, to, (byte) 0);
+   }
+
+   /**
+    * @return the nights booked in the rooms [from, to) in a month
+    */
+   public long nights(int month, int from, int to) {
+      byte[] column = this._nights[month - this._firstMonth];
+      long sum = 0;
+      for (int r = from; r < to; ++r)
+         sum += column[r] & 0xff;
+      return sum;
+   }
+
+   /**
+    * Sums the rooms [from, to) over the months first to last.
+    *
+    * @return the nights booked, the nights there were to book and the
+    * revenue of the booked nights at the prices of the rooms
+    */
+   public long[] totals(int from, int to, int first, int last) {
+      long nights = 0;
+      long available = 0;
+      long revenue = 0;
+      for (int m = first; m <= last; ++m) {
+         byte[] column = this._nights[m - this._firstMonth];
+         for (int r = from; r < to; ++r) {
+            int n = column[r] & 0xff;
+            nights += n;
+            revenue += (long) n * this._prices[r];
+         }
+         available += (long) (to - from) * yearMonth(m).lengthOfMonth();
+      }
+      return new long[] { nights, available, revenue };
+   }//end totals
+
+   /**
+    * Moves the counts onto another set of rooms, for rooms that were added
+    * since the cube was made or prices that changed. Rooms the new set does
+    * not have are dropped.
+    *
+    * @return a cube over the same months and the given rooms
+    */
+   public OccupancyCube withRooms(int[] hotelIDs, int[] roomNumbers, int[] prices) {
+      OccupancyCube to = new OccupancyCube(this._firstMonth, months(), hotelIDs, roomNumbers, prices);
+      to._watermark = this._watermark;
+      // both are ordered by (hotelID, roomNumber), so the rooms are matched in one merge.
+      int i = 0;
+      int j = 0;
+      while (i < rooms() && j < to.rooms()) {
+         int c = Integer.compare(this._hotelIDs[i], hotelIDs[j]);
+         if (c == 0)
+            c = Integer.compare(this._roomNumbers[i], roomNumbers[j]);
+         if (c < 0) {
+            ++i;
+         } else if (c > 0) {
+            ++j;
+         } else {
+            for (int m = 0; m < months(); ++m)
+               to._nights[m][j] = this._nights[m][i];
+            ++i;
+            ++j;
+         }
+      }
+      return to;
+   }//end withRooms
+
+   /**
+    * Saves the cube column by column. The file is written next to its
+    * target and moved over it, so readers never see half of it.
+    *
+    * @throws java.io.IOException when the file could not be written
+    */
+   public void write(Path file) throws IOException {
+      Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+      try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                                              StandardOpenOption.TRUNCATE_EXISTING)) {
+         ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+         header.putInt(MAGIC).putInt(VERSION).putInt(this._firstMonth).putInt(months())
+            .putLong(this._watermark).putInt(rooms()).flip();
+         writeFully(out, header);
+         writeFully(out, ints(this._hotelIDs));
+         writeFully(out, ints(this._roomNumbers));
+         writeFully(out, ints(this._prices));
+         for (byte[] column : this._nights)
+            writeFully(out, ByteBuffer.wrap(column));
+         out.force(false);
+      }
+      Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+   }//end write
+
+   /**
+    * Loads a cube saved by write().
+    *
+    * @throws java.io.IOException when the file could not be read or is not a cube
+    */
+   public static OccupancyCube read(Path file) throws IOException {
+      try (FileChannel in = FileChannel.open(file, StandardOpenOption.READ)) {
+         MappedByteBuffer map = in.map(FileChannel.MapMode.READ_ONLY, 0, in.size());
+         if (map.remaining() < HEADER_SIZE || map.getInt() != MAGIC)
+            throw new IOException(file + " is not an occupancy cube");
+         int version = map.getInt();
+         if (version != VERSION)
+            throw new IOException(file + " has layout version " + version + ", expected " + VERSION);
+         int firstMonth = map.getInt();
+         int months = map.getInt();
+         long watermark = map.getLong();
+         int rooms = map.getInt();
+         if (months < 1 || rooms < 0 || map.remaining() != (long) rooms * (3 * 4 + months))
+            throw new IOException(file + " is truncated or damaged");
+         int[] hotelIDs = new int[rooms];
+         int[] roomNumbers = new int[rooms];
+         int[] prices = new int[rooms];
+         for (int[] column : new int[][] { hotelIDs, roomNumbers, prices }) {
+            map.asIntBuffer().get(column);
+            map.position(map.position() + 4 * rooms);
+         }
+         OccupancyCube cube = new OccupancyCube(firstMonth, months, hotelIDs, roomNumbers, prices);
+         for (byte[] column : cube._nights)
+            map.get(column);
+         cube._watermark = watermark;
+         return cube;
+      }
+   }//end read
+
+   private static ByteBuffer ints(int[] column) {
+      ByteBuffer b = ByteBuffer.allocate(4 * column.length);
+      b.asIntBuffer().put(column);
+      return b;
+   }
+
+   private static void writeFully(FileChannel out, ByteBuffer b) throws IOException {
+      while (b.hasRemaining())
+         out.write(b);
+   }
+
+}//end OccupancyCube
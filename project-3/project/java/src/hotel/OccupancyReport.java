@@ -0,0 +1,465 @@
+package hotel;
+
+import java.io.BufferedWriter;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Occupancy and revenue per hotel, room, month and year, computed from
+ * RoomBookings and the prices in Rooms, for reports that were made by
+ * exporting the bookings by hand before.
+ *
+ * A report first brings an OccupancyCube up to date. The bookings are read
+ * in shards of one month, each on a connection and thread of its own, and
+ * each shard counts the nights per room with a GROUP BY in its partition,
+ * so one row per booked room and month crosses the network instead of one
+ * per booking. Shards fill different month columns of the cube and need no
+ * locks. All connections read one exported snapshot, so the cube is
+ * RoomBookings as of a single moment.
+ *
+ * The cube is saved to --file, and later runs start from it. They read only
+ * the bookings with a higher bookingID than the cube has counted. Then they
+ * compare the nights of every hotel and month with the counters of
+ * sql/src/create_summaries.sql and read again the hotel months that differ,
+ * which catches deleted bookings and ones committed out of bookingID order.
+ * Without those counters only new bookings are added; --rebuild reads
+ * everything again.
+ *
+ * Revenue is booked nights times the current price of the room; Rooms
+ * keeps no price history.
+ *
+ */
+public class OccupancyReport {
+   public static final int DEFAULT_THREADS = 4;
+
+   // the month number of OccupancyCube, computed by the server.
+   private static final String MONTH_OF_BOOKING = "((EXTRACT(YEAR FROM bookingDate)::integer - 1970) * 12 + EXTRACT(MONTH FROM bookingDate)::integer - 1)";
+   private static final String SNAPSHOT_SQL = "SELECT pg_export_snapshot(), COALESCE(MAX(bookingID), 0) FROM RoomBookings";
+   private static final String ROOMS_SQL = "SELECT hotelID, roomNumber, price FROM Rooms ORDER BY hotelID, roomNumber";
+   private static final String SHARD_SQL =
+      "SELECT hotelID, roomNumber, " + MONTH_OF_BOOKING + ", COUNT(*) FROM RoomBookings " +
+      "WHERE bookingDate >= ? AND bookingDate < ? AND bookingID > ? AND bookingID <= ? " +
+      "GROUP BY 1, 2, 3";
+   private static final String COUNTED_SQL =
+      "SELECT hotelID, (EXTRACT(YEAR FROM bookingMonth)::integer - 1970) * 12 + EXTRACT(MONTH FROM bookingMonth)::integer - 1, SUM(bookings) " +
+      "FROM CustomerBookingCounts WHERE bookingMonth >= ? AND bookingMonth < ? GROUP BY 1, 2";
+   private static final String HOTEL_MONTH_SQL =
+      "SELECT roomNumber, COUNT(*) FROM RoomBookings WHERE hotelID = ? AND bookingDate >= ? AND bookingDate < ? " +
+      "GROUP BY roomNumber";
+
+   private interface Work {
+      void run(Connection c) throws Exception;
+   }
+
+   private final ConnectionPool _pool;
+   private final int _threads;
+
+   /**
+    * @param pool connections for the shards; threads + 1 are used at once
+    * @param threads the number of shards read at the same time
+    */
+   public OccupancyReport(ConnectionPool pool, int threads) {
+      this._pool = pool;
+      this._threads = threads;
+   }
+
+   /**
+    * @param args <dbname> <port> <user> --from YYYY-MM --to YYYY-MM [--by month|hotel|room|year]
+    *        [--hotel id] [--file path] [--rebuild] [--offline] [--threads n]
+    */
+   public static void main(String[] args) {
+      if (args.length < 3) {
+         System.err.println (
+            "Usage: " +
+            "java [-classpath <classpath>] " +
+            OccupancyReport.class.getName () +
+            " <dbname> <port> <user> --from YYYY-MM --to YYYY-MM [--by month|hotel|room|year]" +
+            " [--hotel id] [--file path] [--rebuild] [--offline] [--threads n]");
+         return;
+      }//end if
+
+      YearMonth from = null;
+      YearMonth to = null;
+      String by = "month";
+      int hotelID = -1;
+      Path file = null;
+      boolean rebuild = false;
+      boolean offline = false;
+      int threads = DEFAULT_THREADS;
+      for (int i = 3; i < args.length; ++i) {
+         String arg = args[i];
+         if (arg.equals("--rebuild")) {
+            rebuild = true;
+            continue;
+         }
+         if (arg.equals("--offline")) {
+            offline = true;
+            continue;
+         }
+         if (i + 1 >= args.length)
+            throw new IllegalArgumentException("missing value for " + arg);
+         String v = args[++i];
+         switch (arg) {
+            case "--from": from = YearMonth.parse(v); break;
+            case "--to": to = YearMonth.parse(v); break;
+            case "--by": by = v; break;
+            case "--hotel": hotelID = Integer.parseInt(v); break;
+            case "--file": file = Paths.get(v); break;
+            case "--threads": threads = Integer.parseInt(v); break;
+            default: throw new IllegalArgumentException("unknown option " + arg);
+         }
+      }
+      if (from == null || to == null || to.isBefore(from))
+         throw new IllegalArgumentException("--from and --to must give a range of months");
+      if (!by.matches("month|hotel|room|year"))
+         throw new IllegalArgumentException("unknown report " + by);
+      if (offline && file == null)
+         throw new IllegalArgumentException("--offline needs --file");
+
+      int first = OccupancyCube.month(from);
+      int last = OccupancyCube.month(to);
+      ConnectionPool pool = null;
+      try {
+         OccupancyCube cube;
+         if (offline) {
+            cube = OccupancyCube.read(file);
+            if (!cube.covers(first, last))
+               throw new IllegalArgumentException(file + " has " + OccupancyCube.yearMonth(cube.firstMonth()) + " to " +
+                                                  OccupancyCube.yearMonth(cube.lastMonth()) + " only");
+         } else {
+            pool = new ConnectionPool(Hotel.connectionURL(args[0], args[1]), args[2], "", threads + 1, 0);
+            cube = new OccupancyReport(pool, threads).refresh(first, last, file, rebuild);
+         }
+         PrintWriter out = new PrintWriter(new BufferedWriter(new OutputStreamWriter(System.out), 64 * 1024));
+         report(out, cube, first, last, by, hotelID);
+         out.flush();
+      } catch (Exception e) {
+         System.err.println(e.getMessage());
+         System.exit(1);
+      } finally {
+         if (pool != null)
+            pool.close();
+      }
+   }//end main
+
+   /**
+    * Brings the cube up to date with RoomBookings.
+    *
+    * @param first the first month needed
+    * @param last the last month needed
+    * @param file where the cube is kept between runs, or null to build it every time
+    * @param rebuild whether to ignore the file and read every booking
+    * @return a cube with at least the months first to last
+    * @throws Exception when the bookings could not be read or the file not written
+    */
+   public OccupancyCube refresh(int first, int last, Path file, boolean rebuild) throws Exception {
+      ConnectionPool.PooledConnection pc = this._pool.acquire();
+      Connection c = pc.connection();
+      c.setAutoCommit(false);
+      c.setTransactionIsolation(Connection.TRANSACTION_REPEATABLE_READ);
+      try {
+         // this transaction stays open while the shards import its snapshot.
+         String snapshot;
+         long watermark;
+         try (Statement stmt = c.createStatement(); ResultSet rs = stmt.executeQuery(SNAPSHOT_SQL)) {
+            rs.next();
+            snapshot = rs.getString(1);
+            watermark = rs.getLong(2);
+         }
+         QueryResult rooms;
+         try (Statement stmt = c.createStatement(); ResultSet rs = stmt.executeQuery(ROOMS_SQL)) {
+            rooms = QueryResult.read(rs);
+         }
+         int[] hotelIDs = rooms.intColumn(0);
+         int[] roomNumbers = rooms.intColumn(1);
+         int[] prices = rooms.intColumn(2);
+
+         OccupancyCube cube = null;
+         if (file != null && !rebuild && Files.exists(file)) {
+            OccupancyCube saved = OccupancyCube.read(file);
+            if (saved.covers(first, last) && saved.watermark() <= watermark)
+               cube = saved.withRooms(hotelIDs, roomNumbers, prices);
+            else
+               System.out.println(file + " does not cover the report or is newer than the database, reading every booking");
+         }
+         boolean incremental = cube != null;
+         if (!incremental)
+            cube = new OccupancyCube(first, last - first + 1, hotelIDs, roomNumbers, prices);
+
+         long start = System.nanoTime();
+         long read = readBookings(cube, snapshot, partitioned(c), cube.watermark(), watermark);
+         System.out.println(String.format("%d booking(s) after bookingID %d read in %.1f s",
+                                          read, cube.watermark(), (System.nanoTime() - start) / 1e9));
+         if (incremental) {
+            if (hasCounters(c)) {
+               start = System.nanoTime();
+               int fixed = reconcile(c, cube, snapshot);
+               System.out.println(String.format("%d hotel month(s) differed from CustomerBookingCounts and were read again in %.1f s",
+                                                fixed, (System.nanoTime() - start) / 1e9));
+            } else {
+               System.out.println("CustomerBookingCounts is missing, deleted bookings are not noticed; run with --rebuild to recount");
+            }
+         }
+         cube.setWatermark(watermark);
+         if (file != null)
+            cube.write(file);
+         return cube;
+      } finally {
+         c.rollback();
+         c.setTransactionIsolation(Connection.TRANSACTION_READ_COMMITTED);
+         c.setAutoCommit(true);
+         this._pool.release(pc);
+      }
+   }//end refresh
+
+   /**
+    * Adds the bookings with bookingIDs in (after, upTo] to every month of
+    * the cube, one shard per month when RoomBookings is partitioned.
+    *
+    * @return the number of bookings added
+    */
+   private long readBookings(final OccupancyCube cube, String snapshot, boolean partitioned,
+                             final long after, final long upTo) throws Exception {
+      if (upTo <= after)
+         return 0;
+      final AtomicLong read = new AtomicLong();
+      List<Work> shards = new ArrayList<Work>();
+      // without partitions every month would scan the whole table, so it is read once.
+      int step = partitioned ? 1 : cube.months();
+      for (int m = cube.firstMonth(); m <= cube.lastMonth(); m += step) {
+         final Date from = Date.valueOf(OccupancyCube.yearMonth(m).atDay(1));
+         final Date to = Date.valueOf(OccupancyCube.yearMonth(Math.min(m + step, cube.lastMonth() + 1)).atDay(1));
+         shards.add(c -> read.addAndGet(readShard(c, cube, from, to, after, upTo)));
+      }
+      runInSnapshot(snapshot, shards);
+      return read.get();
+   }//end readBookings
+
+   private static long readShard(Connection c, OccupancyCube cube, Date from, Date to, long after, long upTo) throws SQLException {
+      long read = 0;
+      try (PreparedStatement stmt = c.prepareStatement(SHARD_SQL)) {
+         stmt.setFetchSize(Hotel.STREAM_FETCH_SIZE);
+         stmt.setDate(1, from);
+         stmt.setDate(2, to);
+         stmt.setLong(3, after);
+         stmt.setLong(4, upTo);
+         try (ResultSet rs = stmt.executeQuery()) {
+            while (rs.next()) {
+               int room = cube.room(rs.getInt(1), rs.getInt(2));
+               if (room < 0)
+                  throw new SQLException("booking of room " + rs.getInt(2) + " of hotel " + rs.getInt(1) + ", which Rooms does not have");
+               int nights = rs.getInt(4);
+               cube.add(rs.getInt(3), room, nights);
+               read += nights;
+            }
+         }
+      }
+      return read;
+   }//end readShard
+
+   /**
+    * Compares the nights of every hotel and month with the booking counters
+    * in the same snapshot and reads the hotel months that differ again.
+    *
+    * @return the number of hotel months read again
+    */
+   private int reconcile(Connection c, final OccupancyCube cube, String snapshot) throws Exception {
+      int months = cube.months();
+      long[] counted = new long[cube.hotelCount() * months];
+      try (PreparedStatement stmt = c.prepareStatement(COUNTED_SQL)) {
+         stmt.setDate(1, Date.valueOf(OccupancyCube.yearMonth(cube.firstMonth()).atDay(1)));
+         stmt.setDate(2, Date.valueOf(OccupancyCube.yearMonth(cube.lastMonth() + 1).atDay(1)));
+         try (ResultSet rs = stmt.executeQuery()) {
+            while (rs.next()) {
+               int h = cube.indexOfHotel(rs.getInt(1));
+               if (h >= 0)
+                  counted[h * months + rs.getInt(2) - cube.firstMonth()] = rs.getLong(3);
+            }
+         }
+      }
+      List<Work> stale = new ArrayList<Work>();
+      for (int h = 0; h < cube.hotelCount(); ++h) {
+         for (int m = cube.firstMonth(); m <= cube.lastMonth(); ++m) {
+            if (cube.nights(m, cube.firstRoom(h), cube.endRoom(h)) == counted[h * months + m - cube.firstMonth()])
+               continue;
+            final int hotel = h;
+            final int month = m;
+            stale.add(con -> readHotelMonth(con, cube, hotel, month));
+         }
+      }
+      runInSnapshot(snapshot, stale);
+      return stale.size();
+   }//end reconcile
+
+   private static void readHotelMonth(Connection c, OccupancyCube cube, int h, int month) throws SQLException {
+      int hotelID = cube.hotel(h);
+      cube.clear(month, cube.firstRoom(h), cube.endRoom(h));
+      try (PreparedStatement stmt = c.prepareStatement(HOTEL_MONTH_SQL)) {
+         stmt.setInt(1, hotelID);
+         stmt.setDate(2, Date.valueOf(OccupancyCube.yearMonth(month).atDay(1)));
+         stmt.setDate(3, Date.valueOf(OccupancyCube.yearMonth(month + 1).atDay(1)));
+         try (ResultSet rs = stmt.executeQuery()) {
+            while (rs.next()) {
+               int room = cube.room(hotelID, rs.getInt(1));
+               if (room < 0)
+                  throw new SQLException("booking of room " + rs.getInt(1) + " of hotel " + hotelID + ", which Rooms does not have");
+               cube.set(month, room, rs.getInt(2));
+            }
+         }
+      }
+   }//end readHotelMonth
+
+   /**
+    * Runs the work on the threads, every piece in a transaction of its own
+    * that sees the given snapshot.
+    *
+    * @throws Exception the first failure of any piece
+    */
+   private void runInSnapshot(final String snapshot, List<Work> work) throws Exception {
+      if (work.isEmpty())
+         return;
+      ExecutorService threads = Executors.newFixedThreadPool(Math.min(this._threads, work.size()));
+      try {
+         List<Future<?>> running = new ArrayList<Future<?>>();
+         for (final Work w : work) {
+            running.add(threads.submit(() -> {
+               ConnectionPool.PooledConnection pc = this._pool.acquire();
+               Connection c = pc.connection();
+               c.setAutoCommit(false);
+               c.setTransactionIsolation(Connection.TRANSACTION_REPEATABLE_READ);
+               try {
+                  try (Statement stmt = c.createStatement()) {
+                     stmt.execute("SET TRANSACTION SNAPSHOT '" + snapshot + "'");
+                  }
+                  w.run(c);
+                  return null;
+               } finally {
+                  c.rollback();
+                  c.setTransactionIsolation(Connection.TRANSACTION_READ_COMMITTED);
+                  c.setAutoCommit(true);
+                  this._pool.release(pc);
+               }
+            }));
+         }
+         for (Future<?> f : running)
+            f.get();
+      } finally {
+         threads.shutdownNow();
+      }
+   }//end runInSnapshot
+
+   private static boolean partitioned(Connection c) throws SQLException {
+      try (Statement stmt = c.createStatement();
+           ResultSet rs = stmt.executeQuery("SELECT relkind::text FROM pg_class WHERE oid = to_regclass('roombookings')")) {
+         return rs.next() && "p".equals(rs.getString(1));
+      }
+   }
+
+   private static boolean hasCounters(Connection c) throws SQLException {
+      try (Statement stmt = c.createStatement();
+           ResultSet rs = stmt.executeQuery("SELECT to_regclass('customerbookingcounts') IS NOT NULL")) {
+         return rs.next() && rs.getBoolean(1);
+      }
+   }
+
+   /**
+    * Prints one of the reports over the months first to last.
+    *
+    * @param by month: per hotel and month; hotel: per hotel; room: per room;
+    *        year: per hotel and year, with the change in revenue from the year before
+    * @param hotelID the only hotel shown, or -1 for all of them
+    */
+   public static void report(PrintWriter out, OccupancyCube cube, int first, int last, String by, int hotelID) {
+      int fromHotel = 0;
+      int toHotel = cube.hotelCount();
+      if (hotelID >= 0) {
+         fromHotel = cube.indexOfHotel(hotelID);
+         if (fromHotel < 0) {
+            out.println("Hotel " + hotelID + " has no rooms");
+            return;
+         }
+         toHotel = fromHotel + 1;
+      }
+      int fromRoom = toHotel > fromHotel ? cube.firstRoom(fromHotel) : 0;
+      int toRoom = toHotel > fromHotel ? cube.endRoom(toHotel - 1) : 0;
+
+      switch (by) {
+         case "month":
+            out.println(String.format("%-8s %-8s %6s %10s %10s %14s", "hotelid", "month", "rooms", "nights", "occupancy", "revenue"));
+            for (int h = fromHotel; h < toHotel; ++h) {
+               for (int m = first; m <= last; ++m)
+                  row(out, String.format("%-8d %-8s %6d", cube.hotel(h), OccupancyCube.yearMonth(m), cube.endRoom(h) - cube.firstRoom(h)),
+                      cube.totals(cube.firstRoom(h), cube.endRoom(h), m, m));
+            }
+            break;
+         case "hotel":
+            out.println(String.format("%-8s %6s %10s %10s %14s", "hotelid", "rooms", "nights", "occupancy", "revenue"));
+            for (int h = fromHotel; h < toHotel; ++h)
+               row(out, String.format("%-8d %6d", cube.hotel(h), cube.endRoom(h) - cube.firstRoom(h)),
+                   cube.totals(cube.firstRoom(h), cube.endRoom(h), first, last));
+            break;
+         case "room":
+            out.println(String.format("%-8s %-10s %8s %10s %10s %14s", "hotelid", "roomnumber", "price", "nights", "occupancy", "revenue"));
+            for (int r = fromRoom; r < toRoom; ++r)
+               row(out, String.format("%-8d %-10d %8d", cube.hotelID(r), cube.roomNumber(r), cube.price(r)),
+                   cube.totals(r, r + 1, first, last));
+            break;
+         case "year":
+            out.println(String.format("%-8s %-6s %10s %10s %14s %8s", "hotelid", "year", "nights", "occupancy", "revenue", "change"));
+            for (int h = fromHotel; h <= toHotel; ++h) {
+               // the last round is every hotel shown together.
+               boolean all = h == toHotel;
+               if (all && toHotel - fromHotel < 2)
+                  break;
+               int r0 = all ? fromRoom : cube.firstRoom(h);
+               int r1 = all ? toRoom : cube.endRoom(h);
+               long before = -1;
+               for (int y = OccupancyCube.yearMonth(first).getYear(); y <= OccupancyCube.yearMonth(last).getYear(); ++y) {
+                  // a year the range only partly covers is summed over the months it has.
+                  int m0 = Math.max(first, OccupancyCube.month(YearMonth.of(y, 1)));
+                  int m1 = Math.min(last, OccupancyCube.month(YearMonth.of(y, 12)));
+                  long[] t = cube.totals(r0, r1, m0, m1);
+                  String change = before > 0 ? String.format("%+7.1f%%", 100.0 * (t[2] - before) / before) : "";
+                  row(out, String.format("%-8s %-6d", all ? "all" : Integer.toString(cube.hotel(h)), y), t, change);
+                  before = t[2];
+               }
+            }
+            break;
+         default:
+            throw new IllegalArgumentException("unknown report " + by);
+      }
+      long[] t = cube.totals(fromRoom, toRoom, first, last);
+      out.println(String.format("%d night(s) booked of %d, %.1f%% occupancy, revenue %d, %s to %s",
+                                t[0], t[1], occupancy(t), t[2], OccupancyCube.yearMonth(first), OccupancyCube.yearMonth(last)));
+   }//end report
+
+   private static void row(PrintWriter out, String key, long[] totals) {
+      row(out, key, totals, null);
+   }
+
+   private static void row(PrintWriter out, String key, long[] totals, String change) {
+      out.print(String.format("%s %10d %9.1f%% %14d", key, totals[0], occupancy(totals), totals[2]));
+      out.println(change == null ? "" : " " + String.format("%8s", change));
+   }
+
+   private static double occupancy(long[] totals) {
+      return totals[1] == 0 ? 0 : 100.0 * totals[0] / totals[1];
+   }
+
+}//end OccupancyReport
@@ -0,0 +1,34 @@
+package hotel;
+
+import java.sql.SQLException;
+
+/**
+ * Pages through a history, newest first. The page on screen only moves
+ * when the page asked for has rows.
+ *
+ */
+public interface Pager {
+
+   int pageSize();
+
+   /**
+    * @return the page on screen, null before first() was called
+    */
+   QueryResult page();
+
+   /**
+    * @return the newest rows
+    */
+   QueryResult first() throws SQLException;
+
+   /**
+    * @return the rows just older than the page on screen, empty at the end of the history
+    */
+   QueryResult next() throws SQLException;
+
+   /**
+    * @return the rows just newer than the page on screen, empty at the start of the history
+    */
+   QueryResult previous() throws SQLException;
+
+}//end Pager
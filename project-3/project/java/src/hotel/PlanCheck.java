@@ -0,0 +1,582 @@
+package hotel;
+
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.PrintWriter;
+import java.io.StringReader;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.xml.sax.InputSource;
+
+/**
+ * Guards the SQL of the Hotel operations against plan regressions: the
+ * NOT IN subqueries, accidental cross joins, full table aggregates and
+ * late LIMITs that made operations slow before. Every template of
+ * JdbcStorage, the first, next and previous page of every view it pages
+ * and the AuditWriter insert runs under EXPLAIN (ANALYZE, BUFFERS) with
+ * realistic keys, the busiest hotel and customer of the data. The pages
+ * come from JdbcStorage.pagedViews() and seek from the key of the last row
+ * of their first page, as a user paging on would. The check records:
+ *
+ *    - the shape of the plan: its nodes, tables and indexes;
+ *    - the rows its scans touched and the buffers it hit and read;
+ *    - its planning and execution time, the median of --runs runs.
+ *
+ * A template fails when it reads more than --seq-scan-rows rows of a
+ * table with a sequential scan, unless the template is meant to read the
+ * whole table, or when it takes longer than its budget times
+ * --budget-factor. Statements that write run in a transaction that is
+ * rolled back. A SQL constant of JdbcStorage that no template runs fails
+ * the check as well, so new statements cannot go unmeasured.
+ *
+ * With --scales every scale is generated in turn by DataGenerator, which
+ * empties the tables first, so point it at a scratch database. Without it
+ * the data as it is gets checked. Everything runs against the local
+ * Postgres; the exit code is 1 when any template failed.
+ *
+ */
+public class PlanCheck {
+   public static final int DEFAULT_RUNS = 3;
+   public static final long DEFAULT_SEQ_SCAN_ROWS = 1000;
+
+   /**
+    * The keys the templates are run with.
+    */
+   static final class Sample {
+      int customerID;
+      int hotelID;
+      int roomNumber;
+      Date bookingDate;
+      int bookingID;
+      int managerID;
+      int[] managedHotels;
+      int[] roomNumbers;
+      int companyID;
+      Date monthStart;
+      Date monthEnd;
+      // a night no generated booking has.
+      Date freeNight;
+      // per paged view, the (date, id) key of the last row of its first page.
+      final Map<String, Object[]> pageKeys = new HashMap<String, Object[]>();
+   }//end Sample
+
+   /**
+    * The sample keys of a paged view and the time budget of one of its pages.
+    */
+   private static final class PageFilter {
+      final double budgetMillis;
+      final Function<Sample, Object[]> params;
+
+      PageFilter(double budgetMillis, Function<Sample, Object[]> params) {
+         this.budgetMillis = budgetMillis;
+         this.params = params;
+      }
+   }//end PageFilter
+
+   /**
+    * A statement of the application and what it may cost.
+    */
+   static final class Template {
+      final String name;
+      final String sql;
+      final Function<Sample, Object[]> params;
+      final double budgetMillis;
+      // tables the statement reads whole by design.
+      final List<String> wholeTables;
+
+      Template(String name, String sql, double budgetMillis, Function<Sample, Object[]> params, String... wholeTables) {
+         this.name = name;
+         this.sql = sql;
+         this.params = params;
+         this.budgetMillis = budgetMillis;
+         this.wholeTables = Arrays.asList(wholeTables);
+      }
+   }//end Template
+
+   /**
+    * What one EXPLAIN ANALYZE found.
+    */
+   static final class Result {
+      String shape = "";
+      long rowsTouched;
+      long hitBlocks;
+      long readBlocks;
+      double planningMillis;
+      double executionMillis;
+      // tables read with a sequential scan, with the rows read.
+      final List<String> seqScans = new ArrayList<String>();
+      String error;
+   }//end Result
+
+   private final Connection _connection;
+   private final int _runs;
+   private final long _seqScanRows;
+   private final double _budgetFactor;
+
+   /**
+    * @param connection used by no one else while checking
+    * @param runs EXPLAIN ANALYZE runs per template, the median is kept
+    * @param seqScanRows rows a sequential scan may read before the template fails
+    * @param budgetFactor scales the time budget of every template
+    */
+   public PlanCheck(Connection connection, int runs, long seqScanRows, double budgetFactor) {
+      this._connection = connection;
+      this._runs = runs;
+      this._seqScanRows = seqScanRows;
+      this._budgetFactor = budgetFactor;
+   }
+
+   /**
+    * @param args <dbname> <port> <user> [--scales f,f,...] [--truncate] [--runs n]
+    *        [--seq-scan-rows n] [--budget-factor f] [--out file]
+    */
+   public static void main(String[] args) {
+      if (args.length < 3) {
+         System.err.println (
+            "Usage: " +
+            "java [-classpath <classpath>] " +
+            PlanCheck.class.getName () +
+            " <dbname> <port> <user> [--scales f,f,...] [--truncate] [--runs n]" +
+            " [--seq-scan-rows n] [--budget-factor f] [--out file]");
+         return;
+      }//end if
+
+      double[] scales = null;
+      boolean truncate = false;
+      int runs = DEFAULT_RUNS;
+      long seqScanRows = DEFAULT_SEQ_SCAN_ROWS;
+      double budgetFactor = 1;
+      String out = null;
+      for (int i = 3; i < args.length; ++i) {
+         String arg = args[i];
+         if (arg.equals("--truncate")) {
+            truncate = true;
+            continue;
+         }
+         if (i + 1 >= args.length)
+            throw new IllegalArgumentException("missing value for " + arg);
+         String v = args[++i];
+         switch (arg) {
+            case "--scales": scales = Arrays.stream(v.split(",")).mapToDouble(Double::parseDouble).toArray(); break;
+            case "--runs": runs = Integer.parseInt(v); break;
+            case "--seq-scan-rows": seqScanRows = Long.parseLong(v); break;
+            case "--budget-factor": budgetFactor = Double.parseDouble(v); break;
+            case "--out": out = v; break;
+            default: throw new IllegalArgumentException("unknown option " + arg);
+         }
+      }
+      if (runs < 1)
+         throw new IllegalArgumentException("--runs must be at least 1");
+      if (scales != null && !truncate)
+         throw new IllegalArgumentException("--scales empties the tables for every scale, pass --truncate to allow it");
+
+      // generating a scale takes the connections of DataGenerator's writers.
+      int connections = scales == null ? 1 : 3 * new DataGenerator.Options().writers + 1;
+      ConnectionPool pool = new ConnectionPool(Hotel.connectionURL(args[0], args[1]), args[2], "", connections, 0);
+      int failed = 0;
+      try (PrintWriter log = out == null ? null : new PrintWriter(new BufferedWriter(new FileWriter(out)))) {
+         if (log != null)
+            log.println("scale\ttemplate\tshape\trows\thit\tread\tplanning ms\texecution ms\tbudget ms\tverdict");
+         for (double scale : scales == null ? new double[] { 0 } : scales) {
+            String label = scale == 0 ? "as is" : "x" + scale;
+            if (scale != 0) {
+               DataGenerator.Options opt = new DataGenerator.Options();
+               opt.scale(scale);
+               opt.truncate = true;
+               new DataGenerator(pool, opt).run();
+            }
+            ConnectionPool.PooledConnection pc = pool.acquire();
+            try {
+               PlanCheck check = new PlanCheck(pc.connection(), runs, seqScanRows, budgetFactor);
+               failed += check.run(label, log);
+            } finally {
+               pool.release(pc);
+            }
+         }
+      } catch (Exception e) {
+         System.err.println(e.getMessage());
+         System.exit(1);
+      } finally {
+         pool.close();
+      }
+      if (failed > 0) {
+         System.out.println(failed + " template run(s) failed");
+         System.exit(1);
+      }
+   }//end main
+
+   /**
+    * Checks every template against the data in the database now.
+    *
+    * @param label the name of the data set in the output
+    * @param log where to record every result, or null
+    * @return the number of templates that failed
+    * @throws java.sql.SQLException when the sample keys could not be read
+    */
+   public int run(String label, PrintWriter log) throws SQLException {
+      Sample sample = sample();
+      System.out.println(String.format("%s: hotel %d, customer %d, room %d, booking %d on %s", label,
+                                       sample.hotelID, sample.customerID, sample.roomNumber, sample.bookingID, sample.bookingDate));
+      System.out.println(String.format("%-26s %12s %10s %10s %9s %9s  %s", "template", "rows", "hit", "read", "ms", "budget", "verdict"));
+      int failed = 0;
+      List<Template> templates = templates();
+      for (String name : unchecked(templates)) {
+         ++failed;
+         System.out.println(String.format("%-26s %12s %10s %10s %9s %9s  %s", name, "", "", "", "", "", "FAIL no template runs it"));
+         if (log != null)
+            log.println(String.join("\t", label, name, "", "", "", "", "", "", "", "FAIL no template runs it"));
+      }
+      for (Template t : templates) {
+         Result r = measure(t.sql, t.params.apply(sample));
+         double budget = t.budgetMillis * this._budgetFactor;
+         List<String> problems = new ArrayList<String>();
+         if (r.error != null)
+            problems.add(r.error);
+         for (String scan : r.seqScans) {
+            String[] tableRows = scan.split(" ");
+            if (!t.wholeTables.contains(tableRows[0]) && Long.parseLong(tableRows[1]) > this._seqScanRows)
+               problems.add("sequential scan of " + tableRows[1] + " rows of " + tableRows[0]);
+         }
+         if (r.executionMillis > budget)
+            problems.add(String.format("over the budget of %.0f ms", budget));
+         String verdict = problems.isEmpty() ? "ok" : "FAIL " + String.join(", ", problems);
+         if (!problems.isEmpty())
+            ++failed;
+         System.out.println(String.format("%-26s %12d %10d %10d %9.2f %9.0f  %s", t.name, r.rowsTouched, r.hitBlocks,
+                                          r.readBlocks, r.executionMillis, budget, verdict));
+         if (r.error == null)
+            System.out.println("   " + r.shape);
+         if (log != null)
+            log.println(String.join("\t", label, t.name, r.shape, Long.toString(r.rowsTouched), Long.toString(r.hitBlocks),
+                                    Long.toString(r.readBlocks), String.format("%.3f", r.planningMillis),
+                                    String.format("%.3f", r.executionMillis), String.format("%.0f", budget), verdict));
+      }
+      return failed;
+   }//end run
+
+   /**
+    * @return the statements of the application, with the keys they are run
+    * with and their time budgets in milliseconds
+    */
+   static List<Template> templates() {
+      List<Template> t = new ArrayList<Template>();
+      t.add(new Template("user", JdbcStorage.USER_SQL, 5, s -> new Object[] { s.managerID }));
+      t.add(new Template("login", JdbcStorage.LOGIN_SQL, 5, s -> new Object[] { s.managerID, "xyz" }));
+      // the HotelIndex is built from every hotel.
+      t.add(new Template("locatedHotels", JdbcStorage.LOCATED_HOTELS_SQL, 200, s -> new Object[0], "hotel"));
+      t.add(new Template("rooms", JdbcStorage.ROOMS_SQL, 5, s -> new Object[] { s.hotelID }));
+      t.add(new Template("bookedRooms", JdbcStorage.BOOKED_ROOMS_SQL, 5, s -> new Object[] { s.hotelID, s.bookingDate }));
+      // the rooms and bookings of the hotels near a RoomSearch.
+      t.add(new Template("hotelsRooms", JdbcStorage.HOTELS_ROOMS_SQL, 20, s -> new Object[] { s.managedHotels }));
+      t.add(new Template("hotelsBookedRooms", JdbcStorage.HOTELS_BOOKED_ROOMS_SQL, 20,
+                         s -> new Object[] { s.managedHotels, s.bookingDate, Date.valueOf(s.bookingDate.toLocalDate().plusDays(6)) }));
+      t.add(new Template("bookedNights", JdbcStorage.BOOKED_NIGHTS_SQL, 200, s -> new Object[] { s.hotelID, s.bookingDate }));
+      // the whole history of a hotel meets most customers, a hash join over Users is right.
+      t.add(new Template("bookingHistory", JdbcStorage.BOOKING_HISTORY_SQL, 500, s -> new Object[] { s.hotelID }, "users"));
+      t.add(new Template("bookingHistoryRange", JdbcStorage.BOOKING_HISTORY_RANGE_SQL, 50,
+                         s -> new Object[] { s.hotelID, s.monthStart, s.monthEnd }));
+      t.add(new Template("regularCustomers", JdbcStorage.REGULAR_CUSTOMERS_SQL, 10,
+                         s -> new Object[] { s.hotelID, Hotel.REGULAR_CUSTOMERS_DEFAULT_K }));
+      t.add(new Template("regularCustomersRange", JdbcStorage.REGULAR_CUSTOMERS_RANGE_SQL, 50,
+                         s -> new Object[] { s.hotelID, s.monthStart, s.monthEnd, Hotel.REGULAR_CUSTOMERS_DEFAULT_K }));
+      t.add(new Template("repairHistory", JdbcStorage.REPAIR_HISTORY_SQL, 50, s -> new Object[] { s.managerID }));
+
+      // the pages of every view JdbcStorage pages through, as KeysetPager reads them.
+      Map<String, PageFilter> filters = pageFilters();
+      for (JdbcStorage.PagedView v : JdbcStorage.pagedViews()) {
+         PageFilter f = filters.get(v.name);
+         if (f == null)
+            throw new IllegalStateException("no sample keys for the paged view " + v.name);
+         t.add(new Template(v.name + " page", KeysetPager.firstSql(v.select, v.dateKey, v.idKey), f.budgetMillis,
+                            s -> append(f.params.apply(s), Hotel.RECENT_PAGE_SIZE)));
+         t.add(new Template(v.name + " next", KeysetPager.nextSql(v.select, v.dateKey, v.idKey), f.budgetMillis,
+                            s -> append(f.params.apply(s), s.pageKeys.get(v.name)[0], s.pageKeys.get(v.name)[1], Hotel.RECENT_PAGE_SIZE)));
+         t.add(new Template(v.name + " previous", KeysetPager.previousSql(v.select, v.dateKey, v.idKey, v.dateCol, v.idCol), f.budgetMillis,
+                            s -> append(f.params.apply(s), s.pageKeys.get(v.name)[0], s.pageKeys.get(v.name)[1], Hotel.RECENT_PAGE_SIZE)));
+      }
+
+      // writes, rolled back after measuring.
+      t.add(new Template("createUser", JdbcStorage.CREATE_USER_SQL, 10, s -> new Object[] { "plancheck", "xyz", "Customer" }));
+      t.add(new Template("book", JdbcStorage.BOOK_SQL, 20,
+                        s -> new Object[] { s.customerID, s.hotelID, s.roomNumber, s.freeNight }));
+      t.add(new Template("bookStay", JdbcStorage.BOOK_STAY_SQL, 20,
+                        s -> new Object[] { s.customerID, s.hotelID, s.roomNumber, s.freeNight,
+                                            Date.valueOf(s.freeNight.toLocalDate().plusDays(2)) }));
+      t.add(new Template("updateRoomPrice", JdbcStorage.UPDATE_PRICE_SQL, 10, s -> new Object[] { 100, s.hotelID, s.roomNumber }));
+      t.add(new Template("updateRoomPrices", JdbcStorage.UPDATE_PRICES_SQL, 10, s -> new Object[] { 100, s.hotelID, s.roomNumbers }));
+      t.add(new Template("updateRoomImage", JdbcStorage.UPDATE_IMAGE_SQL, 10,
+                         s -> new Object[] { "http://example.com/room.jpg", s.hotelID, s.roomNumber }));
+      t.add(new Template("repairRooms", JdbcStorage.REPAIR_ROOMS_SQL, 20,
+                         s -> new Object[] { s.companyID, s.hotelID, s.roomNumbers, s.managerID }));
+      t.add(new Template("repairRoomRange", JdbcStorage.REPAIR_ROOM_RANGE_SQL, 20,
+                         s -> new Object[] { s.companyID, s.hotelID, 0, Integer.MAX_VALUE, 0, Integer.MAX_VALUE, s.managerID }));
+      t.add(new Template("auditLog", AuditWriter.INSERT_SQL, 10,
+                         s -> new Object[] { new int[] { s.managerID }, new int[] { s.hotelID }, new int[] { s.roomNumber },
+                                             new long[] { System.currentTimeMillis() } }));
+      return t;
+   }//end templates
+
+   /**
+    * @return per paged view of JdbcStorage, by name, the keys of its filter
+    * and the budget of a page
+    */
+   private static Map<String, PageFilter> pageFilters() {
+      Map<String, PageFilter> f = new HashMap<String, PageFilter>();
+      f.put(JdbcStorage.CUSTOMER_BOOKINGS.name, new PageFilter(10, s -> new Object[] { s.customerID }));
+      f.put(JdbcStorage.BOOKING_HISTORY.name, new PageFilter(10, s -> new Object[] { s.hotelID }));
+      f.put(JdbcStorage.BOOKING_HISTORY_RANGE.name, new PageFilter(10, s -> new Object[] { s.hotelID, s.monthStart, s.monthEnd }));
+      f.put(JdbcStorage.ROOM_UPDATES.name, new PageFilter(20, s -> new Object[] { s.managedHotels }));
+      f.put(JdbcStorage.ROOM_UPDATES_HOTEL.name, new PageFilter(10, s -> new Object[] { s.hotelID }));
+      f.put(JdbcStorage.REPAIR_HISTORY.name, new PageFilter(10, s -> new Object[] { s.managerID }));
+      return f;
+   }//end pageFilters
+
+   private static Object[] append(Object[] params, Object... more) {
+      Object[] all = Arrays.copyOf(params, params.length + more.length);
+      System.arraycopy(more, 0, all, params.length, more.length);
+      return all;
+   }
+
+   /**
+    * @return the names of the SQL constants of JdbcStorage that neither a
+    * template nor a paged view runs
+    */
+   static List<String> unchecked(List<Template> templates) {
+      Set<String> run = new HashSet<String>();
+      for (Template t : templates)
+         run.add(t.sql);
+      for (JdbcStorage.PagedView v : JdbcStorage.pagedViews())
+         run.add(v.select);
+      List<String> missing = new ArrayList<String>();
+      for (Field f : JdbcStorage.class.getDeclaredFields()) {
+         int m = f.getModifiers();
+         // private constants are pieces of the others.
+         if (!Modifier.isStatic(m) || Modifier.isPrivate(m) || f.getType() != String.class || !f.getName().endsWith("_SQL"))
+            continue;
+         try {
+            if (!run.contains((String) f.get(null)))
+               missing.add(f.getName());
+         } catch (IllegalAccessException e) {
+            missing.add(f.getName());
+         }
+      }
+      return missing;
+   }//end unchecked
+
+   /**
+    * Picks the keys: the hotel and customer with the most bookings between
+    * them, which have the longest histories, and their latest booking.
+    */
+   private Sample sample() throws SQLException {
+      Sample s = new Sample();
+      String busiest = queryExists("SELECT to_regclass('customerbookingtotals') IS NOT NULL")
+         ? "SELECT B.customerID, B.hotelID, B.roomNumber, B.bookingDate, B.bookingID FROM RoomBookings B " +
+           "WHERE (B.customerID, B.hotelID) = (SELECT customerID, hotelID FROM CustomerBookingTotals ORDER BY bookings DESC LIMIT 1) " +
+           "ORDER BY B.bookingDate DESC, B.bookingID DESC LIMIT 1"
+         : "SELECT customerID, hotelID, roomNumber, bookingDate, bookingID FROM RoomBookings ORDER BY bookingID DESC LIMIT 1";
+      try (Statement stmt = this._connection.createStatement(); ResultSet rs = stmt.executeQuery(busiest)) {
+         if (!rs.next())
+            throw new SQLException("RoomBookings is empty, there is nothing to check the plans against");
+         s.customerID = rs.getInt(1);
+         s.hotelID = rs.getInt(2);
+         s.roomNumber = rs.getInt(3);
+         s.bookingDate = rs.getDate(4);
+         s.bookingID = rs.getInt(5);
+      }
+      s.managerID = queryInts("SELECT managerUserID FROM Hotel WHERE hotelID = " + s.hotelID)[0];
+      s.managedHotels = queryInts("SELECT hotelID FROM Hotel WHERE managerUserID = " + s.managerID + " ORDER BY hotelID");
+      s.roomNumbers = queryInts("SELECT roomNumber FROM Rooms WHERE hotelID = " + s.hotelID + " ORDER BY roomNumber LIMIT 10");
+      int[] companies = queryInts("SELECT MIN(companyID) FROM MaintenanceCompany");
+      s.companyID = companies.length > 0 ? companies[0] : 0;
+      LocalDate day = s.bookingDate.toLocalDate();
+      s.monthStart = Date.valueOf(day.withDayOfMonth(1));
+      s.monthEnd = Date.valueOf(day.withDayOfMonth(day.lengthOfMonth()));
+      // the partitions reach BookingPartitions.YEARS_AHEAD years ahead.
+      s.freeNight = Date.valueOf(LocalDate.now().plusYears(1).withDayOfYear(1));
+
+      // the next and previous pages seek from where the first page ends; an empty view from past every row.
+      Map<String, PageFilter> filters = pageFilters();
+      for (JdbcStorage.PagedView v : JdbcStorage.pagedViews()) {
+         Object[] key = { Date.valueOf("9999-12-31"), Integer.MAX_VALUE };
+         PageFilter f = filters.get(v.name);
+         if (f == null)
+            throw new IllegalStateException("no sample keys for the paged view " + v.name);
+         Object[] params = append(f.params.apply(s), Hotel.RECENT_PAGE_SIZE);
+         try (PreparedStatement stmt = this._connection.prepareStatement(KeysetPager.firstSql(v.select, v.dateKey, v.idKey))) {
+            for (int p = 0; p < params.length; ++p)
+               stmt.setObject(p + 1, params[p]);
+            try (ResultSet rs = stmt.executeQuery()) {
+               while (rs.next())
+                  key = new Object[] { rs.getObject(v.dateCol + 1), rs.getObject(v.idCol + 1) };
+            }
+         }
+         s.pageKeys.put(v.name, key);
+      }
+      return s;
+   }//end sample
+
+   /**
+    * Runs EXPLAIN (ANALYZE, BUFFERS) on the statement _runs times, each in a
+    * transaction that is rolled back.
+    *
+    * @return the run with the median execution time, or the error of a failed run
+    */
+   Result measure(String sql, Object[] params) {
+      List<Result> runs = new ArrayList<Result>();
+      try {
+         this._connection.setAutoCommit(false);
+         for (int i = 0; i < this._runs; ++i) {
+            try (PreparedStatement stmt = this._connection.prepareStatement("EXPLAIN (ANALYZE, BUFFERS, FORMAT XML) " + sql)) {
+               for (int p = 0; p < params.length; ++p)
+                  stmt.setObject(p + 1, params[p]);
+               try (ResultSet rs = stmt.executeQuery()) {
+                  rs.next();
+                  runs.add(parse(rs.getString(1)));
+               }
+            } finally {
+               this._connection.rollback();
+            }
+         }
+      } catch (Exception e) {
+         Result failed = new Result();
+         failed.error = e.getMessage();
+         return failed;
+      } finally {
+         try {
+            this._connection.setAutoCommit(true);
+         } catch (SQLException e) {
+            // the next template reports the broken connection.
+         }
+      }
+      runs.sort(Comparator.comparingDouble(r -> r.executionMillis));
+      return runs.get(runs.size() / 2);
+   }//end measure
+
+   /**
+    * Reads the XML form of an EXPLAIN ANALYZE.
+    */
+   static Result parse(String xml) throws Exception {
+      Element root = DocumentBuilderFactory.newInstance().newDocumentBuilder()
+         .parse(new InputSource(new StringReader(xml))).getDocumentElement();
+      Element query = child(root, "Query");
+      Result r = new Result();
+      Element plan = child(query, "Plan");
+      r.shape = shape(plan, r);
+      r.hitBlocks = number(plan, "Shared-Hit-Blocks");
+      r.readBlocks = number(plan, "Shared-Read-Blocks");
+      r.planningMillis = decimal(query, "Planning-Time");
+      r.executionMillis = decimal(query, "Execution-Time");
+      return r;
+   }//end parse
+
+   /**
+    * Describes a plan node and its children, and adds the rows its scans
+    * touched to r. Partitions are named by their table with _YYYY, and
+    * children that look alike are written once with their count.
+    */
+   private static String shape(Element plan, Result r) {
+      String type = text(plan, "Node-Type");
+      String table = text(plan, "Relation-Name");
+      String index = text(plan, "Index-Name");
+      if (type.endsWith("Scan") && table != null) {
+         long rows = (number(plan, "Actual-Rows") + number(plan, "Rows-Removed-by-Filter")
+                      + number(plan, "Rows-Removed-by-Index-Recheck")) * Math.max(1, number(plan, "Actual-Loops"));
+         r.rowsTouched += rows;
+         if (type.equals("Seq Scan"))
+            r.seqScans.add(table.toLowerCase().replaceAll("_(\\d{4}|default)$", "") + " " + rows);
+      }
+      StringBuilder s = new StringBuilder(type);
+      if (index != null)
+         s.append(" using ").append(partition(index));
+      if (table != null)
+         s.append(" on ").append(partition(table));
+      Element children = child(plan, "Plans");
+      if (children != null) {
+         List<String> parts = new ArrayList<String>();
+         List<Integer> counts = new ArrayList<Integer>();
+         for (Node n = children.getFirstChild(); n != null; n = n.getNextSibling()) {
+            if (!(n instanceof Element) || !n.getNodeName().equals("Plan"))
+               continue;
+            String part = shape((Element) n, r);
+            int last = parts.size() - 1;
+            if (last >= 0 && parts.get(last).equals(part)) {
+               counts.set(last, counts.get(last) + 1);
+            } else {
+               parts.add(part);
+               counts.add(1);
+            }
+         }
+         s.append(" (");
+         for (int i = 0; i < parts.size(); ++i) {
+            if (i > 0)
+               s.append(", ");
+            s.append(parts.get(i));
+            if (counts.get(i) > 1)
+               s.append(" x").append(counts.get(i));
+         }
+         s.append(")");
+      }
+      return s.toString();
+   }//end shape
+
+   private static String partition(String name) {
+      return name.replaceAll("_\\d{4}(?=_|$)", "_YYYY");
+   }
+
+   private static Element child(Element e, String tag) {
+      for (Node n = e.getFirstChild(); n != null; n = n.getNextSibling()) {
+         if (n instanceof Element && n.getNodeName().equals(tag))
+            return (Element) n;
+      }
+      return null;
+   }
+
+   private static String text(Element e, String tag) {
+      Element c = child(e, tag);
+      return c == null ? null : c.getTextContent().trim();
+   }
+
+   private static long number(Element e, String tag) {
+      String t = text(e, tag);
+      return t == null ? 0 : (long) Double.parseDouble(t);
+   }
+
+   private static double decimal(Element e, String tag) {
+      String t = text(e, tag);
+      return t == null ? 0 : Double.parseDouble(t);
+   }
+
+   private boolean queryExists(String sql) throws SQLException {
+      try (Statement stmt = this._connection.createStatement(); ResultSet rs = stmt.executeQuery(sql)) {
+         return rs.next() && rs.getBoolean(1);
+      }
+   }
+
+   private int[] queryInts(String sql) throws SQLException {
+      try (Statement stmt = this._connection.createStatement(); ResultSet rs = stmt.executeQuery(sql)) {
+         return QueryResult.read(rs).intColumn(0);
+      }
+   }
+
+}//end PlanCheck
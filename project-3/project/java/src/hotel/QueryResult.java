@@ -0,0 +1,460 @@
+package hotel;
+
+import java.math.BigDecimal;
+import java.sql.Date;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.TimeZone;
+
+/**
+ * A query result stored column by column. Integer columns are kept in int[]
+ * or long[], dates as int[] of days since 1970-01-01, timestamps as long[]
+ * of microseconds, the precision of the server, and floating point columns
+ * as double[]; every other type is kept as objects. Reading a row therefore
+ * allocates nothing for the common id, number and date columns.
+ *
+ */
+public final class QueryResult {
+   private static final long MILLIS_PER_DAY = 24L * 60 * 60 * 1000;
+   private static final long MICROS_PER_SECOND = 1000 * 1000;
+   private static final int INITIAL_CAPACITY = 16;
+
+   // the storage kind of a column.
+   private static final int INT = 0;
+   private static final int LONG = 1;
+   private static final int DAY = 2;
+   private static final int MICROS = 3;
+   private static final int DOUBLE = 4;
+   private static final int DECIMAL = 5;
+   private static final int STRING = 6;
+
+   private final String[] _names;
+   private final int[] _kinds;
+   // one primitive or object array per column, chosen by its kind.
+   private final Object[] _columns;
+   private final BitSet[] _nulls;
+   private int _rowCount = 0;
+   private int _capacity = INITIAL_CAPACITY;
+
+   private QueryResult(String[] names, int[] sqlTypes, int capacity) {
+      int numCol = names.length;
+      this._names = names.clone();
+      this._kinds = new int[numCol];
+      this._columns = new Object[numCol];
+      this._nulls = new BitSet[numCol];
+      this._capacity = Math.max(1, capacity);
+      for (int c = 0; c < numCol; ++c) {
+         this._kinds[c] = kindOf(sqlTypes[c]);
+         this._columns[c] = allocate(this._kinds[c], this._capacity);
+         this._nulls[c] = new BitSet();
+      }
+   }
+
+   private static String[] names(ResultSetMetaData rsmd) throws SQLException {
+      String[] names = new String[rsmd.getColumnCount()];
+      for (int c = 0; c < names.length; ++c)
+         names[c] = rsmd.getColumnName(c + 1);
+      return names;
+   }
+
+   private static int[] types(ResultSetMetaData rsmd) throws SQLException {
+      int[] types = new int[rsmd.getColumnCount()];
+      for (int c = 0; c < types.length; ++c)
+         types[c] = rsmd.getColumnType(c + 1);
+      return types;
+   }
+
+   /**
+    * Reads every row of a result set into columns.
+    *
+    * @param rs the result set, left open
+    * @return the result columns
+    * @throws java.sql.SQLException when failed to read the result set
+    */
+   public static QueryResult read(ResultSet rs) throws SQLException {
+      ResultSetMetaData rsmd = rs.getMetaData();
+      QueryResult result = new QueryResult(names(rsmd), types(rsmd), INITIAL_CAPACITY);
+      while (rs.next())
+         result.append(rs);
+      return result;
+   }//end read
+
+   /**
+    * Starts an empty result to be filled with add(), for results that are
+    * not read from a database.
+    *
+    * @param names the lower case column names, as Postgres reports them
+    * @param sqlTypes the java.sql.Types of the columns
+    */
+   public static QueryResult empty(String[] names, int[] sqlTypes) {
+      return new QueryResult(names, sqlTypes, INITIAL_CAPACITY);
+   }
+
+   private static int kindOf(int sqlType) {
+      switch (sqlType) {
+         case Types.TINYINT:
+         case Types.SMALLINT:
+         case Types.INTEGER:
+            return INT;
+         case Types.BIGINT:
+            return LONG;
+         case Types.DATE:
+            return DAY;
+         case Types.TIMESTAMP:
+            return MICROS;
+         case Types.REAL:
+         case Types.FLOAT:
+         case Types.DOUBLE:
+            return DOUBLE;
+         case Types.NUMERIC:
+         case Types.DECIMAL:
+            return DECIMAL;
+         default:
+            return STRING;
+      }
+   }//end kindOf
+
+   private static Object allocate(int kind, int capacity) {
+      switch (kind) {
+         case INT:
+         case DAY:
+            return new int[capacity];
+         case LONG:
+         case MICROS:
+            return new long[capacity];
+         case DOUBLE:
+            return new double[capacity];
+         case DECIMAL:
+            return new BigDecimal[capacity];
+         default:
+            return new String[capacity];
+      }
+   }//end allocate
+
+   private static Object grow(Object column, int capacity) {
+      if (column instanceof int[])
+         return Arrays.copyOf((int[]) column, capacity);
+      if (column instanceof long[])
+         return Arrays.copyOf((long[]) column, capacity);
+      if (column instanceof double[])
+         return Arrays.copyOf((double[]) column, capacity);
+      return Arrays.copyOf((Object[]) column, capacity);
+   }
+
+   private int newRow() {
+      if (this._rowCount == this._capacity) {
+         this._capacity *= 2;
+         for (int c = 0; c < this._columns.length; ++c)
+            this._columns[c] = grow(this._columns[c], this._capacity);
+      }
+      return this._rowCount++;
+   }
+
+   private void append(ResultSet rs) throws SQLException {
+      int row = newRow();
+      for (int c = 0; c < this._columns.length; ++c) {
+         int i = c + 1;
+         Object column = this._columns[c];
+         switch (this._kinds[c]) {
+            case INT:
+               ((int[]) column)[row] = rs.getInt(i);
+               break;
+            case LONG:
+               ((long[]) column)[row] = rs.getLong(i);
+               break;
+            case DAY: {
+               Date d = rs.getDate(i);
+               ((int[]) column)[row] = d == null ? 0 : toEpochDay(d);
+               break;
+            }
+            case MICROS: {
+               Timestamp t = rs.getTimestamp(i);
+               ((long[]) column)[row] = t == null ? 0 : toEpochMicros(t);
+               break;
+            }
+            case DOUBLE:
+               ((double[]) column)[row] = rs.getDouble(i);
+               break;
+            case DECIMAL:
+               ((BigDecimal[]) column)[row] = rs.getBigDecimal(i);
+               break;
+            default:
+               ((String[]) column)[row] = rs.getString(i);
+               break;
+         }
+         if (rs.wasNull())
+            this._nulls[c].set(row);
+      }
+   }//end append
+
+   /**
+    * Appends a row of Java values, one per column: Integer or Long for
+    * integers, Date, Timestamp, Double, BigDecimal or String, and null for
+    * SQL NULL.
+    */
+   void add(Object... values) {
+      if (values.length != this._columns.length)
+         throw new IllegalArgumentException(values.length + " values for " + this._columns.length + " columns");
+      int row = newRow();
+      for (int c = 0; c < values.length; ++c) {
+         Object v = values[c];
+         Object column = this._columns[c];
+         if (v == null) {
+            this._nulls[c].set(row);
+            continue;
+         }
+         switch (this._kinds[c]) {
+            case INT:
+               ((int[]) column)[row] = ((Number) v).intValue();
+               break;
+            case LONG:
+               ((long[]) column)[row] = ((Number) v).longValue();
+               break;
+            case DAY:
+               ((int[]) column)[row] = toEpochDay((Date) v);
+               break;
+            case MICROS:
+               ((long[]) column)[row] = v instanceof Timestamp ? toEpochMicros((Timestamp) v) : ((java.util.Date) v).getTime() * 1000;
+               break;
+            case DOUBLE:
+               ((double[]) column)[row] = ((Number) v).doubleValue();
+               break;
+            case DECIMAL:
+               ((BigDecimal[]) column)[row] = v instanceof BigDecimal ? (BigDecimal) v : new BigDecimal(v.toString());
+               break;
+            default:
+               ((String[]) column)[row] = v.toString();
+               break;
+         }
+      }
+   }//end add
+
+   /**
+    * @return a copy of the rows from (inclusive) to to (exclusive)
+    */
+   QueryResult slice(int from, int to) {
+      if (from < 0 || to > this._rowCount || from > to)
+         throw new IndexOutOfBoundsException("rows " + from + " to " + to + " of " + this._rowCount);
+      return new QueryResult(this, from, to);
+   }
+
+   private QueryResult(QueryResult of, int from, int to) {
+      int numCol = of._names.length;
+      this._names = of._names;
+      this._kinds = of._kinds;
+      this._columns = new Object[numCol];
+      this._nulls = new BitSet[numCol];
+      // keep room for one row, so that an empty slice can still grow.
+      this._capacity = Math.max(1, to - from);
+      for (int c = 0; c < numCol; ++c) {
+         this._columns[c] = copyOfRange(of._columns[c], from, from + this._capacity);
+         this._nulls[c] = of._nulls[c].get(from, to);
+      }
+      this._rowCount = to - from;
+   }//end QueryResult
+
+   private static Object copyOfRange(Object column, int from, int to) {
+      if (column instanceof int[])
+         return Arrays.copyOfRange((int[]) column, from, to);
+      if (column instanceof long[])
+         return Arrays.copyOfRange((long[]) column, from, to);
+      if (column instanceof double[])
+         return Arrays.copyOfRange((double[]) column, from, to);
+      return Arrays.copyOfRange((Object[]) column, from, to);
+   }
+
+   /**
+    * @return the number of days from 1970-01-01 to the given local date
+    */
+   public static int toEpochDay(Date date) {
+      long millis = date.getTime();
+      millis += TimeZone.getDefault().getOffset(millis);
+      long days = millis / MILLIS_PER_DAY;
+      // round towards negative infinity for dates before 1970.
+      if (millis % MILLIS_PER_DAY < 0)
+         --days;
+      return (int) days;
+   }
+
+   /**
+    * @return the local date that is epochDay days after 1970-01-01
+    */
+   public static Date toDate(int epochDay) {
+      long millis = epochDay * MILLIS_PER_DAY;
+      return new Date(millis - TimeZone.getDefault().getOffset(millis));
+   }
+
+   private static long toEpochMicros(Timestamp t) {
+      // getNanos() holds the whole fraction of the second, getTime() only its millis.
+      return Math.floorDiv(t.getTime(), 1000) * MICROS_PER_SECOND + t.getNanos() / 1000;
+   }
+
+   private static Timestamp toTimestamp(long epochMicros) {
+      Timestamp t = new Timestamp(Math.floorDiv(epochMicros, MICROS_PER_SECOND) * 1000);
+      t.setNanos((int) Math.floorMod(epochMicros, MICROS_PER_SECOND) * 1000);
+      return t;
+   }
+
+   public int rowCount() {
+      return this._rowCount;
+   }
+
+   public int columnCount() {
+      return this._names.length;
+   }
+
+   public boolean isEmpty() {
+      return this._rowCount == 0;
+   }
+
+   /**
+    * @param col zero based column index
+    */
+   public String columnName(int col) {
+      return this._names[col];
+   }
+
+   /**
+    * @return true when the value at (row, col) is SQL NULL
+    */
+   public boolean isNull(int row, int col) {
+      checkRow(row);
+      return this._nulls[col].get(row);
+   }
+
+   public int getInt(int row, int col) {
+      checkRow(row);
+      Object column = this._columns[col];
+      if (column instanceof int[])
+         return ((int[]) column)[row];
+      if (column instanceof long[])
+         return (int) ((long[]) column)[row];
+      throw new IllegalStateException("column " + this._names[col] + " is not an integer");
+   }
+
+   public long getLong(int row, int col) {
+      checkRow(row);
+      Object column = this._columns[col];
+      if (column instanceof long[])
+         return ((long[]) column)[row];
+      if (column instanceof int[])
+         return ((int[]) column)[row];
+      throw new IllegalStateException("column " + this._names[col] + " is not an integer");
+   }
+
+   public double getDouble(int row, int col) {
+      checkRow(row);
+      Object column = this._columns[col];
+      if (column instanceof double[])
+         return ((double[]) column)[row];
+      if (column instanceof BigDecimal[]) {
+         BigDecimal v = ((BigDecimal[]) column)[row];
+         return v == null ? 0 : v.doubleValue();
+      }
+      return getLong(row, col);
+   }
+
+   public BigDecimal getDecimal(int row, int col) {
+      checkRow(row);
+      Object column = this._columns[col];
+      if (column instanceof BigDecimal[])
+         return ((BigDecimal[]) column)[row];
+      if (this._nulls[col].get(row))
+         return null;
+      if (column instanceof double[])
+         return BigDecimal.valueOf(((double[]) column)[row]);
+      return BigDecimal.valueOf(getLong(row, col));
+   }
+
+   /**
+    * @return the date at (row, col) as days since 1970-01-01
+    */
+   public int getEpochDay(int row, int col) {
+      checkRow(row);
+      if (this._kinds[col] != DAY)
+         throw new IllegalStateException("column " + this._names[col] + " is not a date");
+      return ((int[]) this._columns[col])[row];
+   }
+
+   /**
+    * @return the value at (row, col) rendered as text, or null for SQL NULL
+    */
+   public String getString(int row, int col) {
+      checkRow(row);
+      if (this._nulls[col].get(row))
+         return null;
+      Object column = this._columns[col];
+      switch (this._kinds[col]) {
+         case INT:
+            return Integer.toString(((int[]) column)[row]);
+         case LONG:
+            return Long.toString(((long[]) column)[row]);
+         case DAY:
+            return toDate(((int[]) column)[row]).toString();
+         case MICROS:
+            return toTimestamp(((long[]) column)[row]).toString();
+         case DOUBLE:
+            return Double.toString(((double[]) column)[row]);
+         default:
+            return String.valueOf(((Object[]) column)[row]);
+      }
+   }//end getString
+
+   /**
+    * @return the value at (row, col) as the JDBC type it was read from, so
+    * it can be bound as a parameter again, or null for SQL NULL
+    */
+   public Object getObject(int row, int col) {
+      checkRow(row);
+      if (this._nulls[col].get(row))
+         return null;
+      Object column = this._columns[col];
+      switch (this._kinds[col]) {
+         case INT:
+            return ((int[]) column)[row];
+         case LONG:
+            return ((long[]) column)[row];
+         case DAY:
+            return toDate(((int[]) column)[row]);
+         case MICROS:
+            return toTimestamp(((long[]) column)[row]);
+         case DOUBLE:
+            return ((double[]) column)[row];
+         default:
+            return ((Object[]) column)[row];
+      }
+   }//end getObject
+
+   /**
+    * @return a copy of an integer column, NULLs read as 0
+    */
+   public int[] intColumn(int col) {
+      Object column = this._columns[col];
+      if (column instanceof int[] && this._kinds[col] == INT)
+         return Arrays.copyOf((int[]) column, this._rowCount);
+      int[] copy = new int[this._rowCount];
+      for (int r = 0; r < this._rowCount; ++r)
+         copy[r] = getInt(r, col);
+      return copy;
+   }
+
+   /**
+    * @return a copy of a date column as days since 1970-01-01, NULLs read as 0
+    */
+   public int[] epochDayColumn(int col) {
+      if (this._kinds[col] != DAY)
+         throw new IllegalStateException("column " + this._names[col] + " is not a date");
+      return Arrays.copyOf((int[]) this._columns[col], this._rowCount);
+   }
+
+   private void checkRow(int row) {
+      if (row < 0 || row >= this._rowCount)
+         throw new IndexOutOfBoundsException("row " + row + " of " + this._rowCount);
+   }
+
+}//end QueryResult
@@ -0,0 +1,278 @@
+package hotel;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Spreads the read-only history views over streaming replicas of the
+ * primary, so reporting does not load the database that takes the
+ * bookings. Writes, and the reads that caches or booking decisions are
+ * built from, always go to the primary.
+ *
+ * Every CHECK_MILLIS the replicas are asked how far they have replayed the
+ * primary's WAL. A replica that cannot be reached, is not in recovery or is
+ * more than maxLagBytes behind is left out until a later check finds it well
+ * again; so is one whose connection fails during a read, and the read is
+ * retried elsewhere. With no replica left, reads go to the primary.
+ *
+ * Read your writes: after a user writes, their reads go to the primary
+ * until the next check. That check reads the primary's WAL position after
+ * the write committed and keeps it for the user, so the write costs no
+ * round trip of its own; from then on their reads only go to replicas that
+ * have replayed past it. The position is forgotten once every healthy
+ * replica has it; from then on a replica only counts as healthy once it has
+ * replayed every forgotten write, so one that was down meanwhile cannot
+ * serve a history without it.
+ *
+ */
+public class ReplicaRouter {
+   public static final long CHECK_MILLIS = 1000;
+   public static final int CHECK_TIMEOUT_SECONDS = 5;
+   public static final long DEFAULT_MAX_LAG_BYTES = 16L * 1024 * 1024;
+
+   // positions in bytes, comparable as numbers.
+   private static final String PRIMARY_LSN_SQL = "SELECT (pg_current_wal_lsn() - '0/0')::bigint";
+   private static final String REPLICA_LSN_SQL = "SELECT pg_is_in_recovery(), (pg_last_wal_replay_lsn() - '0/0')::bigint";
+
+   /**
+    * A replica and what the last check found out about it.
+    */
+   private static final class Replica {
+      final String url;
+      final ConnectionPool pool;
+      volatile boolean healthy = false;
+      // the WAL position replayed, in bytes.
+      volatile long replayed = -1;
+      volatile long lag = -1;
+      volatile String problem = "not checked yet";
+      final AtomicLong reads = new AtomicLong();
+
+      Replica(String url, ConnectionPool pool) {
+         this.url = url;
+         this.pool = pool;
+      }
+   }//end Replica
+
+   // the WAL position a replica needs for a user's last write, UNKNOWN until a check reads it.
+   private static final class Write {
+      static final long UNKNOWN = Long.MAX_VALUE;
+
+      final long lsn;
+
+      Write(long lsn) {
+         this.lsn = lsn;
+      }
+   }//end Write
+
+   private final ConnectionPool _primary;
+   private final Replica[] _replicas;
+   private final long _maxLagBytes;
+   private final boolean _readYourWrites;
+   private final Map<Integer, Write> _writes = new ConcurrentHashMap<Integer, Write>();
+   // the highest position of a forgotten write, which every healthy replica has replayed.
+   private volatile long _floor = 0;
+   private final AtomicInteger _next = new AtomicInteger();
+   private final AtomicLong _primaryReads = new AtomicLong();
+   private final ScheduledExecutorService _checker = Executors.newSingleThreadScheduledExecutor(r -> {
+      Thread t = new Thread(r, "replica-checker");
+      t.setDaemon(true);
+      return t;
+   });
+
+   /**
+    * Checks the replicas once, then keeps checking them in the background.
+    *
+    * @param primary the pool of the primary, for its WAL position
+    * @param urls the JDBC URLs of the replicas
+    * @param poolSize the maximum number of connections per replica
+    * @param maxLagBytes how far behind the primary a replica may be and still be read
+    * @param readYourWrites whether the reads of a user must show their own writes
+    */
+   public ReplicaRouter(ConnectionPool primary, List<String> urls, String user, String passwd, int poolSize,
+                        long maxLagBytes, boolean readYourWrites) {
+      this._primary = primary;
+      this._replicas = new Replica[urls.size()];
+      for (int i = 0; i < this._replicas.length; ++i)
+         this._replicas[i] = new Replica(urls.get(i), new ConnectionPool(urls.get(i), user, passwd, poolSize, Hotel.STATEMENT_CACHE_SIZE));
+      this._maxLagBytes = maxLagBytes;
+      this._readYourWrites = readYourWrites;
+      check();
+      this._checker.scheduleWithFixedDelay(this::check, CHECK_MILLIS, CHECK_MILLIS, TimeUnit.MILLISECONDS);
+   }//end ReplicaRouter
+
+   /**
+    * @return the number of replicas
+    */
+   public int size() {
+      return this._replicas.length;
+   }
+
+   /**
+    * Picks the replica for a read, taking turns among the usable ones.
+    *
+    * @param userID the user whose writes the read must show, or -1
+    * @return the pool of the replica, or null when the read has to go to the primary
+    */
+   public ConnectionPool pick(int userID) {
+      long needed = 0;
+      if (this._readYourWrites && userID >= 0) {
+         Write w = this._writes.get(userID);
+         if (w != null)
+            needed = w.lsn;
+      }
+      int n = this._replicas.length;
+      int first = Math.floorMod(this._next.getAndIncrement(), n);
+      for (int i = 0; i < n; ++i) {
+         Replica r = this._replicas[(first + i) % n];
+         if (r.healthy && r.replayed >= needed) {
+            r.reads.incrementAndGet();
+            return r.pool;
+         }
+      }
+      this._primaryReads.incrementAndGet();
+      return null;
+   }//end pick
+
+   /**
+    * Records that the user's write just committed on the primary, so that
+    * their reads wait for a replica that has it. Called after the commit;
+    * the position is left for the next check to read.
+    */
+   public void wrote(int userID) {
+      if (!this._readYourWrites || userID < 0)
+         return;
+      this._writes.put(userID, new Write(Write.UNKNOWN));
+   }
+
+   /**
+    * Takes a replica out of the reads after its connection failed; the
+    * next check brings it back once it answers again.
+    */
+   public void failed(ConnectionPool pool, SQLException e) {
+      for (Replica r : this._replicas) {
+         if (r.pool == pool) {
+            r.healthy = false;
+            r.problem = e.getMessage();
+         }
+      }
+   }
+
+   /**
+    * @return true when e means the server could not answer rather than that
+    * the statement is wrong, so the read may be retried on another server
+    */
+   public static boolean isUnavailable(SQLException e) {
+      String state = e.getSQLState();
+      // no state: the pool could not hand out a connection.
+      return state == null
+         || state.startsWith("08")
+         || state.startsWith("57P")
+         // a standby cancels queries that conflict with the WAL it replays.
+         || state.equals("40001");
+   }
+
+   /**
+    * @return one line per replica with its state, lag and reads served
+    */
+   public String status() {
+      StringBuilder out = new StringBuilder();
+      out.append(String.format("%-50s %9s %14s %10s%n", "replica", "state", "lag (bytes)", "reads"));
+      for (Replica r : this._replicas)
+         out.append(String.format("%-50s %9s %14d %10d%s%n", r.url, r.healthy ? "up" : "down", r.lag, r.reads.get(),
+                                  r.healthy ? "" : " " + r.problem));
+      out.append(String.format("%-50s %9s %14s %10d%n", "(primary)", "", "", this._primaryReads.get()));
+      return out.toString();
+   }
+
+   public void close() {
+      this._checker.shutdownNow();
+      for (Replica r : this._replicas)
+         r.pool.close();
+   }
+
+   private long primaryLsn() throws SQLException {
+      return lsn(this._primary, PRIMARY_LSN_SQL, false);
+   }
+
+   private static long lsn(ConnectionPool pool, String sql, boolean replica) throws SQLException {
+      ConnectionPool.PooledConnection pc = pool.acquire();
+      try {
+         PreparedStatement stmt = pc.prepare(sql);
+         // a replica that hangs must not stop the checks of the others.
+         stmt.setQueryTimeout(CHECK_TIMEOUT_SECONDS);
+         try (ResultSet rs = stmt.executeQuery()) {
+            if (!rs.next())
+               throw new SQLException("no WAL position");
+            if (replica && !rs.getBoolean(1))
+               throw new SQLException("not a replica, it is not in recovery");
+            long lsn = rs.getLong(replica ? 2 : 1);
+            if (rs.wasNull())
+               throw new SQLException("no WAL replayed yet");
+            return lsn;
+         }
+      } finally {
+         pool.release(pc);
+      }
+   }//end lsn
+
+   private void check() {
+      // writes recorded so far committed before the primary's position is read below.
+      Map<Integer, Write> unknown = new HashMap<Integer, Write>();
+      for (Map.Entry<Integer, Write> e : this._writes.entrySet()) {
+         if (e.getValue().lsn == Write.UNKNOWN)
+            unknown.put(e.getKey(), e.getValue());
+      }
+      long primary;
+      try {
+         primary = primaryLsn();
+      } catch (SQLException e) {
+         // the lag is unknown; keep the replicas as they are and the writers on the primary.
+         return;
+      }
+      Write known = new Write(primary);
+      for (Map.Entry<Integer, Write> e : unknown.entrySet())
+         // a newer write of the user since the snapshot stays unknown until the next check.
+         this._writes.replace(e.getKey(), e.getValue(), known);
+      for (Replica r : this._replicas) {
+         try {
+            long replayed = lsn(r.pool, REPLICA_LSN_SQL, true);
+            r.replayed = replayed;
+            r.lag = Math.max(0, primary - replayed);
+            r.healthy = r.lag <= this._maxLagBytes && replayed >= this._floor;
+            r.problem = r.healthy ? null
+               : replayed < this._floor ? "has not replayed every write of the users" : "too far behind";
+         } catch (SQLException e) {
+            r.healthy = false;
+            r.problem = e.getMessage();
+         }
+      }
+
+      // writes every healthy replica has need not be remembered; with none healthy, all are kept.
+      long minReplayed = -1;
+      for (Replica r : this._replicas) {
+         if (r.healthy)
+            minReplayed = minReplayed < 0 ? r.replayed : Math.min(minReplayed, r.replayed);
+      }
+      for (Iterator<Write> it = this._writes.values().iterator(); it.hasNext(); ) {
+         Write w = it.next();
+         if (w.lsn <= minReplayed) {
+            // raised first, so no replica without the write becomes readable once it is gone.
+            if (w.lsn > this._floor)
+               this._floor = w.lsn;
+            it.remove();
+         }
+      }
+   }//end check
+
+}//end ReplicaRouter
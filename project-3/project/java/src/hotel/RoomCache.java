@@ -0,0 +1,233 @@
+package hotel;
+
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A read-through cache of Rooms. The rooms of a hotel are loaded together
+ * the first time any of them is asked for, into sorted arrays searched by
+ * room number, so the price of a room on the booking path is a binary
+ * search instead of a query.
+ *
+ * A hotel is dropped when this instance changes one of its rooms and when
+ * the triggers of sql/src/create_notifications.sql announce a change made
+ * by anyone else. The number of hotels is bounded; the least recently used
+ * ones are evicted first. Hotels are also reloaded after DEFAULT_TTL_MILLIS
+ * in case notifications were missed.
+ *
+ */
+public class RoomCache {
+   public static final int DEFAULT_MAX_HOTELS = 1024;
+   public static final long DEFAULT_TTL_MILLIS = 5 * 60 * 1000;
+   // the channel the Rooms triggers notify with the hotelID that changed.
+   public static final String CHANNEL = "room_changes";
+
+   /**
+    * The rooms of one hotel, never changed after loading.
+    */
+   public static final class HotelRooms {
+      public final int hotelID;
+      // sorted.
+      private final int[] _roomNumbers;
+      private final int[] _prices;
+      private final String[] _imageURLs;
+      // positions of the rooms, cheapest first; equal prices by room number.
+      private final int[] _byPrice;
+      private final long _loadedAt = System.currentTimeMillis();
+
+      HotelRooms(int hotelID, QueryResult rows) {
+         this.hotelID = hotelID;
+         int n = rows.rowCount();
+         this._roomNumbers = rows.intColumn(0);
+         this._prices = rows.intColumn(1);
+         this._imageURLs = new String[n];
+         for (int r = 0; r < n; ++r)
+            this._imageURLs[r] = rows.getString(r, 2);
+         long[] keys = new long[n];
+         for (int r = 0; r < n; ++r)
+            keys[r] = ((long) this._prices[r] << 32) | r;
+         Arrays.sort(keys);
+         this._byPrice = new int[n];
+         for (int r = 0; r < n; ++r)
+            this._byPrice[r] = (int) keys[r];
+      }
+
+      public int size() {
+         return this._roomNumbers.length;
+      }
+
+      public int roomNumber(int i) {
+         return this._roomNumbers[i];
+      }
+
+      public int price(int i) {
+         return this._prices[i];
+      }
+
+      public String imageURL(int i) {
+         return this._imageURLs[i];
+      }
+
+      /**
+       * @return the position of the rank-th cheapest room
+       */
+      public int byPrice(int rank) {
+         return this._byPrice[rank];
+      }
+
+      /**
+       * @return the position of the room, or a negative number when the hotel has no such room
+       */
+      public int indexOf(int roomNumber) {
+         return Arrays.binarySearch(this._roomNumbers, roomNumber);
+      }
+   }//end HotelRooms
+
+   private final Hotel _esql;
+   private final long _ttlMillis;
+   // access ordered, so the coldest hotel is evicted first.
+   private final Map<Integer, HotelRooms> _hotels;
+   // bumped by every invalidation, so a load that raced with one is not kept.
+   private long _generation = 0;
+
+   public RoomCache(Hotel esql) {
+      this(esql, DEFAULT_MAX_HOTELS, DEFAULT_TTL_MILLIS);
+   }
+
+   /**
+    * @param esql the database to load rooms from
+    * @param maxHotels the number of hotels kept in memory
+    * @param ttlMillis how long a loaded hotel is trusted
+    */
+   public RoomCache(Hotel esql, final int maxHotels, long ttlMillis) {
+      this._esql = esql;
+      this._ttlMillis = ttlMillis;
+      this._hotels = new LinkedHashMap<Integer, HotelRooms>(16, 0.75f, true) {
+         protected boolean removeEldestEntry(Map.Entry<Integer, HotelRooms> eldest) {
+            return size() > maxHotels;
+         }
+      };
+   }//end RoomCache
+
+   /**
+    * @return every room of the hotel, none when there is no such hotel
+    * @throws java.sql.SQLException when the rooms could not be loaded
+    */
+   public HotelRooms rooms(int hotelID) throws SQLException {
+      long generation;
+      synchronized (this._hotels) {
+         HotelRooms h = this._hotels.get(hotelID);
+         if (h != null && System.currentTimeMillis() - h._loadedAt < this._ttlMillis)
+            return h;
+         generation = this._generation;
+      }
+      // two sessions missing at once both load; the rooms are the same.
+      HotelRooms h = new HotelRooms(hotelID, this._esql.storage().rooms(hotelID));
+      synchronized (this._hotels) {
+         if (generation == this._generation)
+            this._hotels.put(hotelID, h);
+      }
+      return h;
+   }//end rooms
+
+   /**
+    * Finds the rooms of several hotels. The hotels that are not cached are
+    * loaded together in one statement rather than one by one.
+    *
+    * @return the rooms of each of hotelIDs, in the same order
+    * @throws java.sql.SQLException when the rooms could not be loaded
+    */
+   public HotelRooms[] rooms(int[] hotelIDs) throws SQLException {
+      HotelRooms[] result = new HotelRooms[hotelIDs.length];
+      int[] missing = new int[hotelIDs.length];
+      int misses = 0;
+      long generation;
+      synchronized (this._hotels) {
+         long now = System.currentTimeMillis();
+         for (int i = 0; i < hotelIDs.length; ++i) {
+            HotelRooms h = this._hotels.get(hotelIDs[i]);
+            if (h != null && now - h._loadedAt < this._ttlMillis)
+               result[i] = h;
+            else
+               missing[misses++] = hotelIDs[i];
+         }
+         generation = this._generation;
+      }
+      if (misses == 0)
+         return result;
+
+      // ordered by hotel, so the rooms of each hotel are one run of rows.
+      QueryResult rows = this._esql.storage().rooms(Arrays.copyOf(missing, misses));
+      int[] hotelOf = rows.intColumn(3);
+      Map<Integer, HotelRooms> loaded = new HashMap<Integer, HotelRooms>();
+      int from = 0;
+      while (from < hotelOf.length) {
+         int to = from + 1;
+         while (to < hotelOf.length && hotelOf[to] == hotelOf[from])
+            ++to;
+         loaded.put(hotelOf[from], new HotelRooms(hotelOf[from], rows.slice(from, to)));
+         from = to;
+      }
+      synchronized (this._hotels) {
+         for (int i = 0; i < hotelIDs.length; ++i) {
+            if (result[i] != null)
+               continue;
+            HotelRooms h = loaded.get(hotelIDs[i]);
+            // a hotel without rooms has no rows.
+            if (h == null)
+               h = new HotelRooms(hotelIDs[i], rows.slice(0, 0));
+            if (generation == this._generation)
+               this._hotels.put(hotelIDs[i], h);
+            result[i] = h;
+         }
+      }
+      return result;
+   }//end rooms
+
+   /**
+    * @return the price of the room, or -1 when the hotel has no such room
+    * @throws java.sql.SQLException when the rooms could not be loaded
+    */
+   public int price(int hotelID, int roomNumber) throws SQLException {
+      HotelRooms h = rooms(hotelID);
+      int i = h.indexOf(roomNumber);
+      return i < 0 ? -1 : h.price(i);
+   }
+
+   /**
+    * Forgets the rooms of a hotel. Call this after changing any of them.
+    */
+   public void invalidate(int hotelID) {
+      synchronized (this._hotels) {
+         ++this._generation;
+         this._hotels.remove(hotelID);
+      }
+   }
+
+   public void clear() {
+      synchronized (this._hotels) {
+         ++this._generation;
+         this._hotels.clear();
+      }
+   }
+
+   /**
+    * Handles a notification on CHANNEL: the hotelID that changed, or
+    * nothing when any hotel may have changed.
+    */
+   void changed(String payload) {
+      if (payload == null || payload.isEmpty()) {
+         clear();
+         return;
+      }
+      try {
+         invalidate(Integer.parseInt(payload.trim()));
+      } catch (NumberFormatException e) {
+         clear();
+      }
+   }//end changed
+
+}//end RoomCache
@@ -0,0 +1,175 @@
+package hotel;
+
+import java.sql.Date;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+
+/**
+ * The "cheapest free rooms near me" search: every room of the hotels within
+ * a radius of a location that is free on a night or for a whole stay, in
+ * one pass and cheapest first.
+ *
+ * The hotels come from the HotelIndex and their rooms from the RoomCache,
+ * already ordered by price; the hotels it does not hold are loaded in one
+ * statement. The rooms booked on any night of the stay are read in one
+ * query over every hotel with a room in the price range. The hotels are
+ * then merged on the price of their next room, so rooms are produced in
+ * price order and the search stops as soon as the limit is reached or the
+ * next room is over the maximum price.
+ *
+ * Equal prices are ordered by distance, then hotelID, then room number.
+ * Not thread safe; every search is its own instance.
+ *
+ */
+public class RoomSearch implements Iterator<RoomSearch.Result> {
+
+   /**
+    * A free room and how far its hotel is from the searched location.
+    */
+   public static final class Result {
+      public final int hotelID;
+      public final String hotelName;
+      public final int roomNumber;
+      public final int price;
+      public final double distance;
+
+      Result(int hotelID, String hotelName, int roomNumber, int price, double distance) {
+         this.hotelID = hotelID;
+         this.hotelName = hotelName;
+         this.roomNumber = roomNumber;
+         this.price = price;
+         this.distance = distance;
+      }
+   }//end Result
+
+   /**
+    * The rooms of one hotel that were not looked at yet, cheapest first.
+    */
+   private final class Cursor implements Comparable<Cursor> {
+      final HotelIndex.Entry hotel;
+      final double distance;
+      final RoomCache.HotelRooms rooms;
+      // rank of the next room in price order.
+      int next = 0;
+      // the rooms booked on any night of the stay.
+      BitSet booked = NONE_BOOKED;
+
+      Cursor(HotelIndex.Entry hotel, double distance, RoomCache.HotelRooms rooms) {
+         this.hotel = hotel;
+         this.distance = distance;
+         this.rooms = rooms;
+      }
+
+      boolean hasRoom() {
+         return this.next < this.rooms.size() && price() <= _maxPrice;
+      }
+
+      int price() {
+         return this.rooms.price(this.rooms.byPrice(this.next));
+      }
+
+      boolean isFree(int roomNumber) {
+         return !this.booked.get(roomNumber);
+      }
+
+      public int compareTo(Cursor o) {
+         int c = Integer.compare(price(), o.price());
+         if (c == 0)
+            c = Double.compare(this.distance, o.distance);
+         return c != 0 ? c : Integer.compare(this.hotel.hotelID, o.hotel.hotelID);
+      }
+   }//end Cursor
+
+   private static final BitSet NONE_BOOKED = new BitSet();
+
+   private final int _maxPrice;
+   private final int _limit;
+   private final PriorityQueue<Cursor> _hotels = new PriorityQueue<Cursor>();
+   private Result _next = null;
+   private int _returned = 0;
+
+   /**
+    * Finds the hotels of the search, their rooms and their bookings.
+    *
+    * @param first the first night of the stay
+    * @param last the last night of the stay, inclusive; the same as first for one night
+    * @param maxPrice the highest price shown, Integer.MAX_VALUE for any
+    * @param limit the number of rooms shown at most
+    * @throws java.sql.SQLException when the rooms or bookings could not be loaded
+    */
+   public RoomSearch(Hotel esql, double lat, double lon, double radius, Date first, Date last,
+                     int maxPrice, int limit) throws SQLException {
+      if (QueryResult.toEpochDay(last) < QueryResult.toEpochDay(first))
+         throw new IllegalArgumentException("the stay ends on " + last + ", before it starts on " + first);
+      this._maxPrice = maxPrice;
+      this._limit = limit;
+      if (limit <= 0)
+         return;
+      List<HotelIndex.Entry> near = esql.hotelIndex().withinRadius(lat, lon, radius);
+      int[] hotelIDs = new int[near.size()];
+      for (int i = 0; i < hotelIDs.length; ++i)
+         hotelIDs[i] = near.get(i).hotelID;
+      RoomCache.HotelRooms[] rooms = esql.rooms().rooms(hotelIDs);
+      List<Cursor> cursors = new ArrayList<Cursor>();
+      for (int i = 0; i < hotelIDs.length; ++i) {
+         HotelIndex.Entry h = near.get(i);
+         Cursor c = new Cursor(h, Math.sqrt(h.distanceSq(lat, lon)), rooms[i]);
+         if (c.hasRoom())
+            cursors.add(c);
+      }
+      if (cursors.isEmpty())
+         return;
+
+      int[] candidates = new int[cursors.size()];
+      for (int i = 0; i < candidates.length; ++i)
+         candidates[i] = cursors.get(i).hotel.hotelID;
+      QueryResult booked = esql.storage().bookedRooms(candidates, first, last);
+      int[] bookedHotels = booked.intColumn(0);
+      int[] bookedRooms = booked.intColumn(1);
+      Map<Integer, BitSet> bookedByHotel = new HashMap<Integer, BitSet>();
+      for (int r = 0; r < bookedHotels.length; ++r)
+         bookedByHotel.computeIfAbsent(bookedHotels[r], id -> new BitSet()).set(bookedRooms[r]);
+      for (Cursor c : cursors) {
+         c.booked = bookedByHotel.getOrDefault(c.hotel.hotelID, NONE_BOOKED);
+         this._hotels.add(c);
+      }
+   }//end RoomSearch
+
+   public boolean hasNext() {
+      if (this._next == null && this._returned < this._limit)
+         this._next = advance();
+      return this._next != null;
+   }
+
+   public Result next() {
+      if (!hasNext())
+         throw new NoSuchElementException();
+      Result r = this._next;
+      this._next = null;
+      ++this._returned;
+      return r;
+   }
+
+   // the cheapest free room left, or null when there is none.
+   private Result advance() {
+      while (!this._hotels.isEmpty()) {
+         Cursor c = this._hotels.poll();
+         int i = c.rooms.byPrice(c.next++);
+         int roomNumber = c.rooms.roomNumber(i);
+         boolean free = c.isFree(roomNumber);
+         if (c.hasRoom())
+            this._hotels.add(c);
+         if (free)
+            return new Result(c.hotel.hotelID, c.hotel.hotelName, roomNumber, c.rooms.price(i), c.distance);
+      }
+      return null;
+   }//end advance
+
+}//end RoomSearch
@@ -0,0 +1,242 @@
+package hotel;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Load generator for HotelServer. Many simulated customers, each on a
+ * thread of its own, send the read operations of the menu back to back for
+ * a fixed time: room searches, hotels around a location, the free rooms of a
+ * hotel and, when they can log in, their recent bookings. Locations are
+ * picked near the hotels of the server so searches find rooms.
+ *
+ * Nothing is booked, so the tool can run against a live database.
+ * Afterwards it prints the throughput and latency percentiles of every
+ * operation, as seen by the clients. Requests the server refuses with 503
+ * are counted apart and kept out of the latencies; the client that got one
+ * waits as long as Retry-After asks before its next request. By default
+ * there are as many clients as a server with default settings holds.
+ *
+ */
+public class ServerLoadTest {
+   // hotels asked for up front; the clients pick their locations among them.
+   private static final int SAMPLE_HOTELS = 1000;
+
+   // what the clients saw of one operation.
+   private static final class Stats {
+      final Metrics.Histogram latency = new Metrics.Histogram();
+      final AtomicLong errors = new AtomicLong();
+      final AtomicLong refused = new AtomicLong();
+   }
+
+   private final HttpClient _http;
+   private final String _base;
+   private final Map<String, Stats> _stats = new ConcurrentHashMap<String, Stats>();
+   // {latitude, longitude, hotelID} of the sampled hotels.
+   private final List<double[]> _hotels = new ArrayList<double[]>();
+
+   ServerLoadTest(HttpClient http, String base) {
+      this._http = http;
+      this._base = base;
+   }
+
+   /**
+    * @param args <host> <port> [--clients n] [--seconds n] [--user id] [--password p]
+    */
+   public static void main(String[] args) {
+      if (args.length < 2) {
+         System.err.println (
+            "Usage: " +
+            "java [-classpath <classpath>] " +
+            ServerLoadTest.class.getName () +
+            " <host> <port> [--clients n] [--seconds n] [--user id] [--password p]");
+         return;
+      }//end if
+
+      int clients = HotelServer.capacity(HotelServer.DEFAULT_MAX_REQUESTS);
+      int seconds = 30;
+      String user = null;
+      String password = "";
+      for (int i = 2; i < args.length; ++i) {
+         String arg = args[i];
+         if (i + 1 >= args.length)
+            throw new IllegalArgumentException("missing value for " + arg);
+         String v = args[++i];
+         switch (arg) {
+            case "--clients": clients = Integer.parseInt(v); break;
+            case "--seconds": seconds = Integer.parseInt(v); break;
+            case "--user": user = v; break;
+            case "--password": password = v; break;
+            default: throw new IllegalArgumentException("unknown option " + arg);
+         }
+      }
+
+      ExecutorService threads = HotelServer.threadPerTask("load-client");
+      HttpClient http = HttpClient.newBuilder()
+         .version(HttpClient.Version.HTTP_1_1)
+         .connectTimeout(Duration.ofSeconds(10))
+         .executor(threads)
+         .build();
+      try {
+         ServerLoadTest test = new ServerLoadTest(http, "http://" + args[0] + ":" + args[1]);
+         test.sampleHotels();
+         System.out.println(clients + " client(s) for " + seconds + " s");
+         long elapsed = test.run(threads, clients, seconds * 1000L, user, password);
+         test.report(elapsed);
+      } catch (Exception e) {
+         System.err.println(e.getMessage());
+         System.exit(1);
+      } finally {
+         threads.shutdownNow();
+      }
+   }//end main
+
+   private void sampleHotels() throws Exception {
+      String body = get("/hotels/nearest?lat=0&lon=0&k=" + SAMPLE_HOTELS, null);
+      if (body == null)
+         throw new Exception("the server did not list its hotels");
+      String[] lines = body.split("\n");
+      for (int i = 1; i < lines.length; ++i) {
+         String[] f = lines[i].split("\t");
+         this._hotels.add(new double[] { Double.parseDouble(f[2]), Double.parseDouble(f[3]), Integer.parseInt(f[0]) });
+      }
+      if (this._hotels.isEmpty())
+         throw new Exception("the server has no hotels");
+   }//end sampleHotels
+
+   /**
+    * Runs the clients until millis have passed.
+    *
+    * @return the time the clients ran, in nanoseconds
+    */
+   private long run(ExecutorService threads, int clients, long millis, String user, String password) throws Exception {
+      final long deadline = System.currentTimeMillis() + millis;
+      final CountDownLatch done = new CountDownLatch(clients);
+      long start = System.nanoTime();
+      for (int c = 0; c < clients; ++c) {
+         threads.execute(() -> {
+            try {
+               String session = user == null ? null : login(user, password);
+               while (System.currentTimeMillis() < deadline)
+                  step(session);
+            } finally {
+               done.countDown();
+            }
+         });
+      }
+      done.await();
+      return System.nanoTime() - start;
+   }//end run
+
+   // one operation, picked at random with the weights of customer traffic.
+   private void step(String session) {
+      ThreadLocalRandom random = ThreadLocalRandom.current();
+      double[] hotel = this._hotels.get(random.nextInt(this._hotels.size()));
+      double lat = hotel[0] + random.nextDouble(-5, 5);
+      double lon = hotel[1] + random.nextDouble(-5, 5);
+      String date = LocalDate.of(2015, 1, 1).plusDays(random.nextInt(3650)).toString();
+      int pick = random.nextInt(100);
+      if (pick < 50)
+         timed("search", "/search?lat=" + lat + "&lon=" + lon + "&date=" + date + "&limit=10", session);
+      else if (pick < 70)
+         timed("hotels", "/hotels?lat=" + lat + "&lon=" + lon, session);
+      else if (pick < 90 || session == null)
+         timed("rooms", "/rooms?hotelID=" + (int) hotel[2] + "&date=" + date, session);
+      else
+         timed("bookings", "/bookings", session);
+   }//end step
+
+   private String login(String user, String password) {
+      try {
+         HttpRequest request = HttpRequest.newBuilder(URI.create(this._base + "/login"))
+            .header("Content-Type", "application/x-www-form-urlencoded")
+            .POST(HttpRequest.BodyPublishers.ofString("userID=" + user + "&password=" + password))
+            .build();
+         HttpResponse<String> response = this._http.send(request, HttpResponse.BodyHandlers.ofString());
+         if (response.statusCode() != 200)
+            return null;
+         return response.body().split("\n")[1].split("\t")[0];
+      } catch (Exception e) {
+         return null;
+      }
+   }//end login
+
+   private void timed(String operation, String path, String session) {
+      Stats stats = this._stats.computeIfAbsent(operation, k -> new Stats());
+      long start = System.nanoTime();
+      HttpResponse<String> response = send(path, session);
+      long nanos = System.nanoTime() - start;
+      if (response != null && response.statusCode() == 503) {
+         stats.refused.incrementAndGet();
+         backOff(response);
+         return;
+      }
+      stats.latency.record(nanos);
+      if (response == null || response.statusCode() != 200)
+         stats.errors.incrementAndGet();
+   }
+
+   // the body of a 200 response, or null for any other outcome.
+   private String get(String path, String session) {
+      HttpResponse<String> response = send(path, session);
+      return response != null && response.statusCode() == 200 ? response.body() : null;
+   }
+
+   // the response, or null when there was none.
+   private HttpResponse<String> send(String path, String session) {
+      try {
+         HttpRequest.Builder request = HttpRequest.newBuilder(URI.create(this._base + path)).GET();
+         if (session != null)
+            request.header("Session", session);
+         return this._http.send(request.build(), HttpResponse.BodyHandlers.ofString());
+      } catch (Exception e) {
+         return null;
+      }
+   }//end send
+
+   // waits the seconds the Retry-After header of a refused request asks for, one without it.
+   private static void backOff(HttpResponse<String> response) {
+      long seconds = 1;
+      try {
+         seconds = Long.parseLong(response.headers().firstValue("Retry-After").orElse("1"));
+      } catch (NumberFormatException e) {
+         // keep the default.
+      }
+      try {
+         Thread.sleep(seconds * 1000);
+      } catch (InterruptedException e) {
+         Thread.currentThread().interrupt();
+      }
+   }
+
+   private void report(long elapsedNanos) {
+      double seconds = elapsedNanos / 1e9;
+      System.out.println(String.format("%-10s %10s %8s %8s %10s %9s %9s %9s %9s", "operation", "calls", "errors", "refused",
+                                       "calls/s", "p50 ms", "p99 ms", "p99.9 ms", "max ms"));
+      long calls = 0;
+      long refused = 0;
+      for (Map.Entry<String, Stats> e : new TreeMap<String, Stats>(this._stats).entrySet()) {
+         Metrics.Histogram h = e.getValue().latency;
+         calls += h.count();
+         refused += e.getValue().refused.get();
+         System.out.println(String.format("%-10s %10d %8d %8d %10.0f %9.2f %9.2f %9.2f %9.2f", e.getKey(), h.count(),
+                                          e.getValue().errors.get(), e.getValue().refused.get(), h.count() / seconds,
+                                          h.percentile(50) / 1e6, h.percentile(99) / 1e6, h.percentile(99.9) / 1e6, h.max() / 1e6));
+      }
+      System.out.println(String.format("%-10s %10d %8s %8d %10.0f", "total", calls, "", refused, calls / seconds));
+   }//end report
+
+}//end ServerLoadTest
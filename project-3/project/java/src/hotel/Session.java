@@ -0,0 +1,115 @@
+package hotel;
+
+import java.sql.SQLException;
+import java.util.Arrays;
+
+/**
+ * The logged in user: their userID, userType and the hotels they manage,
+ * read in the same round trip as the password check. Permission checks of
+ * the manager operations are answered from here instead of asking the
+ * database again.
+ *
+ * A trigger on Hotel (sql/src/create_notifications.sql) sends a
+ * notification whenever a manager changes; Hotel counts them as its manager
+ * version, and a session loaded under an older version reloads itself on
+ * its next check. The session is also reloaded once it is MAX_AGE_MILLIS
+ * old, in case the notifications are not available.
+ *
+ */
+public final class Session {
+   // the channel the Hotel triggers notify when a managerUserID changes.
+   public static final String MANAGERS_CHANNEL = "hotel_managers";
+   public static final long MAX_AGE_MILLIS = 5 * 60 * 1000;
+
+   /**
+    * What was read at one point in time; replaced as a whole on reload.
+    */
+   private static final class State {
+      final String userType;
+      // sorted.
+      final int[] hotels;
+      final long version;
+      final long loadedAt;
+
+      State(String userType, int[] hotels, long version) {
+         this.userType = userType;
+         this.hotels = hotels;
+         this.version = version;
+         this.loadedAt = System.currentTimeMillis();
+      }
+   }//end State
+
+   private final Hotel _esql;
+   private final int _userID;
+   private volatile State _state;
+
+   private Session(Hotel esql, int userID, State state) {
+      this._esql = esql;
+      this._userID = userID;
+      this._state = state;
+   }
+
+   /**
+    * Checks the password of a user and reads their session.
+    *
+    * @return the session, or null when there is no such user or the password is wrong
+    * @throws java.sql.SQLException when failed to read the user
+    */
+   static Session login(Hotel esql, int userID, String password) throws SQLException {
+      long version = esql.managerVersion();
+      State state = read(esql.storage().user(userID, password), version);
+      return state == null ? null : new Session(esql, userID, state);
+   }//end login
+
+   private static State read(QueryResult rows, long version) {
+      if (rows.isEmpty())
+         return null;
+      String userType = rows.getString(0, 0);
+      int[] hotels = new int[rows.rowCount()];
+      int n = 0;
+      for (int r = 0; r < rows.rowCount(); ++r) {
+         if (!rows.isNull(r, 1))
+            hotels[n++] = rows.getInt(r, 1);
+      }
+      return new State(userType == null ? "" : userType.trim(), Arrays.copyOf(hotels, n), version);
+   }//end read
+
+   private State state() throws SQLException {
+      State state = this._state;
+      long version = this._esql.managerVersion();
+      if (state.version == version && System.currentTimeMillis() - state.loadedAt < MAX_AGE_MILLIS)
+         return state;
+      // read the version first, so a change during the reload causes another one.
+      State fresh = read(this._esql.storage().user(this._userID, null), version);
+      // a deleted user keeps nothing.
+      this._state = fresh != null ? fresh : new State("", new int[0], version);
+      return this._state;
+   }//end state
+
+   public int userID() {
+      return this._userID;
+   }
+
+   public String userType() throws SQLException {
+      return state().userType;
+   }
+
+   public boolean isManager() throws SQLException {
+      return "manager".equals(state().userType);
+   }
+
+   /**
+    * @return true when the user is the manager of the hotel
+    */
+   public boolean manages(int hotelID) throws SQLException {
+      return Arrays.binarySearch(state().hotels, hotelID) >= 0;
+   }
+
+   /**
+    * @return the sorted hotelIDs the user manages
+    */
+   public int[] managedHotels() throws SQLException {
+      return state().hotels.clone();
+   }
+
+}//end Session
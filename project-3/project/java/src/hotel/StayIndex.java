@@ -0,0 +1,233 @@
+package hotel;
+
+import java.sql.Date;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * An interval index over RoomBookings for multi-night stays. For every room
+ * of a hotel it keeps the booked nights merged into runs of consecutive
+ * days, ordered by their first night, so "is the room free from D1 to D2"
+ * is a single floor lookup, O(log n) in the number of runs, however long
+ * the booking history of the hotel is.
+ *
+ * A hotel is loaded from RoomBookings the first time it is asked for and
+ * is updated in place by the bookings made through this Hotel instance.
+ * Only the nights from today on are loaded, or from the first night asked
+ * for when that is earlier, so the past of a hotel is not read again and
+ * again. Like AvailabilityCache it keeps a bounded number of hotels in LRU
+ * order and reloads a hotel after a while to pick up bookings of other
+ * processes.
+ *
+ */
+public class StayIndex {
+   public static final int DEFAULT_MAX_HOTELS = 256;
+   public static final long DEFAULT_TTL_MILLIS = 30 * 1000;
+
+   private final Hotel _esql;
+   private final long _ttlMillis;
+   // access ordered, so the coldest hotel is evicted first.
+   private final Map<Integer, HotelStays> _hotels;
+
+   public StayIndex(Hotel esql) {
+      this(esql, DEFAULT_MAX_HOTELS, DEFAULT_TTL_MILLIS);
+   }
+
+   /**
+    * @param esql the database to load bookings from
+    * @param maxHotels the number of hotels kept in memory
+    * @param ttlMillis how long a loaded hotel is trusted
+    */
+   public StayIndex(Hotel esql, final int maxHotels, long ttlMillis) {
+      this._esql = esql;
+      this._ttlMillis = ttlMillis;
+      this._hotels = new LinkedHashMap<Integer, HotelStays>(16, 0.75f, true) {
+         protected boolean removeEldestEntry(Map.Entry<Integer, HotelStays> eldest) {
+            return size() > maxHotels;
+         }
+      };
+   }//end StayIndex
+
+   /**
+    * @return true when the room has no booking on any night from first to last, inclusive
+    * @throws java.sql.SQLException when the bookings of the hotel could not be loaded
+    */
+   public boolean isFree(int hotelID, int roomNumber, Date first, Date last) throws SQLException {
+      int from = QueryResult.toEpochDay(first);
+      return hotel(hotelID, from).isFree(roomNumber, from, QueryResult.toEpochDay(last));
+   }
+
+   /**
+    * Records nights that were just committed to RoomBookings. A hotel that is
+    * not loaded yet is left alone; loading it later reads the new rows.
+    */
+   public void markBooked(int hotelID, int roomNumber, Date first, Date last) {
+      HotelStays h;
+      synchronized (this._hotels) {
+         h = this._hotels.get(hotelID);
+      }
+      if (h != null)
+         h.markBooked(roomNumber, QueryResult.toEpochDay(first), QueryResult.toEpochDay(last));
+   }
+
+   /**
+    * Forgets what is known about a hotel.
+    */
+   public void invalidate(int hotelID) {
+      synchronized (this._hotels) {
+         this._hotels.remove(hotelID);
+      }
+   }
+
+   public void clear() {
+      synchronized (this._hotels) {
+         this._hotels.clear();
+      }
+   }
+
+   private HotelStays hotel(int hotelID, int from) throws SQLException {
+      HotelStays h;
+      synchronized (this._hotels) {
+         h = this._hotels.get(hotelID);
+         if (h == null) {
+            h = new HotelStays(hotelID);
+            this._hotels.put(hotelID, h);
+         }
+      }
+      h.ensureLoaded(from);
+      return h;
+   }//end hotel
+
+   /**
+    * The booked runs of every room of one hotel. The bookings are read
+    * without holding the hotel and swapped in when they are complete, so
+    * lookups and updates of the hotel go on meanwhile; the nights marked
+    * while a load is running are applied again on top of what it read.
+    */
+   private final class HotelStays {
+      private final int _hotelID;
+      // roomNumber -> (first night -> last night) of every booked run.
+      private Map<Integer, TreeMap<Integer, Integer>> _rooms = new HashMap<Integer, TreeMap<Integer, Integer>>();
+      // the first night loaded; earlier nights are not known.
+      private int _from = Integer.MAX_VALUE;
+      private long _loadedAt = -1;
+      // the runs marked since the oldest running load started, null when no load runs.
+      private List<int[]> _marked = null;
+      private int _loading = 0;
+
+      HotelStays(int hotelID) {
+         this._hotelID = hotelID;
+      }
+
+      /**
+       * Loads the hotel unless it is fresh and known from the night from on.
+       */
+      void ensureLoaded(int from) throws SQLException {
+         long started = System.currentTimeMillis();
+         synchronized (this) {
+            if (this._loadedAt >= 0 && started - this._loadedAt < _ttlMillis && from >= this._from)
+               return;
+            from = Math.min(from, (int) LocalDate.now().toEpochDay());
+            if (this._loadedAt >= 0 && started - this._loadedAt < _ttlMillis)
+               from = Math.min(from, this._from);
+            if (this._loading++ == 0)
+               this._marked = new ArrayList<int[]>();
+         }
+         Map<Integer, TreeMap<Integer, Integer>> rooms = null;
+         try {
+            rooms = load(from);
+         } finally {
+            synchronized (this) {
+               if (rooms != null && started >= this._loadedAt) {
+                  this._rooms = rooms;
+                  this._from = from;
+                  this._loadedAt = started;
+                  for (int[] run : this._marked)
+                     merge(run[0], run[1], run[2]);
+               }
+               if (--this._loading == 0)
+                  this._marked = null;
+            }
+         }
+      }//end ensureLoaded
+
+      private Map<Integer, TreeMap<Integer, Integer>> load(int from) throws SQLException {
+         // ordered by room and date, so runs are built by appending.
+         QueryResult rows = _esql.storage().bookedNights(this._hotelID, QueryResult.toDate(from));
+         int[] rooms = rows.intColumn(0);
+         int[] nights = rows.epochDayColumn(1);
+         Map<Integer, TreeMap<Integer, Integer>> result = new HashMap<Integer, TreeMap<Integer, Integer>>();
+         TreeMap<Integer, Integer> runs = null;
+         int runStart = 0;
+         int runEnd = 0;
+         for (int i = 0; i < rooms.length; ++i) {
+            if (i == 0 || rooms[i] != rooms[i - 1]) {
+               if (runs != null)
+                  runs.put(runStart, runEnd);
+               runs = new TreeMap<Integer, Integer>();
+               result.put(rooms[i], runs);
+               runStart = runEnd = nights[i];
+            } else if (nights[i] == runEnd + 1) {
+               runEnd = nights[i];
+            } else {
+               runs.put(runStart, runEnd);
+               runStart = runEnd = nights[i];
+            }
+         }
+         if (runs != null)
+            runs.put(runStart, runEnd);
+         return result;
+      }//end load
+
+      synchronized boolean isFree(int roomNumber, int first, int last) {
+         TreeMap<Integer, Integer> runs = this._rooms.get(roomNumber);
+         if (runs == null)
+            return true;
+         // the only run that can overlap is the last one starting by the last night.
+         Map.Entry<Integer, Integer> run = runs.floorEntry(last);
+         return run == null || run.getValue() < first;
+      }
+
+      synchronized void markBooked(int roomNumber, int first, int last) {
+         // a load that is running may have read the table before the booking.
+         if (this._marked != null)
+            this._marked.add(new int[] { roomNumber, first, last });
+         // a hotel that was never loaded reads the booking from the table.
+         if (this._loadedAt < 0)
+            return;
+         merge(roomNumber, first, last);
+      }
+
+      private void merge(int roomNumber, int first, int last) {
+         // nights before the loaded range are not kept.
+         if (last < this._from)
+            return;
+         TreeMap<Integer, Integer> runs = this._rooms.get(roomNumber);
+         if (runs == null) {
+            runs = new TreeMap<Integer, Integer>();
+            this._rooms.put(roomNumber, runs);
+         }
+         // merge with the runs that touch [first, last].
+         Map.Entry<Integer, Integer> before = runs.floorEntry(first - 1);
+         if (before != null && before.getValue() >= first - 1) {
+            first = before.getKey();
+            last = Math.max(last, before.getValue());
+            runs.remove(before.getKey());
+         }
+         Map.Entry<Integer, Integer> after = runs.ceilingEntry(first);
+         while (after != null && after.getKey() <= last + 1) {
+            last = Math.max(last, after.getValue());
+            runs.remove(after.getKey());
+            after = runs.ceilingEntry(first);
+         }
+         runs.put(first, last);
+      }//end merge
+   }//end HotelStays
+
+}//end StayIndex
@@ -0,0 +1,181 @@
+package hotel;
+
+import java.sql.Date;
+import java.sql.SQLException;
+
+/**
+ * Where the data behind the Hotel operations lives. JdbcStorage keeps it in
+ * Postgres; MemoryStorage keeps it in hash indexes loaded from the CSV
+ * files of data/. Hotel puts its caches and metrics on top of either one.
+ *
+ * Results have the columns, with the lower case names, that the Postgres
+ * queries of JdbcStorage return. A failed insert reports the SQLState
+ * Postgres would: 23505 for a taken booking slot and 23503 for a missing
+ * row it refers to, with the referenced table in the message.
+ *
+ */
+public interface Storage {
+
+   /*
+    * Users
+    **/
+
+   /**
+    * @param password the password to check, or null to read the user without checking
+    * @return usertype and hotelid, one row per hotel the user manages or a single
+    * row with a NULL hotelid; no row when there is no such user or the password is wrong
+    */
+   QueryResult user(int userID, String password) throws SQLException;
+
+   /**
+    * @return the userID of the new user
+    */
+   int createUser(String name, String password, String userType) throws SQLException;
+
+   /*
+    * Hotels and rooms
+    **/
+
+   /**
+    * @return hotelid, hotelname, latitude and longitude of every hotel with a location
+    */
+   QueryResult locatedHotels() throws SQLException;
+
+   /**
+    * @return roomnumber, price and imageurl of every room of the hotel, by room number
+    */
+   QueryResult rooms(int hotelID) throws SQLException;
+
+   /**
+    * @return roomnumber, price, imageurl and hotelid of every room of the
+    * hotels, by hotelid and room number
+    */
+   QueryResult rooms(int[] hotelIDs) throws SQLException;
+
+   /**
+    * Sets the price of a room and logs the change in RoomUpdatesLog.
+    *
+    * @return false when the hotel has no such room
+    */
+   boolean updateRoomPrice(int managerID, int hotelID, int roomNumber, int price) throws SQLException;
+
+   /**
+    * Sets the image of a room and logs the change in RoomUpdatesLog.
+    *
+    * @return false when the hotel has no such room
+    */
+   boolean updateRoomImage(int managerID, int hotelID, int roomNumber, String imageURL) throws SQLException;
+
+   /**
+    * Sets the price of the given rooms of a hotel and logs every change.
+    *
+    * @return roomnumber of every room updated
+    */
+   QueryResult updateRoomPrices(int managerID, int hotelID, int[] roomNumbers, int price) throws SQLException;
+
+   /*
+    * Bookings
+    **/
+
+   /**
+    * @return roomnumber of every room of the hotel booked on the date
+    */
+   QueryResult bookedRooms(int hotelID, Date date) throws SQLException;
+
+   /**
+    * @return hotelid and roomnumber of every room of the hotels booked on
+    * any night from first to last, inclusive, by hotelid and room number
+    */
+   QueryResult bookedRooms(int[] hotelIDs, Date first, Date last) throws SQLException;
+
+   /**
+    * @return roomnumber and bookingdate of every booking of the hotel on or
+    * after the date, by room and date
+    */
+   QueryResult bookedNights(int hotelID, Date from) throws SQLException;
+
+   /**
+    * Books a room on a date unless the slot is taken.
+    *
+    * @return bookingid of the new booking, or no row when the slot is taken
+    * @throws java.sql.SQLException with SQLState 23503 when the room or customer does not exist
+    */
+   QueryResult book(int customerID, int hotelID, int roomNumber, Date date) throws SQLException;
+
+   /**
+    * Books a room for every night from first to last, inclusive, or for none.
+    *
+    * @return the first bookingid and the number of nights in one row
+    * @throws java.sql.SQLException with SQLState 23505 when a night is taken,
+    * 23503 when the room or customer does not exist
+    */
+   QueryResult bookStay(int customerID, int hotelID, int roomNumber, Date first, Date last) throws SQLException;
+
+   /**
+    * @param from first booking date, or null for the whole history
+    * @param to last booking date, ignored when from is null
+    * @return bookingid, name, hotelid, roomnumber and bookingdate
+    */
+   QueryResult bookingHistory(int hotelID, Date from, Date to) throws SQLException;
+
+   /**
+    * @param from first booking date, or null for the whole history; widened to whole months
+    * @param to last booking date, ignored when from is null
+    * @return customerid, name and bookings of the k customers with the most bookings
+    */
+   QueryResult regularCustomers(int hotelID, int k, Date from, Date to) throws SQLException;
+
+   /*
+    * Repairs
+    **/
+
+   /**
+    * Places a repair and its request for each of the rooms the hotel has.
+    *
+    * @return repairid and roomnumber of every new repair
+    */
+   QueryResult placeRepairRequests(int managerID, int hotelID, int[] roomNumbers, int companyID) throws SQLException;
+
+   /**
+    * Places a repair and its request for every room of the hotel whose number
+    * and price lie in the given ranges, bounds included.
+    *
+    * @return repairid and roomnumber of every new repair
+    */
+   QueryResult placeRepairRequests(int managerID, int hotelID, int firstRoom, int lastRoom, int minPrice, int maxPrice, int companyID) throws SQLException;
+
+   /**
+    * @return repairid, companyid, hotelid, roomnumber and repairdate of the repairs the manager requested
+    */
+   QueryResult repairHistory(int managerID) throws SQLException;
+
+   /*
+    * Histories, newest first
+    **/
+
+   /**
+    * @return pages of bookingid, hotelid, roomnumber and bookingdate
+    */
+   Pager customerBookingPages(int customerID, int pageSize);
+
+   /**
+    * @return pages of the rows of bookingHistory
+    */
+   Pager bookingHistoryPages(int hotelID, Date from, Date to, int pageSize);
+
+   /**
+    * @return pages of updatenumber, hotelname, hotelid, roomnumber, price, imageurl and updatedon
+    */
+   Pager roomUpdatePages(int[] hotelIDs, int pageSize);
+
+   /**
+    * @return pages of the rows of repairHistory
+    */
+   Pager repairHistoryPages(int managerID, int pageSize);
+
+   /**
+    * Writes whatever is still pending and releases the storage.
+    */
+   void close();
+
+}//end Storage
@@ -0,0 +1,191 @@
+package hotel;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Date;
+import java.sql.SQLException;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.postgresql.util.PSQLException;
+
+/**
+ * Checks the in-memory backend against the behaviour of the SQL that
+ * JdbcStorage runs, on a hotel with three rooms and eight bookings.
+ *
+ */
+public class MemoryStorageTest {
+   private static final int CUSTOMER_A = 2;
+   private static final int CUSTOMER_B = 3;
+   private static final int CUSTOMER_C = 4;
+   private static final int MANAGER = 5;
+   private static final int HOTEL = 1;
+   private static final int COMPANY = 1;
+
+   @TempDir
+   Path _dir;
+
+   private MemoryStorage _storage;
+
+   @BeforeEach
+   void load() throws IOException {
+      write("users.csv", "userID,name,password,userType",
+            "1,Admin,xyz,admin",
+            "2,Alice,xyz,customer",
+            "3,Bob,xyz,customer",
+            "4,Carol,xyz,customer",
+            "5,Mallory,xyz,manager");
+      write("hotels.csv", "hotelID,hotelName,latitude,longitude,dateEstablished,managerUserID",
+            "1,Seaside,10.5,20.25,3/13/1953,5");
+      write("rooms.csv", "hotelID,roomNumber,price,imageURL",
+            "1,1,100,img1",
+            "1,2,200,img2",
+            "1,3,300,img3");
+      write("company.csv", "companyID,name,address",
+            "1,Fixit,Main Street");
+      // newest first, the bookings are 8, 7, 6, 5, 4, 3, 2, 1.
+      write("bookings.csv", "bookingID,customerID,hotelID,roomNumber,bookingDate",
+            "1,2,1,1,1/10/2024",
+            "2,2,1,1,1/11/2024",
+            "3,3,1,2,1/15/2024",
+            "4,2,1,3,2/20/2024",
+            "5,3,1,1,3/5/2024",
+            "6,4,1,2,3/6/2024",
+            "7,4,1,3,3/7/2024",
+            "8,4,1,1,3/8/2024");
+      write("roomRepairs.csv", "repairID,companyID,hotelID,roomNumber,repairDate");
+      write("roomRepairRequests.csv", "requestNumber,managerID,repairID");
+      write("roomUpdatesLog.csv", "updateNumber,managerID,hotelID,roomNumber,updatedOn");
+      this._storage = MemoryStorage.load(this._dir.toFile());
+   }//end load
+
+   @Test
+   void secondBookingOfASlotIsRefused() throws SQLException {
+      Date night = Date.valueOf("2024-06-01");
+      QueryResult first = this._storage.book(CUSTOMER_A, HOTEL, 2, night);
+      assertEquals(1, first.rowCount());
+      // like ON CONFLICT DO NOTHING: no row and no error.
+      assertTrue(this._storage.book(CUSTOMER_B, HOTEL, 2, night).isEmpty());
+      // a night that was booked from the CSV file is taken as well.
+      assertTrue(this._storage.book(CUSTOMER_B, HOTEL, 1, Date.valueOf("2024-01-10")).isEmpty());
+
+      assertArrayEquals(new int[] { 2 }, this._storage.bookedRooms(HOTEL, night).intColumn(0));
+   }//end secondBookingOfASlotIsRefused
+
+   @Test
+   void stayOverlappingABookingIsRefusedWhole() throws SQLException {
+      SQLException e = assertThrows(SQLException.class, () ->
+         this._storage.bookStay(CUSTOMER_B, HOTEL, 1, Date.valueOf("2024-01-08"), Date.valueOf("2024-01-12")));
+      assertEquals("23505", e.getSQLState());
+      // none of the free nights around the booked ones was taken.
+      assertEquals(2, this._storage.bookedNights(HOTEL, Date.valueOf("2024-01-01")).rowCount()
+                      - this._storage.bookedNights(HOTEL, Date.valueOf("2024-01-12")).rowCount());
+
+      QueryResult stay = this._storage.bookStay(CUSTOMER_B, HOTEL, 1, Date.valueOf("2024-01-12"), Date.valueOf("2024-01-14"));
+      assertEquals(3, stay.getLong(0, 1));
+      assertTrue(this._storage.book(CUSTOMER_C, HOTEL, 1, Date.valueOf("2024-01-13")).isEmpty());
+   }//end stayOverlappingABookingIsRefusedWhole
+
+   @Test
+   void bookingOfAnUnknownRoomNamesTheForeignKey() {
+      SQLException e = assertThrows(SQLException.class, () ->
+         this._storage.book(CUSTOMER_A, HOTEL, 99, Date.valueOf("2024-06-01")));
+      assertEquals("23503", e.getSQLState());
+      assertEquals(BookingEngine.ROOM_FOREIGN_KEY,
+                   ((PSQLException) e).getServerErrorMessage().getConstraint());
+   }
+
+   @Test
+   void roomsBookedDuringAStayOfSeveralHotels() throws SQLException {
+      QueryResult booked = this._storage.bookedRooms(new int[] { 42, HOTEL }, Date.valueOf("2024-03-06"), Date.valueOf("2024-03-07"));
+      assertArrayEquals(new int[] { HOTEL, HOTEL }, booked.intColumn(0));
+      assertArrayEquals(new int[] { 2, 3 }, booked.intColumn(1));
+
+      QueryResult rooms = this._storage.rooms(new int[] { HOTEL, 42, HOTEL });
+      assertArrayEquals(new int[] { 1, 2, 3 }, rooms.intColumn(0));
+      assertArrayEquals(new int[] { HOTEL, HOTEL, HOTEL }, rooms.intColumn(3));
+   }
+
+   @Test
+   void pagesGoForwardAndBack() throws SQLException {
+      Pager pages = this._storage.bookingHistoryPages(HOTEL, null, null, 3);
+      assertArrayEquals(new int[] { 8, 7, 6 }, pages.first().intColumn(0));
+      assertArrayEquals(new int[] { 5, 4, 3 }, pages.next().intColumn(0));
+      assertArrayEquals(new int[] { 2, 1 }, pages.next().intColumn(0));
+      // past the end the page on screen stays where it is.
+      assertTrue(pages.next().isEmpty());
+      assertArrayEquals(new int[] { 2, 1 }, pages.page().intColumn(0));
+
+      assertArrayEquals(new int[] { 5, 4, 3 }, pages.previous().intColumn(0));
+      assertArrayEquals(new int[] { 8, 7, 6 }, pages.previous().intColumn(0));
+      assertTrue(pages.previous().isEmpty());
+      assertArrayEquals(new int[] { 8, 7, 6 }, pages.page().intColumn(0));
+   }//end pagesGoForwardAndBack
+
+   @Test
+   void pagesOfADateRange() throws SQLException {
+      Pager pages = this._storage.bookingHistoryPages(HOTEL, Date.valueOf("2024-01-11"), Date.valueOf("2024-03-05"), 2);
+      assertArrayEquals(new int[] { 5, 4 }, pages.first().intColumn(0));
+      assertArrayEquals(new int[] { 3, 2 }, pages.next().intColumn(0));
+      assertTrue(pages.next().isEmpty());
+   }
+
+   @Test
+   void regularCustomersAreCountedWithinTheWindow() throws SQLException {
+      QueryResult all = this._storage.regularCustomers(HOTEL, 10, null, null);
+      // ties are broken by customerID.
+      assertArrayEquals(new int[] { CUSTOMER_A, CUSTOMER_C, CUSTOMER_B }, all.intColumn(0));
+
+      QueryResult march = this._storage.regularCustomers(HOTEL, 10, Date.valueOf("2024-03-01"), Date.valueOf("2024-03-31"));
+      assertArrayEquals(new int[] { CUSTOMER_C, CUSTOMER_B }, march.intColumn(0));
+      assertEquals(3, march.getLong(0, 2));
+      assertEquals(1, march.getLong(1, 2));
+
+      // the window starts at the beginning of its first month, like CustomerBookingCounts.
+      QueryResult february = this._storage.regularCustomers(HOTEL, 10, Date.valueOf("2024-02-25"), Date.valueOf("2024-02-29"));
+      assertArrayEquals(new int[] { CUSTOMER_A }, february.intColumn(0));
+
+      assertEquals(1, this._storage.regularCustomers(HOTEL, 1, null, null).rowCount());
+   }//end regularCustomersAreCountedWithinTheWindow
+
+   @Test
+   void repairRequestsSkipUnknownRooms() throws SQLException {
+      QueryResult placed = this._storage.placeRepairRequests(MANAGER, HOTEL, new int[] { 3, 99, 1, 3 }, COMPANY);
+      // one repair per known room, in room order.
+      assertArrayEquals(new int[] { 1, 3 }, placed.intColumn(1));
+      assertEquals(2, this._storage.repairHistory(MANAGER).rowCount());
+
+      assertTrue(this._storage.placeRepairRequests(MANAGER, 42, new int[] { 1 }, COMPANY).isEmpty());
+      assertTrue(this._storage.placeRepairRequests(MANAGER, HOTEL, new int[] { 98, 99 }, COMPANY).isEmpty());
+      assertEquals(2, this._storage.repairHistory(MANAGER).rowCount());
+
+      SQLException e = assertThrows(SQLException.class, () ->
+         this._storage.placeRepairRequests(MANAGER, HOTEL, new int[] { 2 }, 7));
+      assertEquals("23503", e.getSQLState());
+   }//end repairRequestsSkipUnknownRooms
+
+   @Test
+   void roomUpdatesAreLogged() throws SQLException {
+      assertTrue(this._storage.updateRoomPrice(MANAGER, HOTEL, 2, 250));
+      assertFalse(this._storage.updateRoomPrice(MANAGER, HOTEL, 99, 250));
+      QueryResult updates = this._storage.roomUpdatePages(new int[] { HOTEL }, 10).first();
+      assertEquals(1, updates.rowCount());
+      assertEquals(2, updates.getInt(0, 3));
+      assertEquals(250, updates.getInt(0, 4));
+   }
+
+   private void write(String name, String... lines) throws IOException {
+      Files.write(new File(this._dir.toFile(), name).toPath(), Arrays.asList(lines));
+   }
+
+}//end MemoryStorageTest
@@ -1,6 +1,9 @@
 #!/bin/bash
 DIR="$( cd "$( dirname "${BASH_SOURCE[0]}" )" && pwd )"
 psql -h localhost -p $PGPORT $USER"_DB" < $DIR/../src/create_tables.sql
+psql -h localhost -p $PGPORT $USER"_DB" < $DIR/../src/create_partitions.sql
 psql -h localhost -p $PGPORT $USER"_DB" < $DIR/../src/create_indexes.sql
 psql -h localhost -p $PGPORT $USER"_DB" < $DIR/../src/load_data.sql
+psql -h localhost -p $PGPORT $USER"_DB" < $DIR/../src/create_summaries.sql
+psql -h localhost -p $PGPORT $USER"_DB" < $DIR/../src/create_notifications.sql
 
@@ -0,0 +1,13 @@
+#!/bin/bash
+DIR="$( cd "$( dirname "${BASH_SOURCE[0]}" )" && pwd )"
+# starts a streaming replica of the server on $PGPORT, for the --replica
+# option of the java program: create_replica.sh <replica port> [data directory]
+REPLICA_PORT=${1:?"usage: create_replica.sh <replica port> [data directory]"}
+REPLICA_DATA=${2:-/tmp/$USER/replica_$REPLICA_PORT}
+
+# -R writes the standby settings, so the copy follows the primary once started
+pg_basebackup -h localhost -p $PGPORT -D $REPLICA_DATA -R -X stream -c fast || exit 1
+pg_ctl -D $REPLICA_DATA -o "-p $REPLICA_PORT" -l $REPLICA_DATA/replica.log start
+
+# the program then reads its history views from the replica:
+# java -cp $DIR/../../java/target/classes:$DIR/../../java/target/dependency/* hotel.Hotel $USER"_DB" $PGPORT $USER --replica $REPLICA_PORT
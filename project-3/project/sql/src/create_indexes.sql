@@ -1,4 +1,21 @@
 DROP INDEX IF EXISTS hotel_id_num;
 DROP INDEX IF EXISTS get_room_num;
 CREATE INDEX hotel_id_num on Hotel USING BTREE(hotelID);
-CREATE INDEX get_room_num on Rooms USING BTREE(roomNumber);
\ No newline at end of file
+CREATE INDEX get_room_num on Rooms USING BTREE(roomNumber);
+DROP INDEX IF EXISTS booking_hotel_date;
+CREATE INDEX booking_hotel_date on RoomBookings USING BTREE(hotelID, bookingDate, bookingID);
+DROP INDEX IF EXISTS booking_unique_slot;
+CREATE UNIQUE INDEX booking_unique_slot on RoomBookings USING BTREE(hotelID, roomNumber, bookingDate);
+---seek indexes of the keyset paged history views, newest first on (date, id).
+DROP INDEX IF EXISTS booking_customer_date;
+CREATE INDEX booking_customer_date on RoomBookings USING BTREE(customerID, bookingDate, bookingID);
+DROP INDEX IF EXISTS update_hotel_date;
+CREATE INDEX update_hotel_date on RoomUpdatesLog USING BTREE(hotelID, updatedOn, updateNumber);
+---the updates of several hotels are read newest first in one ordered scan, filtered on hotelID in the index.
+DROP INDEX IF EXISTS update_date;
+CREATE INDEX update_date on RoomUpdatesLog USING BTREE(updatedOn, updateNumber, hotelID);
+---repairs are filtered on the manager in RoomRepairRequests and ordered on RoomRepairs, which no one index spans:
+---request_manager_repair finds the few repairs of a manager and they are sorted on (repairDate, repairID).
+DROP INDEX IF EXISTS repair_date;
+DROP INDEX IF EXISTS request_manager_repair;
+CREATE INDEX request_manager_repair on RoomRepairRequests USING BTREE(managerID, repairID);
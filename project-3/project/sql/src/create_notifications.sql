@@ -0,0 +1,47 @@
+---Notifications for the caches of the Java client. Each trigger sends a NOTIFY on a channel that
+---hotel.ChangeListener listens to; identical notifications of one transaction are sent once.
+
+---Sessions keep the hotels their user manages, so every change of a manager is announced.
+CREATE OR REPLACE FUNCTION notify_hotel_managers()
+RETURNS trigger AS $mgr$
+BEGIN
+   PERFORM pg_notify('hotel_managers', '');
+   RETURN NULL;
+END;
+$mgr$ LANGUAGE plpgsql;
+
+DROP TRIGGER IF EXISTS hotel_managers_changed ON Hotel;
+CREATE TRIGGER hotel_managers_changed
+AFTER INSERT OR DELETE OR UPDATE OF managerUserID ON Hotel
+FOR EACH STATEMENT EXECUTE FUNCTION notify_hotel_managers();
+
+---The client caches Rooms per hotel, so every statement on Rooms announces the hotels it touched.
+---Statement triggers with transition tables send one notification per hotel, even for a COPY.
+CREATE OR REPLACE FUNCTION notify_room_changes()
+RETURNS trigger AS $rooms$
+BEGIN
+   IF TG_OP = 'TRUNCATE' THEN
+      PERFORM pg_notify('room_changes', '');
+   ELSIF TG_OP = 'INSERT' THEN
+      PERFORM pg_notify('room_changes', hotelID::text) FROM (SELECT DISTINCT hotelID FROM new_rooms) h;
+   ELSIF TG_OP = 'UPDATE' THEN
+      PERFORM pg_notify('room_changes', hotelID::text) FROM (SELECT hotelID FROM old_rooms UNION SELECT hotelID FROM new_rooms) h;
+   ELSE
+      PERFORM pg_notify('room_changes', hotelID::text) FROM (SELECT DISTINCT hotelID FROM old_rooms) h;
+   END IF;
+   RETURN NULL;
+END;
+$rooms$ LANGUAGE plpgsql;
+
+DROP TRIGGER IF EXISTS rooms_inserted ON Rooms;
+DROP TRIGGER IF EXISTS rooms_updated ON Rooms;
+DROP TRIGGER IF EXISTS rooms_deleted ON Rooms;
+DROP TRIGGER IF EXISTS rooms_truncated ON Rooms;
+CREATE TRIGGER rooms_inserted AFTER INSERT ON Rooms
+REFERENCING NEW TABLE AS new_rooms FOR EACH STATEMENT EXECUTE FUNCTION notify_room_changes();
+CREATE TRIGGER rooms_updated AFTER UPDATE ON Rooms
+REFERENCING OLD TABLE AS old_rooms NEW TABLE AS new_rooms FOR EACH STATEMENT EXECUTE FUNCTION notify_room_changes();
+CREATE TRIGGER rooms_deleted AFTER DELETE ON Rooms
+REFERENCING OLD TABLE AS old_rooms FOR EACH STATEMENT EXECUTE FUNCTION notify_room_changes();
+CREATE TRIGGER rooms_truncated AFTER TRUNCATE ON Rooms
+FOR EACH STATEMENT EXECUTE FUNCTION notify_room_changes();
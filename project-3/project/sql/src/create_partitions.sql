@@ -0,0 +1,41 @@
+---Creates the yearly partitions first_year to last_year of a RoomBookings table partitioned by
+---bookingDate, plus a default partition for dates outside of them. A booking that went to the
+---default partition is moved to its year when that year's partition is created.
+---Returns the number of partitions created; calling it again for the same years does nothing.
+CREATE OR REPLACE FUNCTION create_booking_partitions(parent regclass, first_year integer, last_year integer)
+RETURNS integer AS $parts$
+DECLARE
+   base text := (SELECT relname FROM pg_class WHERE oid = parent);
+   part text;
+   lo date;
+   hi date;
+   created integer := 0;
+BEGIN
+   IF (SELECT relkind FROM pg_class WHERE oid = parent) <> 'p' THEN
+      RAISE NOTICE '% is not partitioned, run BookingMigration first', parent;
+      RETURN 0;
+   END IF;
+   ---concurrent callers wait for each other instead of creating the same partition twice.
+   PERFORM pg_advisory_xact_lock(parent::oid::bigint);
+
+   IF to_regclass(base || '_default') IS NULL THEN
+      EXECUTE format('CREATE TABLE %I PARTITION OF %s DEFAULT', base || '_default', parent);
+   END IF;
+   FOR y IN first_year .. last_year LOOP
+      part := base || '_' || y;
+      CONTINUE WHEN to_regclass(part) IS NOT NULL;
+      lo := make_date(y, 1, 1);
+      hi := make_date(y + 1, 1, 1);
+      EXECUTE format('CREATE TABLE %I (LIKE %s INCLUDING DEFAULTS INCLUDING CONSTRAINTS)', part, parent);
+      EXECUTE format('WITH moved AS (DELETE FROM %I WHERE bookingDate >= %L AND bookingDate < %L RETURNING *) ' ||
+                     'INSERT INTO %I SELECT * FROM moved', base || '_default', lo, hi, part);
+      ---attaching builds the indexes of the parent on the new partition.
+      EXECUTE format('ALTER TABLE %s ATTACH PARTITION %I FOR VALUES FROM (%L) TO (%L)', parent, part, lo, hi);
+      created := created + 1;
+   END LOOP;
+   RETURN created;
+END;
+$parts$ LANGUAGE plpgsql;
+
+---the sample data starts in 2000; BookingPartitions keeps the following years created.
+SELECT create_booking_partitions('RoomBookings', 2000, extract(year FROM current_date)::integer + 2);
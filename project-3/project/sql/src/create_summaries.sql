@@ -0,0 +1,112 @@
+---Booking counts per hotel and customer, kept up to date by triggers on RoomBookings so that
+---the regular customers of a hotel are read from a ranking instead of counting every booking.
+DROP TABLE IF EXISTS CustomerBookingTotals CASCADE;
+DROP TABLE IF EXISTS CustomerBookingCounts CASCADE;
+
+---all-time count, indexed in ranking order per hotel.
+CREATE TABLE CustomerBookingTotals ( hotelID integer NOT NULL,
+                                     customerID integer NOT NULL,
+                                     bookings integer NOT NULL,
+                                     PRIMARY KEY(hotelID, customerID)
+);
+CREATE INDEX booking_totals_rank on CustomerBookingTotals USING BTREE(hotelID, bookings DESC, customerID);
+
+---count per calendar month, for rankings over a date window.
+CREATE TABLE CustomerBookingCounts ( hotelID integer NOT NULL,
+                                     bookingMonth date NOT NULL,
+                                     customerID integer NOT NULL,
+                                     bookings integer NOT NULL,
+                                     PRIMARY KEY(hotelID, bookingMonth, customerID)
+);
+
+---Adds delta bookings for every row of the given rows. Rows are applied in key order so that
+---concurrent writers lock the counters in the same order and cannot deadlock.
+CREATE OR REPLACE FUNCTION add_customer_bookings(hotels integer[], customers integer[], days date[], delta integer)
+RETURNS void AS $add$
+BEGIN
+   INSERT INTO CustomerBookingTotals AS T (hotelID, customerID, bookings)
+   SELECT h, c, delta * COUNT(*) FROM unnest(hotels, customers) AS r(h, c)
+   GROUP BY h, c ORDER BY h, c
+   ON CONFLICT (hotelID, customerID) DO UPDATE SET bookings = T.bookings + EXCLUDED.bookings;
+
+   INSERT INTO CustomerBookingCounts AS M (hotelID, bookingMonth, customerID, bookings)
+   SELECT h, date_trunc('month', d)::date AS m, c, delta * COUNT(*) FROM unnest(hotels, customers, days) AS r(h, c, d)
+   GROUP BY h, m, c ORDER BY h, m, c
+   ON CONFLICT (hotelID, bookingMonth, customerID) DO UPDATE SET bookings = M.bookings + EXCLUDED.bookings;
+
+   IF delta < 0 THEN
+      DELETE FROM CustomerBookingTotals WHERE hotelID = ANY(hotels) AND bookings <= 0;
+      DELETE FROM CustomerBookingCounts WHERE hotelID = ANY(hotels) AND bookings <= 0;
+   END IF;
+END;
+$add$ LANGUAGE plpgsql;
+
+---Statement level triggers see all rows of a statement at once, so a COPY or a multi-night
+---stay updates each counter once instead of once per booking.
+CREATE OR REPLACE FUNCTION count_inserted_bookings()
+RETURNS trigger AS $ins$
+BEGIN
+   PERFORM add_customer_bookings(array_agg(hotelID), array_agg(customerID), array_agg(bookingDate), 1)
+   FROM new_bookings HAVING COUNT(*) > 0;
+   RETURN NULL;
+END;
+$ins$ LANGUAGE plpgsql;
+
+CREATE OR REPLACE FUNCTION count_deleted_bookings()
+RETURNS trigger AS $del$
+BEGIN
+   PERFORM add_customer_bookings(array_agg(hotelID), array_agg(customerID), array_agg(bookingDate), -1)
+   FROM old_bookings HAVING COUNT(*) > 0;
+   RETURN NULL;
+END;
+$del$ LANGUAGE plpgsql;
+
+CREATE OR REPLACE FUNCTION count_updated_bookings()
+RETURNS trigger AS $upd$
+BEGIN
+   PERFORM add_customer_bookings(array_agg(hotelID), array_agg(customerID), array_agg(bookingDate), -1)
+   FROM old_bookings HAVING COUNT(*) > 0;
+   PERFORM add_customer_bookings(array_agg(hotelID), array_agg(customerID), array_agg(bookingDate), 1)
+   FROM new_bookings HAVING COUNT(*) > 0;
+   RETURN NULL;
+END;
+$upd$ LANGUAGE plpgsql;
+
+CREATE OR REPLACE FUNCTION clear_customer_bookings()
+RETURNS trigger AS $clr$
+BEGIN
+   TRUNCATE CustomerBookingTotals, CustomerBookingCounts;
+   RETURN NULL;
+END;
+$clr$ LANGUAGE plpgsql;
+
+---(Re)creates the counting triggers on the table that is RoomBookings now; BookingMigration
+---calls it again when it swaps in the partitioned table.
+CREATE OR REPLACE FUNCTION install_booking_count_triggers()
+RETURNS void AS $install$
+BEGIN
+   DROP TRIGGER IF EXISTS booking_counts_insert ON RoomBookings;
+   DROP TRIGGER IF EXISTS booking_counts_delete ON RoomBookings;
+   DROP TRIGGER IF EXISTS booking_counts_update ON RoomBookings;
+   DROP TRIGGER IF EXISTS booking_counts_truncate ON RoomBookings;
+   CREATE TRIGGER booking_counts_insert AFTER INSERT ON RoomBookings
+      REFERENCING NEW TABLE AS new_bookings FOR EACH STATEMENT EXECUTE FUNCTION count_inserted_bookings();
+   CREATE TRIGGER booking_counts_delete AFTER DELETE ON RoomBookings
+      REFERENCING OLD TABLE AS old_bookings FOR EACH STATEMENT EXECUTE FUNCTION count_deleted_bookings();
+   CREATE TRIGGER booking_counts_update AFTER UPDATE ON RoomBookings
+      REFERENCING OLD TABLE AS old_bookings NEW TABLE AS new_bookings FOR EACH STATEMENT EXECUTE FUNCTION count_updated_bookings();
+   CREATE TRIGGER booking_counts_truncate AFTER TRUNCATE ON RoomBookings
+      FOR EACH STATEMENT EXECUTE FUNCTION clear_customer_bookings();
+END;
+$install$ LANGUAGE plpgsql;
+
+SELECT install_booking_count_triggers();
+
+---fill the counters from the bookings that are already there.
+INSERT INTO CustomerBookingTotals (hotelID, customerID, bookings)
+SELECT hotelID, customerID, COUNT(*) FROM RoomBookings GROUP BY hotelID, customerID;
+INSERT INTO CustomerBookingCounts (hotelID, bookingMonth, customerID, bookings)
+SELECT hotelID, date_trunc('month', bookingDate)::date, customerID, COUNT(*) FROM RoomBookings
+GROUP BY hotelID, date_trunc('month', bookingDate)::date, customerID;
+ANALYZE CustomerBookingTotals;
+ANALYZE CustomerBookingCounts;
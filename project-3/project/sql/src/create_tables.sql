@@ -3,6 +3,7 @@ DROP TABLE IF EXISTS Rooms CASCADE;
 DROP TABLE IF EXISTS Users CASCADE;;
 DROP TABLE IF EXISTS MaintenanceCompany CASCADE;
 DROP TABLE IF EXISTS RoomBookings CASCADE;
+DROP TABLE IF EXISTS RoomBookings_unpartitioned CASCADE;
 DROP TABLE IF EXISTS RoomRepairs CASCADE;
 DROP TABLE IF EXISTS RoomRepairRequests CASCADE;
 DROP TABLE IF EXISTS RoomUpdatesLog CASCADE;
@@ -48,10 +49,14 @@ CREATE TABLE RoomBookings (
                     hotelID integer NOT NULL,
                     roomNumber integer NOT NULL, 
                     bookingDate date NOT NULL, 
-                    PRIMARY KEY(bookingID),
-                    FOREIGN KEY(customerID) REFERENCES Users(userID),
-                    FOREIGN KEY(hotelID, roomNumber) REFERENCES Rooms(hotelID, roomNumber)
-);
+                    PRIMARY KEY(bookingID, bookingDate),
+                    CONSTRAINT roombookings_customerid_fkey FOREIGN KEY(customerID) REFERENCES Users(userID),
+                    CONSTRAINT roombookings_hotelid_roomnumber_fkey FOREIGN KEY(hotelID, roomNumber) REFERENCES Rooms(hotelID, roomNumber)
+) PARTITION BY RANGE (bookingDate);
+---RoomBookings is split into one partition per year, see create_partitions.sql. The primary key
+---of a partitioned table must contain the partition key, bookingID alone is unique through its sequence.
+---The foreign keys are named so that BookingMigration leaves them with these names; BookingEngine
+---tells a booking of a deleted room by roombookings_hotelid_roomnumber_fkey.
 
 CREATE TABLE RoomRepairs (  
                             repairID serial,